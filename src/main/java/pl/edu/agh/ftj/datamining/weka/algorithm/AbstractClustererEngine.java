@@ -0,0 +1,228 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.DatasetClusterer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NearestCenterClusterer;
+import weka.clusterers.ClusterEvaluation;
+import weka.clusterers.Clusterer;
+import weka.core.Drawable;
+import weka.core.OptionHandler;
+import weka.core.RevisionHandler;
+
+/**
+ * Podstawa silnika z opisem (typ, nazwy, cechy, limit wierszy) ustalanym w konstruktorze.
+ * Domyślnie silnik obsługuje wszystkie opcje.
+ * <p>
+ * Metoda run wykonuje wspólny dla wszystkich silników przebieg: tworzy klasteryzator (newClusterer), ustawia opcje
+ * (przy błędzie - opcje domyślne), konfiguruje go (configure), buduje (build), przeprowadza ewaluację wg trybu
+ * z opcji -eval i wypełnia odpowiedź (fillAnswer). Silnik algorytmu z biblioteki Weka wystarczy więc opisać metodą
+ * newClusterer, a pozostałe metody nadpisać tylko wtedy, gdy algorytm wymaga dodatkowych kroków. Instancja silnika
+ * jest współdzielona przez wszystkie uruchomienia, więc stan uruchomienia przekazywany jest wyłącznie w parametrach.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public abstract class AbstractClustererEngine implements ClustererEngine {
+
+    private final int algorithmType;
+    private final String algorithmName;
+    private final String name;
+    private final Set<Capability> capabilities;
+    private final long maxRecommendedRows;
+
+    /**
+     * @param algorithmType typ algorytmu
+     * @param algorithmName nazwa algorytmu
+     * @param name nazwa silnika
+     * @param capabilities cechy silnika
+     * @param maxRecommendedRows zalecana maksymalna liczba wierszy (UNLIMITED - brak limitu)
+     */
+    protected AbstractClustererEngine(int algorithmType, String algorithmName, String name,
+            EnumSet<Capability> capabilities, long maxRecommendedRows) {
+        this.algorithmType = algorithmType;
+        this.algorithmName = algorithmName;
+        this.name = name;
+        this.capabilities = Collections.unmodifiableSet(EnumSet.copyOf(capabilities));
+        this.maxRecommendedRows = maxRecommendedRows;
+    }
+
+    public int getAlgorithmType() {
+        return algorithmType;
+    }
+
+    public String getAlgorithmName() {
+        return algorithmName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<Capability> getCapabilities() {
+        return capabilities;
+    }
+
+    public long getMaxRecommendedRows() {
+        return maxRecommendedRows;
+    }
+
+    public boolean supports(String[] options) {
+        return true;
+    }
+
+    public void run(WekaAlgorithm algorithm) {
+        ClusterEvaluation eval = new ClusterEvaluation();
+
+        try {
+            String[] options = algorithm.getOptions();
+            Clusterer clusterer = newClusterer();
+            try {
+                if (options == null) {
+                    throw new Exception("Options == null");
+                }
+                setOptions(clusterer, options.clone());
+            } catch (Exception e) {
+                algorithm.log("Niepoprawny obiekt Options.");
+                algorithm.log(e.getMessage());
+                algorithm.log("Algorytm zostanie uruchomiony z domyslnymi opcjami.");
+                options = getDefaultOptions();
+                clusterer = newClusterer();
+                setOptions(clusterer, options.clone());
+            }
+            configure(clusterer, options, algorithm);
+            try {
+                clusterer = build(clusterer, options, algorithm);
+                algorithm.evaluate(eval, clusterer, getKnownAssignments(clusterer));
+            } catch (Exception e) {
+                algorithm.log("Niepoprawny obiekt z danymi.");
+                algorithm.fail(e.getMessage());
+            }
+            if (algorithm.isCorrect()) {
+                //rozpoczęcie budowania obiektu z danymi
+                WekaAnswer answer = algorithm.getData();
+                answer.setOptions(algorithm.getOptions());
+                if (clusterer instanceof RevisionHandler)
+                    answer.setRevision(((RevisionHandler) clusterer).getRevision());
+                fillAnswer(clusterer, algorithm, answer);
+                Clusterer result = getAnswerClusterer(clusterer, algorithm);
+                if (result != clusterer) {
+                    eval.setClusterer(result);
+                }
+                algorithm.setClustererAndEval(result, eval);
+            }
+        } catch (Exception e) {
+            algorithm.fail(e.getMessage());
+        }
+
+        if (algorithm.isCorrect()) {
+            algorithm.log("OK");
+        }
+    }
+
+    /**
+     * @return nowy, nieskonfigurowany klasteryzator
+     */
+    protected abstract Clusterer newClusterer();
+
+    /**
+     * @return opcje używane, gdy podanych opcji nie da się ustawić (domyślnie brak opcji)
+     */
+    protected String[] getDefaultOptions() {
+        return new String[0];
+    }
+
+    /**
+     * Ustawia opcje klasteryzatora (jeśli obsługuje opcje).
+     * @param clusterer klasteryzator
+     * @param options kopia opcji (może zostać zmieniona)
+     * @throws Exception gdy opcje są niepoprawne
+     */
+    protected void setOptions(Clusterer clusterer, String[] options) throws Exception {
+        if (clusterer instanceof OptionHandler) {
+            ((OptionHandler) clusterer).setOptions(options);
+        }
+    }
+
+    /**
+     * Konfiguruje klasteryzator po ustawieniu opcji (np. liczba wątków, środki początkowe). Domyślnie nic nie robi.
+     * @param clusterer klasteryzator
+     * @param options ustawione opcje
+     * @param algorithm uruchomienie algorytmu
+     * @throws Exception gdy konfiguracja jest niepoprawna
+     */
+    protected void configure(Clusterer clusterer, String[] options, WekaAlgorithm algorithm) throws Exception {
+    }
+
+    /**
+     * Buduje model: klasteryzator DatasetClusterer na danych spakowanych (próbce w trybie przybliżonym,
+     * po czym wszystkie wiersze przypisywane są do najbliższych środków), pozostałe na obiekcie Instances.
+     * @param clusterer skonfigurowany klasteryzator
+     * @param options ustawione opcje
+     * @param algorithm uruchomienie algorytmu
+     * @return zbudowany klasteryzator (ten sam lub inny, np. najlepszy z kilku uruchomień)
+     * @throws Exception w przypadku błędu budowy modelu
+     */
+    protected Clusterer build(Clusterer clusterer, String[] options, WekaAlgorithm algorithm) throws Exception {
+        buildModel(clusterer, algorithm);
+        if (clusterer instanceof NearestCenterClusterer) {
+            algorithm.assignAllRows((NearestCenterClusterer) clusterer);
+        }
+        return clusterer;
+    }
+
+    /**
+     * Buduje pojedynczy model na danych w postaci odpowiedniej dla implementacji.
+     * @param clusterer skonfigurowany klasteryzator
+     * @param algorithm uruchomienie algorytmu
+     * @throws Exception w przypadku błędu budowy modelu
+     */
+    protected void buildModel(Clusterer clusterer, WekaAlgorithm algorithm) throws Exception {
+        if (clusterer instanceof DatasetClusterer) {
+            ((DatasetClusterer) clusterer).buildClusterer(algorithm.getTrainingData());
+        } else {
+            clusterer.buildClusterer(algorithm.getInstances());
+        }
+    }
+
+    /**
+     * @param clusterer zbudowany klasteryzator
+     * @return przypisania wierszy znane z treningu (null - wyznaczane podczas ewaluacji)
+     * @throws Exception gdy przypisań nie można odczytać
+     */
+    protected int[] getKnownAssignments(Clusterer clusterer) throws Exception {
+        return clusterer instanceof DatasetClusterer ? ((DatasetClusterer) clusterer).getAssignments() : null;
+    }
+
+    /**
+     * Wypełnia części odpowiedzi właściwe dla algorytmu (opcje, wersja, klasteryzator i ewaluacja ustawiane są
+     * w metodzie run). Domyślnie ustawia liczbę klastrów oraz graf (dla klasteryzatorów Drawable).
+     * @param clusterer zbudowany klasteryzator
+     * @param algorithm uruchomienie algorytmu (wybrane części odpowiedzi: WekaAlgorithm.wants)
+     * @param answer odpowiedź
+     * @throws Exception gdy części odpowiedzi nie można wyznaczyć
+     */
+    protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+        answer.setNumClusters(clusterer.numberOfClusters());
+        answer.setNumberOfClusters(clusterer.numberOfClusters());
+        if (clusterer instanceof Drawable) {
+            if (algorithm.wants(AnswerField.GRAPH))
+                answer.setGraph(((Drawable) clusterer).graph());
+            answer.setGraphType(((Drawable) clusterer).graphType());
+        }
+    }
+
+    /**
+     * @param clusterer zbudowany klasteryzator
+     * @param algorithm uruchomienie algorytmu
+     * @return klasteryzator zwracany w odpowiedzi (np. kopia modelu, który będzie dalej modyfikowany)
+     * @throws Exception gdy nie można utworzyć kopii
+     */
+    protected Clusterer getAnswerClusterer(Clusterer clusterer, WekaAlgorithm algorithm) throws Exception {
+        return clusterer;
+    }
+
+    @Override
+    public String toString() {
+        return algorithmName + " (" + name + ")";
+    }
+}
@@ -0,0 +1,123 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Rejestr silników algorytmów. Silniki wyszukiwane są przy pierwszym użyciu (w serwisie - przy starcie
+ * aplikacji, zob. WekaServiceContextListener) przez java.util.ServiceLoader
+ * (pliki META-INF/services/pl.edu.agh.ftj.datamining.weka.algorithm.ClustererEngine na ścieżce klas),
+ * więc nowy silnik lub algorytm wystarczy dołączyć do aplikacji wraz z takim plikiem.
+ * <p>
+ * Silniki uporządkowane są wg typu algorytmu; pierwszy zarejestrowany silnik typu jest silnikiem domyślnym.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public final class AlgorithmRegistry {
+
+    /**
+     * Zarejestrowane silniki (null - jeszcze nie wyszukane).
+     */
+    private static List<ClustererEngine> engines = null;
+
+    private AlgorithmRegistry() {
+    }
+
+    private static synchronized List<ClustererEngine> engines() {
+        if (engines == null) {
+            List<ClustererEngine> found = new ArrayList<ClustererEngine>();
+            for (ClustererEngine engine : ServiceLoader.load(ClustererEngine.class, AlgorithmRegistry.class.getClassLoader())) {
+                found.add(engine);
+            }
+            engines = sorted(found);
+        }
+        return engines;
+    }
+
+    /**
+     * Sortowanie stabilne - silniki tego samego typu zachowują kolejność rejestracji.
+     */
+    private static List<ClustererEngine> sorted(List<ClustererEngine> list) {
+        List<ClustererEngine> result = new ArrayList<ClustererEngine>(list);
+        Collections.sort(result, new Comparator<ClustererEngine>() {
+
+            public int compare(ClustererEngine a, ClustererEngine b) {
+                return a.getAlgorithmType() < b.getAlgorithmType() ? -1 : (a.getAlgorithmType() == b.getAlgorithmType() ? 0 : 1);
+            }
+        });
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return wszystkie silniki (wg typu algorytmu)
+     */
+    public static List<ClustererEngine> getEngines() {
+        return engines();
+    }
+
+    /**
+     * @param algorithmType typ algorytmu
+     * @return silniki algorytmu (pierwszy - domyślny; pusta lista dla nieznanego typu)
+     */
+    public static List<ClustererEngine> getEngines(int algorithmType) {
+        List<ClustererEngine> result = new ArrayList<ClustererEngine>();
+        for (ClustererEngine engine : engines()) {
+            if (engine.getAlgorithmType() == algorithmType) {
+                result.add(engine);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param algorithmType typ algorytmu
+     * @param name nazwa silnika
+     * @return silnik lub null
+     */
+    public static ClustererEngine getEngine(int algorithmType, String name) {
+        for (ClustererEngine engine : getEngines(algorithmType)) {
+            if (engine.getName().equalsIgnoreCase(name)) {
+                return engine;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return nazwy algorytmów wg typu algorytmu (tylko typy, dla których zarejestrowano silnik;
+     * nazwa pochodzi z silnika domyślnego)
+     */
+    public static SortedMap<Integer, String> getAlgorithmNames() {
+        SortedMap<Integer, String> names = new TreeMap<Integer, String>();
+        for (ClustererEngine engine : engines()) {
+            if (!names.containsKey(engine.getAlgorithmType())) {
+                names.put(engine.getAlgorithmType(), engine.getAlgorithmName());
+            }
+        }
+        return Collections.unmodifiableSortedMap(names);
+    }
+
+    /**
+     * Dodaje silnik spoza ścieżki klas ServiceLoadera (np. z wtyczki ładowanej własnym ClassLoaderem).
+     * @param engine silnik
+     */
+    public static synchronized void register(ClustererEngine engine) {
+        List<ClustererEngine> list = new ArrayList<ClustererEngine>(engines());
+        list.add(engine);
+        engines = sorted(list);
+    }
+
+    /**
+     * Usuwa silnik z rejestru.
+     * @param engine silnik
+     */
+    public static synchronized void unregister(ClustererEngine engine) {
+        List<ClustererEngine> list = new ArrayList<ClustererEngine>(engines());
+        list.remove(engine);
+        engines = sorted(list);
+    }
+}
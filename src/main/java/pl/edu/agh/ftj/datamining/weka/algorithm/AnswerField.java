@@ -0,0 +1,127 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm;
+
+import java.util.EnumSet;
+
+/**
+ * Części obiektu WekaAnswer, które mogą być wybiórczo wyliczane i przesyłane (parametr fields).
+ * Pola skalarne (liczba klastrów, błąd kwadratowy, info itp.) są przesyłane zawsze.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public enum AnswerField {
+
+    /** przypisania instancji do klastrów */
+    ASSIGNMENTS("assignments"),
+    /** indeks instancji wg klastrów (clusterIndex, clusterOffsets) */
+    CLUSTER_INDEX("clusterIndex"),
+    /** liczności klastrów */
+    CLUSTER_SIZES("clusterSizes"),
+    /** środki klastrów */
+    CLUSTER_CENTROIDS("clusterCentroids"),
+    /** odchylenia standardowe w klastrach */
+    CLUSTER_STANDARD_DEVS("clusterStandardDevs"),
+    /** częstotliwości wartości nominalnych w klastrach */
+    CLUSTER_NOMINAL_COUNTS("clusterNominalCounts"),
+    /** funkcja dystansu (wraz z kopią danych) */
+    DISTANCE_FUNCTION("distanceFunction"),
+    /** prawdopodobieństwa a priori klastrów (EM) */
+    CLUSTER_PRIORS("clusterPriors"),
+    /** rozkłady normalne atrybutów numerycznych w klastrach (EM) */
+    CLUSTER_MODELS("clusterModelsNumericAtts"),
+    /** ziarna i błędy kwadratowe kolejnych uruchomień (opcja -restarts) */
+    RESTARTS("restarts"),
+    /** graf (HierarchicalClusterer, Cobweb) */
+    GRAPH("graph"),
+    /** dane wejściowe */
+    DATA("data"),
+    /** obiekt klasteryzatora */
+    CLUSTERER("clusterer"),
+    /** obiekt ewaluacji (ClusterEvaluation) */
+    EVAL("eval");
+
+    /**
+     * Nazwa pola używana w parametrze fields (zgodna z nazwą właściwości WekaAnswer).
+     */
+    private final String fieldName;
+
+    private AnswerField(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * @return nazwa pola używana w parametrze fields
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Domyślny zbiór pól: wszystkie pola, a dla danych spakowanych lub odwzorowanych w pamięci (NumericDataset)
+     * wszystkie poza polem data - jego wyliczenie wymagałoby utworzenia pełnej kopii danych w postaci Instances.
+     * @param dataset true jeśli dane podano jako NumericDataset
+     * @return zbiór pól
+     */
+    public static EnumSet<AnswerField> defaults(boolean dataset) {
+        EnumSet<AnswerField> set = EnumSet.allOf(AnswerField.class);
+        if (dataset) {
+            set.remove(DATA);
+        }
+        return set;
+    }
+
+    /**
+     * Zamienia listę nazw pól rozdzielonych przecinkami na zbiór pól.
+     * @param fields lista nazw pól (null lub pusty łańcuch oznacza wszystkie pola)
+     * @return zbiór pól
+     * @throws IllegalArgumentException gdy lista zawiera nieznaną nazwę
+     */
+    public static EnumSet<AnswerField> parse(String fields) {
+        return parse(fields, EnumSet.allOf(AnswerField.class));
+    }
+
+    /**
+     * Zamienia listę nazw pól rozdzielonych przecinkami na zbiór pól.
+     * @param fields lista nazw pól (null lub pusty łańcuch oznacza pola domyślne)
+     * @param defaults pola domyślne
+     * @return zbiór pól
+     * @throws IllegalArgumentException gdy lista zawiera nieznaną nazwę
+     */
+    public static EnumSet<AnswerField> parse(String fields, EnumSet<AnswerField> defaults) {
+        if (fields == null || fields.trim().length() == 0) {
+            return EnumSet.copyOf(defaults);
+        }
+        EnumSet<AnswerField> set = EnumSet.noneOf(AnswerField.class);
+        for (String name : fields.split(",")) {
+            name = name.trim();
+            if (name.length() == 0) {
+                continue;
+            }
+            AnswerField found = null;
+            for (AnswerField f : values()) {
+                if (f.fieldName.equalsIgnoreCase(name)) {
+                    found = f;
+                }
+            }
+            if (found == null) {
+                throw new IllegalArgumentException("Nieznane pole: " + name);
+            }
+            set.add(found);
+        }
+        return set;
+    }
+
+    /**
+     * Zamienia zbiór pól na kanoniczną listę nazw (w stałej kolejności).
+     * @param fields zbiór pól
+     * @return lista nazw rozdzielonych przecinkami
+     */
+    public static String toString(EnumSet<AnswerField> fields) {
+        StringBuilder sb = new StringBuilder();
+        for (AnswerField f : fields) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(f.fieldName);
+        }
+        return sb.toString();
+    }
+}
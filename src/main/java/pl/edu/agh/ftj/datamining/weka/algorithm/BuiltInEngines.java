@@ -0,0 +1,542 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import pl.edu.agh.ftj.datamining.weka.algorithm.ClustererEngine.Capability;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.DatasetClusterer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.EngineExecutors;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NativeEM;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NearestCenterClusterer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.ParallelFarthestFirst;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.ParallelHierarchicalClusterer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.ParallelKMeans;
+import weka.clusterers.AbstractClusterer;
+import weka.clusterers.Clusterer;
+import weka.clusterers.Cobweb;
+import weka.clusterers.EM;
+import weka.clusterers.FarthestFirst;
+import weka.clusterers.HierarchicalClusterer;
+import weka.clusterers.SimpleKMeans;
+import weka.core.EuclideanDistance;
+import weka.core.Randomizable;
+import weka.core.Utils;
+
+/**
+ * Silniki serwisu dla algorytmów 1-5: implementacje z biblioteki Weka (silnik "weka", domyślny)
+ * i implementacje serwisu pracujące na danych spakowanych. Zalecane limity wierszy wynikają ze złożoności
+ * algorytmów (np. HierarchicalClusterer z biblioteki Weka ma złożoność O(n^3), a silnik parallel
+ * przechowuje macierz odległości O(n^2)).
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public final class BuiltInEngines {
+
+    private BuiltInEngines() {
+    }
+
+    /**
+     * Wspólna część silników k-średnich: przy opcji -restarts N (N większe od 1) buduje równolegle N kopii modelu
+     * z kolejnymi ziarnami (ziarno modelu, ziarno + 1, ...) na wspólnych danych i zwraca model o najmniejszym błędzie
+     * kwadratowym. Ziarna i błędy wszystkich uruchomień trafiają do odpowiedzi.
+     */
+    abstract static class KMeansEngine extends AbstractClustererEngine {
+
+        KMeansEngine(String name, EnumSet<Capability> capabilities, long maxRecommendedRows) {
+            super(1, "SimpleKMeans", name, capabilities, maxRecommendedRows);
+        }
+
+        /**
+         * @param model zbudowany model
+         * @return błąd kwadratowy modelu
+         */
+        protected abstract double getSquaredError(Clusterer model);
+
+        @Override
+        protected Clusterer build(Clusterer prototype, String[] options, final WekaAlgorithm algorithm) throws Exception {
+            int restarts = algorithm.getRestarts();
+            if (restarts <= 1) {
+                return super.build(prototype, options, algorithm);
+            }
+            //dane tworzone sa leniwie - przed uruchomieniem watkow
+            if (prototype instanceof DatasetClusterer) {
+                algorithm.getTrainingData();
+            } else {
+                algorithm.getInstances();
+            }
+            int threads = algorithm.getThreads();
+            int poolSize = Math.min(restarts, threads > 0 ? threads : EngineExecutors.defaultThreads());
+            final Clusterer[] models = AbstractClusterer.makeCopies(prototype, restarts);
+            int[] seeds = new int[restarts];
+            List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+            for (int r = 0; r < restarts; r++) {
+                final Clusterer model = models[r];
+                seeds[r] = ((Randomizable) prototype).getSeed() + r;
+                ((Randomizable) model).setSeed(seeds[r]);
+                if (model instanceof ParallelKMeans) {
+                    ParallelKMeans pkm = (ParallelKMeans) model;
+                    pkm.setNumThreads(pkm.getNumThreads() / poolSize);
+                }
+                tasks.add(new Callable<Double>() {
+
+                    public Double call() throws Exception {
+                        buildModel(model, algorithm);
+                        return getSquaredError(model);
+                    }
+                });
+            }
+            ExecutorService pool = EngineExecutors.newPool("weka-restarts", poolSize);
+            List<Double> results;
+            try {
+                results = EngineExecutors.invokeAll(pool, tasks);
+            } finally {
+                pool.shutdownNow();
+            }
+            double[] errors = new double[restarts];
+            int best = 0;
+            for (int r = 0; r < restarts; r++) {
+                errors[r] = results.get(r);
+                if (errors[r] < errors[best]) {
+                    best = r;
+                }
+            }
+            if (algorithm.wants(AnswerField.RESTARTS)) {
+                algorithm.getData().setRestarts(seeds, errors);
+            }
+            algorithm.log("Uruchomienia: " + restarts + " (" + poolSize + " watkow), najlepsze ziarno: " + seeds[best]);
+            if (models[best] instanceof NearestCenterClusterer) {
+                algorithm.assignAllRows((NearestCenterClusterer) models[best]);
+            }
+            return models[best];
+        }
+    }
+
+    /**
+     * SimpleKMeans z biblioteki Weka.
+     */
+    public static class SimpleKMeansEngine extends KMeansEngine {
+
+        public SimpleKMeansEngine() {
+            super("weka", EnumSet.noneOf(Capability.class), 100000);
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new SimpleKMeans();
+        }
+
+        @Override
+        protected String[] getDefaultOptions() {
+            return new String[]{"-O"};
+        }
+
+        @Override
+        protected double getSquaredError(Clusterer model) {
+            return ((SimpleKMeans) model).getSquaredError();
+        }
+
+        @Override
+        protected int[] getKnownAssignments(Clusterer clusterer) throws Exception {
+            SimpleKMeans skm = (SimpleKMeans) clusterer;
+            return skm.getPreserveInstancesOrder() ? skm.getAssignments() : null;
+        }
+
+        @Override
+        protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+            SimpleKMeans skm = (SimpleKMeans) clusterer;
+            if (algorithm.wants(AnswerField.ASSIGNMENTS) && answer.getAssignments() == null) {
+                try {
+                    answer.setAssignments(skm.getAssignments());
+                } catch (Exception e) {
+                    algorithm.log(e.getMessage());
+                }
+            }
+            if (algorithm.wants(AnswerField.CLUSTER_CENTROIDS))
+                answer.setClusterCentroids(skm.getClusterCentroids());
+            if (algorithm.wants(AnswerField.CLUSTER_NOMINAL_COUNTS))
+                answer.setClusterNominalCounts(skm.getClusterNominalCounts());
+            if (algorithm.wants(AnswerField.CLUSTER_SIZES))
+                answer.setClusterSizes(skm.getClusterSizes());
+            if (algorithm.wants(AnswerField.CLUSTER_STANDARD_DEVS))
+                answer.setClusterStandardDevs(skm.getClusterStandardDevs());
+            if (algorithm.wants(AnswerField.DISTANCE_FUNCTION))
+                answer.setDistanceFunction(skm.getDistanceFunction());
+            answer.setMaxIterations(skm.getMaxIterations());
+            answer.setNumClusters(skm.getNumClusters());
+            answer.setSquaredError(skm.getSquaredError());
+            answer.setNumberOfClusters(skm.numberOfClusters());
+        }
+    }
+
+    /**
+     * Wielowątkowy algorytm k-średnich (ParallelKMeans).
+     */
+    public static class ParallelKMeansEngine extends KMeansEngine {
+
+        public ParallelKMeansEngine() {
+            this("parallel", EnumSet.of(Capability.PARALLEL));
+        }
+
+        ParallelKMeansEngine(String name, EnumSet<Capability> capabilities) {
+            super(name, capabilities, UNLIMITED);
+        }
+
+        /**
+         * @return rozmiar partii ustawiany, gdy nie podano opcji -batch (0 - uczenie na wszystkich wierszach)
+         */
+        protected int getDefaultBatchSize() {
+            return 0;
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new ParallelKMeans();
+        }
+
+        @Override
+        protected double getSquaredError(Clusterer model) {
+            return ((ParallelKMeans) model).getSquaredError();
+        }
+
+        @Override
+        protected void configure(Clusterer clusterer, String[] options, WekaAlgorithm algorithm) throws Exception {
+            ParallelKMeans pkm = (ParallelKMeans) clusterer;
+            if (algorithm.getThreads() > 0) {
+                pkm.setNumThreads(algorithm.getThreads());
+            }
+            pkm.setInitialCentroids(algorithm.getInitialCentroids());
+            if (pkm.getBatchSize() == 0) {
+                pkm.setBatchSize(getDefaultBatchSize());
+            }
+            if (pkm.getBatchSize() > 0) {
+                algorithm.log("Silnik: minibatch (" + pkm.getNumThreads() + " watkow, partia " + pkm.getBatchSize() + ")");
+            } else {
+                algorithm.log("Silnik: parallel (" + pkm.getNumThreads() + " watkow)");
+            }
+        }
+
+        @Override
+        protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+            ParallelKMeans pkm = (ParallelKMeans) clusterer;
+            if (!pkm.getIndexUsed().equals("none")) {
+                algorithm.log("Indeks: " + pkm.getIndexUsed() + ", pominiete obliczenia odleglosci: "
+                        + Utils.doubleToString(100 * pkm.getSkippedDistanceFraction(), 1) + "%");
+            }
+            if (algorithm.wants(AnswerField.ASSIGNMENTS))
+                answer.setAssignments(pkm.getAssignments());
+            if (algorithm.wants(AnswerField.CLUSTER_CENTROIDS))
+                answer.setClusterCentroids(pkm.getClusterCentroids());
+            if (algorithm.wants(AnswerField.CLUSTER_NOMINAL_COUNTS))
+                answer.setClusterNominalCounts(pkm.getClusterNominalCounts());
+            if (algorithm.wants(AnswerField.CLUSTER_SIZES))
+                answer.setClusterSizes(pkm.getClusterSizes());
+            if (algorithm.wants(AnswerField.CLUSTER_STANDARD_DEVS))
+                answer.setClusterStandardDevs(pkm.getClusterStandardDevs());
+            if (algorithm.wants(AnswerField.DISTANCE_FUNCTION))
+                answer.setDistanceFunction(new EuclideanDistance(algorithm.getInstances()));
+            answer.setMaxIterations(pkm.getMaxIterations());
+            answer.setNumClusters(pkm.getNumClusters());
+            answer.setSquaredError(pkm.getSquaredError());
+            answer.setNumberOfClusters(pkm.numberOfClusters());
+        }
+    }
+
+    /**
+     * Algorytm k-średnich uczony na losowych partiach wierszy (ParallelKMeans z rozmiarem partii;
+     * opcje -batch, -batches, -tol).
+     */
+    public static class MiniBatchKMeansEngine extends ParallelKMeansEngine {
+
+        /**
+         * Domyślny rozmiar partii.
+         */
+        private static final int DEFAULT_BATCH_SIZE = 1024;
+
+        public MiniBatchKMeansEngine() {
+            super("minibatch", EnumSet.of(Capability.PARALLEL, Capability.STREAMING));
+        }
+
+        @Override
+        protected int getDefaultBatchSize() {
+            return DEFAULT_BATCH_SIZE;
+        }
+    }
+
+    /**
+     * EM z biblioteki Weka.
+     */
+    public static class EMEngine extends AbstractClustererEngine {
+
+        public EMEngine() {
+            super(2, "EM", "weka", EnumSet.noneOf(Capability.class), 50000);
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new EM();
+        }
+
+        @Override
+        protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+            EM em = (EM) clusterer;
+            if (algorithm.wants(AnswerField.CLUSTER_PRIORS))
+                answer.setClusterPriors(em.getClusterPriors());
+            if (algorithm.wants(AnswerField.CLUSTER_MODELS))
+                answer.setClusterModelsNumericAtts(em.getClusterModelsNumericAtts());
+            answer.setMinStdDev(em.getMinStdDev());
+            answer.setMaxIterations(em.getMaxIterations());
+            answer.setNumClusters(em.getNumClusters());
+            answer.setNumberOfClusters(em.getNumClusters());
+        }
+    }
+
+    /**
+     * EM na danych spakowanych z wielowątkowym krokiem E (NativeEM). Bez opcji -N (lub dla -N -1) liczba klastrów
+     * wybierana jest walidacją krzyżową jak w EM z biblioteki Weka, z równoległym budowaniem modeli podziałów.
+     */
+    public static class NativeEMEngine extends AbstractClustererEngine {
+
+        public NativeEMEngine() {
+            super(2, "EM", "parallel", EnumSet.of(Capability.PARALLEL), UNLIMITED);
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new NativeEM();
+        }
+
+        @Override
+        protected void configure(Clusterer clusterer, String[] options, WekaAlgorithm algorithm) throws Exception {
+            NativeEM em = (NativeEM) clusterer;
+            if (Utils.getOptionPos('N', options) < 0) {
+                em.setNumClusters(-1);
+            }
+            if (algorithm.getThreads() > 0) {
+                em.setNumThreads(algorithm.getThreads());
+            }
+            em.setInitialCentroids(algorithm.getInitialCentroids());
+            algorithm.log("Silnik: parallel, watki: " + em.getNumThreads());
+        }
+
+        @Override
+        protected Clusterer build(Clusterer clusterer, String[] options, WekaAlgorithm algorithm) throws Exception {
+            NativeEM em = (NativeEM) super.build(clusterer, options, algorithm);
+            if (em.getCVLogLikelihoods() != null) {
+                algorithm.log("Liczba klastrow wybrana walidacja krzyzowa: " + em.numberOfClusters());
+            }
+            return em;
+        }
+
+        @Override
+        protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+            NativeEM em = (NativeEM) clusterer;
+            if (algorithm.wants(AnswerField.CLUSTER_PRIORS))
+                answer.setClusterPriors(em.getClusterPriors());
+            if (algorithm.wants(AnswerField.CLUSTER_MODELS))
+                answer.setClusterModelsNumericAtts(em.getClusterModelsNumericAtts());
+            if (algorithm.wants(AnswerField.CLUSTER_CENTROIDS))
+                answer.setClusterCentroids(em.getClusterCentroids());
+            answer.setMinStdDev(em.getMinStdDev());
+            answer.setMaxIterations(em.getMaxIterations());
+            answer.setNumClusters(em.getNumClusters());
+            answer.setNumberOfClusters(em.numberOfClusters());
+            answer.setLogLikelihood(em.getLogLikelihood());
+        }
+    }
+
+    /**
+     * HierarchicalClusterer z biblioteki Weka.
+     */
+    public static class HierarchicalEngine extends AbstractClustererEngine {
+
+        public HierarchicalEngine() {
+            super(3, "HierarchicalClusterer", "weka", EnumSet.noneOf(Capability.class), 2000);
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new HierarchicalClusterer();
+        }
+
+        @Override
+        protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+            HierarchicalClusterer hc = (HierarchicalClusterer) clusterer;
+            if (algorithm.wants(AnswerField.DISTANCE_FUNCTION))
+                answer.setDistanceFunction(hc.getDistanceFunction());
+            answer.setNumClusters(hc.getNumClusters());
+            answer.setNumberOfClusters(hc.getNumClusters());
+            answer.setPrintNewick(hc.getPrintNewick());
+            if (algorithm.wants(AnswerField.GRAPH))
+                answer.setGraph(hc.graph());
+            answer.setGraphType(hc.graphType());
+        }
+    }
+
+    /**
+     * Klasteryzacja hierarchiczna O(n^2) (ParallelHierarchicalClusterer) - tylko wiązania SINGLE, COMPLETE,
+     * AVERAGE i WARD z odległością euklidesową.
+     */
+    public static class ParallelHierarchicalEngine extends AbstractClustererEngine {
+
+        public ParallelHierarchicalEngine() {
+            super(3, "HierarchicalClusterer", "parallel", EnumSet.of(Capability.PARALLEL), 15000);
+        }
+
+        @Override
+        public boolean supports(String[] options) {
+            return ParallelHierarchicalClusterer.supports(options);
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new ParallelHierarchicalClusterer();
+        }
+
+        @Override
+        protected void configure(Clusterer clusterer, String[] options, WekaAlgorithm algorithm) {
+            ParallelHierarchicalClusterer hc = (ParallelHierarchicalClusterer) clusterer;
+            if (algorithm.getThreads() > 0) {
+                hc.setNumThreads(algorithm.getThreads());
+            }
+            algorithm.log("Silnik: parallel (" + hc.getNumThreads() + " watkow)");
+        }
+
+        @Override
+        protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+            ParallelHierarchicalClusterer hc = (ParallelHierarchicalClusterer) clusterer;
+            if (algorithm.wants(AnswerField.DISTANCE_FUNCTION))
+                answer.setDistanceFunction(hc.getDistanceFunction());
+            if (algorithm.wants(AnswerField.ASSIGNMENTS))
+                answer.setAssignments(hc.getAssignments());
+            if (algorithm.wants(AnswerField.CLUSTER_SIZES))
+                answer.setClusterSizes(hc.getClusterSizes());
+            answer.setNumClusters(hc.getNumClusters());
+            answer.setNumberOfClusters(hc.numberOfClusters());
+            answer.setPrintNewick(hc.getPrintNewick());
+            if (algorithm.wants(AnswerField.GRAPH))
+                answer.setGraph(hc.graph());
+            answer.setGraphType(hc.graphType());
+        }
+    }
+
+    /**
+     * Cobweb z biblioteki Weka (drzewo budowane przyrostowo, także jako utrzymywany model lub strumień).
+     * Jeśli ustawiono utrzymywany model (WekaAlgorithm.setCobwebModel), całe uruchomienie odbywa się na jego drzewie
+     * (z blokadą modelu), a do drzewa dodawane są tylko nowe wiersze danych.
+     */
+    public static class CobwebEngine extends AbstractClustererEngine {
+
+        public CobwebEngine() {
+            super(4, "Cobweb", "weka", EnumSet.of(Capability.INCREMENTAL, Capability.STREAMING), ClusterStream.DEFAULT_MAX_TREE_ROWS);
+        }
+
+        @Override
+        public void run(WekaAlgorithm algorithm) {
+            CobwebModel model = algorithm.getCobwebModel();
+            if (model == null) {
+                super.run(algorithm);
+            } else {
+                synchronized (model) {
+                    super.run(algorithm);
+                }
+            }
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new Cobweb();
+        }
+
+        @Override
+        protected Clusterer build(Clusterer clusterer, String[] options, WekaAlgorithm algorithm) throws Exception {
+            CobwebModel model = algorithm.getCobwebModel();
+            if (model == null) {
+                //buildClusterer dodaje kazda instancje przez updateClusterer
+                return super.build(clusterer, options, algorithm);
+            }
+            Cobweb cw = model.update(algorithm.getDataset(), options.clone());
+            algorithm.log(model.isRebuilt() ? "Model Cobweb zbudowany od nowa (" + model.getRows() + " wierszy)."
+                    : "Do modelu Cobweb dodano " + model.getLastAdded() + " nowych wierszy.");
+            return cw;
+        }
+
+        @Override
+        protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+            Cobweb cw = (Cobweb) clusterer;
+            answer.setAcuity(cw.getAcuity());
+            answer.setCutoff(cw.getCutoff());
+            if (algorithm.wants(AnswerField.GRAPH))
+                answer.setGraph(cw.graph());
+            answer.setGraphType(cw.graphType());
+            answer.setNumClusters(cw.numberOfClusters());
+            answer.setNumberOfClusters(cw.numberOfClusters());
+        }
+
+        @Override
+        protected Clusterer getAnswerClusterer(Clusterer clusterer, WekaAlgorithm algorithm) throws Exception {
+            if (algorithm.getCobwebModel() != null
+                    && (algorithm.wants(AnswerField.CLUSTERER) || algorithm.wants(AnswerField.EVAL))) {
+                //drzewo modelu jest dalej modyfikowane - odpowiedz dostaje kopie
+                return AbstractClusterer.makeCopy(clusterer);
+            }
+            return clusterer;
+        }
+    }
+
+    /**
+     * FarthestFirst z biblioteki Weka.
+     */
+    public static class FarthestFirstEngine extends AbstractClustererEngine {
+
+        public FarthestFirstEngine() {
+            super(5, "FarthestFirst", "weka", EnumSet.noneOf(Capability.class), 100000);
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new FarthestFirst();
+        }
+    }
+
+    /**
+     * Wielowątkowy FarthestFirst (ParallelFarthestFirst).
+     */
+    public static class ParallelFarthestFirstEngine extends AbstractClustererEngine {
+
+        public ParallelFarthestFirstEngine() {
+            super(5, "FarthestFirst", "parallel", EnumSet.of(Capability.PARALLEL), UNLIMITED);
+        }
+
+        @Override
+        protected Clusterer newClusterer() {
+            return new ParallelFarthestFirst();
+        }
+
+        @Override
+        protected void configure(Clusterer clusterer, String[] options, WekaAlgorithm algorithm) {
+            ParallelFarthestFirst ff = (ParallelFarthestFirst) clusterer;
+            if (algorithm.getThreads() > 0) {
+                ff.setNumThreads(algorithm.getThreads());
+            }
+            algorithm.log("Silnik: parallel (" + ff.getNumThreads() + " watkow)");
+        }
+
+        @Override
+        protected void fillAnswer(Clusterer clusterer, WekaAlgorithm algorithm, WekaAnswer answer) throws Exception {
+            ParallelFarthestFirst ff = (ParallelFarthestFirst) clusterer;
+            if (!ff.getIndex().equals("none")) {
+                algorithm.log("Indeks: bounds, pominiete obliczenia odleglosci: "
+                        + Utils.doubleToString(100 * ff.getSkippedDistanceFraction(), 1) + "%");
+            }
+            if (algorithm.wants(AnswerField.ASSIGNMENTS))
+                answer.setAssignments(ff.getAssignments());
+            if (algorithm.wants(AnswerField.CLUSTER_SIZES))
+                answer.setClusterSizes(ff.getClusterSizes());
+            if (algorithm.wants(AnswerField.CLUSTER_CENTROIDS))
+                answer.setClusterCentroids(ff.getClusterCentroids());
+            answer.setNumClusters(ff.numberOfClusters());
+            answer.setNumberOfClusters(ff.numberOfClusters());
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm;
+
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.OnlineKMeans;
+import weka.clusterers.Clusterer;
+import weka.clusterers.Cobweb;
+import weka.clusterers.UpdateableClusterer;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Strumieniowa klasteryzacja danych dostarczanych paczkami wierszy.
+ * Model (przyrostowy k-średnich - OnlineKMeans, albo Cobweb) aktualizowany jest instancja po instancji,
+ * a po każdej paczce dostępny jest jego bieżący stan: środki i liczności klastrów, graf drzewa Cobweb
+ * oraz przypisania wierszy ostatniej paczki.
+ * <p>
+ * Pamięć strumienia jest ograniczona niezależnie od liczby przetworzonych wierszy: przechowywany jest model
+ * i co najwyżej maxAssignments wierszy ostatniej paczki. Drzewo Cobweb rośnie z każdą instancją, dlatego
+ * po dodaniu maxTreeRows wierszy jego struktura jest zamrażana, a kolejne wiersze są tylko przypisywane do klastrów.
+ * <p>
+ * Opcje strumienia (poza opcjami algorytmu): -maxRows maksymalna liczba wierszy w drzewie Cobweb,
+ * -maxAssignments maksymalna liczba zwracanych przypisań ostatniej paczki.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class ClusterStream {
+
+    /**
+     * Domyślna maksymalna liczba wierszy w drzewie Cobweb.
+     */
+    public static final int DEFAULT_MAX_TREE_ROWS = 100000;
+    /**
+     * Domyślna maksymalna liczba zwracanych przypisań ostatniej paczki.
+     */
+    public static final int DEFAULT_MAX_ASSIGNMENTS = 10000;
+
+    /**
+     * Typ algorytmu (1 - k-średnich, 4 - Cobweb).
+     */
+    private final int algorithmType;
+    /**
+     * Opcje algorytmu.
+     */
+    private final String[] options;
+    /**
+     * Model przyrostowy.
+     */
+    private final UpdateableClusterer model;
+    private int maxTreeRows = DEFAULT_MAX_TREE_ROWS;
+    private int maxAssignments = DEFAULT_MAX_ASSIGNMENTS;
+    /**
+     * Struktura danych strumienia (ustalana przez pierwszą paczkę).
+     */
+    private Instances header = null;
+    /**
+     * Liczba przetworzonych wierszy.
+     */
+    private long rowsSeen = 0;
+    /**
+     * Liczba wierszy dodanych do drzewa Cobweb.
+     */
+    private long treeRows = 0;
+    /**
+     * Wiersze bieżącej paczki (co najwyżej maxAssignments) i ich liczba.
+     */
+    private Instances batch = null;
+    private int batchRows = 0;
+    /**
+     * Przypisania wierszy ostatniej zakończonej paczki.
+     */
+    private int[] assignments = null;
+    /**
+     * Czas ostatniego użycia [ms].
+     */
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    /**
+     * Tworzy strumień.
+     * @param algorithmType typ algorytmu: 1 (SimpleKMeans - wersja przyrostowa) lub 4 (Cobweb)
+     * @param options opcje algorytmu i strumienia (null - domyślne)
+     * @throws IllegalArgumentException gdy algorytm nie jest dostępny strumieniowo
+     * @throws Exception gdy opcje są niepoprawne
+     */
+    public ClusterStream(int algorithmType, String[] options) throws Exception {
+        String[] opt = options == null ? new String[0] : options.clone();
+        String value = Utils.getOption("maxRows", opt);
+        if (value.length() > 0) {
+            maxTreeRows = Math.max(0, Integer.parseInt(value));
+        }
+        value = Utils.getOption("maxAssignments", opt);
+        if (value.length() > 0) {
+            maxAssignments = Math.max(0, Integer.parseInt(value));
+        }
+        this.algorithmType = algorithmType;
+        if (algorithmType == 1) {
+            OnlineKMeans kmeans = new OnlineKMeans();
+            kmeans.setOptions(opt);
+            model = kmeans;
+        } else if (algorithmType == 4) {
+            Cobweb cobweb = new Cobweb();
+            cobweb.setOptions(opt);
+            model = cobweb;
+        } else {
+            throw new IllegalArgumentException("Strumieniowo dostepne sa tylko algorytmy 1 (SimpleKMeans) i 4 (Cobweb)");
+        }
+        this.options = options == null ? new String[0] : options.clone();
+    }
+
+    /**
+     * Rozpoczyna paczkę wierszy. Pierwsza paczka ustala strukturę danych strumienia.
+     * @param structure struktura danych paczki
+     * @throws IllegalArgumentException gdy struktura nie zgadza się ze strukturą strumienia
+     * @throws Exception gdy algorytm nie obsługuje danych
+     */
+    public synchronized void startBatch(Instances structure) throws Exception {
+        touch();
+        if (header == null) {
+            Instances empty = new Instances(structure, 0);
+            ((Clusterer) model).buildClusterer(empty);
+            header = empty;
+        } else if (!header.equalHeaders(structure)) {
+            throw new IllegalArgumentException("Struktura paczki nie zgadza sie ze struktura strumienia: " + header.equalHeadersMsg(structure));
+        }
+        batch = new Instances(header, 0);
+        batchRows = 0;
+    }
+
+    /**
+     * Dodaje wiersz bieżącej paczki do modelu.
+     * @param inst instancja zgodna ze strukturą strumienia
+     * @throws Exception w przypadku błędu aktualizacji modelu
+     */
+    public synchronized void add(Instance inst) throws Exception {
+        if (batch == null) {
+            throw new IllegalStateException("Paczka nie zostala rozpoczeta");
+        }
+        Instance copy = new DenseInstance(inst.weight(), inst.toDoubleArray());
+        copy.setDataset(header);
+        if (algorithmType != 4 || treeRows < maxTreeRows) {
+            model.updateClusterer(copy);
+            treeRows++;
+        }
+        rowsSeen++;
+        if (batchRows++ < maxAssignments) {
+            batch.add(copy);
+        }
+    }
+
+    /**
+     * Kończy paczkę: wyznacza przypisania jej wierszy do bieżących klastrów i zwalnia wiersze.
+     * @return liczba wierszy paczki
+     * @throws Exception w przypadku błędu klasyfikacji
+     */
+    public synchronized int finishBatch() throws Exception {
+        if (batch == null) {
+            throw new IllegalStateException("Paczka nie zostala rozpoczeta");
+        }
+        model.updateFinished();
+        Clusterer clusterer = (Clusterer) model;
+        assignments = new int[batch.numInstances()];
+        for (int i = 0; i < assignments.length; i++) {
+            assignments[i] = clusterer.clusterInstance(batch.instance(i));
+        }
+        int rows = batchRows;
+        batch = null;
+        batchRows = 0;
+        touch();
+        return rows;
+    }
+
+    /**
+     * Przerywa paczkę (wiersze już dodane do modelu pozostają w nim).
+     */
+    public synchronized void abortBatch() {
+        if (batch != null) {
+            model.updateFinished();
+            batch = null;
+            batchRows = 0;
+        }
+    }
+
+    /**
+     * Zwraca bieżący stan modelu.
+     * @return odpowiedź z liczbą klastrów, środkami i licznościami (k-średnich) lub grafem (Cobweb)
+     * oraz przypisaniami wierszy ostatniej paczki
+     */
+    public synchronized WekaAnswer getState() {
+        touch();
+        WekaAnswer ans = new WekaAnswer();
+        ans.setAlgorithmType(algorithmType);
+        ans.setAlgorithmName(algorithmType == 1 ? "SimpleKMeans (online)" : "Cobweb (online)");
+        ans.setOptions(options);
+        ans.setAssignments(assignments);
+        String info = "\n[INFO] Przetworzono wierszy: " + rowsSeen;
+        try {
+            if (header == null || rowsSeen == 0) {
+                ans.setNumberOfClusters(0);
+                info += "\n[INFO] Strumien nie zawiera jeszcze danych";
+            } else if (model instanceof OnlineKMeans) {
+                OnlineKMeans kmeans = (OnlineKMeans) model;
+                ans.setNumClusters(kmeans.getNumClusters());
+                ans.setNumberOfClusters(kmeans.numberOfClusters());
+                ans.setClusterCentroids(kmeans.getClusterCentroids());
+                ans.setClusterSizes(kmeans.getClusterSizes());
+                ans.setRevision(kmeans.getRevision());
+            } else {
+                Cobweb cobweb = (Cobweb) model;
+                ans.setNumClusters(cobweb.numberOfClusters());
+                ans.setNumberOfClusters(cobweb.numberOfClusters());
+                ans.setAcuity(cobweb.getAcuity());
+                ans.setCutoff(cobweb.getCutoff());
+                ans.setGraph(cobweb.graph());
+                ans.setGraphType(cobweb.graphType());
+                ans.setRevision(cobweb.getRevision());
+                if (treeRows < rowsSeen) {
+                    info += "\n[INFO] Struktura drzewa zamrozona po " + treeRows + " wierszach";
+                }
+            }
+            ans.setCorrect(true);
+        } catch (Exception e) {
+            info += "\n[INFO] " + e.getMessage();
+            ans.setCorrect(false);
+        }
+        ans.setInfo(info);
+        return ans;
+    }
+
+    /**
+     * @return liczba przetworzonych wierszy
+     */
+    public synchronized long getRowsSeen() {
+        return rowsSeen;
+    }
+
+    /**
+     * @return czas ostatniego użycia [ms]
+     */
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    private void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,75 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm;
+
+import java.util.Set;
+
+/**
+ * Silnik wykonujący algorytm klasteryzacji (punkt rozszerzeń serwisu). Silniki wyszukiwane są przez
+ * java.util.ServiceLoader - implementację należy wpisać do pliku
+ * META-INF/services/pl.edu.agh.ftj.datamining.weka.algorithm.ClustererEngine (zob. AlgorithmRegistry).
+ * <p>
+ * Jeden typ algorytmu (numer używany przez WekaAlgorithm.setAlgorithmType i usługę) może mieć kilka silników,
+ * np. implementację z biblioteki Weka i wielowątkową implementację serwisu; silnik wybierany jest opcją
+ * "-engine nazwa" (domyślnie pierwszy zarejestrowany silnik typu), a przy opcji "-engine auto" - na podstawie
+ * liczby wierszy danych.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public interface ClustererEngine {
+
+    /**
+     * Cechy silnika.
+     */
+    public enum Capability {
+        /** obliczenia wykonywane są wielowątkowo */
+        PARALLEL,
+        /** model może być aktualizowany nowymi wierszami bez budowy od nowa */
+        INCREMENTAL,
+        /** model budowany jest z kolejnych partii wierszy, bez wielokrotnych przejść po wszystkich danych */
+        STREAMING
+    }
+
+    /**
+     * Brak zalecanego limitu liczby wierszy.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    /**
+     * @return typ algorytmu (1 - SimpleKMeans, 2 - EM, 3 - HierarchicalClusterer, 4 - Cobweb, 5 - FarthestFirst,
+     * kolejne numery - algorytmy dodatkowe)
+     */
+    int getAlgorithmType();
+
+    /**
+     * @return nazwa algorytmu (zwracana przez getAlgorithms)
+     */
+    String getAlgorithmName();
+
+    /**
+     * @return nazwa silnika (wartość opcji "-engine")
+     */
+    String getName();
+
+    /**
+     * @return cechy silnika
+     */
+    Set<Capability> getCapabilities();
+
+    /**
+     * @return zalecana maksymalna liczba wierszy (UNLIMITED - brak limitu); przy opcji "-engine auto" dla większych
+     * danych wybierany jest silnik o wyższym limicie
+     */
+    long getMaxRecommendedRows();
+
+    /**
+     * @param options opcje algorytmu (bez opcji serwisu)
+     * @return czy silnik obsługuje podane opcje
+     */
+    boolean supports(String[] options);
+
+    /**
+     * Buduje model i wypełnia odpowiedź. Silniki spoza serwisu mogą dziedziczyć po AbstractClustererEngine,
+     * który ustawia opcje, buduje i ocenia klasteryzator tak samo jak silniki wbudowane (BuiltInEngines),
+     * albo korzystać bezpośrednio z publicznych metod WekaAlgorithm (dane, opcje serwisu, ewaluacja, log).
+     * @param algorithm uruchomienie algorytmu (dane, opcje, odpowiedź)
+     */
+    void run(WekaAlgorithm algorithm);
+}
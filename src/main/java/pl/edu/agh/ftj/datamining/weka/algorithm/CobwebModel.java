@@ -0,0 +1,126 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm;
+
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NumericDataset;
+import weka.clusterers.Cobweb;
+import weka.core.Instances;
+
+/**
+ * Utrzymywany pomiędzy uruchomieniami model Cobweb dla jednego zbioru danych.
+ * Cobweb jest algorytmem przyrostowym, więc wiersze dopisane do zbioru od poprzedniego
+ * uruchomienia dodawane są do istniejącego drzewa metodą updateClusterer, bez budowania go od nowa.
+ * <p>
+ * Model zakłada, że dane przyrastają przez dopisywanie wierszy na końcu. Zgodność sprawdzana jest
+ * na podstawie struktury danych, liczby wierszy oraz odcisku ostatniego dodanego wiersza - jeśli się
+ * nie zgadzają (wiersze usunięto lub zmieniono), drzewo budowane jest od nowa.
+ * Drzewo Cobweb jest modyfikowane również przy klasyfikacji instancji, dlatego cała praca na modelu
+ * (aktualizacja, ewaluacja, odczyt grafu) musi odbywać się w bloku synchronized na obiekcie modelu.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class CobwebModel {
+
+    /**
+     * Aktualne drzewo (null - model nie został jeszcze zbudowany).
+     */
+    private Cobweb cobweb = null;
+    /**
+     * Struktura danych, z których zbudowano drzewo.
+     */
+    private Instances header = null;
+    /**
+     * Liczba wierszy dodanych do drzewa.
+     */
+    private int rows = 0;
+    /**
+     * Odcisk ostatniego dodanego wiersza.
+     */
+    private long lastRow = 0;
+    /**
+     * Liczba wierszy dodanych przy ostatniej aktualizacji.
+     */
+    private int lastAdded = 0;
+    /**
+     * Czy ostatnia aktualizacja zbudowała drzewo od nowa.
+     */
+    private boolean rebuilt = false;
+
+    /**
+     * Doprowadza drzewo do zgodności z danymi: dodaje nowe wiersze albo (gdy dane nie są
+     * przedłużeniem poprzednich) buduje drzewo od nowa.
+     * @param data aktualne dane
+     * @param options opcje algorytmu Cobweb (używane przy budowie drzewa od nowa)
+     * @return drzewo Cobweb
+     * @throws Exception gdy opcje lub dane są niepoprawne (model zostaje wtedy wyczyszczony)
+     */
+    public synchronized Cobweb update(NumericDataset data, String[] options) throws Exception {
+        try {
+            int n = data.numRows();
+            if (cobweb != null && header.equalHeaders(data.getHeader()) && n >= rows
+                    && (rows == 0 || rowFingerprint(data, rows - 1) == lastRow)) {
+                for (int i = rows; i < n; i++) {
+                    cobweb.updateClusterer(data.instance(i));
+                }
+                cobweb.updateFinished();
+                rebuilt = false;
+                lastAdded = n - rows;
+            } else {
+                Cobweb cw = new Cobweb();
+                cw.setOptions(options);
+                cw.buildClusterer(data.toInstances());
+                cobweb = cw;
+                header = new Instances(data.getHeader(), 0);
+                rebuilt = true;
+                lastAdded = n;
+            }
+            rows = n;
+            lastRow = n == 0 ? 0 : rowFingerprint(data, n - 1);
+            return cobweb;
+        } catch (Exception e) {
+            cobweb = null;
+            header = null;
+            rows = 0;
+            throw e;
+        }
+    }
+
+    /**
+     * @return aktualne drzewo lub null
+     */
+    public synchronized Cobweb getCobweb() {
+        return cobweb;
+    }
+
+    /**
+     * @return liczba wierszy dodanych do drzewa
+     */
+    public synchronized int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return liczba wierszy dodanych przy ostatniej aktualizacji
+     */
+    public synchronized int getLastAdded() {
+        return lastAdded;
+    }
+
+    /**
+     * @return czy ostatnia aktualizacja zbudowała drzewo od nowa
+     */
+    public synchronized boolean isRebuilt() {
+        return rebuilt;
+    }
+
+    /**
+     * Odcisk (64-bitowy FNV-1a) wartości i wagi wiersza.
+     */
+    private static long rowFingerprint(NumericDataset data, int row) {
+        long h = 0xcbf29ce484222325L;
+        for (int c = 0; c < data.getNumNumeric(); c++) {
+            h = (h ^ Double.doubleToLongBits(data.numericValue(row, c))) * 0x100000001b3L;
+        }
+        for (int c = 0; c < data.getNumNominal(); c++) {
+            h = (h ^ data.nominalValue(row, c)) * 0x100000001b3L;
+        }
+        return (h ^ Double.doubleToLongBits(data.weight(row))) * 0x100000001b3L;
+    }
+}
@@ -1,13 +1,28 @@
 package pl.edu.agh.ftj.datamining.weka.algorithm;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.CFTree;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.DatasetClusterer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.EngineExecutors;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NearestCenterClusterer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NumericDataset;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.PackedDataset;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.SubsetDataset;
 import weka.clusterers.ClusterEvaluation;
+import weka.clusterers.Clusterer;
 import weka.clusterers.Cobweb;
+import weka.clusterers.DensityBasedClusterer;
 import weka.clusterers.EM;
 import weka.clusterers.HierarchicalClusterer;
 import weka.clusterers.SimpleKMeans;
-import weka.clusterers.FarthestFirst;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 
 /**
  * Klasa odpowiedzialna za komunikacje z biblioteka Weki
@@ -15,10 +30,27 @@ import weka.core.Instances;
  * @version 1.0.0
  */
 public class WekaAlgorithm {
+    /**
+     * Tryby ewaluacji modelu po jego zbudowaniu (opcja "-eval").
+     */
+    public enum EvaluationMode {
+        /** pełna ewaluacja przez ClusterEvaluation (zachowanie domyślne) */
+        FULL,
+        /** jedno przejście po danych: przypisania, liczności klastrów i logarytm wiarygodności */
+        SINGLE,
+        /** brak przejścia po danych - tylko wyniki dostępne bezpośrednio z treningu */
+        NONE
+    }
+
     /**
      * Obiekt przechowujący dane do analizy.
      */
     private Instances data = null;
+    /**
+     * Dane w postaci spakowanej (dla silników serwisu); obiekt Instances tworzony jest z nich dopiero
+     * wtedy, gdy wymaga go algorytm z biblioteki Weka.
+     */
+    private NumericDataset dataset = null;
     /**
      * Typ algorytmu jaki ma zostac uzyty. Dostepne opcje: 1 - SimpleKMeans, 2 - EM, 3 - HierarchicalClusterer, 4 - Cobweb, 5 - FarthestFirst
      */
@@ -28,49 +60,86 @@ public class WekaAlgorithm {
      */
     private String[] options = null;
     /**
-     * Obiekt zawierajace dane zwracajane przez Weke
+     * Części odpowiedzi, które mają zostać wyliczone (null - domyślne, zob. AnswerField.defaults).
      */
-    private WekaAnswer wekaAnswer = new WekaAnswer();
+    private EnumSet<AnswerField> fields = null;
     /**
-     * Obiekt przechowujący informacje dotyczące wykonania algorytmów.
+     * Tryb ewaluacji modelu.
      */
-    private String info = "\n==== WekaAnswer informations ====\n";
+    private EvaluationMode evaluationMode = EvaluationMode.FULL;
     /**
-     * Przechowuje informację o tym czy podczas wykonywania algorytmów
-     * doszło do błędu (false) czy też nie (true);
+     * Przypisania instancji do klastrów wyznaczone podczas treningu lub ewaluacji (null jeśli nieznane).
      */
-    private boolean correct = true;
+    private int[] rowAssignments = null;
     /**
-     * Domyślne opcje dla algorytmu SimpleKMeans
+     * Silnik wykonujący algorytm (opcja "-engine"): "weka" - implementacja z biblioteki Weka (domyślnie),
+     * "parallel" - implementacja serwisu pracująca na danych spakowanych (SimpleKMeans, EM, HierarchicalClusterer, FarthestFirst),
+     * "minibatch" - k-średnich uczone na losowych partiach wierszy (tylko SimpleKMeans), silniki
+     * dodane do rejestru (AlgorithmRegistry), a także "auto" - wybór silnika wg liczby wierszy danych.
      */
-    private String[] skmDefault = {"-O"};
+    private String engine = "weka";
     /**
-     * Domyślne opcje dla algorytmu EM.
+     * Wartość opcji -engine włączająca automatyczny wybór silnika wg liczby wierszy.
      */
-    private String[] emDefault = {""};
+    private static final String AUTO_ENGINE = "auto";
     /**
-     * Domyślne opcje dla algorytmuHierarchicalClusterer.
+     * Liczba wątków dla silników wielowątkowych (opcja "-threads", 0 - wartość domyślna).
      */
-    private String[] hcDefault = {""};
+    private int threads = 0;
     /**
-     * Domyślne opcje dla algorytmu CobWeb.
+     * Liczba uruchomień algorytmu k-średnich z kolejnymi ziarnami (opcja "-restarts"); zwracany jest
+     * model o najmniejszym błędzie kwadratowym.
      */
-    private String[] cwDefault = {""};
+    private int restarts = 1;
     /**
-     * Domyślne opcje dla algorytmu FarthestFirst.
+     * Liczność próbki w trybie przybliżonym (opcja "-sample", 0 - pełne dane). Model budowany jest na próbce,
+     * a wszystkie wiersze przypisywane są do najbliższych środków w jednym przejściu (SimpleKMeans, FarthestFirst).
      */
-    private String[] ffDefault = {""};
+    private int sampleSize = 0;
     /**
-     * Tablica z nazwami udostępnianych algorytmów
+     * Dane, na których budowany jest model (próbka lub pełne dane; tworzone przy pierwszym użyciu).
      */
-    private static final String[] algorithms = {
-        "SimpleKMeans",
-        "EM",
-        "HierarchicalClusterer",
-        "Cobweb",
-        "FarthestFirst"
-    };
-
+    private NumericDataset trainingData = null;
+    /**
+     * Maksymalna liczba mikroklastrów drzewa CF (opcja "-summarize", 0 - bez streszczania). Wiersze streszczane są
+     * w jednym przejściu do ważonych mikroklastrów, na których budowany jest model (EM, HierarchicalClusterer,
+     * Cobweb), a przypisania mikroklastrów przenoszone są na wiersze.
+     */
+    private int summarizeEntries = 0;
+    /**
+     * Drzewo CF streszczające dane (null - dane nie zostały streszczone).
+     */
+    private CFTree summary = null;
+    /**
+     * Pełne dane na czas budowy modelu na mikroklastrach.
+     */
+    private Instances fullData = null;
+    private NumericDataset fullDataset = null;
+    /**
+     * Zbudowany klasteryzator (niezależnie od pól odpowiedzi).
+     */
+    private Clusterer builtClusterer = null;
+    /**
+     * Środki początkowe z poprzedniego wyniku (warm start dla SimpleKMeans i EM, null - brak).
+     */
+    private Instances initialCentroids = null;
+    /**
+     * Utrzymywany pomiędzy uruchomieniami model Cobweb dla danych (null - drzewo budowane od nowa).
+     */
+    private CobwebModel cobwebModel = null;
+    /**
+     * Obiekt zawierajace dane zwracajane przez Weke
+     */
+    private WekaAnswer wekaAnswer = new WekaAnswer();
+    /**
+     * Obiekt przechowujący informacje dotyczące wykonania algorytmów.
+     */
+    private String info = "\n==== WekaAnswer informations ====\n";
+    /**
+     * Przechowuje informację o tym czy podczas wykonywania algorytmów
+     * doszło do błędu (false) czy też nie (true);
+     */
+    private boolean correct = true;
     /**
      * Metoda zwracająca obiekt z danymi będącymi wynikiem działania algorytmu.
      * @return Obiekt z danymi.
@@ -83,36 +152,37 @@ public class WekaAlgorithm {
      * Metoda rozpoczynająca proces przetwarzania. Inicjuje i uruchamia odpowiednie algorytmy.
      */
     public void run() {
-        switch (algorithmType) {
-            case 1:
-                wekaAnswer.setAlgorithmName(algorithms[0]);
-                wekaAnswer.setAlgorithmType(1);
-                runSimpleKMeans();
-                break;
-            case 2:
-                wekaAnswer.setAlgorithmName(algorithms[1]);
-                wekaAnswer.setAlgorithmType(2);
-                runEM();
-                break;
-            case 3:
-                wekaAnswer.setAlgorithmName(algorithms[2]);
-                wekaAnswer.setAlgorithmType(3);
-                runHierarchicalClusterer();
-                break;
-            case 4:
-                wekaAnswer.setAlgorithmName(algorithms[3]);
-                wekaAnswer.setAlgorithmType(4);
-                runCobweb();
-                break;
-            case 5:
-                wekaAnswer.setAlgorithmName(algorithms[4]);
-                wekaAnswer.setAlgorithmType(5);
-                runFarthestFirst();
-                break;
-            default:
-                wekaAnswer.setAlgorithmName("Unknown");
-                log("Nieznany typ algorytmu.");
+        if (fields == null) {
+            fields = AnswerField.defaults(data == null && dataset != null);
+        }
+        extractOwnOptions();
+
+        if (sampleSize > 0 && algorithmType != 1 && algorithmType != 5) {
+            log("Opcja -sample dostepna tylko dla SimpleKMeans i FarthestFirst - przetworzono pelne dane.");
+            sampleSize = 0;
         }
+        summarize();
+
+        ClustererEngine selected = selectEngine();
+        if (selected != null) {
+            engine = selected.getName();
+            wekaAnswer.setEngine(engine);
+            selected.run(this);
+        } else {
+            wekaAnswer.setAlgorithmName("Unknown");
+            log("Nieznany typ algorytmu.");
+        }
+        expandSummary();
+
+        if (correct && rowAssignments != null && wants(AnswerField.CLUSTER_INDEX)) {
+            int k = wekaAnswer.getNumberOfClustersValue();
+            for (int c : rowAssignments) {
+                k = Math.max(k, c + 1);
+            }
+            wekaAnswer.buildClusterIndex(rowAssignments, k);
+        }
+
+        wekaAnswer.setData(correct && wants(AnswerField.DATA) ? getInstances() : null);
 
         if (correct == false) {
             wekaAnswer = new WekaAnswer();
@@ -121,6 +191,166 @@ public class WekaAlgorithm {
         wekaAnswer.setInfo(info);
     }
 
+    /**
+     * Streszcza dane drzewem CF (opcja -summarize) - model budowany jest na ważonych mikroklastrach.
+     * Dostępne dla EM, HierarchicalClusterer i Cobweb (bez utrzymywanego modelu Cobweb). HierarchicalClusterer
+     * z biblioteki Weka nie uwzględnia wag wierszy, więc streszczone dane przetwarza zawsze silnik parallel
+     * (wagi mikroklastrów są licznościami we wzorze Lance'a-Williamsa).
+     */
+    private void summarize() {
+        if (summarizeEntries <= 0) {
+            return;
+        }
+        if (algorithmType != 2 && algorithmType != 3 && algorithmType != 4) {
+            log("Opcja -summarize dostepna tylko dla EM, HierarchicalClusterer i Cobweb - przetworzono pelne dane.");
+            return;
+        }
+        if (algorithmType == 4 && cobwebModel != null) {
+            log("Opcja -summarize nie jest dostepna dla utrzymywanego modelu Cobweb - przetworzono pelne dane.");
+            return;
+        }
+        if (algorithmType == 3) {
+            //HierarchicalClusterer z biblioteki Weka pomija wagi wierszy - mikroklastry obsluguje tylko silnik parallel
+            ClustererEngine parallel = AlgorithmRegistry.getEngine(algorithmType, "parallel");
+            if (parallel == null || !parallel.supports(options == null ? new String[0] : options)) {
+                log("Opcja -summarize dla HierarchicalClusterer wymaga silnika parallel (wiazania SINGLE, COMPLETE, "
+                        + "AVERAGE, WARD i odleglosc euklidesowa) - przetworzono pelne dane.");
+                return;
+            }
+        }
+        NumericDataset full = getDataset();
+        if (full == null || full.numRows() <= summarizeEntries) {
+            return;
+        }
+        CFTree tree = new CFTree(full, summarizeEntries);
+        fullData = data;
+        fullDataset = full;
+        summary = tree;
+        data = tree.getMicroClusters();
+        dataset = null;
+        log("Podsumowanie CF: " + tree.numEntries() + " mikroklastrow z " + full.numRows() + " wierszy (prog "
+                + Utils.doubleToString(tree.getThreshold(), 4) + ")");
+    }
+
+    /**
+     * Przywraca pełne dane po budowie modelu na mikroklastrach i przenosi przypisania mikroklastrów na wiersze.
+     * Ewaluacja (pole eval) dotyczy mikroklastrów.
+     */
+    private void expandSummary() {
+        if (summary == null) {
+            return;
+        }
+        Instances micro = data;
+        data = fullData;
+        dataset = fullDataset;
+        if (!correct || (rowAssignments == null && builtClusterer == null)) {
+            return;
+        }
+        try {
+            int[] microAssignments = rowAssignments;
+            if (microAssignments == null) {
+                microAssignments = new int[micro.numInstances()];
+                for (int i = 0; i < microAssignments.length; i++) {
+                    microAssignments[i] = builtClusterer.clusterInstance(micro.instance(i));
+                }
+            }
+            rowAssignments = summary.expand(microAssignments);
+            int k = builtClusterer != null ? builtClusterer.numberOfClusters() : 0;
+            for (int c : rowAssignments) {
+                k = Math.max(k, c + 1);
+            }
+            int[] sizes = new int[k];
+            for (int c : rowAssignments) {
+                if (c >= 0) {
+                    sizes[c]++;
+                }
+            }
+            if (wants(AnswerField.ASSIGNMENTS))
+                wekaAnswer.setAssignments(rowAssignments);
+            if (wants(AnswerField.CLUSTER_SIZES))
+                wekaAnswer.setClusterSizes(sizes);
+        } catch (Exception e) {
+            log("Blad przypisania wierszy do klastrow mikroklastrow.");
+            log(e.getMessage());
+            correct = false;
+        }
+    }
+
+    /**
+     * Wybiera silnik algorytmu z rejestru. Kolejność reguł: funkcje dostępne tylko w silnikach serwisu
+     * (start od podanych środków, opcje -index i -sample) wybierają silnik parallel; silnik podany opcją -engine;
+     * bez opcji -engine - silnik domyślny (weka). Przy opcji "-engine auto" wybierany jest silnik domyślny, a gdy
+     * liczba wierszy przekracza jego zalecany limit - silnik o najwyższym limicie. Silnik nieobsługujący podanych
+     * opcji zastępowany jest pierwszym, który je obsługuje. Wybrany silnik zwracany jest w odpowiedzi (pole engine).
+     * @return silnik lub null dla nieznanego typu algorytmu
+     */
+    private ClustererEngine selectEngine() {
+        List<ClustererEngine> candidates = AlgorithmRegistry.getEngines(algorithmType);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        ClustererEngine defaultEngine = candidates.get(0);
+        wekaAnswer.setAlgorithmName(defaultEngine.getAlgorithmName());
+        wekaAnswer.setAlgorithmType(algorithmType);
+
+        String reason = null;
+        if (initialCentroids != null && (algorithmType == 1 || algorithmType == 2)) {
+            reason = "Start od podanych srodkow";
+        } else if (options != null && Utils.getOptionPos("index", options) >= 0 && (algorithmType == 1 || algorithmType == 5)) {
+            reason = "Opcja -index";
+        } else if (sampleSize > 0) {
+            reason = "Opcja -sample";
+        } else if (summary != null && algorithmType == 3) {
+            reason = "Opcja -summarize";
+        }
+        if (reason != null && (engine.equals("weka") || engine.equals(AUTO_ENGINE))
+                && AlgorithmRegistry.getEngine(algorithmType, "parallel") != null) {
+            log(reason + " - uzyto silnika parallel.");
+            engine = "parallel";
+        }
+
+        String[] opt = options == null ? new String[0] : options;
+        ClustererEngine selected;
+        if (engine.equals(AUTO_ENGINE)) {
+            selected = defaultEngine;
+            long rows = numRows();
+            for (ClustererEngine e : candidates) {
+                if (rows > selected.getMaxRecommendedRows() && e.getMaxRecommendedRows() > selected.getMaxRecommendedRows()
+                        && e.supports(opt)) {
+                    selected = e;
+                }
+            }
+            log("Silnik " + selected.getName() + " wybrany automatycznie dla " + rows + " wierszy (zalecany limit silnika "
+                    + defaultEngine.getName() + ": " + defaultEngine.getMaxRecommendedRows() + ").");
+        } else {
+            selected = AlgorithmRegistry.getEngine(algorithmType, engine);
+            if (selected == null) {
+                log("Nieznany silnik " + engine + " - uzyto silnika " + defaultEngine.getName() + ".");
+                selected = defaultEngine;
+            }
+        }
+        if (!selected.supports(opt)) {
+            for (ClustererEngine e : candidates) {
+                if (e.supports(opt)) {
+                    log("Silnik " + selected.getName() + " nie obsluguje podanych opcji - uzyto silnika " + e.getName() + ".");
+                    selected = e;
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return liczba wierszy danych (bez tworzenia obiektu Instances ani danych spakowanych)
+     */
+    private long numRows() {
+        if (data != null) {
+            return data.numInstances();
+        }
+        return dataset != null ? dataset.numRows() : 0;
+    }
+
     /**
      * Metoda ustawiająca typ algorytmu jaki ma zostać użyty
      * @param algorithmType Typ algorytmu jaki ma zostac uzyty. Dostepne opcje: 1 - SimpleKMeans, 2 - EM, 3 - HierarchicalClusterer, 4 - Cobweb.
@@ -138,6 +368,156 @@ public class WekaAlgorithm {
         wekaAnswer.setData(data);
     }
 
+    /**
+     * Ustawia dane w postaci spakowanej. Silniki serwisu pracują bezpośrednio na nich,
+     * a algorytmy z biblioteki Weka na obiekcie Instances tworzonym z nich przy pierwszym użyciu.
+     * @param dataset Dane, które mają zostać poddane przetworzeniu.
+     */
+    public void setDataset(NumericDataset dataset) {
+        this.dataset = dataset;
+    }
+
+    /**
+     * Ustawia środki początkowe (warm start), np. środki klastrów z poprzedniego wyniku
+     * (WekaAnswer.getClusterCentroids()). SimpleKMeans oraz EM kontynuują wtedy uczenie od podanych środków
+     * (silnikami serwisu), a liczba klastrów wynika z liczby środków.
+     * @param initialCentroids Środki o tej samej strukturze co dane (null - brak).
+     */
+    public void setInitialCentroids(Instances initialCentroids) {
+        this.initialCentroids = initialCentroids;
+    }
+
+    /**
+     * Ustawia utrzymywany model Cobweb - do drzewa dodawane są tylko wiersze dopisane od poprzedniego uruchomienia.
+     * @param cobwebModel Model dla danych ustawionych metodą setDataset (null - drzewo budowane od nowa).
+     */
+    public void setCobwebModel(CobwebModel cobwebModel) {
+        this.cobwebModel = cobwebModel;
+    }
+
+    /**
+     * @return utrzymywany model Cobweb (null - drzewo budowane od nowa)
+     */
+    public CobwebModel getCobwebModel() {
+        return cobwebModel;
+    }
+
+    /**
+     * @return środki początkowe (null - brak)
+     */
+    public Instances getInitialCentroids() {
+        return initialCentroids;
+    }
+
+    /**
+     * @return opcje algorytmu (po uruchomieniu - bez opcji obsługiwanych przez serwis)
+     */
+    public String[] getOptions() {
+        return options;
+    }
+
+    /**
+     * @return liczba wątków dla silników wielowątkowych (opcja -threads, 0 - wartość domyślna)
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return liczba uruchomień algorytmu k-średnich z kolejnymi ziarnami (opcja -restarts)
+     */
+    public int getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * @return czy dotychczas nie wystąpił błąd
+     */
+    public boolean isCorrect() {
+        return correct;
+    }
+
+    /**
+     * Zapisuje błąd w logu - odpowiedź zostanie oznaczona jako niepoprawna.
+     * @param msg opis błędu
+     */
+    public void fail(String msg) {
+        log(msg);
+        correct = false;
+    }
+
+    /**
+     * @return dane w postaci obiektu Instances (tworzone przy pierwszym użyciu)
+     */
+    public Instances getInstances() {
+        if (data == null && dataset != null) {
+            data = dataset.toInstances();
+        }
+        return data;
+    }
+
+    /**
+     * @return dane w postaci spakowanej (tworzone przy pierwszym użyciu)
+     */
+    public NumericDataset getDataset() {
+        if (dataset == null && data != null) {
+            dataset = PackedDataset.of(data);
+        }
+        return dataset;
+    }
+
+    /**
+     * @return dane, na których budowany jest model: próbka prosta wierszy w trybie przybliżonym
+     * (ziarno z opcji -S, domyślnie 1) lub pełne dane
+     */
+    public NumericDataset getTrainingData() {
+        if (trainingData == null) {
+            NumericDataset full = getDataset();
+            trainingData = full;
+            if (full != null && sampleSize > 0 && sampleSize < full.numRows()) {
+                long seed = 1;
+                try {
+                    String value = Utils.getOption('S', options == null ? new String[0] : options.clone());
+                    if (value.length() > 0) {
+                        seed = Long.parseLong(value);
+                    }
+                } catch (Exception e) {
+                    log("Niepoprawna opcja -S - uzyto ziarna 1 dla probki.");
+                }
+                trainingData = SubsetDataset.sample(full, sampleSize, seed);
+                log("Tryb przyblizony: probka " + trainingData.numRows() + " z " + full.numRows() + " wierszy");
+            }
+        }
+        return trainingData;
+    }
+
+    /**
+     * Tryb przybliżony: model zbudowany na próbce przypisuje wszystkie wiersze do najbliższych środków
+     * w jednym równoległym przejściu. Szacowana różnica błędu kwadratowego to błąd na pełnych danych
+     * pomniejszony o błąd próbki przeskalowany do liczby wierszy (o ile model na próbce jest gorszy na
+     * pozostałych danych), margines to 1.96 odchylenia standardowego przeskalowanego błędu próbki
+     * (z poprawką dla populacji skończonej).
+     * @param model model zbudowany na getTrainingData()
+     * @throws Exception gdy obliczenia zostały przerwane
+     */
+    public void assignAllRows(NearestCenterClusterer model) throws Exception {
+        NumericDataset full = getDataset();
+        if (trainingData == null || trainingData == full) {
+            return;
+        }
+        int m = trainingData.numRows();
+        int n = full.numRows();
+        double[] sample = model.assignRows(trainingData);
+        double[] all = model.assignRows(full);
+        double mean = sample[0] / m;
+        double variance = m > 1 ? Math.max(0, (sample[1] - m * mean * mean) / (m - 1)) : 0;
+        double gap = all[0] - sample[0] * n / m;
+        double margin = 1.96 * n * Math.sqrt(variance / m * (1 - (double) m / n));
+        wekaAnswer.setSample(m, gap, margin);
+        log("Szacowana roznica bledu kwadratowego: " + Utils.doubleToString(gap, 4)
+                + " +/- " + Utils.doubleToString(margin, 4));
+    }
+
     /**
      * Ustawia opcje dla algorytmu.
      * Opis parametrów oraz algorytmów znajduje się na TracWiki projektu.
@@ -149,268 +529,305 @@ public class WekaAlgorithm {
     }
 
     /**
-     * Metoda zwracająca dostępne nazwy algorytmów.
-     * @return Tablica z nazwami algorytmów.
+     * Ustawia tryb ewaluacji modelu. Tryb może być także podany w opcjach algorytmu
+     * jako "-eval full|single|none" (opcja w tablicy ma pierwszeństwo).
+     * @param evaluationMode Tryb ewaluacji.
      */
-    public static String[] getAlgorithms() {
-        return algorithms;
+    public void setEvaluationMode(EvaluationMode evaluationMode) {
+        this.evaluationMode = evaluationMode;
     }
 
     /**
-     * Uruchamia algorytm SimpleKMeans.
+     * Ustawia części odpowiedzi, które mają zostać wyliczone i zwrócone.
+     * Pominięte części nie są w ogóle obliczane (np. brak pola eval pomija ewaluację modelu,
+     * a brak pola graph - budowę grafu). Domyślnie wyliczane są wszystkie części, a dla danych podanych
+     * metodą setDataset wszystkie poza danymi wejściowymi (pole data wymaga utworzenia obiektu Instances).
+     * @param fields Zbiór pól odpowiedzi.
      */
-    private void runSimpleKMeans() {
-        SimpleKMeans skm = new SimpleKMeans();
-        ClusterEvaluation eval = new ClusterEvaluation();
+    public void setFields(EnumSet<AnswerField> fields) {
+        this.fields = fields;
+    }
 
-        try {
-            try {
-                if (options == null) {
-                    throw new Exception("Options == null");
-                }
-                skm.setOptions(options);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt Options.");
-                log(e.getMessage());
-                log("Algorytm zostanie uruchomiony z domyslnymi opcjami.");
-                skm.setOptions(skmDefault);
-            }
-            try {
-                skm.buildClusterer(data);
-                eval.setClusterer(skm);
-                eval.evaluateClusterer(data);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt z danymi.");
-                log(e.getMessage());
-                correct = false;
-            }
-            //rozpoczęcie budowania obiektu z danymi
-            try {
-                wekaAnswer.setAssignments(skm.getAssignments());
-            } catch(Exception e) {
-                log(e.getMessage());
+    /**
+     * Metoda zwracająca dostępne nazwy algorytmów (z rejestru silników, zob. AlgorithmRegistry).
+     * @return Tablica z nazwami algorytmów wg rosnącego typu (bez luk; typy algorytmów zwraca
+     * AlgorithmRegistry.getAlgorithmNames()).
+     */
+    public static String[] getAlgorithms() {
+        Collection<String> names = AlgorithmRegistry.getAlgorithmNames().values();
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Uruchamia algorytm równolegle dla kolejnych liczb klastrów (opcja -N) od kFrom do kTo na wspólnych danych.
+     * Każde uruchomienie wylicza jedynie liczności klastrów oraz miary jakości (błąd kwadratowy, logarytm
+     * wiarygodności); domyślnie stosowana jest ewaluacja jednoprzebiegowa (opcja -eval ma pierwszeństwo).
+     * @param algorithmType typ algorytmu (1 - SimpleKMeans, 2 - EM, 5 - FarthestFirst)
+     * @param options opcje algorytmu (opcja -N jest pomijana)
+     * @param dataset dane współdzielone przez wszystkie uruchomienia
+     * @param kFrom najmniejsza liczba klastrów
+     * @param kTo największa liczba klastrów
+     * @return odpowiedzi dla kolejnych liczb klastrów
+     * @throws Exception w przypadku przerwania obliczeń
+     */
+    public static List<WekaAnswer> sweep(final int algorithmType, String[] options, final NumericDataset dataset, int kFrom, int kTo) throws Exception {
+        int count = kTo - kFrom + 1;
+        int poolSize = Math.max(1, Math.min(count, EngineExecutors.defaultThreads()));
+        List<String> base = new ArrayList<String>();
+        String[] opt = options == null ? new String[0] : options.clone();
+        Utils.getOption('N', opt);
+        for (String o : opt) {
+            if (o.length() > 0) {
+                base.add(o);
             }
-            wekaAnswer.setClusterCentroids(skm.getClusterCentroids());
-            wekaAnswer.setClusterNominalCounts(skm.getClusterNominalCounts());
-            wekaAnswer.setClusterSizes(skm.getClusterSizes());
-            wekaAnswer.setClusterStandardDevs(skm.getClusterStandardDevs());
-            wekaAnswer.setDistanceFunction(skm.getDistanceFunction());
-            wekaAnswer.setMaxIterations(skm.getMaxIterations());
-            wekaAnswer.setNumClusters(skm.getNumClusters());
-            wekaAnswer.setOptions(options);
-            wekaAnswer.setRevision(skm.getRevision());
-            wekaAnswer.setSquaredError(skm.getSquaredError());
-            wekaAnswer.setNumberOfClusters(skm.numberOfClusters());
-            wekaAnswer.setClusterer(skm);
-            wekaAnswer.setEval(eval);
-        } catch (Exception e) {
-            log(e.getMessage());
-            correct = false;
         }
+        if (Utils.getOptionPos("threads", opt) < 0) {
+            //watki silnikow dzielone pomiedzy rownolegle uruchomienia
+            base.add("-threads");
+            base.add("" + Math.max(1, EngineExecutors.defaultThreads() / poolSize));
+        }
+        List<Callable<WekaAnswer>> tasks = new ArrayList<Callable<WekaAnswer>>();
+        for (int k = kFrom; k <= kTo; k++) {
+            final List<String> runOptions = new ArrayList<String>(base);
+            runOptions.add("-N");
+            runOptions.add("" + k);
+            tasks.add(new Callable<WekaAnswer>() {
 
-        if (correct) {
-            log("OK");
+                public WekaAnswer call() {
+                    WekaAlgorithm alg = new WekaAlgorithm();
+                    alg.setAlgorithmType(algorithmType);
+                    alg.setDataset(dataset);
+                    alg.setOptions(runOptions.toArray(new String[runOptions.size()]));
+                    alg.setEvaluationMode(EvaluationMode.SINGLE);
+                    alg.setFields(EnumSet.of(AnswerField.CLUSTER_SIZES));
+                    alg.run();
+                    return alg.getData();
+                }
+            });
+        }
+        ExecutorService pool = EngineExecutors.newPool("weka-sweep", poolSize);
+        try {
+            return EngineExecutors.invokeAll(pool, tasks);
+        } finally {
+            pool.shutdownNow();
         }
     }
 
     /**
-     * Uruchamia algorytm EM.
+     * Sprawdza czy dana część odpowiedzi ma zostać wyliczona.
+     * @param field Część odpowiedzi.
+     * @return true jeśli część ma zostać wyliczona.
      */
-    private void runEM() {
-        EM em = new EM();
-        ClusterEvaluation eval = new ClusterEvaluation();
+    public boolean wants(AnswerField field) {
+        return fields.contains(field);
+    }
 
+    /**
+     * Wyciąga z tablicy opcji opcje obsługiwane przez serwis (a nie przez Wekę),
+     * tak aby nie trafiły do metody setOptions klasteryzatora.
+     * Obsługiwane opcje: -eval full|single|none, -engine weka|parallel|minibatch|auto, -threads liczba,
+     * -restarts liczba (SimpleKMeans), -sample liczność próbki (SimpleKMeans, FarthestFirst),
+     * -summarize liczba mikroklastrów (EM, HierarchicalClusterer, Cobweb).
+     */
+    private void extractOwnOptions() {
+        if (options == null) {
+            return;
+        }
+        String[] opt = options.clone();
         try {
-            try {
-                if (options == null) {
-                    throw new Exception("Options == null");
-                }
-                em.setOptions(options);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt Options.");
-                log(e.getMessage());
-                log("Algorytm zostanie uruchomiony z domyslnymi opcjami.");
-                em.setOptions(emDefault);
+            String mode = Utils.getOption("eval", opt);
+            if (mode.length() > 0) {
+                evaluationMode = EvaluationMode.valueOf(mode.toUpperCase());
+            }
+        } catch (Exception e) {
+            log("Niepoprawna opcja -eval, uzyto trybu " + evaluationMode.name().toLowerCase() + ".");
+        }
+        try {
+            String value = Utils.getOption("engine", opt);
+            if (value.length() > 0) {
+                engine = value.toLowerCase();
             }
-            try {
-                em.buildClusterer(data);
-                eval.setClusterer(em);
-                eval.evaluateClusterer(data);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt z danymi.");
-                log(e.getMessage());
-                correct = false;
+            value = Utils.getOption("threads", opt);
+            if (value.length() > 0) {
+                threads = Integer.parseInt(value);
             }
-            //rozpoczęcie budowania obiektu z danymi
-            wekaAnswer.setClusterPriors(em.getClusterPriors());
-            wekaAnswer.setClusterModelsNumericAtts(em.getClusterModelsNumericAtts());
-            wekaAnswer.setMinStdDev(em.getMinStdDev());
-            // wekaAnswer.setCapabilities(em.getCapabilities());
-            wekaAnswer.setMaxIterations(em.getMaxIterations());
-            wekaAnswer.setNumClusters(em.getNumClusters());
-            wekaAnswer.setNumberOfClusters(em.getNumClusters());
-            wekaAnswer.setOptions(options);
-            wekaAnswer.setRevision(em.getRevision());
-            wekaAnswer.setClusterer(em);
-            wekaAnswer.setEval(eval);
         } catch (Exception e) {
-            log(e.getMessage());
-            correct = false;
+            log("Niepoprawna opcja -engine lub -threads.");
         }
-
-        if (correct) {
-            log("OK");
+        try {
+            String value = Utils.getOption("restarts", opt);
+            if (value.length() > 0) {
+                restarts = Math.max(1, Integer.parseInt(value));
+            }
+        } catch (Exception e) {
+            log("Niepoprawna opcja -restarts.");
         }
-    }
-
-    /**
-     * Uruchamia algorytm HierarchicalClusterer.
-     */
-    private void runHierarchicalClusterer() {
-        HierarchicalClusterer hc = new HierarchicalClusterer();
-        ClusterEvaluation eval = new ClusterEvaluation();
-
         try {
-            try {
-                if (options == null) {
-                    throw new Exception("Options == null");
-                }
-                hc.setOptions(options);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt Options.");
-                log(e.getMessage());
-                log("Algorytm zostanie uruchomiony z domyslnymi opcjami.");
-                hc.setOptions(hcDefault);
+            String value = Utils.getOption("sample", opt);
+            if (value.length() > 0) {
+                sampleSize = Math.max(0, Integer.parseInt(value));
             }
-            try {
-                hc.buildClusterer(data);
-                eval.setClusterer(hc);
-                eval.evaluateClusterer(data);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt z danymi.");
-                log(e.getMessage());
-                correct = false;
+        } catch (Exception e) {
+            log("Niepoprawna opcja -sample.");
+        }
+        try {
+            String value = Utils.getOption("summarize", opt);
+            if (value.length() > 0) {
+                summarizeEntries = Math.max(0, Integer.parseInt(value));
             }
-            //rozpoczęcie budowania obiektu z danymi
-            // wekaAnswer.setCapabilities(hc.getCapabilities());
-            wekaAnswer.setDistanceFunction(hc.getDistanceFunction());
-            // wekaAnswer.setLinkType(hc.getLinkType());
-            wekaAnswer.setNumClusters(hc.getNumClusters());
-            wekaAnswer.setNumberOfClusters(hc.getNumClusters());
-            wekaAnswer.setOptions(options);
-            wekaAnswer.setPrintNewick(hc.getPrintNewick());
-            wekaAnswer.setRevision(hc.getRevision());
-            wekaAnswer.setGraph(hc.graph());
-            wekaAnswer.setGraphType(hc.graphType());
-            wekaAnswer.setClusterer(hc);
-            wekaAnswer.setEval(eval);
         } catch (Exception e) {
-            log(e.getMessage());
-            correct = false;
+            log("Niepoprawna opcja -summarize.");
+        }
+        List<String> rest = new ArrayList<String>();
+        for (String o : opt) {
+            if (o.length() > 0) {
+                rest.add(o);
+            }
         }
+        options = rest.toArray(new String[rest.size()]);
+    }
 
-        if (correct) {
-            log("OK");
+    /**
+     * Przeprowadza ewaluację modelu zgodnie z wybranym trybem.
+     * W trybie FULL używany jest ClusterEvaluation (tylko jeśli pole eval zostało zażądane; jeśli nie, a zażądano
+     * przypisań, liczności klastrów lub indeksu instancji, wykonywane jest jedno przejście po danych),
+     * w trybie SINGLE wykonywane jest jedno przejście po danych, w trybie NONE nic nie jest liczone.
+     * W trybach FULL i SINGLE przypisania znane z treningu (silniki serwisu, SimpleKMeans z opcją -O)
+     * trafiają do odpowiedzi bez ponownej klasyfikacji wierszy.
+     * @param eval Obiekt ewaluacji.
+     * @param clusterer Zbudowany klasteryzator.
+     * @param known Przypisania znane już z treningu (lub null).
+     * @throws Exception w przypadku błędu ewaluacji.
+     */
+    public void evaluate(ClusterEvaluation eval, Clusterer clusterer, int[] known) throws Exception {
+        rowAssignments = known;
+        switch (evaluationMode) {
+            case FULL:
+                if (wants(AnswerField.EVAL)) {
+                    eval.setClusterer(clusterer);
+                    eval.evaluateClusterer(getInstances());
+                    int[] assignments = trainedAssignments(clusterer, known);
+                    if (assignments == null) {
+                        double[] evalAssignments = eval.getClusterAssignments();
+                        assignments = new int[evalAssignments.length];
+                        for (int i = 0; i < evalAssignments.length; i++) {
+                            assignments[i] = (int) evalAssignments[i];
+                        }
+                    }
+                    setRowResults(assignments, clusterer.numberOfClusters());
+                    if (clusterer instanceof DensityBasedClusterer) {
+                        wekaAnswer.setLogLikelihood(eval.getLogLikelihood());
+                    }
+                } else if (wants(AnswerField.ASSIGNMENTS) || wants(AnswerField.CLUSTER_SIZES)
+                        || wants(AnswerField.CLUSTER_INDEX)) {
+                    //wyniki dla wierszy bez obiektu ewaluacji
+                    evaluateSinglePass(clusterer, known);
+                }
+                break;
+            case SINGLE:
+                evaluateSinglePass(clusterer, known);
+                break;
+            default:
+                break;
         }
     }
 
     /**
-     * Uruchamia algorytm Cobweb.
+     * Jednoprzebiegowa ewaluacja modelu. Każda instancja jest klasyfikowana co najwyżej raz;
+     * dla klasteryzatorów gęstościowych z jednego wywołania logJointDensitiesForInstance
+     * wyznaczany jest zarówno klaster, jak i wkład do logarytmu wiarygodności.
+     * Jeśli przypisania są znane z treningu (SimpleKMeans z opcją -O, silniki serwisu), dane nie są ponownie klasyfikowane.
+     * @param clusterer Zbudowany klasteryzator.
+     * @param known Przypisania znane z treningu (lub null).
+     * @throws Exception w przypadku błędu klasyfikacji instancji.
      */
-    private void runCobweb() {
-        Cobweb cw = new Cobweb();
-        ClusterEvaluation eval = new ClusterEvaluation();
+    private void evaluateSinglePass(Clusterer clusterer, int[] known) throws Exception {
+        boolean density = clusterer instanceof DensityBasedClusterer;
+        int[] assignments = trainedAssignments(clusterer, known);
+        double logL = 0;
+        double sumWeights = 0;
 
-        try {
-            try {
-                if (options == null) {
-                    throw new Exception("Options == null");
-                }
-                cw.setOptions(options);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt Options.");
-                log(e.getMessage());
-                log("Algorytm zostanie uruchomiony z domyslnymi opcjami.");
-                cw.setOptions(cwDefault);
+        if (clusterer instanceof DatasetClusterer) {
+            //silniki serwisu znaja przypisania i logarytm wiarygodnosci z treningu
+            DatasetClusterer dc = (DatasetClusterer) clusterer;
+            density = false;
+            if (!Double.isNaN(dc.getLogLikelihood())) {
+                wekaAnswer.setLogLikelihood(dc.getLogLikelihood());
             }
-            try {
-                cw.buildClusterer(data);
-                for (Instance current : data)
-                    cw.updateClusterer(current);
-                cw.updateFinished();
-                eval.setClusterer(cw);
-                eval.evaluateClusterer(data);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt z danymi.");
-                log(e.getMessage());
-                correct = false;
-            }
-            //rozpoczęcie budowania obiektu z danymi
-            wekaAnswer.setAcuity(cw.getAcuity());
-            // wekaAnswer.setCapabilities(cw.getCapabilities());
-            wekaAnswer.setCutoff(cw.getCutoff());
-            wekaAnswer.setOptions(options);
-            wekaAnswer.setRevision(cw.getRevision());
-            wekaAnswer.setGraph(cw.graph());
-            wekaAnswer.setGraphType(cw.graphType());
-            wekaAnswer.setClusterer(cw);
-            wekaAnswer.setEval(eval);
-            wekaAnswer.setNumClusters(cw.numberOfClusters());
-            wekaAnswer.setNumberOfClusters(cw.numberOfClusters());
-        } catch (Exception e) {
-            log(e.getMessage());
-            correct = false;
         }
 
-        if (correct) {
-            log("OK");
+        if (assignments == null || density) {
+            Instances data = getInstances();
+            int numInstances = data.numInstances();
+            assignments = new int[numInstances];
+            for (int i = 0; i < numInstances; i++) {
+                Instance inst = data.instance(i);
+                if (density) {
+                    double[] joint = ((DensityBasedClusterer) clusterer).logJointDensitiesForInstance(inst);
+                    int best = Utils.maxIndex(joint);
+                    double sum = 0;
+                    for (int j = 0; j < joint.length; j++) {
+                        sum += Math.exp(joint[j] - joint[best]);
+                    }
+                    logL += inst.weight() * (joint[best] + Math.log(sum));
+                    sumWeights += inst.weight();
+                    assignments[i] = best;
+                } else {
+                    assignments[i] = clusterer.clusterInstance(inst);
+                }
+            }
         }
+        setRowResults(assignments, clusterer.numberOfClusters());
+        if (density && sumWeights > 0)
+            wekaAnswer.setLogLikelihood(logL / sumWeights);
     }
 
     /**
-     * Uruchamia algorytm FarthestFirst.
+     * @param clusterer Zbudowany klasteryzator.
+     * @param known Przypisania znane z treningu (lub null).
+     * @return przypisania wierszy wyznaczone podczas treningu (silniki serwisu, SimpleKMeans z opcją -O)
+     * lub null, jeśli trzeba je wyznaczyć klasyfikując dane
+     * @throws Exception gdy przypisań nie można odczytać
      */
-    private void runFarthestFirst() {
-        FarthestFirst ff = new FarthestFirst();
-        ClusterEvaluation eval = new ClusterEvaluation();
+    private int[] trainedAssignments(Clusterer clusterer, int[] known) throws Exception {
+        if (clusterer instanceof DatasetClusterer) {
+            return ((DatasetClusterer) clusterer).getAssignments();
+        }
+        return known;
+    }
 
-        try {
-            try {
-                if (options == null) {
-                    throw new Exception("Options == null");
-                }
-                ff.setOptions(options);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt Options.");
-                log(e.getMessage());
-                log("Algorytm zostanie uruchomiony z domyslnymi opcjami.");
-                ff.setOptions(ffDefault);
-            }
-            try {
-                ff.buildClusterer(data);
-                eval.setClusterer(ff);
-                eval.evaluateClusterer(data);
-            } catch (Exception e) {
-                log("Niepoprawny obiekt z danymi.");
-                log(e.getMessage());
-                correct = false;
+    /**
+     * Zapamiętuje przypisania wierszy (indeks instancji wg klastrów) i ustawia w odpowiedzi
+     * przypisania oraz liczności klastrów (jeśli zostały zażądane).
+     * @param assignments przypisania wierszy
+     * @param numClusters liczba klastrów
+     */
+    private void setRowResults(int[] assignments, int numClusters) {
+        int[] sizes = new int[numClusters];
+        for (int c : assignments) {
+            if (c >= 0 && c < sizes.length) {
+                sizes[c]++;
             }
-            //rozpoczęcie budowania obiektu z danymi
-            wekaAnswer.setNumClusters(ff.getNumClusters());
-            wekaAnswer.setOptions(options);
-            wekaAnswer.setRevision(ff.getRevision());
-            wekaAnswer.setNumClusters(ff.numberOfClusters());
-            wekaAnswer.setNumberOfClusters(ff.numberOfClusters());
-            wekaAnswer.setClusterer(ff);
-            wekaAnswer.setEval(eval);
-        } catch (Exception e) {
-            log(e.getMessage());
-            correct = false;
         }
 
-        if (correct) {
-            log("OK");
-        }
+        rowAssignments = assignments;
+        if (wants(AnswerField.ASSIGNMENTS))
+            wekaAnswer.setAssignments(assignments);
+        if (wants(AnswerField.CLUSTER_SIZES))
+            wekaAnswer.setClusterSizes(sizes);
+    }
+
+    /**
+     * Ustawia w odpowiedzi obiekt klasteryzatora oraz ewaluacji (jeśli zostały zażądane).
+     * @param clusterer Klasteryzator.
+     * @param eval Obiekt ewaluacji.
+     */
+    public void setClustererAndEval(Clusterer clusterer, ClusterEvaluation eval) {
+        builtClusterer = clusterer;
+        if (wants(AnswerField.CLUSTERER))
+            wekaAnswer.setClusterer(clusterer);
+        if (wants(AnswerField.EVAL) && evaluationMode == EvaluationMode.FULL)
+            wekaAnswer.setEval(eval);
     }
 
     /**
@@ -418,7 +835,7 @@ public class WekaAlgorithm {
      * Log jest następnie dostępny w obiekcie WekaAnswer przy użyciu metody getInfo().
      * @param msg Wiadomość, która ma zostać zapisana w logu.
      */
-    private void log(String msg) {
+    public void log(String msg) {
         info += "\n[INFO] " + wekaAnswer.getAlgorithmName() + ": " + msg;
     }
 }
@@ -2,6 +2,7 @@ package pl.edu.agh.ftj.datamining.weka.algorithm;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.util.ArrayList;
@@ -24,6 +25,13 @@ import weka.core.converters.ArffLoader.ArffReader;
 
  */
 public class WekaAnswer implements Serializable {
+
+    /**
+     * Identyfikator wersji klasy ustalony na wartość wyliczoną dla pierwotnej wersji klasy, dzięki czemu
+     * klienci z wcześniejszą wersją mogą odczytywać odpowiedzi (nowe pola są dla nich pomijane).
+     */
+    private static final long serialVersionUID = 2232227981882470301L;
+
     /**
      * Typ algorytmu jaki ma zostac uzyty. Dostepne opcje: 1 - SimpleKMeans, 2 - EM, 3 - HierarchicalClusterer, 4 - Cobweb, 5 - FarthestFirst.
      */
@@ -116,6 +124,29 @@ public class WekaAnswer implements Serializable {
      */
     private double squaredError = -1.;
 
+    /**
+     * Średni logarytm wiarygodności na instancję (tylko klasteryzatory gęstościowe, np. EM).
+     * NaN jeśli nie został wyliczony.
+     */
+    private double logLikelihood = Double.NaN;
+
+    /**
+     * Nazwa silnika, który wykonał algorytm (opcja -engine, zob. AlgorithmRegistry).
+     */
+    private String engine = null;
+
+    /**
+     * Liczność próbki, na której zbudowano model w trybie przybliżonym (0 - pełne dane).
+     */
+    private int sampleSize = 0;
+
+    /**
+     * Szacowana różnica błędu kwadratowego w trybie przybliżonym (błąd na pełnych danych minus
+     * przeskalowany błąd próbki) oraz jej margines (ok. 95%). NaN poza trybem przybliżonym.
+     */
+    private double squaredErrorGap = Double.NaN;
+    private double squaredErrorGapMargin = Double.NaN;
+
     /**
      * Liczba klastrów.
      */
@@ -176,6 +207,27 @@ public class WekaAnswer implements Serializable {
      */
     private Instances data = null;
 
+    /**
+     * Indeks przypisań: numery instancji posortowane wg numeru klastra.
+     * Instancje klastra c zajmują pozycje od clusterOffsets[c] do clusterOffsets[c+1]-1.
+     */
+    private int[] clusterIndex = null;
+
+    /**
+     * Początki kolejnych klastrów w tablicy clusterIndex (długość liczba klastrów + 1).
+     */
+    private int[] clusterOffsets = null;
+
+    /**
+     * Ziarna kolejnych uruchomień algorytmu k-średnich (opcja -restarts).
+     */
+    private int[] restartSeeds = null;
+
+    /**
+     * Błędy kwadratowe kolejnych uruchomień algorytmu k-średnich (w kolejności restartSeeds).
+     */
+    private double[] restartErrors = null;
+
     ////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -222,6 +274,22 @@ public class WekaAnswer implements Serializable {
             this.clusterCentroids = clusterCentroids.toString();
     }
 
+    /**
+     * Zwraca środki klastrów w postaci tekstu ARFF (na potrzeby kodowania odpowiedzi).
+     * @return Środki klastrów w formacie ARFF.
+     */
+    String getClusterCentroidsArff() {
+        return clusterCentroids;
+    }
+
+    /**
+     * Ustawia środki klastrów w postaci tekstu ARFF (na potrzeby dekodowania odpowiedzi).
+     * @param clusterCentroids Środki klastrów w formacie ARFF.
+     */
+    void setClusterCentroidsArff(String clusterCentroids) {
+        this.clusterCentroids = clusterCentroids;
+    }
+
     /**
     * Dla kazdego klastra zwraca liczbe czestotliwosci wystepowania wartosci dla poszczegolnych atrybutow.
     * @return Liczby czestotliwosci.
@@ -282,6 +350,22 @@ public class WekaAnswer implements Serializable {
             this.clusterStandardDevs = clusterStandardDevs.toString();
     }
 
+    /**
+     * Zwraca odchylenia standardowe w postaci tekstu ARFF (na potrzeby kodowania odpowiedzi).
+     * @return Odchylenia standardowe w formacie ARFF.
+     */
+    String getClusterStandardDevsArff() {
+        return clusterStandardDevs;
+    }
+
+    /**
+     * Ustawia odchylenia standardowe w postaci tekstu ARFF (na potrzeby dekodowania odpowiedzi).
+     * @param clusterStandardDevs Odchylenia standardowe w formacie ARFF.
+     */
+    void setClusterStandardDevsArff(String clusterStandardDevs) {
+        this.clusterStandardDevs = clusterStandardDevs;
+    }
+
     /**
     * Pobiera funkcje odleglosci, ktora jest aktualnie w uzyciu.
     * @return Obiekt zawierajacy m.in. funkcje dystansu, wszystkie instancje, a takze pozwalajacy na obliczenie odleglosci miedzy poszczegolnymi instancjami.
@@ -332,12 +416,24 @@ public class WekaAnswer implements Serializable {
 
     /**
     * Zwraca liczbę klastrów do wygenerowania.
+    * Jeśli odpowiedź nie zawiera obiektu klasteryzatora (np. format zwarty), zwracana jest zapamiętana wartość.
     * @return Liczba klastrow do wygenerowania.
     */
     public int getNumClusters() throws Exception {
+        if (clusterer == null) {
+            return numClusters;
+        }
         return clusterer.numberOfClusters();
     }
 
+    /**
+     * Zwraca zapamiętaną liczbę klastrów do wygenerowania (bez odwołania do klasteryzatora).
+     * @return Liczba klastrow do wygenerowania.
+     */
+    int getNumClustersValue() {
+        return numClusters;
+    }
+
     /**
      * Ustawia liczbę klastrów do wygenerowania.
      * @param numClusters Liczba klastrów do wygenerowania.
@@ -397,12 +493,24 @@ public class WekaAnswer implements Serializable {
 
     /**
     * Zwraca liczbe wyznaczonych klastrow.
+    * Jeśli odpowiedź nie zawiera obiektu klasteryzatora (np. format zwarty), zwracana jest zapamiętana wartość.
     * @return Liczba klastrow.
     */
     public int getNumberOfClusters() throws Exception {
+        if (clusterer == null) {
+            return numberOfClusters;
+        }
         return clusterer.numberOfClusters();
     }
 
+    /**
+     * Zwraca zapamiętaną liczbę wyznaczonych klastrów (bez odwołania do klasteryzatora).
+     * @return Liczba klastrow.
+     */
+    int getNumberOfClustersValue() {
+        return numberOfClusters;
+    }
+
     /**
      * Ustawia liczbę wyznaczonych klastrów.
      * @param numberOfClusters Liczba klastrów.
@@ -427,6 +535,75 @@ public class WekaAnswer implements Serializable {
         this.squaredError = squaredError;
     }
 
+    /**
+    * Zwraca średni logarytm wiarygodności na instancję.
+    * @return Logarytm wiarygodności. NaN jeśli algorytm nie jest gęstościowy lub ewaluacja była wyłączona.
+    */
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    /**
+     * Ustawia średni logarytm wiarygodności na instancję.
+     * @param logLikelihood Logarytm wiarygodności.
+     */
+    public void setLogLikelihood(double logLikelihood) {
+        this.logLikelihood = logLikelihood;
+    }
+
+    /**
+     * Zwraca nazwę silnika, który wykonał algorytm.
+     * @return Nazwa silnika (np. weka, parallel) lub null.
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Ustawia nazwę silnika, który wykonał algorytm.
+     * @param engine Nazwa silnika.
+     */
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Zwraca liczność próbki, na której zbudowano model (opcja -sample).
+     * @return Liczność próbki. 0 jeśli model zbudowano na pełnych danych.
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Zwraca szacowaną różnicę błędu kwadratowego modelu zbudowanego na próbce: błąd na pełnych danych
+     * pomniejszony o błąd próbki przeskalowany do liczby wierszy.
+     * @return Szacowana różnica błędu. NaN jeśli model zbudowano na pełnych danych.
+     */
+    public double getSquaredErrorGap() {
+        return squaredErrorGap;
+    }
+
+    /**
+     * Zwraca margines (ok. 95%) szacowanej różnicy błędu kwadratowego.
+     * @return Margines. NaN jeśli model zbudowano na pełnych danych.
+     */
+    public double getSquaredErrorGapMargin() {
+        return squaredErrorGapMargin;
+    }
+
+    /**
+     * Ustawia wyniki trybu przybliżonego.
+     * @param sampleSize Liczność próbki.
+     * @param squaredErrorGap Szacowana różnica błędu kwadratowego.
+     * @param squaredErrorGapMargin Margines szacowanej różnicy.
+     */
+    public void setSample(int sampleSize, double squaredErrorGap, double squaredErrorGapMargin) {
+        this.sampleSize = sampleSize;
+        this.squaredErrorGap = squaredErrorGap;
+        this.squaredErrorGapMargin = squaredErrorGapMargin;
+    }
+
     /**
      * Zwraca rozkłady normalne dla modeli klastra.
      * @return Rozkłady normalne dla modeli klastra.
@@ -638,8 +815,126 @@ public class WekaAnswer implements Serializable {
         this.eval = eval;
     }
 
+    /**
+     * Buduje indeks instancji wg klastrów (sortowanie przez zliczanie, O(n + k)).
+     * Instancje bez przypisania (numer klastra spoza zakresu) są pomijane.
+     * @param assignments Numery klastrów kolejnych instancji.
+     * @param numClusters Liczba klastrów.
+     */
+    public void buildClusterIndex(int[] assignments, int numClusters) {
+        int[] offsets = new int[numClusters + 1];
+        for (int c : assignments) {
+            if (c >= 0 && c < numClusters) {
+                offsets[c + 1]++;
+            }
+        }
+        for (int c = 0; c < numClusters; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+        int[] index = new int[offsets[numClusters]];
+        int[] next = new int[numClusters];
+        System.arraycopy(offsets, 0, next, 0, numClusters);
+        for (int i = 0; i < assignments.length; i++) {
+            int c = assignments[i];
+            if (c >= 0 && c < numClusters) {
+                index[next[c]++] = i;
+            }
+        }
+        clusterIndex = index;
+        clusterOffsets = offsets;
+    }
+
+    /**
+     * Zwraca tablicę indeksu instancji posortowanych wg klastrów.
+     * @return Indeks lub null jeśli nie został zbudowany.
+     */
+    public int[] getClusterIndex() {
+        return clusterIndex;
+    }
+
+    /**
+     * Zwraca początki kolejnych klastrów w tablicy indeksu.
+     * @return Tablica przesunięć (liczba klastrów + 1) lub null jeśli indeks nie został zbudowany.
+     */
+    public int[] getClusterOffsets() {
+        return clusterOffsets;
+    }
+
+    /**
+     * Ustawia indeks instancji wg klastrów.
+     * @param clusterIndex Numery instancji posortowane wg klastrów.
+     * @param clusterOffsets Początki kolejnych klastrów (liczba klastrów + 1).
+     */
+    public void setClusterIndex(int[] clusterIndex, int[] clusterOffsets) {
+        this.clusterIndex = clusterIndex;
+        this.clusterOffsets = clusterOffsets;
+    }
+
+    /**
+     * Zwraca liczbę instancji w klastrze o podanym numerze (na podstawie indeksu, O(1)).
+     * @param numClust Numer klastra.
+     * @return Liczba instancji lub 0 jeśli klaster nie istnieje.
+     * @throws IllegalStateException jeśli indeks nie został zbudowany.
+     */
+    public int getClusterCount(int numClust) {
+        checkClusterIndex();
+        if (numClust < 0 || numClust >= clusterOffsets.length - 1) {
+            return 0;
+        }
+        return clusterOffsets[numClust + 1] - clusterOffsets[numClust];
+    }
+
+    /**
+     * Zwraca numery instancji należących do klastra o podanym numerze (na podstawie indeksu).
+     * @param numClust Numer klastra.
+     * @return Numery instancji w kolejności rosnącej.
+     * @throws IllegalStateException jeśli indeks nie został zbudowany.
+     */
+    public int[] getClusterRows(int numClust) {
+        int[] rows = new int[getClusterCount(numClust)];
+        if (rows.length > 0) {
+            System.arraycopy(clusterIndex, clusterOffsets[numClust], rows, 0, rows.length);
+        }
+        return rows;
+    }
+
+    /**
+     * Zwraca ziarna kolejnych uruchomień algorytmu (opcja -restarts).
+     * @return Ziarna lub null jeśli algorytm był uruchomiony jednokrotnie.
+     */
+    public int[] getRestartSeeds() {
+        return restartSeeds;
+    }
+
+    /**
+     * Zwraca błędy kwadratowe kolejnych uruchomień algorytmu (w kolejności getRestartSeeds()).
+     * Odpowiedź zawiera model uruchomienia o najmniejszym błędzie.
+     * @return Błędy kwadratowe lub null jeśli algorytm był uruchomiony jednokrotnie.
+     */
+    public double[] getRestartErrors() {
+        return restartErrors;
+    }
+
+    /**
+     * Ustawia wyniki kolejnych uruchomień algorytmu.
+     * @param restartSeeds Ziarna uruchomień.
+     * @param restartErrors Błędy kwadratowe uruchomień.
+     */
+    public void setRestarts(int[] restartSeeds, double[] restartErrors) {
+        this.restartSeeds = restartSeeds;
+        this.restartErrors = restartErrors;
+    }
+
+    private void checkClusterIndex() {
+        if (clusterIndex == null || clusterOffsets == null) {
+            throw new IllegalStateException("Brak indeksu przypisan do klastrow");
+        }
+    }
+
     /**
      * Zwraca tylko te instancje, które należą do klastra o podanym numerze.
+     * Jeśli odpowiedź zawiera indeks przypisań, instancje są wybierane bezpośrednio z indeksu
+     * (bez ponownego klasyfikowania danych); w przeciwnym razie każda instancja jest klasyfikowana.
      * @param numClust Numer klastra
      * @return Instancje należące do podanego klastra.
      */
@@ -647,6 +942,13 @@ public class WekaAnswer implements Serializable {
         Instances inst = new Instances(data);
         inst.clear();
 
+        if (clusterIndex != null) {
+            for (int row : getClusterRows(numClust)) {
+                inst.add(data.instance(row));
+            }
+            return inst;
+        }
+
         try {
             for (int i = 0; i < data.numInstances(); ++i) {
                 if (clusterer.clusterInstance(data.instance(i)) == numClust) {
@@ -719,4 +1021,15 @@ public class WekaAnswer implements Serializable {
 
         return value;
     }
-}
\ No newline at end of file
+
+    /**
+     * Odczytuje obiekt; pola nieobecne w strumieniu zapisanym przez wcześniejszą wersję klasy otrzymują
+     * takie same wartości jak w nowym obiekcie.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        logLikelihood = Double.NaN;
+        squaredErrorGap = Double.NaN;
+        squaredErrorGapMargin = Double.NaN;
+        in.defaultReadObject();
+    }
+}
@@ -0,0 +1,365 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Zwarty, wersjonowany format binarny obiektu WekaAnswer (typ MIME application/x-weka-answer).
+ * W przeciwieństwie do serializacji Javy przesyłane są wyłącznie wyniki działania algorytmu
+ * (przypisania, liczności, środki klastrów, parametry modeli), bez danych wejściowych, obiektu
+ * klasteryzatora, ewaluacji oraz kopii danych dla funkcji dystansu.
+ * <p>
+ * Układ: nagłówek (magic "WKAN", wersja), maska obecnych pól, a następnie obecne pola w ustalonej
+ * kolejności. Tablice liczb zapisywane są jako długość i spakowany blok big-endian.
+ * Wersja 2 dodaje logarytm wiarygodności na końcu pól skalarnych, wersja 3 - wyniki trybu przybliżonego
+ * (liczność próbki, szacowana różnica błędu kwadratowego i jej margines), wersja 4 - nazwę silnika;
+ * starsze wersje są nadal odczytywane.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class WekaAnswerCodec {
+
+    /**
+     * Typ MIME formatu.
+     */
+    public static final String MEDIA_TYPE = "application/x-weka-answer";
+    /**
+     * Znacznik początku danych ("WKAN").
+     */
+    private static final int MAGIC = 0x574B414E;
+    /**
+     * Aktualna wersja formatu.
+     */
+    public static final int VERSION = 4;
+
+    /* bity maski obecnych pól */
+    private static final long F_ALGORITHM_NAME = 1L;
+    private static final long F_INFO = 1L << 1;
+    private static final long F_OPTIONS = 1L << 2;
+    private static final long F_REVISION = 1L << 3;
+    private static final long F_ASSIGNMENTS = 1L << 4;
+    private static final long F_CLUSTER_SIZES = 1L << 5;
+    private static final long F_CLUSTER_PRIORS = 1L << 6;
+    private static final long F_CLUSTER_MODELS = 1L << 7;
+    private static final long F_NOMINAL_COUNTS = 1L << 8;
+    private static final long F_CENTROIDS = 1L << 9;
+    private static final long F_STD_DEVS = 1L << 10;
+    private static final long F_GRAPH = 1L << 11;
+    private static final long F_CLUSTER_INDEX = 1L << 12;
+    private static final long F_RESTARTS = 1L << 13;
+    private static final long F_ENGINE = 1L << 14;
+
+    private WekaAnswerCodec() {
+    }
+
+    /**
+     * Koduje odpowiedź do formatu binarnego.
+     * @param ans odpowiedź
+     * @return zakodowana odpowiedź
+     * @throws IOException w przypadku błędu zapisu
+     */
+    public static byte[] encode(WekaAnswer ans) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bos);
+
+        long mask = 0;
+        mask |= ans.getAlgorithmName() != null ? F_ALGORITHM_NAME : 0;
+        mask |= ans.getInfo() != null ? F_INFO : 0;
+        mask |= ans.getOptions() != null ? F_OPTIONS : 0;
+        mask |= ans.getRevision() != null ? F_REVISION : 0;
+        mask |= ans.getAssignments() != null ? F_ASSIGNMENTS : 0;
+        mask |= ans.getClusterSizes() != null ? F_CLUSTER_SIZES : 0;
+        mask |= ans.getClusterPriors() != null ? F_CLUSTER_PRIORS : 0;
+        mask |= ans.getClusterModelsNumericAtts() != null ? F_CLUSTER_MODELS : 0;
+        mask |= ans.getClusterNominalCounts() != null ? F_NOMINAL_COUNTS : 0;
+        mask |= ans.getClusterCentroidsArff() != null ? F_CENTROIDS : 0;
+        mask |= ans.getClusterStandardDevsArff() != null ? F_STD_DEVS : 0;
+        mask |= ans.getGraph() != null ? F_GRAPH : 0;
+        mask |= ans.getClusterIndex() != null ? F_CLUSTER_INDEX : 0;
+        mask |= ans.getRestartSeeds() != null ? F_RESTARTS : 0;
+        mask |= ans.getEngine() != null ? F_ENGINE : 0;
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(mask);
+
+        out.writeInt(ans.getAlgorithmType());
+        out.writeBoolean(ans.isCorrect());
+        out.writeInt(ans.getNumClustersValue());
+        out.writeInt(ans.getNumberOfClustersValue());
+        out.writeInt(ans.getMaxIterations());
+        out.writeDouble(ans.getSquaredError());
+        out.writeDouble(ans.getMinStdDev());
+        out.writeDouble(ans.getAcuity());
+        out.writeDouble(ans.getCutoff());
+        out.writeInt(ans.getGraphType());
+        out.writeBoolean(ans.isPrintNewick());
+        out.writeDouble(ans.getLogLikelihood());
+        out.writeInt(ans.getSampleSize());
+        out.writeDouble(ans.getSquaredErrorGap());
+        out.writeDouble(ans.getSquaredErrorGapMargin());
+
+        if ((mask & F_ALGORITHM_NAME) != 0) {
+            writeString(out, ans.getAlgorithmName());
+        }
+        if ((mask & F_INFO) != 0) {
+            writeString(out, ans.getInfo());
+        }
+        if ((mask & F_OPTIONS) != 0) {
+            String[] options = ans.getOptions();
+            out.writeInt(options.length);
+            for (String o : options) {
+                writeString(out, o);
+            }
+        }
+        if ((mask & F_REVISION) != 0) {
+            writeString(out, ans.getRevision());
+        }
+        if ((mask & F_ASSIGNMENTS) != 0) {
+            writeInts(out, ans.getAssignments());
+        }
+        if ((mask & F_CLUSTER_SIZES) != 0) {
+            writeInts(out, ans.getClusterSizes());
+        }
+        if ((mask & F_CLUSTER_PRIORS) != 0) {
+            writeDoubles(out, ans.getClusterPriors());
+        }
+        if ((mask & F_CLUSTER_MODELS) != 0) {
+            double[][][] models = ans.getClusterModelsNumericAtts();
+            out.writeInt(models.length);
+            for (double[][] cluster : models) {
+                out.writeInt(cluster.length);
+                for (double[] att : cluster) {
+                    writeDoubles(out, att);
+                }
+            }
+        }
+        if ((mask & F_NOMINAL_COUNTS) != 0) {
+            int[][][] counts = ans.getClusterNominalCounts();
+            out.writeInt(counts.length);
+            for (int[][] cluster : counts) {
+                out.writeInt(cluster.length);
+                for (int[] att : cluster) {
+                    writeInts(out, att);
+                }
+            }
+        }
+        if ((mask & F_CENTROIDS) != 0) {
+            writeString(out, ans.getClusterCentroidsArff());
+        }
+        if ((mask & F_STD_DEVS) != 0) {
+            writeString(out, ans.getClusterStandardDevsArff());
+        }
+        if ((mask & F_GRAPH) != 0) {
+            writeString(out, ans.getGraph());
+        }
+        if ((mask & F_CLUSTER_INDEX) != 0) {
+            writeInts(out, ans.getClusterIndex());
+            writeInts(out, ans.getClusterOffsets());
+        }
+        if ((mask & F_RESTARTS) != 0) {
+            writeInts(out, ans.getRestartSeeds());
+            writeDoubles(out, ans.getRestartErrors());
+        }
+        if ((mask & F_ENGINE) != 0) {
+            writeString(out, ans.getEngine());
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Dekoduje odpowiedź z formatu binarnego.
+     * @param bytes zakodowana odpowiedź
+     * @return odpowiedź
+     * @throws IOException gdy dane nie są w obsługiwanym formacie
+     */
+    public static WekaAnswer decode(byte[] bytes) throws IOException {
+        return decode(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Dekoduje odpowiedź z formatu binarnego.
+     * @param stream strumień z zakodowaną odpowiedzią
+     * @return odpowiedź
+     * @throws IOException gdy dane nie są w obsługiwanym formacie
+     */
+    public static WekaAnswer decode(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Niepoprawny format odpowiedzi");
+        }
+        int version = in.readUnsignedShort();
+        if (version > VERSION) {
+            throw new IOException("Nieobslugiwana wersja formatu: " + version);
+        }
+        long mask = in.readLong();
+
+        WekaAnswer ans = new WekaAnswer();
+        ans.setAlgorithmType(in.readInt());
+        ans.setCorrect(in.readBoolean());
+        ans.setNumClusters(in.readInt());
+        ans.setNumberOfClusters(in.readInt());
+        ans.setMaxIterations(in.readInt());
+        ans.setSquaredError(in.readDouble());
+        ans.setMinStdDev(in.readDouble());
+        ans.setAcuity(in.readDouble());
+        ans.setCutoff(in.readDouble());
+        ans.setGraphType(in.readInt());
+        ans.setPrintNewick(in.readBoolean());
+        if (version >= 2) {
+            ans.setLogLikelihood(in.readDouble());
+        }
+        if (version >= 3) {
+            int sampleSize = in.readInt();
+            double gap = in.readDouble();
+            ans.setSample(sampleSize, gap, in.readDouble());
+        }
+
+        if ((mask & F_ALGORITHM_NAME) != 0) {
+            ans.setAlgorithmName(readString(in));
+        }
+        if ((mask & F_INFO) != 0) {
+            ans.setInfo(readString(in));
+        }
+        if ((mask & F_OPTIONS) != 0) {
+            String[] options = new String[in.readInt()];
+            for (int i = 0; i < options.length; i++) {
+                options[i] = readString(in);
+            }
+            ans.setOptions(options);
+        }
+        if ((mask & F_REVISION) != 0) {
+            ans.setRevision(readString(in));
+        }
+        if ((mask & F_ASSIGNMENTS) != 0) {
+            ans.setAssignments(readInts(in));
+        }
+        if ((mask & F_CLUSTER_SIZES) != 0) {
+            ans.setClusterSizes(readInts(in));
+        }
+        if ((mask & F_CLUSTER_PRIORS) != 0) {
+            ans.setClusterPriors(readDoubles(in));
+        }
+        if ((mask & F_CLUSTER_MODELS) != 0) {
+            double[][][] models = new double[in.readInt()][][];
+            for (int i = 0; i < models.length; i++) {
+                models[i] = new double[in.readInt()][];
+                for (int j = 0; j < models[i].length; j++) {
+                    models[i][j] = readDoubles(in);
+                }
+            }
+            ans.setClusterModelsNumericAtts(models);
+        }
+        if ((mask & F_NOMINAL_COUNTS) != 0) {
+            int[][][] counts = new int[in.readInt()][][];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new int[in.readInt()][];
+                for (int j = 0; j < counts[i].length; j++) {
+                    counts[i][j] = readInts(in);
+                }
+            }
+            ans.setClusterNominalCounts(counts);
+        }
+        if ((mask & F_CENTROIDS) != 0) {
+            ans.setClusterCentroidsArff(readString(in));
+        }
+        if ((mask & F_STD_DEVS) != 0) {
+            ans.setClusterStandardDevsArff(readString(in));
+        }
+        if ((mask & F_GRAPH) != 0) {
+            ans.setGraph(readString(in));
+        }
+        if ((mask & F_CLUSTER_INDEX) != 0) {
+            int[] index = readInts(in);
+            ans.setClusterIndex(index, readInts(in));
+        }
+        if ((mask & F_RESTARTS) != 0) {
+            int[] seeds = readInts(in);
+            ans.setRestarts(seeds, readDoubles(in));
+        }
+        if ((mask & F_ENGINE) != 0) {
+            ans.setEngine(readString(in));
+        }
+        return ans;
+    }
+
+    /**
+     * Zapisuje łańcuch jako długość i bajty UTF-8 (bez ograniczenia 64 KB metody writeUTF).
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes("UTF-8");
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, "UTF-8");
+    }
+
+    /**
+     * Zapisuje tablicę int jako długość i spakowany blok.
+     */
+    private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        if (a == null) {
+            out.writeInt(-1);
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(4 * a.length);
+        buf.asIntBuffer().put(a);
+        out.writeInt(a.length);
+        out.write(buf.array());
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] b = new byte[4 * len];
+        in.readFully(b);
+        int[] a = new int[len];
+        ByteBuffer.wrap(b).asIntBuffer().get(a);
+        return a;
+    }
+
+    /**
+     * Zapisuje tablicę double jako długość i spakowany blok.
+     */
+    private static void writeDoubles(DataOutputStream out, double[] a) throws IOException {
+        if (a == null) {
+            out.writeInt(-1);
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(8 * a.length);
+        buf.asDoubleBuffer().put(a);
+        out.writeInt(a.length);
+        out.write(buf.array());
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] b = new byte[8 * len];
+        in.readFully(b);
+        double[] a = new double[len];
+        ByteBuffer.wrap(b).asDoubleBuffer().get(a);
+        return a;
+    }
+}
@@ -0,0 +1,503 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Drzewo CF (BIRCH, Zhang i in., "BIRCH: An Efficient Data Clustering Method for Very Large Databases"),
+ * które w jednym przejściu po danych streszcza wiersze do ważonych mikroklastrów.
+ * <p>
+ * Mikroklaster przechowuje sumę wag, sumę liniową i sumę kwadratów znormalizowanych wartości numerycznych
+ * (wartość minus minimum przez rozpiętość kolumny) oraz ważone liczności wartości nominalnych. Wiersz
+ * dołączany jest do najbliższego mikroklastra liścia, jeśli promień mikroklastra po dołączeniu nie przekracza
+ * progu; w przeciwnym razie tworzy nowy mikroklaster. Przepełnione węzły dzielone są wokół dwóch najdalszych
+ * wpisów. Gdy liczba mikroklastrów przekroczy limit, próg jest zwiększany, a drzewo budowane od nowa
+ * z dotychczasowych mikroklastrów (bez ponownego czytania danych). Dla każdego wiersza zapamiętywany jest
+ * mikroklaster, do którego trafił, więc przypisania mikroklastrów można przenieść na wiersze.
+ * <p>
+ * Brakujące wartości zastępowane są średnią lub modą. Odległość wartości nominalnych to oczekiwana
+ * niezgodność (1 - udział wartości wiersza w mikroklastrze).
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class CFTree {
+
+    /**
+     * Maksymalna liczba wpisów węzła wewnętrznego.
+     */
+    public static final int BRANCHING = 50;
+    /**
+     * Maksymalna liczba mikroklastrów w liściu.
+     */
+    public static final int LEAF_ENTRIES = 50;
+    /**
+     * Tolerancja zaokrągleń kwadratu promienia (wartości znormalizowane do przedziału [0, 1]).
+     */
+    private static final double EPSILON = 1e-12;
+
+    private final NumericDataset data;
+    private final int maxEntries;
+    private final int numNumeric;
+    private final int numNominal;
+    private final int[] numValues;
+    private final double[] min;
+    private final double[] width;
+    private final double[] numericFill;
+    private final int[] nominalFill;
+
+    /**
+     * Próg kwadratu promienia mikroklastra.
+     */
+    private double threshold = 0;
+    private Node root;
+    private int numLeafEntries = 0;
+    /**
+     * Numer mikroklastra, do którego trafił każdy wiersz (przed scaleniami przy przebudowach).
+     */
+    private final int[] rowEntry;
+    /**
+     * Numer mikroklastra, z którym scalono mikroklaster przy przebudowie drzewa (lub on sam).
+     */
+    private int[] forward = new int[1024];
+    private int nextId = 0;
+    /**
+     * Numer mikroklastra ostatnio wstawionego lub powiększonego wiersza.
+     */
+    private int lastEntry;
+    private int rebuilds = 0;
+
+    /**
+     * Mikroklastry po zbudowaniu drzewa (w kolejności liści).
+     */
+    private List<CF> leaves;
+
+    /**
+     * Buduje drzewo w jednym przejściu po wierszach zbioru.
+     * @param data dane
+     * @param maxEntries maksymalna liczba mikroklastrów
+     */
+    public CFTree(NumericDataset data, int maxEntries) {
+        this.data = data;
+        this.maxEntries = Math.max(1, maxEntries);
+        numNumeric = data.getNumNumeric();
+        numNominal = data.getNumNominal();
+        numValues = new int[numNominal];
+        min = new double[numNumeric];
+        width = new double[numNumeric];
+        numericFill = new double[numNumeric];
+        nominalFill = new int[numNominal];
+        for (int j = 0; j < numNumeric; j++) {
+            min[j] = data.getMin(j);
+            width[j] = data.getMax(j) - min[j];
+            numericFill[j] = data.getMean(j);
+        }
+        for (int j = 0; j < numNominal; j++) {
+            numValues[j] = data.numValues(j);
+            nominalFill[j] = data.getMode(j);
+        }
+
+        int n = data.numRows();
+        rowEntry = new int[n];
+        root = new Node(true);
+        double[] num = new double[numNumeric];
+        int[] nom = new int[numNominal];
+        CF point = new CF();
+        for (int i = 0; i < n; i++) {
+            data.readRow(i, num, nom);
+            point.set(normalize(num), fill(nom), data.weight(i));
+            insert(point, true);
+            rowEntry[i] = lastEntry;
+            while (numLeafEntries > this.maxEntries) {
+                rebuild();
+            }
+        }
+        leaves = new ArrayList<CF>(numLeafEntries);
+        collectLeaves(root, leaves);
+    }
+
+    private double[] normalize(double[] num) {
+        for (int j = 0; j < numNumeric; j++) {
+            double v = Double.isNaN(num[j]) ? numericFill[j] : num[j];
+            num[j] = width[j] > 0 ? (v - min[j]) / width[j] : 0;
+        }
+        return num;
+    }
+
+    private int[] fill(int[] nom) {
+        for (int j = 0; j < numNominal; j++) {
+            if (nom[j] < 0 || nom[j] >= numValues[j]) {
+                nom[j] = nominalFill[j];
+            }
+        }
+        return nom;
+    }
+
+    /**
+     * Wstawia mikroklaster (lub pojedynczy wiersz) do drzewa.
+     * @param cf wstawiany mikroklaster
+     * @param copy czy w przypadku utworzenia nowego wpisu skopiować cf (wiersz w buforze) i nadać mu nowy numer
+     */
+    private void insert(CF cf, boolean copy) {
+        Node[] split = insert(root, cf, copy);
+        if (split != null) {
+            root = new Node(false);
+            root.entries.add(summary(split[0]));
+            root.entries.add(summary(split[1]));
+        }
+    }
+
+    /**
+     * @return dwa węzły powstałe z podziału node lub null
+     */
+    private Node[] insert(Node node, CF cf, boolean copy) {
+        CF closest = closest(node, cf);
+        if (node.leaf) {
+            if (closest != null && mergedRadius2(closest, cf) <= threshold + EPSILON) {
+                closest.add(cf);
+                lastEntry = closest.id;
+                if (!copy) {
+                    forward[cf.id] = closest.id;
+                }
+                return null;
+            }
+            CF entry = copy ? cf.copy() : cf;
+            if (copy) {
+                entry.id = newId();
+            }
+            lastEntry = entry.id;
+            node.entries.add(entry);
+            numLeafEntries++;
+            return node.entries.size() > LEAF_ENTRIES ? split(node) : null;
+        }
+        closest.add(cf);
+        Node[] split = insert(closest.child, cf, copy);
+        if (split == null) {
+            return null;
+        }
+        node.entries.remove(closest);
+        node.entries.add(summary(split[0]));
+        node.entries.add(summary(split[1]));
+        return node.entries.size() > BRANCHING ? split(node) : null;
+    }
+
+    private int newId() {
+        if (nextId == forward.length) {
+            forward = Arrays.copyOf(forward, 2 * forward.length);
+        }
+        forward[nextId] = nextId;
+        return nextId++;
+    }
+
+    private CF closest(Node node, CF cf) {
+        CF best = null;
+        double min = Double.MAX_VALUE;
+        for (CF e : node.entries) {
+            double d = distance2(e, cf);
+            if (d < min) {
+                min = d;
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Dzieli węzeł wokół dwóch najdalszych wpisów.
+     */
+    private Node[] split(Node node) {
+        List<CF> entries = node.entries;
+        int seedA = 0;
+        int seedB = 1;
+        double max = -1;
+        for (int a = 0; a < entries.size(); a++) {
+            for (int b = a + 1; b < entries.size(); b++) {
+                double d = distance2(entries.get(a), entries.get(b));
+                if (d > max) {
+                    max = d;
+                    seedA = a;
+                    seedB = b;
+                }
+            }
+        }
+        Node left = new Node(node.leaf);
+        Node right = new Node(node.leaf);
+        CF a = entries.get(seedA);
+        CF b = entries.get(seedB);
+        for (CF e : entries) {
+            if (e == a) {
+                left.entries.add(e);
+            } else if (e == b) {
+                right.entries.add(e);
+            } else if (distance2(a, e) <= distance2(b, e)) {
+                left.entries.add(e);
+            } else {
+                right.entries.add(e);
+            }
+        }
+        return new Node[]{left, right};
+    }
+
+    /**
+     * Zwiększa próg i buduje drzewo od nowa z dotychczasowych mikroklastrów. Nowy próg to mediana
+     * (po liściach) promienia po scaleniu najbliższej pary mikroklastrów liścia, co najmniej dwukrotność
+     * dotychczasowego progu.
+     */
+    private void rebuild() {
+        List<CF> entries = new ArrayList<CF>(numLeafEntries);
+        collectLeaves(root, entries);
+        List<Double> candidates = new ArrayList<Double>();
+        collectThresholds(root, candidates);
+        double next = 0;
+        if (!candidates.isEmpty()) {
+            double[] sorted = new double[candidates.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = candidates.get(i);
+            }
+            Arrays.sort(sorted);
+            next = sorted[sorted.length / 2];
+        }
+        threshold = Math.max(next, threshold > 0 ? 2 * threshold : Double.MIN_NORMAL);
+        root = new Node(true);
+        numLeafEntries = 0;
+        for (CF e : entries) {
+            e.child = null;
+            insert(e, false);
+        }
+        rebuilds++;
+    }
+
+    private void collectLeaves(Node node, List<CF> result) {
+        if (node.leaf) {
+            result.addAll(node.entries);
+        } else {
+            for (CF e : node.entries) {
+                collectLeaves(e.child, result);
+            }
+        }
+    }
+
+    private void collectThresholds(Node node, List<Double> result) {
+        if (!node.leaf) {
+            for (CF e : node.entries) {
+                collectThresholds(e.child, result);
+            }
+            return;
+        }
+        double best = Double.MAX_VALUE;
+        for (int a = 0; a < node.entries.size(); a++) {
+            for (int b = a + 1; b < node.entries.size(); b++) {
+                best = Math.min(best, mergedRadius2(node.entries.get(a), node.entries.get(b)));
+            }
+        }
+        if (best < Double.MAX_VALUE) {
+            result.add(best);
+        }
+    }
+
+    private CF summary(Node node) {
+        CF cf = new CF();
+        cf.child = node;
+        for (CF e : node.entries) {
+            cf.add(e);
+        }
+        return cf;
+    }
+
+    /**
+     * Kwadrat odległości środków mikroklastrów.
+     */
+    private double distance2(CF a, CF b) {
+        double dist = 0;
+        for (int j = 0; j < numNumeric; j++) {
+            double diff = a.ls[j] / a.n - b.ls[j] / b.n;
+            dist += diff * diff;
+        }
+        for (int j = 0; j < numNominal; j++) {
+            double match = 0;
+            for (int v = 0; v < numValues[j]; v++) {
+                match += a.nominal[j][v] * b.nominal[j][v];
+            }
+            dist += 1 - match / (a.n * b.n);
+        }
+        return dist;
+    }
+
+    /**
+     * Kwadrat promienia (średni kwadrat odległości od środka) mikroklastra powstałego ze scalenia a i b.
+     */
+    private double mergedRadius2(CF a, CF b) {
+        double n = a.n + b.n;
+        double radius = (a.ss + b.ss) / n;
+        for (int j = 0; j < numNumeric; j++) {
+            double mean = (a.ls[j] + b.ls[j]) / n;
+            radius -= mean * mean;
+        }
+        for (int j = 0; j < numNominal; j++) {
+            double purity = 0;
+            for (int v = 0; v < numValues[j]; v++) {
+                double p = (a.nominal[j][v] + b.nominal[j][v]) / n;
+                purity += p * p;
+            }
+            radius += 1 - purity;
+        }
+        return Math.max(0, radius);
+    }
+
+    /**
+     * @return liczba mikroklastrów
+     */
+    public int numEntries() {
+        return leaves.size();
+    }
+
+    /**
+     * @return pierwiastek progu promienia mikroklastrów (w przestrzeni znormalizowanej)
+     */
+    public double getThreshold() {
+        return Math.sqrt(threshold);
+    }
+
+    /**
+     * @return liczba przebudów drzewa
+     */
+    public int getRebuilds() {
+        return rebuilds;
+    }
+
+    /**
+     * @return mikroklastry jako ważone instancje o strukturze danych (środki; waga - suma wag wierszy,
+     * wartości nominalne - moda, atrybuty tekstowe - brakujące)
+     */
+    public Instances getMicroClusters() {
+        Instances header = data.getHeader();
+        int[] numericAttributes = data.getNumericAttributes();
+        int[] nominalAttributes = data.getNominalAttributes();
+        Instances result = new Instances(header, leaves.size());
+        for (CF cf : leaves) {
+            double[] vals = new double[header.numAttributes()];
+            Arrays.fill(vals, Utils.missingValue());
+            for (int j = 0; j < numNumeric; j++) {
+                vals[numericAttributes[j]] = min[j] + width[j] * cf.ls[j] / cf.n;
+            }
+            for (int j = 0; j < numNominal; j++) {
+                if (header.attribute(nominalAttributes[j]).isNominal()) {
+                    vals[nominalAttributes[j]] = Utils.maxIndex(cf.nominal[j]);
+                }
+            }
+            result.add(new DenseInstance(cf.n, vals));
+        }
+        return result;
+    }
+
+    /**
+     * @return numery mikroklastrów (w kolejności getMicroClusters()) dla kolejnych wierszy danych
+     */
+    public int[] getRowMicroClusters() {
+        int[] index = new int[nextId];
+        Arrays.fill(index, -1);
+        for (int i = 0; i < leaves.size(); i++) {
+            index[leaves.get(i).id] = i;
+        }
+        int[] result = new int[rowEntry.length];
+        for (int i = 0; i < rowEntry.length; i++) {
+            result[i] = index[find(rowEntry[i])];
+        }
+        return result;
+    }
+
+    private int find(int id) {
+        int rootId = id;
+        while (forward[rootId] != rootId) {
+            rootId = forward[rootId];
+        }
+        while (forward[id] != rootId) {
+            int next = forward[id];
+            forward[id] = rootId;
+            id = next;
+        }
+        return rootId;
+    }
+
+    /**
+     * Przenosi przypisania mikroklastrów na wiersze danych.
+     * @param microAssignments przypisania mikroklastrów (w kolejności getMicroClusters())
+     * @return przypisania wierszy
+     */
+    public int[] expand(int[] microAssignments) {
+        int[] rows = getRowMicroClusters();
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = microAssignments[rows[i]];
+        }
+        return rows;
+    }
+
+    /**
+     * Węzeł drzewa.
+     */
+    private static class Node {
+
+        final boolean leaf;
+        final List<CF> entries = new ArrayList<CF>();
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    /**
+     * Wpis drzewa: mikroklaster (w liściu) lub podsumowanie poddrzewa.
+     */
+    private class CF {
+
+        double n;
+        double[] ls = new double[numNumeric];
+        double ss;
+        double[][] nominal = new double[numNominal][];
+        Node child;
+        int id = -1;
+
+        CF() {
+            for (int j = 0; j < numNominal; j++) {
+                nominal[j] = new double[numValues[j]];
+            }
+        }
+
+        /**
+         * Ustawia wpis jako pojedynczy wiersz (bufor wstawianego wiersza).
+         */
+        void set(double[] num, int[] nom, double w) {
+            n = w;
+            ss = 0;
+            for (int j = 0; j < numNumeric; j++) {
+                ls[j] = w * num[j];
+                ss += w * num[j] * num[j];
+            }
+            for (int j = 0; j < numNominal; j++) {
+                Arrays.fill(nominal[j], 0);
+                nominal[j][nom[j]] = w;
+            }
+        }
+
+        void add(CF other) {
+            n += other.n;
+            ss += other.ss;
+            for (int j = 0; j < numNumeric; j++) {
+                ls[j] += other.ls[j];
+            }
+            for (int j = 0; j < numNominal; j++) {
+                for (int v = 0; v < numValues[j]; v++) {
+                    nominal[j][v] += other.nominal[j][v];
+                }
+            }
+        }
+
+        CF copy() {
+            CF cf = new CF();
+            cf.add(this);
+            return cf;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import weka.clusterers.Clusterer;
+
+/**
+ * Klasteryzator pracujący bezpośrednio na zbiorze NumericDataset (bez obiektów Instances).
+ * Po zbudowaniu modelu udostępnia przypisania wierszy treningowych, dzięki czemu ewaluacja
+ * nie wymaga ponownej klasyfikacji danych.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public interface DatasetClusterer extends Clusterer {
+
+    /**
+     * Buduje model na podstawie zbioru danych.
+     * @param data dane
+     * @throws Exception gdy dane nie są obsługiwane przez algorytm
+     */
+    void buildClusterer(NumericDataset data) throws Exception;
+
+    /**
+     * @return przypisania wierszy treningowych do klastrów
+     */
+    int[] getAssignments();
+
+    /**
+     * @return średni logarytm wiarygodności na wiersz (NaN dla algorytmów niegęstościowych)
+     */
+    double getLogLikelihood();
+}
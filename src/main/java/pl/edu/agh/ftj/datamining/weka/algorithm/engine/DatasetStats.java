@@ -0,0 +1,142 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Podział atrybutów na kolumny oraz statystyki kolumn (minimum, maksimum, średnia i moda ważone wagami wierszy)
+ * zbierane podczas dopisywania kolejnych wierszy.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+class DatasetStats {
+
+    final int[] numericAttributes;
+    final int[] nominalAttributes;
+    final double[] min;
+    final double[] max;
+    final double[] mean;
+    final int[] mode;
+
+    private final double[] sum;
+    private final double[] count;
+    private final List<double[]> valueCounts = new ArrayList<double[]>();
+
+    /**
+     * @param header struktura danych
+     * @throws IllegalArgumentException gdy dane zawierają atrybut relacyjny
+     */
+    DatasetStats(Instances header) {
+        List<Integer> numeric = new ArrayList<Integer>();
+        List<Integer> nominal = new ArrayList<Integer>();
+        for (int j = 0; j < header.numAttributes(); j++) {
+            Attribute att = header.attribute(j);
+            if (att.isNumeric()) {
+                numeric.add(j);
+            } else if (att.isNominal() || att.isString()) {
+                nominal.add(j);
+            } else {
+                throw new IllegalArgumentException("Nieobslugiwany typ atrybutu: " + att.name());
+            }
+        }
+        numericAttributes = toArray(numeric);
+        nominalAttributes = toArray(nominal);
+        min = new double[numericAttributes.length];
+        max = new double[numericAttributes.length];
+        mean = new double[numericAttributes.length];
+        sum = new double[numericAttributes.length];
+        count = new double[numericAttributes.length];
+        mode = new int[nominalAttributes.length];
+        for (int c = 0; c < numericAttributes.length; c++) {
+            min[c] = Double.POSITIVE_INFINITY;
+            max[c] = Double.NEGATIVE_INFINITY;
+        }
+        for (int c = 0; c < nominalAttributes.length; c++) {
+            valueCounts.add(new double[Math.max(1, header.attribute(nominalAttributes[c]).numValues())]);
+        }
+    }
+
+    /**
+     * Odtwarza zapisane wcześniej statystyki.
+     * @param header struktura danych
+     * @param min minima kolumn numerycznych
+     * @param max maksima kolumn numerycznych
+     * @param mean średnie kolumn numerycznych
+     * @param mode mody kolumn nominalnych
+     * @return statystyki
+     */
+    static DatasetStats restore(Instances header, double[] min, double[] max, double[] mean, int[] mode) {
+        DatasetStats stats = new DatasetStats(header);
+        if (min.length != stats.min.length || mode.length != stats.mode.length) {
+            throw new IllegalArgumentException("Statystyki niezgodne ze struktura danych");
+        }
+        System.arraycopy(min, 0, stats.min, 0, min.length);
+        System.arraycopy(max, 0, stats.max, 0, max.length);
+        System.arraycopy(mean, 0, stats.mean, 0, mean.length);
+        System.arraycopy(mode, 0, stats.mode, 0, mode.length);
+        return stats;
+    }
+
+    /**
+     * Uwzględnia wiersz w statystykach.
+     */
+    void add(double[] numeric, int[] nominal, double weight) {
+        for (int c = 0; c < numeric.length; c++) {
+            double v = numeric[c];
+            if (!Utils.isMissingValue(v)) {
+                if (v < min[c]) {
+                    min[c] = v;
+                }
+                if (v > max[c]) {
+                    max[c] = v;
+                }
+                sum[c] += weight * v;
+                count[c] += weight;
+            }
+        }
+        for (int c = 0; c < nominal.length; c++) {
+            int v = nominal[c];
+            if (v >= 0) {
+                double[] counts = valueCounts.get(c);
+                if (v >= counts.length) {
+                    // słownik atrybutu tekstowego rośnie podczas odczytu
+                    double[] grown = new double[Math.max(v + 1, counts.length * 2)];
+                    System.arraycopy(counts, 0, grown, 0, counts.length);
+                    valueCounts.set(c, grown);
+                    counts = grown;
+                }
+                counts[v] += weight;
+            }
+        }
+    }
+
+    /**
+     * Kończy zbieranie statystyk.
+     * @return this
+     */
+    DatasetStats finish() {
+        for (int c = 0; c < min.length; c++) {
+            if (min[c] > max[c]) {
+                min[c] = 0;
+                max[c] = 0;
+            }
+            if (count[c] > 0) {
+                mean[c] = sum[c] / count[c];
+            }
+        }
+        for (int c = 0; c < mode.length; c++) {
+            mode[c] = Utils.maxIndex(valueCounts.get(c));
+        }
+        return this;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] a = new int[list.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = list.get(i);
+        }
+        return a;
+    }
+}
@@ -0,0 +1,315 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Jądro obliczania znormalizowanych odległości euklidesowych między wierszami zbioru NumericDataset.
+ * Wiersze przechowywane są jako spakowane tablice typów prostych, już znormalizowane (wartość minus minimum
+ * przez rozpiętość kolumny), więc pojedyncza odległość nie wymaga tworzenia obiektów ani normalizacji.
+ * W trybie pojedynczej precyzji wartości numeryczne przechowywane są jako float (połowa pamięci i przepustowości,
+ * sumowanie nadal w double).
+ * <p>
+ * Obsługiwane są dwie semantyki brakujących wartości:
+ * <ul>
+ * <li>zastępowanie średnią / modą (jak w SimpleKMeans i FarthestFirst; uwzględniane są wszystkie kolumny),</li>
+ * <li>różnice jak w EuclideanDistance (brak w obu wierszach - 1, w jednym - większa z odległości od krańców
+ * przedziału; atrybuty tekstowe i daty są pomijane).</li>
+ * </ul>
+ * Macierz odległości liczona jest w kafelkach TILE x TILE wierszy (oba bloki wierszy mieszczą się w pamięci
+ * podręcznej procesora), pobieranych dynamicznie przez wątki puli.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class DistanceKernel implements Serializable {
+
+    private static final long serialVersionUID = -1858234657123098734L;
+
+    /**
+     * Rozmiar kafelka macierzy odległości (liczba wierszy).
+     */
+    public static final int TILE = 128;
+
+    private final int numRows;
+    private final int numNumeric;
+    private final int numNominal;
+    /**
+     * Znormalizowane wartości numeryczne [wiersz * numNumeric + kolumna] (jedna z tablic, NaN - brak wartości).
+     */
+    private final double[] numeric;
+    private final float[] numericFloat;
+    /**
+     * Wartości nominalne [wiersz * numNominal + kolumna] (-1 - brak wartości).
+     */
+    private final int[] nominal;
+    /**
+     * Numery atrybutów uwzględnianych kolumn.
+     */
+    private final int[] numericAttributes;
+    private final int[] nominalAttributes;
+    private final double[] min;
+    private final double[] width;
+    /**
+     * Wartości wstawiane w miejsce brakujących (null - semantyka EuclideanDistance).
+     */
+    private final double[] numericFill;
+    private final int[] nominalFill;
+
+    /**
+     * Pakuje i normalizuje wiersze zbioru.
+     * @param data dane
+     * @param replaceMissing true - brakujące wartości zastępowane średnią / modą, false - semantyka EuclideanDistance
+     * @param singlePrecision czy przechowywać wartości numeryczne jako float
+     */
+    public DistanceKernel(NumericDataset data, boolean replaceMissing, boolean singlePrecision) {
+        Instances header = data.getHeader();
+        int[] dataNumeric = data.getNumericAttributes();
+        int[] dataNominal = data.getNominalAttributes();
+        List<Integer> numericCols = new ArrayList<Integer>();
+        for (int j = 0; j < dataNumeric.length; j++) {
+            if (replaceMissing || header.attribute(dataNumeric[j]).type() == Attribute.NUMERIC) {
+                numericCols.add(j);
+            }
+        }
+        List<Integer> nominalCols = new ArrayList<Integer>();
+        for (int j = 0; j < dataNominal.length; j++) {
+            if (replaceMissing || header.attribute(dataNominal[j]).isNominal()) {
+                nominalCols.add(j);
+            }
+        }
+        numRows = data.numRows();
+        numNumeric = numericCols.size();
+        numNominal = nominalCols.size();
+        numericAttributes = new int[numNumeric];
+        nominalAttributes = new int[numNominal];
+        min = new double[numNumeric];
+        width = new double[numNumeric];
+        numericFill = replaceMissing ? new double[numNumeric] : null;
+        nominalFill = replaceMissing ? new int[numNominal] : null;
+        for (int j = 0; j < numNumeric; j++) {
+            int col = numericCols.get(j);
+            numericAttributes[j] = dataNumeric[col];
+            min[j] = data.getMin(col);
+            width[j] = data.getMax(col) - min[j];
+            if (replaceMissing) {
+                numericFill[j] = data.getMean(col);
+            }
+        }
+        for (int j = 0; j < numNominal; j++) {
+            int col = nominalCols.get(j);
+            nominalAttributes[j] = dataNominal[col];
+            if (replaceMissing) {
+                nominalFill[j] = data.getMode(col);
+            }
+        }
+
+        numeric = singlePrecision ? null : new double[numRows * numNumeric];
+        numericFloat = singlePrecision ? new float[numRows * numNumeric] : null;
+        nominal = new int[numRows * numNominal];
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numNumeric; j++) {
+                double v = normalize(data.numericValue(i, numericCols.get(j)), j);
+                if (singlePrecision) {
+                    numericFloat[i * numNumeric + j] = (float) v;
+                } else {
+                    numeric[i * numNumeric + j] = v;
+                }
+            }
+            for (int j = 0; j < numNominal; j++) {
+                int v = data.nominalValue(i, nominalCols.get(j));
+                nominal[i * numNominal + j] = v < 0 && replaceMissing ? nominalFill[j] : v;
+            }
+        }
+    }
+
+    private double normalize(double v, int j) {
+        if (Double.isNaN(v)) {
+            if (numericFill == null) {
+                return v;
+            }
+            v = numericFill[j];
+        }
+        return width[j] > 0 ? (v - min[j]) / width[j] : 0;
+    }
+
+    /**
+     * Normalizuje instancję spoza zbioru (dla clusterInstance).
+     * @param instance instancja o strukturze danych
+     * @param num bufor wartości numerycznych (długość getNumNumeric())
+     * @param nom bufor wartości nominalnych (długość getNumNominal())
+     */
+    public void normalize(Instance instance, double[] num, int[] nom) {
+        for (int j = 0; j < numNumeric; j++) {
+            num[j] = normalize(instance.value(numericAttributes[j]), j);
+        }
+        for (int j = 0; j < numNominal; j++) {
+            double v = instance.value(nominalAttributes[j]);
+            nom[j] = Utils.isMissingValue(v) ? (nominalFill == null ? -1 : nominalFill[j]) : (int) v;
+        }
+    }
+
+    /**
+     * @return kwadrat odległości między wierszami a i b
+     */
+    public double distance2(int a, int b) {
+        double dist = 0;
+        int oa = a * numNumeric;
+        int ob = b * numNumeric;
+        if (numeric != null) {
+            for (int j = 0; j < numNumeric; j++) {
+                double diff = difference(numeric[oa + j], numeric[ob + j]);
+                dist += diff * diff;
+            }
+        } else {
+            for (int j = 0; j < numNumeric; j++) {
+                double diff = difference(numericFloat[oa + j], numericFloat[ob + j]);
+                dist += diff * diff;
+            }
+        }
+        oa = a * numNominal;
+        ob = b * numNominal;
+        for (int j = 0; j < numNominal; j++) {
+            int va = nominal[oa + j];
+            if (va < 0 || va != nominal[ob + j]) {
+                dist += 1;
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * @param a numer wiersza
+     * @param num znormalizowane wartości numeryczne punktu (zob. normalize)
+     * @param nom wartości nominalne punktu
+     * @return kwadrat odległości wiersza a od punktu
+     */
+    public double distance2(int a, double[] num, int[] nom) {
+        double dist = 0;
+        int oa = a * numNumeric;
+        for (int j = 0; j < numNumeric; j++) {
+            double diff = difference(numeric != null ? numeric[oa + j] : numericFloat[oa + j], num[j]);
+            dist += diff * diff;
+        }
+        oa = a * numNominal;
+        for (int j = 0; j < numNominal; j++) {
+            if (nom[j] < 0 || nom[j] != nominal[oa + j]) {
+                dist += 1;
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Różnica znormalizowanych wartości z obsługą brakujących wartości jak w EuclideanDistance.
+     */
+    private static double difference(double a, double b) {
+        boolean missingA = Double.isNaN(a);
+        boolean missingB = Double.isNaN(b);
+        if (!missingA && !missingB) {
+            return a - b;
+        }
+        if (missingA && missingB) {
+            return 1;
+        }
+        double v = missingA ? b : a;
+        return v < 0.5 ? 1.0 - v : v;
+    }
+
+    /**
+     * Wyznacza spakowaną macierz odległości (pary i &lt; j, wiersz po wierszu - zob. index).
+     * Kafelki macierzy pobierane są dynamicznie przez workers zadań wykonywanych w puli.
+     * @param pool pula wątków (null - bieżący wątek)
+     * @param workers liczba zadań
+     * @param squared czy zwracać kwadraty odległości
+     * @return macierz odległości
+     * @throws Exception gdy macierz nie mieści się w tablicy lub obliczenia zostały przerwane
+     */
+    public double[] condensedMatrix(ExecutorService pool, int workers, final boolean squared) throws Exception {
+        final int n = numRows;
+        long pairs = (long) n * (n - 1) / 2;
+        if (pairs > Integer.MAX_VALUE - 8) {
+            throw new Exception("Macierz odleglosci dla " + n + " wierszy nie miesci sie w pamieci");
+        }
+        final double[] matrix = new double[(int) pairs];
+        final int blocks = (n + TILE - 1) / TILE;
+        final int tiles = blocks * (blocks + 1) / 2;
+        final AtomicInteger next = new AtomicInteger();
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int w = 0; w < Math.max(1, pool == null ? 1 : workers); w++) {
+            tasks.add(new Callable<Object>() {
+
+                public Object call() {
+                    for (int t = next.getAndIncrement(); t < tiles; t = next.getAndIncrement()) {
+                        //kafelek t -> para blokow (bi <= bj)
+                        int bi = 0;
+                        int rest = t;
+                        while (rest >= blocks - bi) {
+                            rest -= blocks - bi;
+                            bi++;
+                        }
+                        int bj = bi + rest;
+                        int iTo = Math.min(n, (bi + 1) * TILE);
+                        int jTo = Math.min(n, (bj + 1) * TILE);
+                        for (int i = bi * TILE; i < iTo; i++) {
+                            int j = Math.max(i + 1, bj * TILE);
+                            if (j >= jTo) {
+                                continue;
+                            }
+                            int offset = index(n, i, j);
+                            for (; j < jTo; j++) {
+                                double d = distance2(i, j);
+                                matrix[offset++] = squared ? d : Math.sqrt(d);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        EngineExecutors.invokeAll(pool, tasks);
+        return matrix;
+    }
+
+    /**
+     * @param n liczba wierszy
+     * @param i numer wiersza
+     * @param j numer wiersza (i &lt; j)
+     * @return pozycja pary (i, j) w spakowanej macierzy odległości
+     */
+    public static int index(int n, int i, int j) {
+        return (int) ((long) i * (2L * n - i - 1) / 2 + (j - i - 1));
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int getNumNumeric() {
+        return numNumeric;
+    }
+
+    public int getNumNominal() {
+        return numNominal;
+    }
+
+    /**
+     * @return czy wartości przechowywane są w pojedynczej precyzji
+     */
+    public boolean isSinglePrecision() {
+        return numericFloat != null;
+    }
+
+    /**
+     * @return rozmiar spakowanych wierszy w bajtach
+     */
+    public long sizeInBytes() {
+        return (numeric != null ? 8L * numeric.length : 4L * numericFloat.length) + 4L * nominal.length;
+    }
+}
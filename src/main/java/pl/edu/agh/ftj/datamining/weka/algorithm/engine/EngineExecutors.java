@@ -0,0 +1,196 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pomocnicze metody do równoległego wykonywania obliczeń w silnikach klasteryzacji.
+ * Każde budowanie modelu korzysta z własnej puli wątków (tworzonej i zamykanej przez silnik),
+ * dzięki czemu zagnieżdżone obliczenia równoległe nie mogą się wzajemnie zablokować.
+ * Domyślna liczba wątków: właściwość systemowa weka.engine.threads (domyślnie liczba procesorów).
+ * <p>
+ * Łączna liczba wątków wszystkich pul jest ograniczona wspólnym limitem (właściwość systemowa
+ * weka.engine.maxThreads, domyślnie liczba procesorów), niezależnie od liczby jednocześnie budowanych modeli
+ * i opcji -threads. Pula otrzymuje tyle wątków, ile pozostało w limicie (nie więcej niż żądano), a wątki wracają
+ * do limitu po zamknięciu i zakończeniu zadań. Gdy limit jest wyczerpany, zadania wykonywane są w wątku
+ * wywołującym - tworzenie puli nigdy nie czeka na wątki, więc zagnieżdżone pule nie mogą się zablokować.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class EngineExecutors {
+
+    private static final Semaphore budget = new Semaphore(maxThreads());
+
+    private EngineExecutors() {
+    }
+
+    /**
+     * @return łączny limit wątków wszystkich pul
+     */
+    public static int maxThreads() {
+        return Math.max(1, Integer.getInteger("weka.engine.maxThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @return liczba wątków, które można jeszcze przydzielić nowym pulom
+     */
+    public static int availableThreads() {
+        return budget.availablePermits();
+    }
+
+    /**
+     * @return domyślna liczba wątków obliczeniowych
+     */
+    public static int defaultThreads() {
+        return Math.max(1, Integer.getInteger("weka.engine.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Tworzy pulę wątków-demonów o podanym rozmiarze, ograniczonym do wątków pozostałych we wspólnym limicie.
+     * @param name przedrostek nazwy wątków
+     * @param threads żądana liczba wątków
+     * @return pula wątków (do zamknięcia przez wywołującego, co zwraca wątki do limitu)
+     */
+    public static ExecutorService newPool(final String name, int threads) {
+        int granted = acquire(Math.max(1, threads));
+        if (granted == 0) {
+            return new CallerRunsExecutor();
+        }
+        final int permits = granted;
+        return new ThreadPoolExecutor(permits, permits, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }) {
+
+            @Override
+            protected void terminated() {
+                budget.release(permits);
+            }
+        };
+    }
+
+    /**
+     * Pobiera z limitu co najwyżej podaną liczbę wątków bez czekania.
+     * @param threads żądana liczba wątków
+     * @return liczba przydzielonych wątków (0 - limit wyczerpany)
+     */
+    private static int acquire(int threads) {
+        while (true) {
+            int available = budget.availablePermits();
+            int granted = Math.min(threads, available);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (budget.tryAcquire(granted)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Wykonuje zadania i zwraca ich wyniki w kolejności zadań. Jeśli pula jest null,
+     * zadania wykonywane są w bieżącym wątku.
+     * @param pool pula wątków (lub null)
+     * @param tasks zadania
+     * @return wyniki zadań
+     * @throws Exception pierwszy wyjątek zgłoszony przez zadanie
+     */
+    public static <T> List<T> invokeAll(ExecutorService pool, List<? extends Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (pool == null || tasks.size() == 1) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+        try {
+            for (Future<T> f : futures) {
+                results.add(f.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<T> f : futures) {
+                f.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new Exception(cause);
+        }
+        return results;
+    }
+
+    /**
+     * Pula bez własnych wątków, wykonująca zadania w wątku wywołującym (gdy wspólny limit jest wyczerpany).
+     */
+    private static class CallerRunsExecutor extends AbstractExecutorService {
+
+        private volatile boolean shutdown = false;
+
+        public void execute(Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Pula zostala zamknieta");
+            }
+            command.run();
+        }
+
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+
+    /**
+     * Dzieli zakres [0, n) na co najwyżej parts spójnych przedziałów.
+     * @param n rozmiar zakresu
+     * @param parts liczba przedziałów
+     * @return granice przedziałów (długość liczba przedziałów + 1)
+     */
+    public static int[] split(int n, int parts) {
+        parts = Math.max(1, Math.min(parts, n));
+        int[] bounds = new int[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            bounds[i] = (int) ((long) n * i / parts);
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,172 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+/**
+ * Drzewo k-d nad niewielkim zbiorem punktów (np. środków klastrów), wyszukujące najbliższy i drugi najbliższy punkt.
+ * Węzły dzielone są w medianie wymiaru o największej rozpiętości. Odległości w liściach liczone są przez podaną
+ * metrykę (dokładnie tak jak przy pełnym przeszukiwaniu), a współrzędne punktów służą tylko do odcinania poddrzew,
+ * więc wynik jest taki sam jak przy sprawdzeniu wszystkich punktów (przy remisie - punkt o najmniejszym numerze).
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+class KdTree {
+
+    /**
+     * Maksymalna liczba punktów w liściu.
+     */
+    static final int LEAF_SIZE = 4;
+    /**
+     * Względny margines odcinania (różnice zaokrągleń między współrzędnymi a metryką).
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Kwadrat odległości zapytania od punktu drzewa.
+     */
+    interface Metric {
+
+        double distance2(int point);
+    }
+
+    private final double[][] points;
+    /**
+     * Numery punktów uporządkowane tak, że każdy węzeł obejmuje przedział [nodeFrom, nodeTo).
+     */
+    private final int[] order;
+    private final int[] nodeFrom;
+    private final int[] nodeTo;
+    /**
+     * Wymiar podziału (-1 - liść).
+     */
+    private final int[] nodeDim;
+    private final double[] nodeSplit;
+    private final int[] nodeLeft;
+    private final int[] nodeRight;
+    private int numNodes = 0;
+
+    /**
+     * @param points współrzędne punktów (tablica nie jest kopiowana)
+     */
+    KdTree(double[][] points) {
+        this.points = points;
+        int k = points.length;
+        order = new int[k];
+        for (int i = 0; i < k; i++) {
+            order[i] = i;
+        }
+        int capacity = 2 * k + 1;
+        nodeFrom = new int[capacity];
+        nodeTo = new int[capacity];
+        nodeDim = new int[capacity];
+        nodeSplit = new double[capacity];
+        nodeLeft = new int[capacity];
+        nodeRight = new int[capacity];
+        build(0, k);
+    }
+
+    private int build(int from, int to) {
+        int node = numNodes++;
+        nodeFrom[node] = from;
+        nodeTo[node] = to;
+        nodeDim[node] = -1;
+        if (to - from <= LEAF_SIZE) {
+            return node;
+        }
+        int dim = -1;
+        double spread = 0;
+        for (int j = 0; j < points[order[from]].length; j++) {
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int p = from; p < to; p++) {
+                double v = points[order[p]][j];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            if (max - min > spread) {
+                spread = max - min;
+                dim = j;
+            }
+        }
+        if (dim < 0) {
+            // wszystkie punkty węzła są identyczne
+            return node;
+        }
+        int mid = (from + to) >>> 1;
+        select(from, to - 1, mid, dim);
+        nodeDim[node] = dim;
+        nodeSplit[node] = points[order[mid]][dim];
+        nodeLeft[node] = build(from, mid);
+        nodeRight[node] = build(mid, to);
+        return node;
+    }
+
+    /**
+     * Ustawia w order[nth] punkt o nth-tej co do wielkości współrzędnej dim w przedziale [lo, hi],
+     * mniejsze lub równe przed nim, większe lub równe za nim.
+     */
+    private void select(int lo, int hi, int nth, int dim) {
+        while (lo < hi) {
+            double pivot = points[order[nth]][dim];
+            int i = lo;
+            int j = hi;
+            do {
+                while (points[order[i]][dim] < pivot) {
+                    i++;
+                }
+                while (pivot < points[order[j]][dim]) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            } while (i <= j);
+            if (j < nth) {
+                lo = i;
+            }
+            if (nth < i) {
+                hi = j;
+            }
+        }
+    }
+
+    /**
+     * Wyszukuje najbliższy punkt.
+     * @param query współrzędne zapytania
+     * @param metric dokładna odległość zapytania od punktów
+     * @param out wynik: [0] - kwadrat odległości najbliższego punktu, [1] - drugiego najbliższego,
+     * [2] - zwiększane o liczbę obliczonych odległości
+     * @return numer najbliższego punktu
+     */
+    int nearest(double[] query, Metric metric, double[] out) {
+        out[0] = Double.MAX_VALUE;
+        out[1] = Double.MAX_VALUE;
+        return search(0, query, metric, out, -1);
+    }
+
+    private int search(int node, double[] query, Metric metric, double[] out, int best) {
+        int dim = nodeDim[node];
+        if (dim < 0) {
+            for (int p = nodeFrom[node]; p < nodeTo[node]; p++) {
+                int c = order[p];
+                double d = metric.distance2(c);
+                out[2]++;
+                if (d < out[0] || (d == out[0] && c < best)) {
+                    out[1] = out[0];
+                    out[0] = d;
+                    best = c;
+                } else if (d < out[1]) {
+                    out[1] = d;
+                }
+            }
+            return best;
+        }
+        double diff = query[dim] - nodeSplit[node];
+        best = search(diff <= 0 ? nodeLeft[node] : nodeRight[node], query, metric, out, best);
+        if (diff * diff * (1 - EPSILON) <= out[1]) {
+            best = search(diff <= 0 ? nodeRight[node] : nodeLeft[node], query, metric, out, best);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,368 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Zbiór danych przechowywany poza stertą, w pliku odwzorowanym w pamięci (MappedByteBuffer).
+ * Dane nie są parsowane ani kopiowane na stertę - system operacyjny wczytuje strony pliku na żądanie,
+ * dzięki czemu zbiór może być większy niż sterta maszyny wirtualnej.
+ * <p>
+ * Format pliku:
+ * <ul>
+ * <li>wiersze o stałej długości: wartości numeryczne (double), numery wartości nominalnych (int), waga (double),</li>
+ * <li>nagłówek: zserializowana struktura danych (ze słownikami atrybutów tekstowych), liczba wierszy i statystyki kolumn,</li>
+ * <li>stopka: odcisk treści źródłowej (long, 0 - nieznany), położenie nagłówka (long), wersja formatu (int),
+ * znacznik pliku (int).</li>
+ * </ul>
+ * Nagłówek zapisywany jest na końcu, ponieważ słowniki atrybutów tekstowych i statystyki znane są
+ * dopiero po odczytaniu wszystkich wierszy; plik zapisywany jest pod nazwą tymczasową i przemianowywany
+ * po zapisaniu stopki, więc plik o docelowej nazwie jest zawsze kompletny.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class MappedDataset extends NumericDataset {
+
+    /**
+     * Znacznik pliku.
+     */
+    private static final int MAGIC = 0x57445331;
+    /**
+     * Wersja formatu.
+     */
+    private static final int VERSION = 2;
+    /**
+     * Rozmiar stopki [B].
+     */
+    private static final int FOOTER = 24;
+    /**
+     * Maksymalny rozmiar jednego odwzorowanego fragmentu pliku [B].
+     */
+    private static final long SEGMENT = Integer.MAX_VALUE;
+
+    /**
+     * Odwzorowane fragmenty pliku (każdy zawiera całkowitą liczbę wierszy).
+     */
+    private final MappedByteBuffer[] segments;
+    /**
+     * Liczba wierszy w jednym fragmencie.
+     */
+    private final int rowsPerSegment;
+    /**
+     * Długość wiersza [B].
+     */
+    private final int recordSize;
+    /**
+     * Położenie numeru wartości nominalnej w wierszu [B].
+     */
+    private final int nominalOffset;
+    /**
+     * Położenie wagi w wierszu [B].
+     */
+    private final int weightOffset;
+    /**
+     * Plik z danymi.
+     */
+    private final File file;
+    /**
+     * Odcisk treści, z której utworzono plik (0 - nieznany).
+     */
+    private final long fingerprint;
+
+    private MappedDataset(File file, long fingerprint, Instances header, int numRows, DatasetStats stats,
+            MappedByteBuffer[] segments) {
+        super(header, numRows, stats);
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.segments = segments;
+        this.nominalOffset = 8 * numericAttributes.length;
+        this.weightOffset = nominalOffset + 4 * nominalAttributes.length;
+        this.recordSize = weightOffset + 8;
+        this.rowsPerSegment = (int) (SEGMENT / recordSize);
+    }
+
+    /**
+     * Otwiera zapisany zbiór danych.
+     * @param file plik zbioru
+     * @return zbiór danych
+     * @throws IOException gdy pliku nie można odczytać lub ma niepoprawny format
+     */
+    public static MappedDataset open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < FOOTER) {
+                throw new IOException("Niepoprawny plik danych: " + file);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER);
+            readFully(channel, footer, size - FOOTER);
+            long fingerprint = footer.getLong(0);
+            long headerOffset = footer.getLong(8);
+            if (footer.getInt(20) != MAGIC || headerOffset < 0 || headerOffset > size - FOOTER) {
+                throw new IOException("Niepoprawny plik danych: " + file);
+            }
+            if (footer.getInt(16) != VERSION) {
+                throw new IOException("Nieobslugiwana wersja pliku danych: " + footer.getInt(16));
+            }
+
+            ByteBuffer block = ByteBuffer.allocate((int) (size - FOOTER - headerOffset));
+            readFully(channel, block, headerOffset);
+            Instances header;
+            int numRows;
+            DatasetStats stats;
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(block.array()));
+            try {
+                header = (Instances) in.readObject();
+                numRows = in.readInt();
+                stats = DatasetStats.restore(header, (double[]) in.readObject(), (double[]) in.readObject(),
+                        (double[]) in.readObject(), (int[]) in.readObject());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Niepoprawny naglowek pliku danych: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Niepoprawny naglowek pliku danych: " + e.getMessage());
+            } finally {
+                in.close();
+            }
+
+            int recordSize = 8 * stats.numericAttributes.length + 4 * stats.nominalAttributes.length + 8;
+            if ((long) numRows * recordSize != headerOffset) {
+                throw new IOException("Niepoprawny rozmiar pliku danych: " + file);
+            }
+            long rowsPerSegment = SEGMENT / recordSize;
+            int count = (int) ((numRows + rowsPerSegment - 1) / rowsPerSegment);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int s = 0; s < count; s++) {
+                long from = s * rowsPerSegment * recordSize;
+                long length = Math.min(rowsPerSegment * recordSize, headerOffset - from);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+            }
+            return new MappedDataset(file, fingerprint, header, numRows, stats, segments);
+        } finally {
+            // odwzorowanie pozostaje ważne po zamknięciu pliku
+            raf.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Nieoczekiwany koniec pliku danych");
+            }
+        }
+    }
+
+    /**
+     * Zapisuje zbiór danych do pliku i otwiera go.
+     * @param data dane
+     * @param file plik docelowy
+     * @return zbiór odwzorowany w pamięci
+     * @throws IOException w przypadku błędu zapisu
+     */
+    public static MappedDataset write(NumericDataset data, File file) throws IOException {
+        Writer writer = new Writer(file, data.getHeader());
+        try {
+            double[] num = new double[data.getNumNumeric()];
+            int[] nom = new int[data.getNumNominal()];
+            for (int i = 0; i < data.numRows(); i++) {
+                data.readRow(i, num, nom);
+                writer.add(num, nom, data.weight(i));
+            }
+            return writer.finish();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    /**
+     * @return plik z danymi
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return odcisk treści, z której utworzono plik (0 - nieznany)
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public void readRow(int row, double[] num, int[] nom) {
+        ByteBuffer segment = segments[row / rowsPerSegment];
+        int offset = (row % rowsPerSegment) * recordSize;
+        for (int c = 0; c < num.length; c++) {
+            num[c] = segment.getDouble(offset + 8 * c);
+        }
+        offset += nominalOffset;
+        for (int c = 0; c < nom.length; c++) {
+            nom[c] = segment.getInt(offset + 4 * c);
+        }
+    }
+
+    @Override
+    public double numericValue(int row, int col) {
+        return segments[row / rowsPerSegment].getDouble((row % rowsPerSegment) * recordSize + 8 * col);
+    }
+
+    @Override
+    public int nominalValue(int row, int col) {
+        return segments[row / rowsPerSegment].getInt((row % rowsPerSegment) * recordSize + nominalOffset + 4 * col);
+    }
+
+    @Override
+    public double weight(int row) {
+        return segments[row / rowsPerSegment].getDouble((row % rowsPerSegment) * recordSize + weightOffset);
+    }
+
+    /**
+     * @return rozmiar danych na stercie (struktura i statystyki; wiersze leżą poza stertą)
+     */
+    @Override
+    public long sizeInBytes() {
+        return 64L * header.numAttributes() + 256L;
+    }
+
+    /**
+     * Zapisuje zbiór danych wiersz po wierszu wprost do pliku (bez przechowywania wierszy na stercie).
+     */
+    public static class Writer {
+
+        private final File file;
+        private final File temp;
+        private final Instances header;
+        private final DatasetStats stats;
+        private final double[] rowNumeric;
+        private final int[] rowNominal;
+        private DataOutputStream out;
+        private int numRows = 0;
+
+        /**
+         * Dane zapisywane są do unikalnego pliku tymczasowego w katalogu pliku docelowego, więc równoczesne
+         * zapisy tego samego pliku nie nadpisują się nawzajem (opublikowany zostaje plik zakończony jako ostatni).
+         * @param file plik docelowy
+         * @param header struktura danych (słowniki atrybutów tekstowych mogą rosnąć w trakcie zapisu)
+         * @throws IOException gdy nie można utworzyć pliku
+         * @throws IllegalArgumentException gdy dane zawierają nieobsługiwany typ atrybutu
+         */
+        public Writer(File file, Instances header) throws IOException {
+            this.file = file;
+            this.header = header;
+            this.stats = new DatasetStats(header);
+            this.rowNumeric = new double[stats.numericAttributes.length];
+            this.rowNominal = new int[stats.nominalAttributes.length];
+            this.temp = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+        }
+
+        /**
+         * Dopisuje instancję.
+         * @param inst instancja zgodna ze strukturą
+         * @throws IOException w przypadku błędu zapisu
+         */
+        public void add(Instance inst) throws IOException {
+            for (int c = 0; c < rowNumeric.length; c++) {
+                rowNumeric[c] = inst.value(stats.numericAttributes[c]);
+            }
+            for (int c = 0; c < rowNominal.length; c++) {
+                double v = inst.value(stats.nominalAttributes[c]);
+                rowNominal[c] = Utils.isMissingValue(v) ? -1 : (int) v;
+            }
+            add(rowNumeric, rowNominal, inst.weight());
+        }
+
+        private void add(double[] num, int[] nom, double weight) throws IOException {
+            if ((long) (numRows + 1) * (8 * num.length + 4 * nom.length + 8) < 0 || numRows == Integer.MAX_VALUE) {
+                throw new IOException("Zbyt duzy zbior danych");
+            }
+            for (double v : num) {
+                out.writeDouble(v);
+            }
+            for (int v : nom) {
+                out.writeInt(v);
+            }
+            out.writeDouble(weight);
+            stats.add(num, nom, weight);
+            numRows++;
+        }
+
+        /**
+         * @return liczba dopisanych wierszy
+         */
+        public int numRows() {
+            return numRows;
+        }
+
+        /**
+         * Zapisuje nagłówek i stopkę (bez odcisku treści), przemianowuje plik i otwiera zapisany zbiór.
+         * @return zbiór odwzorowany w pamięci
+         * @throws IOException w przypadku błędu zapisu
+         */
+        public MappedDataset finish() throws IOException {
+            return finish(0L);
+        }
+
+        /**
+         * Zapisuje nagłówek i stopkę, przemianowuje plik i otwiera zapisany zbiór.
+         * @param fingerprint odcisk treści, z której utworzono dane (0 - nieznany)
+         * @return zbiór odwzorowany w pamięci
+         * @throws IOException w przypadku błędu zapisu
+         */
+        public MappedDataset finish(long fingerprint) throws IOException {
+            stats.finish();
+            long headerOffset = (long) numRows * (8 * rowNumeric.length + 4 * rowNominal.length + 8);
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(block);
+            oos.writeObject(new Instances(header, 0));
+            oos.writeInt(numRows);
+            oos.writeObject(stats.min);
+            oos.writeObject(stats.max);
+            oos.writeObject(stats.mean);
+            oos.writeObject(stats.mode);
+            oos.close();
+            block.writeTo(out);
+            out.writeLong(fingerprint);
+            out.writeLong(headerOffset);
+            out.writeInt(VERSION);
+            out.writeInt(MAGIC);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                temp.delete();
+                throw new IOException("Nie mozna zapisac pliku danych: " + file);
+            }
+            return open(file);
+        }
+
+        /**
+         * Przerywa zapis i usuwa plik tymczasowy (nic nie robi po wywołaniu finish()).
+         */
+        public void abort() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                // plik tymczasowy jest i tak usuwany
+            }
+            out = null;
+            temp.delete();
+        }
+    }
+}
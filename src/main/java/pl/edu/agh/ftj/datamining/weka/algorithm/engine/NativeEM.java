@@ -0,0 +1,753 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import weka.clusterers.NumberOfClustersRequestable;
+import weka.clusterers.RandomizableDensityBasedClusterer;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * Implementacja algorytmu EM pracująca bezpośrednio na zbiorze NumericDataset, z tym samym modelem co EM
+ * z biblioteki Weka: rozkład normalny dla atrybutów numerycznych, rozkład dyskretny z poprawką Laplace'a
+ * dla atrybutów nominalnych, inicjalizacja algorytmem k-średnich (od podanych środków - setInitialCentroids). Krok E zbiera od razu statystyki
+ * potrzebne w kroku M, więc macierz prawdopodobieństw przynależności (wiersze x klastry) nie jest tworzona.
+ * Brakujące wartości są pomijane. Krok E wykonywany jest równolegle na fragmentach wierszy (każdy fragment
+ * zbiera własne sumy, łączone w kolejności fragmentów).
+ * <p>
+ * Dla liczby klastrów -1 liczba klastrów wybierana jest walidacją krzyżową jak w EM z biblioteki Weka:
+ * dla k = 1, 2, ... średni logarytm wiarygodności części testowych 10 podziałów (lub tylu, ile jest wierszy,
+ * gdy jest ich mniej niż 10) jest liczony dopóki rośnie, a wybierane jest ostatnie k, dla którego wzrósł.
+ * Modele wszystkich podziałów oraz kilku kolejnych wartości k (tak aby zająć wszystkie wątki) budowane są
+ * jednocześnie; wynik jest taki sam jak przy sprawdzaniu kolejnych k po kolei.
+ * <p>
+ * Opcje: -N liczba klastrów (-1 - wybór walidacją krzyżową), -I maksymalna liczba iteracji, -M minimalne
+ * odchylenie standardowe, -S ziarno, -threads liczba wątków, -maxK maksymalna liczba klastrów sprawdzana
+ * walidacją krzyżową.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class NativeEM extends RandomizableDensityBasedClusterer implements NumberOfClustersRequestable, DatasetClusterer {
+
+    private static final long serialVersionUID = 6021741875128845630L;
+
+    /**
+     * log(sqrt(2*pi))
+     */
+    private static final double LOG_SQRT_2PI = Math.log(Math.sqrt(2 * Math.PI));
+    /**
+     * Minimalna poprawa logarytmu wiarygodności kończąca iteracje.
+     */
+    private static final double MIN_IMPROVEMENT = 1e-6;
+
+    /**
+     * Żądana liczba klastrów.
+     */
+    private int numClusters = 2;
+    /**
+     * Maksymalna liczba iteracji.
+     */
+    private int maxIterations = 100;
+    /**
+     * Minimalne odchylenie standardowe.
+     */
+    private double minStdDev = 1e-6;
+    /**
+     * Liczba wątków obliczeniowych.
+     */
+    private int numThreads = EngineExecutors.defaultThreads();
+    /**
+     * Maksymalna liczba klastrów sprawdzana walidacją krzyżową (-1 - bez ograniczenia).
+     */
+    private int maxClusters = -1;
+
+    private Instances header;
+    private int[] numericAttributes;
+    private int[] nominalAttributes;
+    /**
+     * Prawdopodobieństwa a priori klastrów.
+     */
+    private double[] priors;
+    /**
+     * Średnie, odchylenia i sumy wag kolumn numerycznych w klastrach [klaster][kolumna].
+     */
+    private double[][] means;
+    private double[][] stdDevs;
+    private double[][] weightSums;
+    /**
+     * Logarytmy prawdopodobieństw wartości nominalnych [klaster][kolumna][wartość].
+     */
+    private double[][][] logProbs;
+    /**
+     * Przypisania wierszy treningowych (najbardziej prawdopodobny klaster).
+     */
+    private int[] assignments;
+    /**
+     * Średni logarytm wiarygodności na wiersz dla końcowego modelu.
+     */
+    private double logLikelihood = Double.NaN;
+    /**
+     * Liczba wykonanych iteracji.
+     */
+    private int iterations;
+    /**
+     * Środki początkowe dla inicjalizującego algorytmu k-średnich (null - wybór losowy).
+     */
+    private Instances initialCentroids = null;
+    /**
+     * Średnie logarytmy wiarygodności walidacji krzyżowej dla kolejnych k (null - liczba klastrów podana).
+     */
+    private double[] cvLogLikelihoods = null;
+
+    public NativeEM() {
+        super();
+        m_SeedDefault = 100;
+        setSeed(m_SeedDefault);
+    }
+
+    /**
+     * @return opis algorytmu
+     */
+    public String globalInfo() {
+        return "EM (Gaussian numeric / discrete nominal model) working on packed datasets.";
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capability.NO_CLASS);
+        result.enable(Capability.NOMINAL_ATTRIBUTES);
+        result.enable(Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capability.DATE_ATTRIBUTES);
+        result.enable(Capability.MISSING_VALUES);
+        return result;
+    }
+
+    @Override
+    public void buildClusterer(Instances data) throws Exception {
+        buildClusterer(PackedDataset.of(data));
+    }
+
+    public void buildClusterer(NumericDataset data) throws Exception {
+        Capabilities caps = getCapabilities();
+        caps.setMinimumNumberInstances(0);
+        caps.testWithFail(data.getHeader());
+        if (data.numRows() == 0) {
+            throw new Exception("Brak instancji do klasteryzacji");
+        }
+        header = data.getHeader();
+        numericAttributes = data.getNumericAttributes();
+        nominalAttributes = data.getNominalAttributes();
+
+        ExecutorService pool = numThreads > 1 ? EngineExecutors.newPool("weka-em", numThreads) : null;
+        try {
+            int k = numClusters;
+            cvLogLikelihoods = null;
+            if (k < 0 && initialCentroids == null) {
+                k = crossValidate(pool, data);
+            }
+            int[] bounds = EngineExecutors.split(data.numRows(), numThreads);
+            initialize(data, k);
+            double previous = Double.NEGATIVE_INFINITY;
+            iterations = 0;
+            while (iterations < maxIterations) {
+                iterations++;
+                Stats stats = expectation(pool, bounds, data, null);
+                maximization(stats);
+                if (iterations > 1 && Math.abs(stats.logLikelihood - previous) < MIN_IMPROVEMENT) {
+                    break;
+                }
+                previous = stats.logLikelihood;
+            }
+            assignments = new int[data.numRows()];
+            Stats last = expectation(pool, bounds, data, assignments);
+            logLikelihood = last.logLikelihood;
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Wybiera liczbę klastrów walidacją krzyżową. Zadania (k, podział) wykonywane są w puli falami po
+     * kilka kolejnych wartości k; fala kończy się, gdy któreś k nie poprawiło wyniku.
+     * @return wybrana liczba klastrów
+     */
+    private int crossValidate(ExecutorService pool, final NumericDataset data) throws Exception {
+        int n = data.numRows();
+        int numFolds = Math.min(10, n);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(getSeed());
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        final NumericDataset[] train = new NumericDataset[numFolds];
+        final NumericDataset[] test = new NumericDataset[numFolds];
+        int smallestTrain = n;
+        for (int f = 0; f < numFolds; f++) {
+            int from = (int) ((long) n * f / numFolds);
+            int to = (int) ((long) n * (f + 1) / numFolds);
+            int[] testRows = new int[to - from];
+            int[] trainRows = new int[n - testRows.length];
+            System.arraycopy(order, from, testRows, 0, testRows.length);
+            System.arraycopy(order, 0, trainRows, 0, from);
+            System.arraycopy(order, to, trainRows, from, n - to);
+            train[f] = new SubsetDataset(data, trainRows);
+            test[f] = new SubsetDataset(data, testRows);
+            smallestTrain = Math.min(smallestTrain, trainRows.length);
+        }
+        int limit = Math.max(1, maxClusters > 0 ? Math.min(maxClusters, smallestTrain) : smallestTrain);
+        int wave = pool == null ? 1 : Math.max(1, (numThreads + numFolds - 1) / numFolds);
+
+        List<Double> results = new ArrayList<Double>();
+        double best = -Double.MAX_VALUE;
+        int selected = 1;
+        int k = 1;
+        boolean increased = true;
+        while (increased && k <= limit) {
+            List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+            int last = Math.min(limit, k + wave - 1);
+            for (int c = k; c <= last; c++) {
+                for (int f = 0; f < numFolds; f++) {
+                    final int candidate = c;
+                    final int fold = f;
+                    tasks.add(new Callable<Double>() {
+
+                        public Double call() throws Exception {
+                            NativeEM em = new NativeEM();
+                            em.setSeed(getSeed());
+                            em.setMaxIterations(maxIterations);
+                            em.setMinStdDev(minStdDev);
+                            em.setNumThreads(1);
+                            em.setNumClusters(candidate);
+                            em.buildClusterer(train[fold]);
+                            return em.logLikelihood(test[fold]);
+                        }
+                    });
+                }
+            }
+            List<Double> foldResults = EngineExecutors.invokeAll(pool, tasks);
+            for (int c = k; c <= last && increased; c++) {
+                double sum = 0;
+                for (int f = 0; f < numFolds; f++) {
+                    sum += foldResults.get((c - k) * numFolds + f);
+                }
+                double cv = sum / numFolds;
+                results.add(cv);
+                if (cv > best) {
+                    best = cv;
+                    selected = c;
+                } else {
+                    increased = false;
+                }
+            }
+            k = last + 1;
+        }
+        cvLogLikelihoods = new double[results.size()];
+        for (int i = 0; i < cvLogLikelihoods.length; i++) {
+            cvLogLikelihoods[i] = results.get(i);
+        }
+        return selected;
+    }
+
+    /**
+     * Model początkowy z algorytmu k-średnich (jak w EM z biblioteki Weka).
+     */
+    private void initialize(NumericDataset data, int numClusters) throws Exception {
+        ParallelKMeans kmeans = new ParallelKMeans();
+        kmeans.setNumClusters(numClusters);
+        kmeans.setSeed(getSeed());
+        kmeans.setNumThreads(1);
+        kmeans.setInitialCentroids(initialCentroids);
+        kmeans.buildClusterer(data);
+
+        int k = kmeans.numberOfClusters();
+        int n = data.numRows();
+        Instances centroids = kmeans.getClusterCentroids();
+        Instances devs = kmeans.getClusterStandardDevs();
+        int[] sizes = kmeans.getClusterSizes();
+        int[][][] counts = kmeans.getClusterNominalCounts();
+
+        priors = new double[k];
+        means = new double[k][numericAttributes.length];
+        stdDevs = new double[k][numericAttributes.length];
+        weightSums = new double[k][numericAttributes.length];
+        logProbs = new double[k][nominalAttributes.length][];
+        for (int c = 0; c < k; c++) {
+            priors[c] = (double) sizes[c] / n;
+            for (int j = 0; j < numericAttributes.length; j++) {
+                means[c][j] = centroids.instance(c).value(numericAttributes[j]);
+                stdDevs[c][j] = Math.max(minStdDev, devs.instance(c).value(numericAttributes[j]));
+                weightSums[c][j] = sizes[c];
+            }
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                int[] cnt = counts[c][nominalAttributes[j]];
+                double[] p = new double[data.numValues(j)];
+                double total = p.length;
+                for (int v = 0; v < p.length; v++) {
+                    total += cnt[v];
+                }
+                for (int v = 0; v < p.length; v++) {
+                    p[v] = Math.log((cnt[v] + 1) / total);
+                }
+                logProbs[c][j] = p;
+            }
+        }
+    }
+
+    /**
+     * Krok E: prawdopodobieństwa przynależności wierszy oraz ważone sumy dla kroku M, liczone równolegle
+     * na fragmentach wierszy.
+     * @param assign jeśli różne od null - zapisywane są w nim najbardziej prawdopodobne klastry
+     */
+    private Stats expectation(ExecutorService pool, int[] bounds, final NumericDataset data, final int[] assign) throws Exception {
+        List<Callable<Stats>> tasks = new ArrayList<Callable<Stats>>();
+        for (int t = 0; t < bounds.length - 1; t++) {
+            final int from = bounds[t];
+            final int to = bounds[t + 1];
+            tasks.add(new Callable<Stats>() {
+
+                public Stats call() {
+                    return expectation(data, from, to, assign);
+                }
+            });
+        }
+        Stats stats = null;
+        for (Stats part : EngineExecutors.invokeAll(pool, tasks)) {
+            if (stats == null) {
+                stats = part;
+            } else {
+                stats.merge(part);
+            }
+        }
+        stats.logLikelihood /= stats.totalWeight;
+        return stats;
+    }
+
+    /**
+     * Krok E dla wierszy [from, to) (logarytm wiarygodności nie jest dzielony przez sumę wag).
+     */
+    private Stats expectation(NumericDataset data, int from, int to, int[] assign) {
+        int k = priors.length;
+        Stats stats = new Stats(k, data);
+        double[] num = new double[numericAttributes.length];
+        int[] nom = new int[nominalAttributes.length];
+        double[] joint = new double[k];
+        double[] logPriors = new double[k];
+        for (int c = 0; c < k; c++) {
+            logPriors[c] = Math.log(priors[c]);
+        }
+        for (int i = from; i < to; i++) {
+            data.readRow(i, num, nom);
+            double w = data.weight(i);
+            int best = 0;
+            for (int c = 0; c < k; c++) {
+                joint[c] = logPriors[c] + logDensity(c, num, nom);
+                if (joint[c] > joint[best]) {
+                    best = c;
+                }
+            }
+            double max = joint[best];
+            double sum = 0;
+            for (int c = 0; c < k; c++) {
+                joint[c] = Math.exp(joint[c] - max);
+                sum += joint[c];
+            }
+            stats.logLikelihood += w * (max + Math.log(sum));
+            stats.totalWeight += w;
+            if (assign != null) {
+                assign[i] = best;
+            }
+            for (int c = 0; c < k; c++) {
+                stats.add(c, w * joint[c] / sum, num, nom);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @param data dane o tej samej strukturze co dane treningowe
+     * @return średni (ważony) logarytm wiarygodności wiersza danych w modelu
+     */
+    public double logLikelihood(NumericDataset data) {
+        Stats stats = expectation(data, 0, data.numRows(), null);
+        return stats.logLikelihood / stats.totalWeight;
+    }
+
+    /**
+     * Krok M: nowe parametry modelu z ważonych sum.
+     */
+    private void maximization(Stats stats) {
+        for (int c = 0; c < priors.length; c++) {
+            priors[c] = stats.weight[c] / stats.totalWeight;
+            for (int j = 0; j < numericAttributes.length; j++) {
+                double w = stats.numericWeight[c][j];
+                if (w > 0) {
+                    double mean = stats.sum[c][j] / w;
+                    double var = stats.squares[c][j] / w - mean * mean;
+                    means[c][j] = mean;
+                    stdDevs[c][j] = Math.max(minStdDev, Math.sqrt(Math.max(0, var)));
+                }
+                weightSums[c][j] = w;
+            }
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                double[] cnt = stats.nominalCounts[c][j];
+                double total = cnt.length;
+                for (double v : cnt) {
+                    total += v;
+                }
+                for (int v = 0; v < cnt.length; v++) {
+                    logProbs[c][j][v] = Math.log((cnt[v] + 1) / total);
+                }
+            }
+        }
+        Utils.normalize(priors);
+    }
+
+    /**
+     * Logarytm gęstości wiersza w klastrze c (bez prawdopodobieństwa a priori).
+     */
+    private double logDensity(int c, double[] num, int[] nom) {
+        double logD = 0;
+        double[] m = means[c];
+        double[] s = stdDevs[c];
+        for (int j = 0; j < num.length; j++) {
+            if (!Double.isNaN(num[j])) {
+                double z = (num[j] - m[j]) / s[j];
+                logD -= 0.5 * z * z + LOG_SQRT_2PI + Math.log(s[j]);
+            }
+        }
+        double[][] lp = logProbs[c];
+        for (int j = 0; j < nom.length; j++) {
+            if (nom[j] >= 0) {
+                logD += lp[j][nom[j]];
+            }
+        }
+        return logD;
+    }
+
+    @Override
+    public double[] clusterPriors() throws Exception {
+        return priors.clone();
+    }
+
+    @Override
+    public double[] logDensityPerClusterForInstance(Instance instance) throws Exception {
+        double[] num = new double[numericAttributes.length];
+        int[] nom = new int[nominalAttributes.length];
+        for (int j = 0; j < num.length; j++) {
+            num[j] = instance.value(numericAttributes[j]);
+        }
+        for (int j = 0; j < nom.length; j++) {
+            double v = instance.value(nominalAttributes[j]);
+            nom[j] = Utils.isMissingValue(v) ? -1 : (int) v;
+        }
+        double[] result = new double[priors.length];
+        for (int c = 0; c < priors.length; c++) {
+            result[c] = logDensity(c, num, nom);
+        }
+        return result;
+    }
+
+    @Override
+    public int numberOfClusters() throws Exception {
+        return priors == null ? numClusters : priors.length;
+    }
+
+    /**
+     * @return prawdopodobieństwa a priori klastrów
+     */
+    public double[] getClusterPriors() {
+        return priors.clone();
+    }
+
+    /**
+     * Parametry rozkładów normalnych w formacie EM z biblioteki Weka:
+     * [klaster][atrybut][średnia, odchylenie, suma wag] (zera dla atrybutów nominalnych).
+     * @return parametry modeli klastrów
+     */
+    public double[][][] getClusterModelsNumericAtts() {
+        double[][][] models = new double[priors.length][header.numAttributes()][3];
+        for (int c = 0; c < priors.length; c++) {
+            for (int j = 0; j < numericAttributes.length; j++) {
+                models[c][numericAttributes[j]][0] = means[c][j];
+                models[c][numericAttributes[j]][1] = stdDevs[c][j];
+                models[c][numericAttributes[j]][2] = weightSums[c][j];
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Środki klastrów w postaci instancji: średnie atrybutów numerycznych i najbardziej
+     * prawdopodobne wartości atrybutów nominalnych (mogą posłużyć jako środki początkowe kolejnego uruchomienia).
+     * @return środki klastrów
+     */
+    public Instances getClusterCentroids() {
+        Instances result = new Instances(header, priors.length);
+        for (int c = 0; c < priors.length; c++) {
+            double[] vals = new double[header.numAttributes()];
+            for (int j = 0; j < numericAttributes.length; j++) {
+                vals[numericAttributes[j]] = means[c][j];
+            }
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                vals[nominalAttributes[j]] = Utils.maxIndex(logProbs[c][j]);
+            }
+            result.add(new DenseInstance(1.0, vals));
+        }
+        return result;
+    }
+
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    /**
+     * @return liczba wykonanych iteracji
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Ustawia środki początkowe (warm start); liczba klastrów wynika z liczby podanych środków.
+     * @param initialCentroids środki o tej samej strukturze co dane (null - wybór losowy)
+     */
+    public void setInitialCentroids(Instances initialCentroids) {
+        this.initialCentroids = initialCentroids;
+    }
+
+    public Instances getInitialCentroids() {
+        return initialCentroids;
+    }
+
+    /**
+     * @param numClusters liczba klastrów (-1 - wybór walidacją krzyżową)
+     * @throws Exception gdy liczba klastrów jest niepoprawna
+     */
+    public void setNumClusters(int numClusters) throws Exception {
+        if (numClusters == 0 || numClusters < -1) {
+            throw new Exception("Liczba klastrow musi byc wieksza od 0 (lub -1 - wybor walidacja krzyzowa)");
+        }
+        this.numClusters = numClusters;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public void setMaxIterations(int maxIterations) throws Exception {
+        if (maxIterations < 1) {
+            throw new Exception("Maksymalna liczba iteracji musi byc wieksza od 0");
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param maxClusters maksymalna liczba klastrów sprawdzana walidacją krzyżową (-1 - bez ograniczenia)
+     */
+    public void setMaxClusters(int maxClusters) {
+        this.maxClusters = maxClusters;
+    }
+
+    public int getMaxClusters() {
+        return maxClusters;
+    }
+
+    /**
+     * @return średnie logarytmy wiarygodności walidacji krzyżowej dla k = 1, 2, ...
+     * (null jeśli liczba klastrów była podana)
+     */
+    public double[] getCVLogLikelihoods() {
+        return cvLogLikelihoods == null ? null : cvLogLikelihoods.clone();
+    }
+
+    public void setMinStdDev(double minStdDev) {
+        this.minStdDev = minStdDev;
+    }
+
+    public double getMinStdDev() {
+        return minStdDev;
+    }
+
+    @Override
+    public Enumeration listOptions() {
+        Vector<Option> result = new Vector<Option>();
+        result.addElement(new Option("\tnumber of clusters (-1: select by cross validation).\n\t(default 2).", "N", 1, "-N <num>"));
+        result.addElement(new Option("\tmaximum number of iterations.\n\t(default 100).", "I", 1, "-I <num>"));
+        result.addElement(new Option("\tminimum allowable standard deviation.\n\t(default 1e-6).", "M", 1, "-M <num>"));
+        result.addElement(new Option("\tnumber of threads.\n\t(default: number of processors).", "threads", 1, "-threads <num>"));
+        result.addElement(new Option("\tmaximum number of clusters tried by cross validation.\n\t(default: no limit).", "maxK", 1, "-maxK <num>"));
+        Enumeration en = super.listOptions();
+        while (en.hasMoreElements()) {
+            result.addElement((Option) en.nextElement());
+        }
+        return result.elements();
+    }
+
+    @Override
+    public void setOptions(String[] options) throws Exception {
+        String value = Utils.getOption('N', options);
+        if (value.length() > 0) {
+            setNumClusters(Integer.parseInt(value));
+        }
+        value = Utils.getOption('I', options);
+        if (value.length() > 0) {
+            setMaxIterations(Integer.parseInt(value));
+        }
+        value = Utils.getOption('M', options);
+        if (value.length() > 0) {
+            setMinStdDev(Double.parseDouble(value));
+        }
+        value = Utils.getOption("threads", options);
+        if (value.length() > 0) {
+            setNumThreads(Integer.parseInt(value));
+        }
+        value = Utils.getOption("maxK", options);
+        if (value.length() > 0) {
+            setMaxClusters(Integer.parseInt(value));
+        }
+        super.setOptions(options);
+    }
+
+    @Override
+    public String[] getOptions() {
+        List<String> result = new ArrayList<String>();
+        result.add("-N");
+        result.add("" + numClusters);
+        result.add("-I");
+        result.add("" + maxIterations);
+        result.add("-M");
+        result.add("" + minStdDev);
+        result.add("-threads");
+        result.add("" + numThreads);
+        if (maxClusters > 0) {
+            result.add("-maxK");
+            result.add("" + maxClusters);
+        }
+        for (String o : super.getOptions()) {
+            result.add(o);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: 1 $");
+    }
+
+    @Override
+    public String toString() {
+        if (priors == null) {
+            return "NativeEM: No model built yet.";
+        }
+        StringBuilder sb = new StringBuilder("NativeEM\n========\n\n");
+        if (cvLogLikelihoods != null) {
+            sb.append("Number of clusters selected by cross validation: ").append(priors.length).append('\n');
+        } else {
+            sb.append("Number of clusters: ").append(priors.length).append('\n');
+        }
+        sb.append("Number of iterations: ").append(iterations).append('\n');
+        sb.append("Log likelihood: ").append(logLikelihood).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Ważone sumy zbierane w kroku E.
+     */
+    private class Stats {
+
+        final double[] weight;
+        final double[][] numericWeight;
+        final double[][] sum;
+        final double[][] squares;
+        final double[][][] nominalCounts;
+        double logLikelihood;
+        double totalWeight;
+
+        Stats(int k, NumericDataset data) {
+            weight = new double[k];
+            numericWeight = new double[k][numericAttributes.length];
+            sum = new double[k][numericAttributes.length];
+            squares = new double[k][numericAttributes.length];
+            nominalCounts = new double[k][nominalAttributes.length][];
+            for (int c = 0; c < k; c++) {
+                for (int j = 0; j < nominalAttributes.length; j++) {
+                    nominalCounts[c][j] = new double[data.numValues(j)];
+                }
+            }
+        }
+
+        /**
+         * Dodaje sumy zebrane dla innego fragmentu wierszy.
+         */
+        void merge(Stats other) {
+            logLikelihood += other.logLikelihood;
+            totalWeight += other.totalWeight;
+            for (int c = 0; c < weight.length; c++) {
+                weight[c] += other.weight[c];
+                for (int j = 0; j < sum[c].length; j++) {
+                    numericWeight[c][j] += other.numericWeight[c][j];
+                    sum[c][j] += other.sum[c][j];
+                    squares[c][j] += other.squares[c][j];
+                }
+                for (int j = 0; j < nominalCounts[c].length; j++) {
+                    for (int v = 0; v < nominalCounts[c][j].length; v++) {
+                        nominalCounts[c][j][v] += other.nominalCounts[c][j][v];
+                    }
+                }
+            }
+        }
+
+        void add(int c, double w, double[] num, int[] nom) {
+            weight[c] += w;
+            for (int j = 0; j < num.length; j++) {
+                double v = num[j];
+                if (!Double.isNaN(v)) {
+                    numericWeight[c][j] += w;
+                    sum[c][j] += w * v;
+                    squares[c][j] += w * v * v;
+                }
+            }
+            for (int j = 0; j < nom.length; j++) {
+                if (nom[j] >= 0) {
+                    nominalCounts[c][j][nom[j]] += w;
+                }
+            }
+        }
+    }
+}
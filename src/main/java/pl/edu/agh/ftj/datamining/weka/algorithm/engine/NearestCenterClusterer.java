@@ -0,0 +1,18 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+/**
+ * Klasteryzator przypisujący wiersze do najbliższego środka klastra (k-średnich, FarthestFirst).
+ * Model zbudowany na próbce może przypisać wszystkie wiersze pełnego zbioru w jednym przejściu.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public interface NearestCenterClusterer extends DatasetClusterer {
+
+    /**
+     * Przypisuje wiersze zbioru do najbliższych środków w jednym równoległym przejściu.
+     * Od tej chwili getAssignments() i liczności klastrów dotyczą wierszy tego zbioru.
+     * @param data dane o tej samej strukturze co dane treningowe
+     * @return suma kwadratów odległości wierszy od środków ich klastrów oraz suma kwadratów tych wartości
+     * @throws Exception gdy obliczenia zostały przerwane
+     */
+    double[] assignRows(NumericDataset data) throws Exception;
+}
@@ -0,0 +1,209 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.lang.ref.SoftReference;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Zbiór danych w postaci kolumn prostych typów, na którym pracują silniki klasteryzacji serwisu.
+ * Atrybuty numeryczne (oraz daty) przechowywane są jako double, atrybuty nominalne (oraz tekstowe)
+ * jako numer wartości ze słownika atrybutu (int). Brakująca wartość to NaN (numeryczne) lub -1 (nominalne).
+ * <p>
+ * Numery kolumn są niezależne dla obu grup: kolumna numeryczna c odpowiada atrybutowi
+ * getNumericAttributes()[c], kolumna nominalna c - atrybutowi getNominalAttributes()[c].
+ * Zbiór jest tylko do odczytu i może być współdzielony przez wiele wątków.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public abstract class NumericDataset {
+
+    /**
+     * Struktura danych (atrybuty i słowniki wartości, bez instancji).
+     */
+    protected final Instances header;
+    /**
+     * Liczba wierszy.
+     */
+    protected final int numRows;
+    /**
+     * Numery atrybutów numerycznych.
+     */
+    protected final int[] numericAttributes;
+    /**
+     * Numery atrybutów nominalnych.
+     */
+    protected final int[] nominalAttributes;
+    /**
+     * Statystyki kolumn.
+     */
+    protected final DatasetStats stats;
+    /**
+     * Zmaterializowany obiekt Instances (zwalniany przez GC przy braku pamięci).
+     */
+    private SoftReference<Instances> instances = null;
+
+    /**
+     * @param header struktura danych
+     * @param numRows liczba wierszy
+     * @param stats statystyki kolumn
+     */
+    protected NumericDataset(Instances header, int numRows, DatasetStats stats) {
+        this.header = header;
+        this.numRows = numRows;
+        this.stats = stats;
+        this.numericAttributes = stats.numericAttributes;
+        this.nominalAttributes = stats.nominalAttributes;
+    }
+
+    /**
+     * Odczytuje wiersz do podanych buforów.
+     * @param row numer wiersza
+     * @param numeric bufor wartości numerycznych (długość getNumNumeric())
+     * @param nominal bufor wartości nominalnych (długość getNumNominal())
+     */
+    public abstract void readRow(int row, double[] numeric, int[] nominal);
+
+    /**
+     * @param row numer wiersza
+     * @param col numer kolumny numerycznej
+     * @return wartość (NaN - brak)
+     */
+    public abstract double numericValue(int row, int col);
+
+    /**
+     * @param row numer wiersza
+     * @param col numer kolumny nominalnej
+     * @return numer wartości (-1 - brak)
+     */
+    public abstract int nominalValue(int row, int col);
+
+    /**
+     * @param row numer wiersza
+     * @return waga wiersza
+     */
+    public abstract double weight(int row);
+
+    /**
+     * @return szacowany rozmiar danych w pamięci sterty [B]
+     */
+    public abstract long sizeInBytes();
+
+    /**
+     * @return struktura danych (tylko do odczytu)
+     */
+    public Instances getHeader() {
+        return header;
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int getNumNumeric() {
+        return numericAttributes.length;
+    }
+
+    public int getNumNominal() {
+        return nominalAttributes.length;
+    }
+
+    /**
+     * @return numery atrybutów odpowiadających kolumnom numerycznym
+     */
+    public int[] getNumericAttributes() {
+        return numericAttributes;
+    }
+
+    /**
+     * @return numery atrybutów odpowiadających kolumnom nominalnym
+     */
+    public int[] getNominalAttributes() {
+        return nominalAttributes;
+    }
+
+    /**
+     * @param col numer kolumny nominalnej
+     * @return liczba wartości w słowniku atrybutu
+     */
+    public int numValues(int col) {
+        return header.attribute(nominalAttributes[col]).numValues();
+    }
+
+    /**
+     * @param col numer kolumny numerycznej
+     * @return minimum (bez brakujących wartości, 0 jeśli wszystkie brakują)
+     */
+    public double getMin(int col) {
+        return stats.min[col];
+    }
+
+    /**
+     * @param col numer kolumny numerycznej
+     * @return maksimum (bez brakujących wartości, 0 jeśli wszystkie brakują)
+     */
+    public double getMax(int col) {
+        return stats.max[col];
+    }
+
+    /**
+     * @param col numer kolumny numerycznej
+     * @return średnia ważona (bez brakujących wartości)
+     */
+    public double getMean(int col) {
+        return stats.mean[col];
+    }
+
+    /**
+     * @param col numer kolumny nominalnej
+     * @return najczęstsza wartość
+     */
+    public int getMode(int col) {
+        return stats.mode[col];
+    }
+
+    /**
+     * Tworzy instancję Weki dla wiersza.
+     * @param row numer wiersza
+     * @return instancja powiązana ze strukturą danych
+     */
+    public Instance instance(int row) {
+        double[] vals = new double[header.numAttributes()];
+        for (int c = 0; c < numericAttributes.length; c++) {
+            vals[numericAttributes[c]] = numericValue(row, c);
+        }
+        for (int c = 0; c < nominalAttributes.length; c++) {
+            int v = nominalValue(row, c);
+            vals[nominalAttributes[c]] = v < 0 ? Utils.missingValue() : v;
+        }
+        Instance inst = new DenseInstance(weight(row), vals);
+        inst.setDataset(header);
+        return inst;
+    }
+
+    /**
+     * Zwraca dane w postaci obiektu Instances (dla algorytmów z biblioteki Weka).
+     * Obiekt jest tworzony przy pierwszym użyciu i przechowywany dopóki wystarcza pamięci;
+     * musi być traktowany jako tylko do odczytu.
+     * @return dane
+     */
+    public synchronized Instances toInstances() {
+        Instances data = instances == null ? null : instances.get();
+        if (data == null) {
+            data = new Instances(header, numRows);
+            for (int i = 0; i < numRows; i++) {
+                data.add(instance(i));
+            }
+            instances = new SoftReference<Instances>(data);
+        }
+        return data;
+    }
+
+    /**
+     * Zapamiętuje obiekt Instances, z którego powstał zbiór (aby uniknąć jego ponownego tworzenia).
+     * @param data dane zgodne ze zbiorem
+     */
+    protected synchronized void setInstances(Instances data) {
+        instances = new SoftReference<Instances>(data);
+    }
+}
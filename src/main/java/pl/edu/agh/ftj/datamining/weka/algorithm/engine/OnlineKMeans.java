@@ -0,0 +1,367 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+import weka.clusterers.AbstractClusterer;
+import weka.clusterers.NumberOfClustersRequestable;
+import weka.clusterers.UpdateableClusterer;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * Przyrostowa (sekwencyjna) wersja algorytmu k-średnich dla danych strumieniowych (MacQueen).
+ * Pierwsze k różnych instancji staje się środkami klastrów; każda kolejna instancja przypisywana jest
+ * do najbliższego środka, który przesuwany jest w jej kierunku o krok waga / suma wag klastra.
+ * Odległość jest znormalizowana jak w SimpleKMeans, przy czym rozpiętości kolumn (oraz średnie i mody
+ * używane w miejsce brakujących wartości) wyznaczane są na bieżąco z dotychczas widzianych instancji.
+ * <p>
+ * Pamięć modelu zależy tylko od liczby klastrów i atrybutów, a nie od liczby przetworzonych instancji.
+ * <p>
+ * Opcje: -N liczba klastrów.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class OnlineKMeans extends AbstractClusterer implements UpdateableClusterer, NumberOfClustersRequestable, OptionHandler {
+
+    private static final long serialVersionUID = -2394412766129813785L;
+
+    /**
+     * Żądana liczba klastrów.
+     */
+    private int numClusters = 2;
+
+    private Instances header;
+    private int[] numericAttributes;
+    private int[] nominalAttributes;
+    /**
+     * Bieżące minimum, maksimum, suma ważona i suma wag kolumn numerycznych.
+     */
+    private double[] min;
+    private double[] max;
+    private double[] sum;
+    private double[] sumWeights;
+    /**
+     * Sumy wag wartości kolumn nominalnych [kolumna][wartość].
+     */
+    private double[][] valueWeights;
+    /**
+     * Środki klastrów: wartości numeryczne [klaster][kolumna] i sumy wag wartości nominalnych [klaster][kolumna][wartość].
+     */
+    private double[][] centerNumeric;
+    private double[][][] centerNominal;
+    /**
+     * Sumy wag i liczby instancji w klastrach.
+     */
+    private double[] clusterWeights;
+    private long[] clusterSizes;
+    /**
+     * Liczba utworzonych dotychczas klastrów (nie większa niż numClusters).
+     */
+    private int created = 0;
+
+    /**
+     * @return opis algorytmu
+     */
+    public String globalInfo() {
+        return "Sequential (online) k-means for streamed data.";
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capability.NO_CLASS);
+        result.enable(Capability.NOMINAL_ATTRIBUTES);
+        result.enable(Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capability.DATE_ATTRIBUTES);
+        result.enable(Capability.MISSING_VALUES);
+        return result;
+    }
+
+    /**
+     * Zeruje model dla podanej struktury i dodaje kolejno wszystkie instancje.
+     * @param data dane (mogą być puste - wtedy model jest tylko przygotowywany na dane strumieniowe)
+     * @throws Exception gdy dane zawierają nieobsługiwane atrybuty
+     */
+    @Override
+    public void buildClusterer(Instances data) throws Exception {
+        Capabilities caps = getCapabilities();
+        caps.setMinimumNumberInstances(0);
+        caps.testWithFail(data);
+
+        header = new Instances(data, 0);
+        List<Integer> numeric = new ArrayList<Integer>();
+        List<Integer> nominal = new ArrayList<Integer>();
+        for (int j = 0; j < header.numAttributes(); j++) {
+            if (header.attribute(j).isNominal()) {
+                nominal.add(j);
+            } else {
+                numeric.add(j);
+            }
+        }
+        numericAttributes = toArray(numeric);
+        nominalAttributes = toArray(nominal);
+        min = new double[numericAttributes.length];
+        max = new double[numericAttributes.length];
+        sum = new double[numericAttributes.length];
+        sumWeights = new double[numericAttributes.length];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        valueWeights = new double[nominalAttributes.length][];
+        for (int j = 0; j < nominalAttributes.length; j++) {
+            valueWeights[j] = new double[header.attribute(nominalAttributes[j]).numValues()];
+        }
+        centerNumeric = new double[numClusters][];
+        centerNominal = new double[numClusters][][];
+        clusterWeights = new double[numClusters];
+        clusterSizes = new long[numClusters];
+        created = 0;
+
+        for (int i = 0; i < data.numInstances(); i++) {
+            learn(data.instance(i));
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Dodaje instancję do modelu.
+     * @param instance instancja zgodna ze strukturą danych
+     * @throws Exception gdy model nie został przygotowany (buildClusterer)
+     */
+    public void updateClusterer(Instance instance) throws Exception {
+        learn(instance);
+    }
+
+    /**
+     * Nic nie robi - model jest aktualny po każdej instancji.
+     */
+    public void updateFinished() {
+    }
+
+    /**
+     * Dodaje instancję do modelu.
+     * @param instance instancja zgodna ze strukturą danych
+     * @return numer klastra, do którego przypisano instancję
+     * @throws Exception gdy model nie został przygotowany (buildClusterer)
+     */
+    public int learn(Instance instance) throws Exception {
+        if (header == null) {
+            throw new Exception("Model nie zostal przygotowany (buildClusterer)");
+        }
+        double w = instance.weight();
+        double[] num = new double[numericAttributes.length];
+        int[] nom = new int[nominalAttributes.length];
+        for (int j = 0; j < num.length; j++) {
+            double v = instance.value(numericAttributes[j]);
+            if (!Utils.isMissingValue(v)) {
+                min[j] = Math.min(min[j], v);
+                max[j] = Math.max(max[j], v);
+                sum[j] += w * v;
+                sumWeights[j] += w;
+            }
+            num[j] = v;
+        }
+        for (int j = 0; j < nom.length; j++) {
+            double v = instance.value(nominalAttributes[j]);
+            if (!Utils.isMissingValue(v)) {
+                valueWeights[j][(int) v] += w;
+            }
+            nom[j] = Utils.isMissingValue(v) ? -1 : (int) v;
+        }
+        fillMissing(num, nom);
+
+        int c = created == 0 ? -1 : nearest(num, nom);
+        if (created < numClusters && (c < 0 || distance(num, nom, c) > 0)) {
+            //nowy klaster z pierwszej instancji rozniacej sie od dotychczasowych srodkow
+            c = created++;
+            centerNumeric[c] = num.clone();
+            centerNominal[c] = new double[nom.length][];
+            for (int j = 0; j < nom.length; j++) {
+                centerNominal[c][j] = new double[valueWeights[j].length];
+            }
+        }
+        clusterWeights[c] += w;
+        clusterSizes[c]++;
+        double step = clusterWeights[c] > 0 ? w / clusterWeights[c] : 0;
+        double[] cn = centerNumeric[c];
+        for (int j = 0; j < num.length; j++) {
+            cn[j] += step * (num[j] - cn[j]);
+        }
+        for (int j = 0; j < nom.length; j++) {
+            if (nom[j] >= 0) {
+                centerNominal[c][j][nom[j]] += w;
+            }
+        }
+        return c;
+    }
+
+    private void fillMissing(double[] num, int[] nom) {
+        for (int j = 0; j < num.length; j++) {
+            if (Utils.isMissingValue(num[j])) {
+                num[j] = sumWeights[j] > 0 ? sum[j] / sumWeights[j] : 0;
+            }
+        }
+        for (int j = 0; j < nom.length; j++) {
+            if (nom[j] < 0) {
+                nom[j] = Utils.maxIndex(valueWeights[j]);
+            }
+        }
+    }
+
+    private int nearest(double[] num, int[] nom) {
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int c = 0; c < created; c++) {
+            double dist = distance(num, nom, c);
+            if (dist < bestDistance) {
+                bestDistance = dist;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Kwadrat znormalizowanej (bieżącymi rozpiętościami kolumn) odległości od środka c.
+     */
+    private double distance(double[] num, int[] nom, int c) {
+        double[] cn = centerNumeric[c];
+        double dist = 0;
+        for (int j = 0; j < num.length; j++) {
+            double range = max[j] - min[j];
+            if (range > 0) {
+                double diff = (num[j] - cn[j]) / range;
+                dist += diff * diff;
+            }
+        }
+        for (int j = 0; j < nom.length; j++) {
+            if (nom[j] != mode(c, j)) {
+                dist += 1;
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * @return najczęstsza wartość kolumny nominalnej j w klastrze c
+     */
+    private int mode(int c, int j) {
+        double[] weights = centerNominal[c][j];
+        int best = 0;
+        for (int v = 1; v < weights.length; v++) {
+            if (weights[v] > weights[best]) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int clusterInstance(Instance instance) throws Exception {
+        if (created == 0) {
+            throw new Exception("Model nie zawiera jeszcze zadnych instancji");
+        }
+        double[] num = new double[numericAttributes.length];
+        int[] nom = new int[nominalAttributes.length];
+        for (int j = 0; j < num.length; j++) {
+            num[j] = instance.value(numericAttributes[j]);
+        }
+        for (int j = 0; j < nom.length; j++) {
+            double v = instance.value(nominalAttributes[j]);
+            nom[j] = Utils.isMissingValue(v) ? -1 : (int) v;
+        }
+        fillMissing(num, nom);
+        return nearest(num, nom);
+    }
+
+    @Override
+    public int numberOfClusters() throws Exception {
+        return header == null ? numClusters : created;
+    }
+
+    /**
+     * @return bieżące środki klastrów w postaci instancji (dla atrybutów nominalnych - moda)
+     */
+    public Instances getClusterCentroids() {
+        Instances result = new Instances(header, created);
+        for (int c = 0; c < created; c++) {
+            double[] vals = new double[header.numAttributes()];
+            for (int j = 0; j < numericAttributes.length; j++) {
+                vals[numericAttributes[j]] = centerNumeric[c][j];
+            }
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                vals[nominalAttributes[j]] = mode(c, j);
+            }
+            result.add(new DenseInstance(1.0, vals));
+        }
+        return result;
+    }
+
+    /**
+     * @return liczby instancji przypisanych do klastrów w chwili ich dodania
+     */
+    public int[] getClusterSizes() {
+        int[] sizes = new int[created];
+        for (int c = 0; c < created; c++) {
+            sizes[c] = (int) Math.min(Integer.MAX_VALUE, clusterSizes[c]);
+        }
+        return sizes;
+    }
+
+    public void setNumClusters(int numClusters) throws Exception {
+        if (numClusters <= 0) {
+            throw new Exception("Liczba klastrow musi byc wieksza od 0");
+        }
+        this.numClusters = numClusters;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public Enumeration listOptions() {
+        Vector<Option> result = new Vector<Option>();
+        result.addElement(new Option("\tnumber of clusters.\n\t(default 2).", "N", 1, "-N <num>"));
+        return result.elements();
+    }
+
+    public void setOptions(String[] options) throws Exception {
+        String value = Utils.getOption('N', options);
+        if (value.length() > 0) {
+            setNumClusters(Integer.parseInt(value));
+        }
+    }
+
+    public String[] getOptions() {
+        return new String[]{"-N", "" + numClusters};
+    }
+
+    @Override
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: 1 $");
+    }
+
+    @Override
+    public String toString() {
+        if (header == null) {
+            return "OnlineKMeans: No model built yet.";
+        }
+        return "OnlineKMeans\n============\n\nClusters: " + created + "\n";
+    }
+}
@@ -0,0 +1,175 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.Arrays;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Zbiór danych przechowywany w spakowanych tablicach wierszowych na stercie:
+ * jedna tablica double[] dla kolumn numerycznych i jedna tablica int[] dla kolumn nominalnych.
+ * Zamiast obiektu DenseInstance z własną tablicą na każdy wiersz, wiersz zajmuje
+ * 8 B na atrybut numeryczny i 4 B na atrybut nominalny, a kolejne wiersze leżą obok siebie w pamięci.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class PackedDataset extends NumericDataset {
+
+    /**
+     * Wartości numeryczne (wiersz po wierszu).
+     */
+    private final double[] numeric;
+    /**
+     * Numery wartości nominalnych (wiersz po wierszu).
+     */
+    private final int[] nominal;
+    /**
+     * Wagi wierszy lub null jeśli wszystkie są równe 1.
+     */
+    private final double[] weights;
+
+    private PackedDataset(Instances header, int numRows, DatasetStats stats, double[] numeric, int[] nominal, double[] weights) {
+        super(header, numRows, stats);
+        this.numeric = numeric;
+        this.nominal = nominal;
+        this.weights = weights;
+    }
+
+    /**
+     * Pakuje istniejący obiekt Instances (który jest następnie używany przez toInstances()).
+     * @param data dane
+     * @return spakowany zbiór
+     */
+    public static PackedDataset of(Instances data) {
+        Builder builder = new Builder(new Instances(data, 0));
+        for (int i = 0; i < data.numInstances(); i++) {
+            builder.add(data.instance(i));
+        }
+        PackedDataset packed = builder.build();
+        packed.setInstances(data);
+        return packed;
+    }
+
+    @Override
+    public void readRow(int row, double[] num, int[] nom) {
+        System.arraycopy(numeric, row * num.length, num, 0, num.length);
+        System.arraycopy(nominal, row * nom.length, nom, 0, nom.length);
+    }
+
+    @Override
+    public double numericValue(int row, int col) {
+        return numeric[row * numericAttributes.length + col];
+    }
+
+    @Override
+    public int nominalValue(int row, int col) {
+        return nominal[row * nominalAttributes.length + col];
+    }
+
+    @Override
+    public double weight(int row) {
+        return weights == null ? 1.0 : weights[row];
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return 8L * numeric.length + 4L * nominal.length + (weights == null ? 0 : 8L * weights.length) + 256L;
+    }
+
+    /**
+     * Buduje spakowany zbiór z kolejno dopisywanych instancji (np. czytanych przyrostowo z ARFF).
+     */
+    public static class Builder {
+
+        private final Instances header;
+        private final DatasetStats stats;
+        private final int dn;
+        private final int dc;
+        private final double[] rowNumeric;
+        private final int[] rowNominal;
+        private double[] numeric;
+        private int[] nominal;
+        private double[] weights = null;
+        private int numRows = 0;
+
+        /**
+         * @param header struktura danych (słowniki atrybutów tekstowych mogą rosnąć w trakcie odczytu)
+         * @throws IllegalArgumentException gdy dane zawierają nieobsługiwany typ atrybutu
+         */
+        public Builder(Instances header) {
+            this.header = header;
+            this.stats = new DatasetStats(header);
+            this.dn = stats.numericAttributes.length;
+            this.dc = stats.nominalAttributes.length;
+            this.rowNumeric = new double[dn];
+            this.rowNominal = new int[dc];
+            this.numeric = new double[16 * dn];
+            this.nominal = new int[16 * dc];
+        }
+
+        /**
+         * Dopisuje instancję.
+         * @param inst instancja zgodna ze strukturą
+         */
+        public void add(Instance inst) {
+            for (int c = 0; c < dn; c++) {
+                rowNumeric[c] = inst.value(stats.numericAttributes[c]);
+            }
+            for (int c = 0; c < dc; c++) {
+                double v = inst.value(stats.nominalAttributes[c]);
+                rowNominal[c] = Utils.isMissingValue(v) ? -1 : (int) v;
+            }
+            if ((numRows + 1) * dn > numeric.length) {
+                double[] grown = new double[2 * numeric.length];
+                System.arraycopy(numeric, 0, grown, 0, numeric.length);
+                numeric = grown;
+            }
+            if ((numRows + 1) * dc > nominal.length) {
+                int[] grown = new int[2 * nominal.length];
+                System.arraycopy(nominal, 0, grown, 0, nominal.length);
+                nominal = grown;
+            }
+            System.arraycopy(rowNumeric, 0, numeric, numRows * dn, dn);
+            System.arraycopy(rowNominal, 0, nominal, numRows * dc, dc);
+            if (inst.weight() != 1.0 && weights == null) {
+                weights = new double[Math.max(16, 2 * numRows)];
+                Arrays.fill(weights, 1.0);
+            }
+            if (weights != null) {
+                if (numRows >= weights.length) {
+                    double[] grown = new double[2 * weights.length];
+                    Arrays.fill(grown, 1.0);
+                    System.arraycopy(weights, 0, grown, 0, weights.length);
+                    weights = grown;
+                }
+                weights[numRows] = inst.weight();
+            }
+            stats.add(rowNumeric, rowNominal, inst.weight());
+            numRows++;
+        }
+
+        /**
+         * @return liczba dopisanych wierszy
+         */
+        public int numRows() {
+            return numRows;
+        }
+
+        /**
+         * @return zbiór danych (tablice przycięte do liczby wierszy)
+         */
+        public PackedDataset build() {
+            double[] num = new double[numRows * dn];
+            System.arraycopy(numeric, 0, num, 0, num.length);
+            int[] nom = new int[numRows * dc];
+            System.arraycopy(nominal, 0, nom, 0, nom.length);
+            double[] w = null;
+            if (weights != null) {
+                w = new double[numRows];
+                System.arraycopy(weights, 0, w, 0, numRows);
+            }
+            numeric = null;
+            nominal = null;
+            return new PackedDataset(header, numRows, stats.finish(), num, nom, w);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import weka.clusterers.NumberOfClustersRequestable;
+import weka.clusterers.RandomizableClusterer;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * Wielowątkowa implementacja algorytmu FarthestFirst zgodna z FarthestFirst z biblioteki Weka
+ * (pierwszy środek losowany, kolejne - wiersz najdalszy od dotychczas wybranych środków).
+ * Po wyborze każdego środka odległości minimalne aktualizowane są równolegle na fragmentach wierszy,
+ * a każdy fragment zwraca własnego kandydata na kolejny środek. Odległości liczone są na spakowanych,
+ * znormalizowanych wierszach (DistanceKernel).
+ * <p>
+ * Przy opcji -index bounds (lub kdtree) odległość wiersza od nowego środka nie jest liczona, gdy z nierówności
+ * trójkąta wynika, że nie jest mniejsza od jego odległości minimalnej: d(środek wiersza, nowy środek) &gt;= 2 * d(wiersz,
+ * środek wiersza). Odległości między środkami liczone są raz na wybrany środek. Wynik jest taki sam jak bez ograniczeń.
+ * <p>
+ * Opcje: -N liczba klastrów, -S ziarno, -threads liczba wątków, -float wiersze w pojedynczej precyzji,
+ * -index none|bounds|kdtree ograniczanie obliczeń odległości.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class ParallelFarthestFirst extends RandomizableClusterer implements NumberOfClustersRequestable, NearestCenterClusterer {
+
+    private static final long serialVersionUID = -4280364216547198237L;
+
+    /**
+     * Żądana liczba klastrów.
+     */
+    private int numClusters = 2;
+    /**
+     * Liczba wątków obliczeniowych.
+     */
+    private int numThreads = EngineExecutors.defaultThreads();
+    /**
+     * Czy wiersze przechowywać w pojedynczej precyzji (float).
+     */
+    private boolean singlePrecision = false;
+    /**
+     * Sposób ograniczania obliczeń odległości: "none", "bounds" lub "kdtree" (tu równoważne bounds).
+     */
+    private String index = "none";
+
+    private Instances header;
+    private int[] numericAttributes;
+    private int[] nominalAttributes;
+    /**
+     * Wagi kolumn numerycznych w odległości (1 / rozpiętość^2).
+     */
+    private double[] scale;
+    private double[] numericFill;
+    private int[] nominalFill;
+    /**
+     * Wybrane środki klastrów.
+     */
+    private double[][] centerNumeric;
+    private int[][] centerNominal;
+    /**
+     * Przypisania wierszy treningowych do klastrów.
+     */
+    private int[] assignments;
+    /**
+     * Liczności klastrów.
+     */
+    private int[] clusterSizes;
+    /**
+     * Liczba obliczonych odległości wiersz - środek i liczba, jaką wymagałoby pełne przeszukiwanie.
+     */
+    private long distanceComputations;
+    private long bruteForceComputations;
+
+    public ParallelFarthestFirst() {
+        super();
+        m_SeedDefault = 1;
+        setSeed(m_SeedDefault);
+    }
+
+    /**
+     * @return opis algorytmu
+     */
+    public String globalInfo() {
+        return "Multi-threaded farthest first traversal compatible with FarthestFirst.";
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capability.NO_CLASS);
+        result.enable(Capability.NOMINAL_ATTRIBUTES);
+        result.enable(Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capability.DATE_ATTRIBUTES);
+        result.enable(Capability.MISSING_VALUES);
+        return result;
+    }
+
+    @Override
+    public void buildClusterer(Instances data) throws Exception {
+        buildClusterer(PackedDataset.of(data));
+    }
+
+    public void buildClusterer(final NumericDataset data) throws Exception {
+        Capabilities caps = getCapabilities();
+        caps.setMinimumNumberInstances(0);
+        caps.testWithFail(data.getHeader());
+
+        int n = data.numRows();
+        if (n == 0) {
+            throw new Exception("Brak instancji do klasteryzacji");
+        }
+        prepare(data);
+        final DistanceKernel kernel = new DistanceKernel(data, true, singlePrecision);
+        int k = Math.min(numClusters, n);
+        centerNumeric = new double[k][];
+        centerNominal = new int[k][];
+
+        final double[] minDistance = new double[n];
+        Arrays.fill(minDistance, Double.MAX_VALUE);
+        final boolean[] selected = new boolean[n];
+        final int[] assign = new int[n];
+        int[] bounds = EngineExecutors.split(n, numThreads);
+        int[] centerRows = new int[k];
+        double[] centerDistance = index.equals("none") ? null : new double[k];
+        distanceComputations = 0;
+        bruteForceComputations = 0;
+
+        ExecutorService pool = numThreads > 1 ? EngineExecutors.newPool("weka-ff", numThreads) : null;
+        try {
+            int next = new Random(getSeed()).nextInt(n);
+            for (int c = 0; c < k; c++) {
+                selected[next] = true;
+                centerNumeric[c] = new double[numericAttributes.length];
+                centerNominal[c] = new int[nominalAttributes.length];
+                readRow(data, next, centerNumeric[c], centerNominal[c]);
+                centerRows[c] = next;
+                if (centerDistance != null) {
+                    for (int a = 0; a < c; a++) {
+                        centerDistance[a] = kernel.distance2(centerRows[a], next);
+                    }
+                }
+                next = updateStep(pool, kernel, bounds, c, next, minDistance, selected, assign, centerDistance);
+                bruteForceComputations += n;
+                if (next < 0 && c + 1 < k) {
+                    // wszystkie wiersze zostaly wybrane
+                    centerNumeric = Arrays.copyOf(centerNumeric, c + 1);
+                    centerNominal = Arrays.copyOf(centerNominal, c + 1);
+                    break;
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        assignments = assign;
+        clusterSizes = new int[centerNumeric.length];
+        for (int c : assign) {
+            clusterSizes[c]++;
+        }
+    }
+
+    /**
+     * Równolegle aktualizuje odległości od nowego środka c i wyznacza kolejny środek
+     * (pierwszy niewybrany wiersz o największej odległości minimalnej).
+     * @param centerDistance kwadraty odległości dotychczasowych środków od nowego (null - bez ograniczeń)
+     * @return numer wiersza lub -1 jeśli wszystkie wiersze zostały wybrane
+     */
+    private int updateStep(ExecutorService pool, final DistanceKernel kernel, int[] bounds, final int c, final int centerRow,
+            final double[] minDistance, final boolean[] selected, final int[] assign, final double[] centerDistance) throws Exception {
+        List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+        for (int t = 0; t < bounds.length - 1; t++) {
+            final int from = bounds[t];
+            final int to = bounds[t + 1];
+            tasks.add(new Callable<double[]>() {
+
+                public double[] call() {
+                    double farthest = -1;
+                    int farthestRow = -1;
+                    long computed = 0;
+                    for (int i = from; i < to; i++) {
+                        // d(i, nowy) >= d(a, nowy) - d(i, a) >= d(i, a), gdy d(a, nowy) >= 2 d(i, a)
+                        if (centerDistance == null || c == 0 || centerDistance[assign[i]] < 4 * minDistance[i]) {
+                            double dist = kernel.distance2(i, centerRow);
+                            computed++;
+                            if (dist < minDistance[i]) {
+                                minDistance[i] = dist;
+                                assign[i] = c;
+                            }
+                        }
+                        if (!selected[i] && minDistance[i] > farthest) {
+                            farthest = minDistance[i];
+                            farthestRow = i;
+                        }
+                    }
+                    return new double[]{farthest, farthestRow, computed};
+                }
+            });
+        }
+        double farthest = -1;
+        int farthestRow = -1;
+        for (double[] r : EngineExecutors.invokeAll(pool, tasks)) {
+            if (r[0] > farthest) {
+                farthest = r[0];
+                farthestRow = (int) r[1];
+            }
+            distanceComputations += (long) r[2];
+        }
+        return farthestRow;
+    }
+
+    private void prepare(NumericDataset data) {
+        header = data.getHeader();
+        numericAttributes = data.getNumericAttributes();
+        nominalAttributes = data.getNominalAttributes();
+        scale = new double[numericAttributes.length];
+        numericFill = new double[numericAttributes.length];
+        for (int j = 0; j < scale.length; j++) {
+            double range = data.getMax(j) - data.getMin(j);
+            scale[j] = range > 0 ? 1.0 / (range * range) : 0;
+            numericFill[j] = data.getMean(j);
+        }
+        nominalFill = new int[nominalAttributes.length];
+        for (int j = 0; j < nominalFill.length; j++) {
+            nominalFill[j] = data.getMode(j);
+        }
+    }
+
+    private void readRow(NumericDataset data, int row, double[] num, int[] nom) {
+        data.readRow(row, num, nom);
+        fillMissing(num, nom);
+    }
+
+    private void fillMissing(double[] num, int[] nom) {
+        for (int j = 0; j < num.length; j++) {
+            if (Double.isNaN(num[j])) {
+                num[j] = numericFill[j];
+            }
+        }
+        for (int j = 0; j < nom.length; j++) {
+            if (nom[j] < 0) {
+                nom[j] = nominalFill[j];
+            }
+        }
+    }
+
+    /**
+     * Kwadrat znormalizowanej odległości wiersza od środka c.
+     */
+    private double distance(double[] num, int[] nom, int c) {
+        double[] cn = centerNumeric[c];
+        double dist = 0;
+        for (int j = 0; j < num.length; j++) {
+            double diff = num[j] - cn[j];
+            dist += diff * diff * scale[j];
+        }
+        int[] cc = centerNominal[c];
+        for (int j = 0; j < nom.length; j++) {
+            if (nom[j] != cc[j]) {
+                dist += 1;
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Przypisuje wiersze zbioru do najbliższych środków (np. pełne dane, gdy model zbudowano na próbce),
+     * równolegle na fragmentach wierszy. Liczności klastrów dotyczą odtąd tych wierszy.
+     */
+    public double[] assignRows(final NumericDataset data) throws Exception {
+        int n = data.numRows();
+        final int[] assign = new int[n];
+        int[] bounds = EngineExecutors.split(n, numThreads);
+        List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+        for (int t = 0; t < bounds.length - 1; t++) {
+            final int from = bounds[t];
+            final int to = bounds[t + 1];
+            tasks.add(new Callable<double[]>() {
+
+                public double[] call() {
+                    double[] num = new double[numericAttributes.length];
+                    int[] nom = new int[nominalAttributes.length];
+                    double error = 0;
+                    double errorSquares = 0;
+                    for (int i = from; i < to; i++) {
+                        readRow(data, i, num, nom);
+                        double min = Double.MAX_VALUE;
+                        for (int c = 0; c < centerNumeric.length; c++) {
+                            double dist = distance(num, nom, c);
+                            if (dist < min) {
+                                min = dist;
+                                assign[i] = c;
+                            }
+                        }
+                        error += min;
+                        errorSquares += min * min;
+                    }
+                    return new double[]{error, errorSquares};
+                }
+            });
+        }
+        ExecutorService pool = numThreads > 1 ? EngineExecutors.newPool("weka-ff", numThreads) : null;
+        double[] result = new double[2];
+        try {
+            for (double[] r : EngineExecutors.invokeAll(pool, tasks)) {
+                result[0] += r[0];
+                result[1] += r[1];
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        assignments = assign;
+        clusterSizes = new int[centerNumeric.length];
+        for (int c : assign) {
+            clusterSizes[c]++;
+        }
+        return result;
+    }
+
+    @Override
+    public int clusterInstance(Instance instance) throws Exception {
+        double[] num = new double[numericAttributes.length];
+        int[] nom = new int[nominalAttributes.length];
+        for (int j = 0; j < num.length; j++) {
+            num[j] = instance.value(numericAttributes[j]);
+        }
+        for (int j = 0; j < nom.length; j++) {
+            double v = instance.value(nominalAttributes[j]);
+            nom[j] = Utils.isMissingValue(v) ? -1 : (int) v;
+        }
+        fillMissing(num, nom);
+        int best = 0;
+        double min = Double.MAX_VALUE;
+        for (int c = 0; c < centerNumeric.length; c++) {
+            double dist = distance(num, nom, c);
+            if (dist < min) {
+                min = dist;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int numberOfClusters() throws Exception {
+        return centerNumeric == null ? numClusters : centerNumeric.length;
+    }
+
+    /**
+     * @return wybrane środki klastrów w postaci instancji
+     */
+    public Instances getClusterCentroids() {
+        Instances result = new Instances(header, centerNumeric.length);
+        for (int c = 0; c < centerNumeric.length; c++) {
+            double[] vals = new double[header.numAttributes()];
+            for (int j = 0; j < numericAttributes.length; j++) {
+                vals[numericAttributes[j]] = centerNumeric[c][j];
+            }
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                vals[nominalAttributes[j]] = centerNominal[c][j];
+            }
+            result.add(new DenseInstance(1.0, vals));
+        }
+        return result;
+    }
+
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    /**
+     * @return NaN (FarthestFirst nie jest algorytmem gęstościowym)
+     */
+    public double getLogLikelihood() {
+        return Double.NaN;
+    }
+
+    /**
+     * @return liczności klastrów
+     */
+    public int[] getClusterSizes() {
+        return clusterSizes;
+    }
+
+    public void setNumClusters(int numClusters) throws Exception {
+        if (numClusters <= 0) {
+            throw new Exception("Liczba klastrow musi byc wieksza od 0");
+        }
+        this.numClusters = numClusters;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public boolean getSinglePrecision() {
+        return singlePrecision;
+    }
+
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    /**
+     * @return część odległości pominiętych w stosunku do pełnego przeszukiwania (0 - 1)
+     */
+    public double getSkippedDistanceFraction() {
+        return bruteForceComputations == 0 ? 0 : 1.0 - (double) distanceComputations / bruteForceComputations;
+    }
+
+    public void setIndex(String index) throws Exception {
+        if (!index.equals("none") && !index.equals("bounds") && !index.equals("kdtree")) {
+            throw new Exception("Nieznany sposob ograniczania obliczen odleglosci: " + index);
+        }
+        this.index = index;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    @Override
+    public Enumeration listOptions() {
+        Vector<Option> result = new Vector<Option>();
+        result.addElement(new Option("\tnumber of clusters.\n\t(default 2).", "N", 1, "-N <num>"));
+        result.addElement(new Option("\tnumber of threads.\n\t(default: number of processors).", "threads", 1, "-threads <num>"));
+        result.addElement(new Option("\tstore rows in single precision.", "float", 0, "-float"));
+        result.addElement(new Option("\tdistance pruning: none, bounds or kdtree.\n\t(default none).", "index", 1, "-index <method>"));
+        Enumeration en = super.listOptions();
+        while (en.hasMoreElements()) {
+            result.addElement((Option) en.nextElement());
+        }
+        return result.elements();
+    }
+
+    @Override
+    public void setOptions(String[] options) throws Exception {
+        String value = Utils.getOption('N', options);
+        if (value.length() > 0) {
+            setNumClusters(Integer.parseInt(value));
+        }
+        value = Utils.getOption("threads", options);
+        if (value.length() > 0) {
+            setNumThreads(Integer.parseInt(value));
+        }
+        setSinglePrecision(Utils.getFlag("float", options));
+        value = Utils.getOption("index", options);
+        if (value.length() > 0) {
+            setIndex(value.toLowerCase());
+        }
+        super.setOptions(options);
+    }
+
+    @Override
+    public String[] getOptions() {
+        List<String> result = new ArrayList<String>();
+        result.add("-N");
+        result.add("" + numClusters);
+        result.add("-threads");
+        result.add("" + numThreads);
+        if (singlePrecision) {
+            result.add("-float");
+        }
+        if (!index.equals("none")) {
+            result.add("-index");
+            result.add(index);
+        }
+        for (String o : super.getOptions()) {
+            result.add(o);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: 1 $");
+    }
+
+    @Override
+    public String toString() {
+        if (centerNumeric == null) {
+            return "ParallelFarthestFirst: No model built yet.";
+        }
+        return "ParallelFarthestFirst\n=====================\n\nClusters: " + centerNumeric.length + "\nThreads: " + numThreads + "\n";
+    }
+}
@@ -0,0 +1,784 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import weka.clusterers.AbstractClusterer;
+import weka.clusterers.HierarchicalClusterer;
+import weka.clusterers.NumberOfClustersRequestable;
+import weka.core.Attribute;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.DistanceFunction;
+import weka.core.Drawable;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.RevisionUtils;
+import weka.core.SelectedTag;
+import weka.core.Utils;
+
+/**
+ * Szybka implementacja aglomeracyjnej klasteryzacji hierarchicznej zgodna z HierarchicalClusterer
+ * z biblioteki Weka (odległość euklidesowa znormalizowana rozpiętościami kolumn, ten sam graf w formacie Newick,
+ * ta sama numeracja klastrów). Zamiast kolejki wszystkich par i ponownego liczenia odległości między klastrami
+ * po każdym złączeniu:
+ * <ul>
+ * <li>wiązanie pojedyncze (SINGLE) wyznaczane jest z minimalnego drzewa rozpinającego (algorytm Prima,
+ * odległości liczone równolegle i na bieżąco - pamięć O(n)),</li>
+ * <li>wiązania pełne (COMPLETE), średnie (AVERAGE) i Warda (WARD) - algorytmem łańcucha najbliższych sąsiadów
+ * z aktualizacją Lance'a-Williamsa na spakowanej macierzy odległości (tylko pary i &lt; j), budowanej równolegle
+ * w kafelkach (DistanceKernel).</li>
+ * </ul>
+ * Czas działania jest O(n^2). Złączenia porządkowane są wg. odległości i odtwarzane tak jak w Wece
+ * (klaster o mniejszym numerze pierwszego wiersza jest lewym poddrzewem), więc przy braku remisów odległości
+ * graf jest identyczny z grafem HierarchicalClusterer.
+ * <p>
+ * Wiązanie Warda liczone jest klasycznie (przyrost sumy kwadratów odległości od środków, wysokość węzła
+ * sqrt(2 * przyrost)), podczas gdy WARD w Wece używa sumy niepodniesionych do kwadratu odległości, która nie
+ * spełnia wzoru Lance'a-Williamsa - dla par pojedynczych wierszy obie wysokości są równe, dla większych klastrów
+ * mogą się różnić.
+ * <p>
+ * Wagi wierszy (np. mikroklastrów drzewa CF) traktowane są jak liczności: wiersz o wadze w odpowiada w wierszom
+ * w tym samym punkcie. Dla wiązań średniego i Warda wagi są początkowymi licznościami klastrów we wzorze
+ * Lance'a-Williamsa, a początkowe odległości Warda mnożone są przez 2 * wa * wb / (wa + wb). Wiązania
+ * pojedyncze i pełne nie zależą od liczności.
+ * <p>
+ * Opcje: -N liczba klastrów, -L SINGLE|COMPLETE|AVERAGE|WARD, -B odległość jako długość gałęzi,
+ * -P wypisywanie grafów w toString, -threads liczba wątków, -float wiersze w pojedynczej precyzji.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class ParallelHierarchicalClusterer extends AbstractClusterer implements OptionHandler, Drawable, NumberOfClustersRequestable, DatasetClusterer {
+
+    private static final long serialVersionUID = 6930784520719286612L;
+
+    /**
+     * Rodzaje wiązania (numeracja jak w HierarchicalClusterer.TAGS_LINK_TYPE).
+     */
+    public static final int SINGLE = 0;
+    public static final int COMPLETE = 1;
+    public static final int AVERAGE = 2;
+    public static final int WARD = 5;
+    /**
+     * Maksymalna liczba wierszy dla wiązań wymagających macierzy odległości.
+     */
+    public static final int MAX_MATRIX_ROWS = 65536;
+
+    /**
+     * Żądana liczba klastrów.
+     */
+    private int numClusters = 2;
+    /**
+     * Rodzaj wiązania.
+     */
+    private int linkType = SINGLE;
+    /**
+     * Czy odległość jest długością gałęzi (a nie wysokością węzła).
+     */
+    private boolean distanceIsBranchLength = false;
+    private boolean printNewick = true;
+    /**
+     * Czy wiersze przechowywać w pojedynczej precyzji (float).
+     */
+    private boolean singlePrecision = false;
+    /**
+     * Liczba wątków obliczeniowych.
+     */
+    private int numThreads = EngineExecutors.defaultThreads();
+
+    private Instances header;
+    private int numRows;
+    private Attribute labelAttribute;
+    /**
+     * Wartości atrybutu opisującego liście grafu (numer wartości dla atrybutów tekstowych).
+     */
+    private double[] labels;
+    /**
+     * Wagi wierszy (null - wszystkie wagi równe 1).
+     */
+    private double[] weights;
+    /**
+     * Spakowane, znormalizowane wiersze (semantyka odległości EuclideanDistance).
+     */
+    private DistanceKernel kernel;
+    /**
+     * Węzły drzewa: lewe i prawe poddrzewo (numer węzła lub -1 - numer wiersza dla liścia),
+     * długości gałęzi i wysokość.
+     */
+    private int[] nodeLeft;
+    private int[] nodeRight;
+    private double[] leftLength;
+    private double[] rightLength;
+    private double[] height;
+    /**
+     * Korzenie klastrów (numer węzła lub -1 - numer wiersza dla klastra jednoelementowego).
+     */
+    private int[] clusterRoots;
+    /**
+     * Przypisania wierszy treningowych do klastrów.
+     */
+    private int[] assignments;
+    /**
+     * Liczności klastrów.
+     */
+    private int[] clusterSizes;
+
+    /**
+     * @return opis algorytmu
+     */
+    public String globalInfo() {
+        return "Fast agglomerative hierarchical clustering (MST / nearest-neighbor chain) compatible with HierarchicalClusterer.";
+    }
+
+    /**
+     * Sprawdza czy opcje HierarchicalClusterer mogą zostać obsłużone przez ten silnik
+     * (obsługiwane wiązania i domyślna odległość euklidesowa).
+     * @param options opcje algorytmu (null - domyślne)
+     * @return true jeśli silnik obsługuje opcje
+     */
+    public static boolean supports(String[] options) {
+        if (options == null) {
+            return true;
+        }
+        try {
+            String[] opt = options.clone();
+            String link = Utils.getOption('L', opt);
+            if (link.length() > 0) {
+                int id = new SelectedTag(link, HierarchicalClusterer.TAGS_LINK_TYPE).getSelectedTag().getID();
+                if (id != SINGLE && id != COMPLETE && id != AVERAGE && id != WARD) {
+                    return false;
+                }
+            }
+            String distance = Utils.getOption('A', opt).trim();
+            return distance.length() == 0 || distance.equals(EuclideanDistance.class.getName())
+                    || distance.equals(EuclideanDistance.class.getName() + " -R first-last");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capability.NO_CLASS);
+        result.enable(Capability.NOMINAL_ATTRIBUTES);
+        result.enable(Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capability.DATE_ATTRIBUTES);
+        result.enable(Capability.STRING_ATTRIBUTES);
+        result.enable(Capability.MISSING_VALUES);
+        return result;
+    }
+
+    @Override
+    public void buildClusterer(Instances data) throws Exception {
+        buildClusterer(PackedDataset.of(data));
+    }
+
+    public void buildClusterer(NumericDataset data) throws Exception {
+        Capabilities caps = getCapabilities();
+        caps.setMinimumNumberInstances(0);
+        caps.testWithFail(data.getHeader());
+
+        int n = data.numRows();
+        if (n == 0) {
+            throw new Exception("Brak instancji do klasteryzacji");
+        }
+        if (linkType != SINGLE && n > MAX_MATRIX_ROWS) {
+            throw new Exception("Zbyt wiele wierszy dla wiazania innego niz SINGLE (maksymalnie " + MAX_MATRIX_ROWS + ")");
+        }
+        prepare(data);
+
+        int[] mergeA = new int[n - 1];
+        int[] mergeB = new int[n - 1];
+        double[] mergeDist = new double[n - 1];
+        ExecutorService pool = numThreads > 1 ? EngineExecutors.newPool("weka-hc", numThreads) : null;
+        try {
+            if (linkType == SINGLE) {
+                minimumSpanningTree(pool, mergeA, mergeB, mergeDist);
+            } else {
+                nearestNeighborChain(kernel.condensedMatrix(pool, numThreads, linkType == WARD), mergeA, mergeB, mergeDist);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        buildTree(mergeA, mergeB, mergeDist, Math.min(numClusters, n));
+    }
+
+    /**
+     * Pakuje znormalizowane wiersze (jak w EuclideanDistance: atrybuty tekstowe i daty nie wpływają na odległość)
+     * i zapamiętuje wartości atrybutu opisującego liście grafu.
+     */
+    private void prepare(NumericDataset data) {
+        numRows = data.numRows();
+        int[] numericAttributes = data.getNumericAttributes();
+        int[] nominalAttributes = data.getNominalAttributes();
+        header = new Instances(data.getHeader(), 0);
+        kernel = new DistanceKernel(data, false, singlePrecision);
+
+        //atrybut opisujacy liscie: klasa, pierwszy atrybut tekstowy lub ostatni atrybut (jak w HierarchicalClusterer)
+        int attIndex = header.classIndex();
+        if (attIndex < 0) {
+            attIndex = header.numAttributes() - 1;
+            for (int j = 0; j < header.numAttributes() - 1; j++) {
+                if (header.attribute(j).isString()) {
+                    attIndex = j;
+                    break;
+                }
+            }
+        }
+        weights = null;
+        for (int i = 0; i < numRows; i++) {
+            if (data.weight(i) != 1.0) {
+                if (weights == null) {
+                    weights = new double[numRows];
+                    Arrays.fill(weights, 1.0);
+                }
+                weights[i] = data.weight(i);
+            }
+        }
+
+        labelAttribute = header.attribute(attIndex);
+        labels = new double[numRows];
+        int col = indexOf(numericAttributes, attIndex);
+        for (int i = 0; i < numRows; i++) {
+            if (col >= 0) {
+                labels[i] = data.numericValue(i, col);
+            } else {
+                int v = data.nominalValue(i, indexOf(nominalAttributes, attIndex));
+                labels[i] = v < 0 ? Utils.missingValue() : v;
+            }
+        }
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Wiązanie pojedyncze: minimalne drzewo rozpinające algorytmem Prima. Po dołączeniu każdego wiersza
+     * odległości pozostałych wierszy od drzewa aktualizowane są równolegle na fragmentach wierszy.
+     */
+    private void minimumSpanningTree(ExecutorService pool, int[] mergeA, int[] mergeB, double[] mergeDist) throws Exception {
+        final int n = numRows;
+        final double[] best = new double[n];
+        final int[] from = new int[n];
+        final boolean[] inTree = new boolean[n];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        int[] bounds = EngineExecutors.split(n, n >= 1024 ? numThreads : 1);
+        if (bounds.length == 2) {
+            pool = null;
+        }
+        int current = 0;
+        inTree[0] = true;
+        for (int m = 0; m < n - 1; m++) {
+            final int cur = current;
+            List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+            for (int t = 0; t < bounds.length - 1; t++) {
+                final int lo = bounds[t];
+                final int hi = bounds[t + 1];
+                tasks.add(new Callable<double[]>() {
+
+                    public double[] call() {
+                        double nearest = Double.POSITIVE_INFINITY;
+                        int nearestRow = -1;
+                        for (int i = lo; i < hi; i++) {
+                            if (inTree[i]) {
+                                continue;
+                            }
+                            double d = kernel.distance2(cur, i);
+                            if (d < best[i]) {
+                                best[i] = d;
+                                from[i] = cur;
+                            }
+                            if (nearestRow < 0 || best[i] < nearest) {
+                                nearest = best[i];
+                                nearestRow = i;
+                            }
+                        }
+                        return new double[]{nearest, nearestRow};
+                    }
+                });
+            }
+            int next = -1;
+            double nearest = Double.POSITIVE_INFINITY;
+            for (double[] r : EngineExecutors.invokeAll(pool, tasks)) {
+                if (r[1] >= 0 && (next < 0 || r[0] < nearest)) {
+                    nearest = r[0];
+                    next = (int) r[1];
+                }
+            }
+            inTree[next] = true;
+            mergeA[m] = from[next];
+            mergeB[m] = next;
+            mergeDist[m] = Math.sqrt(nearest);
+            current = next;
+        }
+    }
+
+    /**
+     * Odczytuje odległości klastra a od wszystkich pozostałych (pozycje kolejnych par liczone przyrostowo).
+     */
+    private static void getRow(double[] matrix, int n, int a, double[] row) {
+        int idx = a - 1;
+        for (int x = 0; x < a; x++) {
+            row[x] = matrix[idx];
+            idx += n - x - 2;
+        }
+        idx = DistanceKernel.index(n, a, a + 1);
+        for (int x = a + 1; x < n; x++) {
+            row[x] = matrix[idx++];
+        }
+    }
+
+    /**
+     * Zapisuje odległości klastra a od wszystkich pozostałych.
+     */
+    private static void setRow(double[] matrix, int n, int a, double[] row) {
+        int idx = a - 1;
+        for (int x = 0; x < a; x++) {
+            matrix[idx] = row[x];
+            idx += n - x - 2;
+        }
+        idx = DistanceKernel.index(n, a, a + 1);
+        for (int x = a + 1; x < n; x++) {
+            matrix[idx++] = row[x];
+        }
+    }
+
+    /**
+     * Łańcuch najbliższych sąsiadów: łańcuch wydłużany jest o najbliższego sąsiada ostatniego klastra, aż dwa
+     * ostatnie klastry są wzajemnie najbliższe - wtedy są złączane, a odległości nowego klastra wyznaczane
+     * wzorem Lance'a-Williamsa. Złączony klaster zajmuje miejsce jednego ze składników, więc numer miejsca
+     * jest zawsze numerem jednego z jego wierszy. Początkowe liczności klastrów to wagi wierszy.
+     */
+    private void nearestNeighborChain(double[] matrix, int[] mergeA, int[] mergeB, double[] mergeDist) {
+        int n = numRows;
+        double[] size = new double[n];
+        if (weights == null) {
+            Arrays.fill(size, 1.0);
+        } else {
+            System.arraycopy(weights, 0, size, 0, n);
+            if (linkType == WARD) {
+                //przyrost sumy kwadratow przy zlaczeniu klastrow o licznosciach wa i wb (razy 2)
+                int idx = 0;
+                for (int i = 0; i < n; i++) {
+                    for (int j = i + 1; j < n; j++) {
+                        matrix[idx++] *= 2 * size[i] * size[j] / (size[i] + size[j]);
+                    }
+                }
+            }
+        }
+        boolean[] active = new boolean[n];
+        Arrays.fill(active, true);
+        int[] chain = new int[n];
+        int length = 0;
+        int firstActive = 0;
+        double[] rowA = new double[n];
+        double[] rowB = new double[n];
+
+        for (int m = 0; m < n - 1; m++) {
+            if (length == 0) {
+                while (!active[firstActive]) {
+                    firstActive++;
+                }
+                chain[length++] = firstActive;
+            }
+            int a;
+            int b;
+            double dist;
+            while (true) {
+                a = chain[length - 1];
+                int prev = length > 1 ? chain[length - 2] : -1;
+                b = prev;
+                getRow(matrix, n, a, rowA);
+                dist = prev >= 0 ? rowA[prev] : Double.POSITIVE_INFINITY;
+                for (int x = 0; x < n; x++) {
+                    if (active[x] && x != a && rowA[x] < dist) {
+                        dist = rowA[x];
+                        b = x;
+                    }
+                }
+                if (b == prev) {
+                    break;
+                }
+                chain[length++] = b;
+            }
+            length -= 2;
+
+            mergeA[m] = a;
+            mergeB[m] = b;
+            mergeDist[m] = linkType == WARD ? Math.sqrt(dist) : dist;
+
+            double sa = size[a];
+            double sb = size[b];
+            getRow(matrix, n, b, rowB);
+            for (int x = 0; x < n; x++) {
+                if (!active[x] || x == a || x == b) {
+                    continue;
+                }
+                double da = rowA[x];
+                double db = rowB[x];
+                double d;
+                switch (linkType) {
+                    case COMPLETE:
+                        d = Math.max(da, db);
+                        break;
+                    case AVERAGE:
+                        d = (sa * da + sb * db) / (sa + sb);
+                        break;
+                    default:
+                        double sx = size[x];
+                        d = ((sa + sx) * da + (sb + sx) * db - sx * dist) / (sa + sb + sx);
+                        break;
+                }
+                rowB[x] = d;
+            }
+            setRow(matrix, n, b, rowB);
+            size[b] = sa + sb;
+            active[a] = false;
+        }
+    }
+
+    /**
+     * Odtwarza złączenia w kolejności rosnących odległości (pierwsze n - k złączeń) tak jak HierarchicalClusterer:
+     * klaster reprezentowany jest przez swój pierwszy wiersz, lewym poddrzewem jest klaster o mniejszym
+     * pierwszym wierszu, a klastry numerowane są wg. pierwszych wierszy.
+     */
+    private void buildTree(int[] mergeA, int[] mergeB, final double[] mergeDist, int k) {
+        int n = numRows;
+        Integer[] order = new Integer[n - 1];
+        for (int m = 0; m < order.length; m++) {
+            order[m] = m;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            public int compare(Integer a, Integer b) {
+                return Double.compare(mergeDist[a], mergeDist[b]);
+            }
+        });
+
+        int merges = n - k;
+        nodeLeft = new int[merges];
+        nodeRight = new int[merges];
+        leftLength = new double[merges];
+        rightLength = new double[merges];
+        height = new double[merges];
+        int[] parent = new int[n];
+        int[] first = new int[n];
+        int[] root = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            first[i] = i;
+            root[i] = -1 - i;
+        }
+        for (int t = 0; t < merges; t++) {
+            int m = order[t];
+            int ra = find(parent, mergeA[m]);
+            int rb = find(parent, mergeB[m]);
+            if (first[ra] > first[rb]) {
+                int tmp = ra;
+                ra = rb;
+                rb = tmp;
+            }
+            double d = mergeDist[m];
+            nodeLeft[t] = root[ra];
+            nodeRight[t] = root[rb];
+            if (distanceIsBranchLength) {
+                leftLength[t] = d;
+                rightLength[t] = d;
+                height[t] = d + (root[ra] >= 0 ? height[root[ra]] : 0);
+            } else {
+                height[t] = d;
+                leftLength[t] = root[ra] >= 0 ? d - height[root[ra]] : d;
+                rightLength[t] = root[rb] >= 0 ? d - height[root[rb]] : d;
+            }
+            parent[rb] = ra;
+            root[ra] = t;
+        }
+
+        int[] clusterOf = new int[n];
+        Arrays.fill(clusterOf, -1);
+        List<Integer> roots = new ArrayList<Integer>();
+        assignments = new int[n];
+        for (int i = 0; i < n; i++) {
+            int r = find(parent, i);
+            if (clusterOf[r] < 0) {
+                clusterOf[r] = roots.size();
+                roots.add(root[r]);
+            }
+            assignments[i] = clusterOf[r];
+        }
+        clusterRoots = new int[roots.size()];
+        for (int c = 0; c < clusterRoots.length; c++) {
+            clusterRoots[c] = roots.get(c);
+        }
+        clusterSizes = new int[clusterRoots.length];
+        for (int c : assignments) {
+            clusterSizes[c]++;
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Zapisuje poddrzewo w formacie Newick (bez rekurencji - drzewa wiązania pojedynczego mogą być bardzo głębokie).
+     */
+    private String newick(int top) {
+        DecimalFormat format = new DecimalFormat("#.#####");
+        StringBuilder sb = new StringBuilder();
+        int[] stack = new int[2 * nodeLeft.length + 4];
+        int sp = 0;
+        stack[sp++] = top;
+        stack[sp++] = 0;
+        while (sp > 0) {
+            int state = stack[--sp];
+            int node = stack[--sp];
+            if (node < 0) {
+                sb.append(label(-1 - node));
+            } else if (state == 0) {
+                sb.append('(');
+                stack[sp++] = node;
+                stack[sp++] = 1;
+                stack[sp++] = nodeLeft[node];
+                stack[sp++] = 0;
+            } else if (state == 1) {
+                sb.append(':').append(format.format(leftLength[node])).append(',');
+                stack[sp++] = node;
+                stack[sp++] = 2;
+                stack[sp++] = nodeRight[node];
+                stack[sp++] = 0;
+            } else {
+                sb.append(':').append(format.format(rightLength[node])).append(')');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return opis liścia: wartość tekstowa atrybutu tekstowego lub wartość liczbowa (jak w HierarchicalClusterer)
+     */
+    private String label(int row) {
+        double v = labels[row];
+        if (labelAttribute.isString()) {
+            return Utils.isMissingValue(v) ? "?" : labelAttribute.value((int) v);
+        }
+        return String.valueOf(v);
+    }
+
+    public String graph() throws Exception {
+        if (clusterRoots == null || clusterRoots.length == 0) {
+            return "Newick:(no,clusters)";
+        }
+        return "Newick:" + newick(clusterRoots[0]);
+    }
+
+    public int graphType() {
+        return Drawable.Newick;
+    }
+
+    /**
+     * Przypisuje instancję do klastra najbliższego wiersza treningowego.
+     */
+    @Override
+    public int clusterInstance(Instance instance) throws Exception {
+        if (assignments == null) {
+            throw new Exception("Model nie zostal zbudowany");
+        }
+        double[] num = new double[kernel.getNumNumeric()];
+        int[] nom = new int[kernel.getNumNominal()];
+        kernel.normalize(instance, num, nom);
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < numRows; i++) {
+            double dist = kernel.distance2(i, num, nom);
+            if (dist < bestDistance) {
+                bestDistance = dist;
+                best = i;
+            }
+        }
+        return assignments[best];
+    }
+
+    @Override
+    public int numberOfClusters() throws Exception {
+        return clusterRoots == null ? numClusters : clusterRoots.length;
+    }
+
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    /**
+     * @return NaN (klasteryzacja hierarchiczna nie jest algorytmem gęstościowym)
+     */
+    public double getLogLikelihood() {
+        return Double.NaN;
+    }
+
+    /**
+     * @return liczności klastrów
+     */
+    public int[] getClusterSizes() {
+        return clusterSizes;
+    }
+
+    /**
+     * @return funkcja odległości (znormalizowana odległość euklidesowa, ze strukturą danych bez wierszy)
+     */
+    public DistanceFunction getDistanceFunction() {
+        return header == null ? new EuclideanDistance() : new EuclideanDistance(header);
+    }
+
+    public void setNumClusters(int numClusters) throws Exception {
+        if (numClusters <= 0) {
+            throw new Exception("Liczba klastrow musi byc wieksza od 0");
+        }
+        this.numClusters = numClusters;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    /**
+     * @param linkType rodzaj wiązania (SINGLE, COMPLETE, AVERAGE lub WARD)
+     * @throws Exception gdy wiązanie nie jest obsługiwane
+     */
+    public void setLinkType(int linkType) throws Exception {
+        if (linkType != SINGLE && linkType != COMPLETE && linkType != AVERAGE && linkType != WARD) {
+            throw new Exception("Nieobslugiwany rodzaj wiazania: " + linkType);
+        }
+        this.linkType = linkType;
+    }
+
+    public SelectedTag getLinkType() {
+        return new SelectedTag(linkType, HierarchicalClusterer.TAGS_LINK_TYPE);
+    }
+
+    public boolean getDistanceIsBranchLength() {
+        return distanceIsBranchLength;
+    }
+
+    public void setDistanceIsBranchLength(boolean distanceIsBranchLength) {
+        this.distanceIsBranchLength = distanceIsBranchLength;
+    }
+
+    public boolean getPrintNewick() {
+        return printNewick;
+    }
+
+    public void setPrintNewick(boolean printNewick) {
+        this.printNewick = printNewick;
+    }
+
+    public boolean getSinglePrecision() {
+        return singlePrecision;
+    }
+
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public Enumeration listOptions() {
+        Vector<Option> result = new Vector<Option>();
+        result.addElement(new Option("\tnumber of clusters.\n\t(default 2).", "N", 1, "-N <num>"));
+        result.addElement(new Option("\tlink type (SINGLE, COMPLETE, AVERAGE or WARD).\n\t(default SINGLE).", "L", 1, "-L <type>"));
+        result.addElement(new Option("\tdistance is branch length.", "B", 0, "-B"));
+        result.addElement(new Option("\tprint hierarchy in Newick format.", "P", 0, "-P"));
+        result.addElement(new Option("\tnumber of threads.\n\t(default: number of processors).", "threads", 1, "-threads <num>"));
+        result.addElement(new Option("\tstore rows in single precision.", "float", 0, "-float"));
+        return result.elements();
+    }
+
+    /**
+     * Ustawia opcje. Opcja -A (funkcja odległości) jest ignorowana - zob. supports.
+     */
+    public void setOptions(String[] options) throws Exception {
+        String value = Utils.getOption('N', options);
+        if (value.length() > 0) {
+            setNumClusters(Integer.parseInt(value));
+        }
+        value = Utils.getOption('L', options);
+        if (value.length() > 0) {
+            setLinkType(new SelectedTag(value, HierarchicalClusterer.TAGS_LINK_TYPE).getSelectedTag().getID());
+        }
+        value = Utils.getOption("threads", options);
+        if (value.length() > 0) {
+            setNumThreads(Integer.parseInt(value));
+        }
+        setSinglePrecision(Utils.getFlag("float", options));
+        Utils.getOption('A', options);
+        setDistanceIsBranchLength(Utils.getFlag('B', options));
+        setPrintNewick(Utils.getFlag('P', options));
+        Utils.getFlag('D', options);
+    }
+
+    public String[] getOptions() {
+        List<String> result = new ArrayList<String>();
+        result.add("-N");
+        result.add("" + numClusters);
+        result.add("-L");
+        result.add(getLinkType().getSelectedTag().getIDStr());
+        if (distanceIsBranchLength) {
+            result.add("-B");
+        }
+        if (printNewick) {
+            result.add("-P");
+        }
+        result.add("-threads");
+        result.add("" + numThreads);
+        if (singlePrecision) {
+            result.add("-float");
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: 1 $");
+    }
+
+    @Override
+    public String toString() {
+        if (clusterRoots == null) {
+            return "ParallelHierarchicalClusterer: No model built yet.";
+        }
+        StringBuilder sb = new StringBuilder();
+        if (printNewick) {
+            for (int c = 0; c < clusterRoots.length; c++) {
+                sb.append("Cluster ").append(c).append("\n").append(newick(clusterRoots[c])).append("\n\n");
+            }
+        }
+        return sb.toString();
+    }
+}
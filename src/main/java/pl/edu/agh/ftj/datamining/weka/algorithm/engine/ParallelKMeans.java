@@ -0,0 +1,1243 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import weka.clusterers.NumberOfClustersRequestable;
+import weka.clusterers.RandomizableClusterer;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * Wielowątkowa implementacja algorytmu k-średnich zgodna z SimpleKMeans
+ * (znormalizowana odległość euklidesowa, moda dla atrybutów nominalnych, zastępowanie brakujących wartości,
+ * usuwanie pustych klastrów). Krok przypisania wykonywany jest równolegle na fragmentach wierszy,
+ * a każdy wątek zbiera własne sumy częściowe środków klastrów, które są następnie scalane.
+ * Algorytm pracuje bezpośrednio na zbiorze NumericDataset; normalizacja odbywa się przez wagi kolumn
+ * (1 / rozpiętość^2), więc dane nie są kopiowane.
+ * <p>
+ * W trybie mini-batch (opcja -batch większa od 0) środki klastrów aktualizowane są na podstawie
+ * losowych partii wierszy (Sculley, "Web-scale k-means clustering"), a cały zbiór przeglądany jest
+ * tylko raz - na końcu, w celu wyznaczenia przypisań i statystyk klastrów.
+ * <p>
+ * Opcje: -N liczba klastrów, -I maksymalna liczba iteracji, -S ziarno, -threads liczba wątków,
+ * -batch rozmiar partii (0 - pełne iteracje), -batches maksymalna liczba partii,
+ * -tol próg przesunięcia środków kończący uczenie na partiach, -init sposób wyboru środków początkowych
+ * (random - losowe instancje jak w SimpleKMeans, kmeans++ - losowanie proporcjonalne do kwadratu odległości,
+ * farthest - przejście FarthestFirst). Środki początkowe mogą być też podane wprost (setInitialCentroids),
+ * np. z poprzedniego wyniku - wtedy algorytm kontynuuje uczenie od nich (warm start).
+ * <p>
+ * Opcja -index pozwala pominąć większość obliczeń odległości w pełnych iteracjach (wynik jest taki sam):
+ * bounds - ograniczenia z nierówności trójkąta w wariancie Hamerly'ego (dolne ograniczenie odległości od
+ * drugiego najbliższego środka, pomniejszane o największe przesunięcie środka; wiersz, którego odległość od
+ * własnego środka jest mniejsza od ograniczenia lub od połowy odległości do najbliższego innego środka,
+ * nie zmienia klastra), kdtree - dodatkowo drzewo k-d nad środkami klastrów dla wierszy wymagających
+ * pełnego przeszukania (tylko dane numeryczne o co najwyżej KD_TREE_MAX_DIMENSIONS atrybutach,
+ * w przeciwnym razie używane jest bounds).
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class ParallelKMeans extends RandomizableClusterer implements NumberOfClustersRequestable, NearestCenterClusterer {
+
+    private static final long serialVersionUID = 3911468253049513172L;
+
+    /**
+     * Maksymalna liczba atrybutów, dla której używane jest drzewo k-d.
+     */
+    public static final int KD_TREE_MAX_DIMENSIONS = 16;
+
+    /**
+     * Żądana liczba klastrów.
+     */
+    private int numClusters = 2;
+    /**
+     * Maksymalna liczba iteracji.
+     */
+    private int maxIterations = 500;
+    /**
+     * Liczba wątków obliczeniowych.
+     */
+    private int numThreads = EngineExecutors.defaultThreads();
+    /**
+     * Rozmiar partii w trybie mini-batch (0 - pełne iteracje).
+     */
+    private int batchSize = 0;
+    /**
+     * Maksymalna liczba partii w trybie mini-batch.
+     */
+    private int maxBatches = 100;
+    /**
+     * Próg sumarycznego (znormalizowanego) przesunięcia środków po partii, poniżej którego uczenie jest kończone.
+     */
+    private double tolerance = 1e-4;
+    /**
+     * Sposób wyboru środków początkowych: "random", "kmeans++" lub "farthest".
+     */
+    private String initMethod = "random";
+    /**
+     * Środki początkowe podane wprost (null - wybierane sposobem initMethod).
+     */
+    private Instances initialCentroids = null;
+    /**
+     * Sposób ograniczania obliczeń odległości: "none", "bounds" lub "kdtree".
+     */
+    private String index = "none";
+
+    /**
+     * Struktura danych treningowych (bez instancji).
+     */
+    private Instances header;
+    /**
+     * Numery atrybutów kolumn numerycznych i nominalnych.
+     */
+    private int[] numericAttributes;
+    private int[] nominalAttributes;
+    /**
+     * Wagi kolumn numerycznych w odległości (1 / rozpiętość^2, 0 dla kolumn stałych).
+     */
+    private double[] scale;
+    private double[] sqrtScale;
+    /**
+     * Wartości zastępujące brakujące wartości (średnia lub moda).
+     */
+    private double[] numericFill;
+    private int[] nominalFill;
+    /**
+     * Liczby wartości atrybutów nominalnych.
+     */
+    private int[] numValues;
+    /**
+     * Środki klastrów: wartości numeryczne i numery wartości nominalnych.
+     */
+    private double[][] centroidNumeric;
+    private int[][] centroidNominal;
+    /**
+     * Przypisania wierszy treningowych do klastrów.
+     */
+    private int[] assignments;
+    /**
+     * Liczności klastrów.
+     */
+    private int[] clusterSizes;
+    /**
+     * Częstotliwości wartości nominalnych w klastrach.
+     */
+    private int[][][] clusterNominalCounts;
+    /**
+     * Odchylenia standardowe kolumn numerycznych w klastrach.
+     */
+    private double[][] stdDevs;
+    /**
+     * Suma kwadratów odległości instancji od środków ich klastrów.
+     */
+    private double squaredError;
+    /**
+     * Liczba wykonanych iteracji.
+     */
+    private int iterations;
+    /**
+     * Użyty sposób ograniczania obliczeń odległości (po budowie modelu).
+     */
+    private String indexUsed;
+    /**
+     * Liczba obliczonych odległości wiersz - środek i liczba, jaką wymagałoby pełne przeszukiwanie.
+     */
+    private long distanceComputations;
+    private long bruteForceComputations;
+
+    public ParallelKMeans() {
+        super();
+        m_SeedDefault = 10;
+        setSeed(m_SeedDefault);
+    }
+
+    /**
+     * @return opis algorytmu
+     */
+    public String globalInfo() {
+        return "Multi-threaded k-means compatible with SimpleKMeans (normalized Euclidean distance).";
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capability.NO_CLASS);
+        result.enable(Capability.NOMINAL_ATTRIBUTES);
+        result.enable(Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capability.DATE_ATTRIBUTES);
+        result.enable(Capability.MISSING_VALUES);
+        return result;
+    }
+
+    @Override
+    public void buildClusterer(Instances data) throws Exception {
+        buildClusterer(PackedDataset.of(data));
+    }
+
+    public void buildClusterer(NumericDataset data) throws Exception {
+        Capabilities caps = getCapabilities();
+        caps.setMinimumNumberInstances(0);
+        caps.testWithFail(data.getHeader());
+
+        final int n = data.numRows();
+        if (n == 0) {
+            throw new Exception("Brak instancji do klasteryzacji");
+        }
+        prepare(data);
+        indexUsed = index;
+        if (index.equals("kdtree") && (nominalAttributes.length > 0 || numericAttributes.length > KD_TREE_MAX_DIMENSIONS)) {
+            indexUsed = "bounds";
+        }
+        distanceComputations = 0;
+        bruteForceComputations = 0;
+
+        ExecutorService pool = numThreads > 1 ? EngineExecutors.newPool("weka-kmeans", numThreads) : null;
+        try {
+            initialCentroids(data);
+            int[] assign = new int[n];
+            Arrays.fill(assign, -1);
+            int[] bounds = EngineExecutors.split(n, numThreads);
+            Partial total;
+            iterations = 0;
+            if (batchSize > 0) {
+                miniBatch(pool, data);
+                // jeden pełny przebieg: przypisania i statystyki dla środków z partii
+                total = assignStep(pool, data, assign, bounds);
+                int[] remap = dropEmptyClusters(total);
+                if (remap != null) {
+                    for (int i = 0; i < n; i++) {
+                        assign[i] = remap[assign[i]];
+                    }
+                }
+                assignments = assign;
+                summarize(total);
+                return;
+            }
+            double[] lower = indexUsed.equals("none") ? null : new double[n];
+            double drift = 0;
+            while (true) {
+                iterations++;
+                total = lower == null ? assignStep(pool, data, assign, bounds) : boundedAssignStep(pool, data, assign, bounds, lower, drift);
+                int[] remap = dropEmptyClusters(total);
+                if (remap != null) {
+                    for (int i = 0; i < n; i++) {
+                        assign[i] = remap[assign[i]];
+                    }
+                }
+                double[][] previous = null;
+                int[][] previousNominal = null;
+                if (lower != null) {
+                    previous = new double[centroidNumeric.length][];
+                    previousNominal = new int[centroidNumeric.length][];
+                    for (int c = 0; c < previous.length; c++) {
+                        previous[c] = centroidNumeric[c].clone();
+                        previousNominal[c] = centroidNominal[c].clone();
+                    }
+                }
+                updateCentroids(total);
+                if (lower != null) {
+                    drift = 0;
+                    for (int c = 0; c < previous.length; c++) {
+                        drift = Math.max(drift, Math.sqrt(distance(previous[c], previousNominal[c], c)));
+                    }
+                }
+                if ((total.changed == 0 && remap == null) || iterations >= maxIterations) {
+                    break;
+                }
+            }
+            assignments = assign;
+            summarize(total);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Wyznacza wagi kolumn i wartości zastępujące brakujące wartości.
+     */
+    private void prepare(NumericDataset data) {
+        header = data.getHeader();
+        numericAttributes = data.getNumericAttributes();
+        nominalAttributes = data.getNominalAttributes();
+        int dn = numericAttributes.length;
+        int dc = nominalAttributes.length;
+        scale = new double[dn];
+        sqrtScale = new double[dn];
+        numericFill = new double[dn];
+        for (int j = 0; j < dn; j++) {
+            double range = data.getMax(j) - data.getMin(j);
+            scale[j] = range > 0 ? 1.0 / (range * range) : 0;
+            sqrtScale[j] = range > 0 ? 1.0 / range : 0;
+            numericFill[j] = data.getMean(j);
+        }
+        nominalFill = new int[dc];
+        numValues = new int[dc];
+        for (int j = 0; j < dc; j++) {
+            nominalFill[j] = data.getMode(j);
+            numValues[j] = data.numValues(j);
+        }
+    }
+
+    /**
+     * Odczytuje wiersz i zastępuje brakujące wartości.
+     */
+    private void readRow(NumericDataset data, int row, double[] num, int[] nom) {
+        data.readRow(row, num, nom);
+        fillMissing(num, nom);
+    }
+
+    private void fillMissing(double[] num, int[] nom) {
+        for (int j = 0; j < num.length; j++) {
+            if (Double.isNaN(num[j])) {
+                num[j] = numericFill[j];
+            }
+        }
+        for (int j = 0; j < nom.length; j++) {
+            if (nom[j] < 0) {
+                nom[j] = nominalFill[j];
+            }
+        }
+    }
+
+    /**
+     * Kwadrat znormalizowanej odległości wiersza od środka klastra.
+     */
+    private double distance(double[] num, int[] nom, int c) {
+        double[] cn = centroidNumeric[c];
+        double dist = 0;
+        for (int j = 0; j < num.length; j++) {
+            double diff = num[j] - cn[j];
+            dist += diff * diff * scale[j];
+        }
+        int[] cc = centroidNominal[c];
+        for (int j = 0; j < nom.length; j++) {
+            if (nom[j] != cc[j]) {
+                dist += 1;
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Numer najbliższego środka klastra (pierwszy przy remisie).
+     */
+    private int nearest(double[] num, int[] nom, double[] bestDist) {
+        int best = 0;
+        double min = Double.MAX_VALUE;
+        for (int c = 0; c < centroidNumeric.length; c++) {
+            double dist = distance(num, nom, c);
+            if (dist < min) {
+                min = dist;
+                best = c;
+            }
+        }
+        bestDist[0] = min;
+        return best;
+    }
+
+    /**
+     * Najbliższy środek klastra (pierwszy przy remisie) oraz kwadraty odległości od najbliższego
+     * i drugiego najbliższego środka.
+     */
+    private int nearestTwo(double[] num, int[] nom, double[] dist) {
+        int best = 0;
+        double min = Double.MAX_VALUE;
+        double second = Double.MAX_VALUE;
+        for (int c = 0; c < centroidNumeric.length; c++) {
+            double d = distance(num, nom, c);
+            if (d < min) {
+                second = min;
+                min = d;
+                best = c;
+            } else if (d < second) {
+                second = d;
+            }
+        }
+        dist[0] = min;
+        dist[1] = second;
+        return best;
+    }
+
+    /**
+     * Wybiera środki początkowe: podane wprost, wg przejścia FarthestFirst, k-means++ lub losowo.
+     */
+    private void initialCentroids(NumericDataset data) throws Exception {
+        if (initialCentroids != null) {
+            useCentroids(initialCentroids);
+        } else if (initMethod.equals("farthest")) {
+            ParallelFarthestFirst ff = new ParallelFarthestFirst();
+            ff.setSeed(getSeed());
+            ff.setNumClusters(numClusters);
+            ff.setNumThreads(numThreads);
+            ff.buildClusterer(data);
+            useCentroids(ff.getClusterCentroids());
+        } else if (initMethod.equals("kmeans++")) {
+            kMeansPlusPlus(data);
+        } else {
+            randomCentroids(data);
+        }
+    }
+
+    /**
+     * Przyjmuje podane środki jako początkowe. Wartości nominalne dopasowywane są po nazwie,
+     * brakujące wartości zastępowane są średnią lub modą.
+     * @throws Exception gdy środki mają inną strukturę niż dane
+     */
+    private void useCentroids(Instances centroids) throws Exception {
+        if (centroids.numInstances() == 0 || centroids.numAttributes() != header.numAttributes()) {
+            throw new Exception("Srodki poczatkowe niezgodne ze struktura danych");
+        }
+        int k = centroids.numInstances();
+        centroidNumeric = new double[k][numericAttributes.length];
+        centroidNominal = new int[k][nominalAttributes.length];
+        for (int c = 0; c < k; c++) {
+            Instance inst = centroids.instance(c);
+            for (int j = 0; j < numericAttributes.length; j++) {
+                if (!centroids.attribute(numericAttributes[j]).isNumeric()) {
+                    throw new Exception("Srodki poczatkowe niezgodne ze struktura danych");
+                }
+                centroidNumeric[c][j] = inst.value(numericAttributes[j]);
+            }
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                int att = nominalAttributes[j];
+                if (centroids.attribute(att).isNumeric()) {
+                    throw new Exception("Srodki poczatkowe niezgodne ze struktura danych");
+                }
+                centroidNominal[c][j] = inst.isMissing(att) ? -1 : header.attribute(att).indexOfValue(inst.stringValue(att));
+            }
+            fillMissing(centroidNumeric[c], centroidNominal[c]);
+        }
+    }
+
+    /**
+     * Wybór środków k-means++: pierwszy losowo, kolejne z prawdopodobieństwem proporcjonalnym
+     * do kwadratu odległości od najbliższego dotychczas wybranego środka.
+     */
+    private void kMeansPlusPlus(NumericDataset data) {
+        int n = data.numRows();
+        Random random = new Random(getSeed());
+        double[] num = new double[numericAttributes.length];
+        int[] nom = new int[nominalAttributes.length];
+        double[] minDistance = new double[n];
+        Arrays.fill(minDistance, Double.MAX_VALUE);
+        List<double[]> chosenNumeric = new ArrayList<double[]>();
+        List<int[]> chosenNominal = new ArrayList<int[]>();
+        int next = random.nextInt(n);
+        while (next >= 0 && chosenNumeric.size() < numClusters) {
+            double[] cn = new double[numericAttributes.length];
+            int[] cc = new int[nominalAttributes.length];
+            readRow(data, next, cn, cc);
+            chosenNumeric.add(cn);
+            chosenNominal.add(cc);
+            centroidNumeric = new double[][]{cn};
+            centroidNominal = new int[][]{cc};
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                readRow(data, i, num, nom);
+                minDistance[i] = Math.min(minDistance[i], distance(num, nom, 0));
+                total += minDistance[i];
+            }
+            next = -1;
+            if (total > 0) {
+                double r = random.nextDouble() * total;
+                int last = -1;
+                for (int i = 0; i < n && next < 0; i++) {
+                    if (minDistance[i] > 0) {
+                        last = i;
+                        r -= minDistance[i];
+                        if (r <= 0) {
+                            next = i;
+                        }
+                    }
+                }
+                if (next < 0) {
+                    // błąd zaokrąglenia sumy
+                    next = last;
+                }
+            }
+        }
+        centroidNumeric = chosenNumeric.toArray(new double[chosenNumeric.size()][]);
+        centroidNominal = chosenNominal.toArray(new int[chosenNominal.size()][]);
+    }
+
+    /**
+     * Losowy wybór różnych instancji jako początkowych środków (jak w SimpleKMeans).
+     */
+    private void randomCentroids(NumericDataset data) {
+        int n = data.numRows();
+        Random random = new Random(getSeed());
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        List<double[]> chosenNumeric = new ArrayList<double[]>();
+        List<int[]> chosenNominal = new ArrayList<int[]>();
+        for (int j = n - 1; j >= 0 && chosenNumeric.size() < numClusters; j--) {
+            int pick = random.nextInt(j + 1);
+            int row = order[pick];
+            order[pick] = order[j];
+            order[j] = row;
+            double[] num = new double[numericAttributes.length];
+            int[] nom = new int[nominalAttributes.length];
+            readRow(data, row, num, nom);
+            boolean duplicate = false;
+            for (int c = 0; c < chosenNumeric.size() && !duplicate; c++) {
+                duplicate = Arrays.equals(chosenNumeric.get(c), num) && Arrays.equals(chosenNominal.get(c), nom);
+            }
+            if (!duplicate) {
+                chosenNumeric.add(num);
+                chosenNominal.add(nom);
+            }
+        }
+        centroidNumeric = chosenNumeric.toArray(new double[chosenNumeric.size()][]);
+        centroidNominal = chosenNominal.toArray(new int[chosenNominal.size()][]);
+    }
+
+    /**
+     * Równoległy krok przypisania: każdy fragment wierszy zwraca własne sumy częściowe.
+     */
+    private Partial assignStep(ExecutorService pool, final NumericDataset data, final int[] assign, int[] bounds) throws Exception {
+        List<Callable<Partial>> tasks = new ArrayList<Callable<Partial>>();
+        for (int t = 0; t < bounds.length - 1; t++) {
+            final int from = bounds[t];
+            final int to = bounds[t + 1];
+            tasks.add(new Callable<Partial>() {
+
+                public Partial call() {
+                    Partial p = new Partial(centroidNumeric.length);
+                    double[] num = new double[numericAttributes.length];
+                    int[] nom = new int[nominalAttributes.length];
+                    double[] dist = new double[1];
+                    for (int i = from; i < to; i++) {
+                        readRow(data, i, num, nom);
+                        int best = nearest(num, nom, dist);
+                        if (assign[i] != best) {
+                            assign[i] = best;
+                            p.changed++;
+                        }
+                        p.add(best, num, nom, dist[0]);
+                    }
+                    p.distances = (long) (to - from) * centroidNumeric.length;
+                    return p;
+                }
+            });
+        }
+        return mergePartials(EngineExecutors.invokeAll(pool, tasks));
+    }
+
+    /**
+     * Krok przypisania z ograniczeniami z nierówności trójkąta (wariant Hamerly'ego). Odległość wiersza od
+     * własnego środka liczona jest zawsze (jest potrzebna do błędu kwadratowego); pełne przeszukanie
+     * (lub drzewo k-d) wykonywane jest tylko, gdy odległość ta nie jest mniejsza od dolnego ograniczenia
+     * odległości od pozostałych środków ani od połowy odległości do najbliższego innego środka.
+     * @param lower dolne ograniczenia odległości wierszy od drugiego najbliższego środka (aktualizowane)
+     * @param drift największe przesunięcie środka od poprzedniego kroku
+     */
+    private Partial boundedAssignStep(ExecutorService pool, final NumericDataset data, final int[] assign, int[] bounds,
+            final double[] lower, final double drift) throws Exception {
+        final int k = centroidNumeric.length;
+        final double[] half = new double[k];
+        Arrays.fill(half, Double.MAX_VALUE);
+        for (int c = 0; c < k; c++) {
+            for (int c2 = c + 1; c2 < k; c2++) {
+                double d = Math.sqrt(distance(centroidNumeric[c], centroidNominal[c], c2)) / 2;
+                half[c] = Math.min(half[c], d);
+                half[c2] = Math.min(half[c2], d);
+            }
+        }
+        KdTree kdTree = null;
+        if (indexUsed.equals("kdtree")) {
+            double[][] points = new double[k][];
+            for (int c = 0; c < k; c++) {
+                points[c] = embed(centroidNumeric[c], new double[numericAttributes.length]);
+            }
+            kdTree = new KdTree(points);
+        }
+        final KdTree tree = kdTree;
+        List<Callable<Partial>> tasks = new ArrayList<Callable<Partial>>();
+        for (int t = 0; t < bounds.length - 1; t++) {
+            final int from = bounds[t];
+            final int to = bounds[t + 1];
+            tasks.add(new Callable<Partial>() {
+
+                public Partial call() {
+                    Partial p = new Partial(k);
+                    final double[] num = new double[numericAttributes.length];
+                    final int[] nom = new int[nominalAttributes.length];
+                    double[] point = new double[numericAttributes.length];
+                    double[] dist = new double[3];
+                    KdTree.Metric metric = new KdTree.Metric() {
+
+                        public double distance2(int c) {
+                            return distance(num, nom, c);
+                        }
+                    };
+                    for (int i = from; i < to; i++) {
+                        readRow(data, i, num, nom);
+                        int a = assign[i];
+                        double bound = lower[i] - drift;
+                        if (a >= 0) {
+                            double d2 = distance(num, nom, a);
+                            p.distances++;
+                            double d = Math.sqrt(d2);
+                            if (d < half[a] || d < bound) {
+                                lower[i] = bound;
+                                p.add(a, num, nom, d2);
+                                continue;
+                            }
+                        }
+                        int best;
+                        if (tree != null) {
+                            dist[2] = 0;
+                            best = tree.nearest(embed(num, point), metric, dist);
+                            p.distances += (long) dist[2];
+                        } else {
+                            best = nearestTwo(num, nom, dist);
+                            p.distances += k;
+                        }
+                        lower[i] = Math.sqrt(dist[1]);
+                        if (assign[i] != best) {
+                            assign[i] = best;
+                            p.changed++;
+                        }
+                        p.add(best, num, nom, dist[0]);
+                    }
+                    return p;
+                }
+            });
+        }
+        return mergePartials(EngineExecutors.invokeAll(pool, tasks));
+    }
+
+    /**
+     * Współrzędne wiersza numerycznego w przestrzeni znormalizowanej (dla drzewa k-d).
+     */
+    private double[] embed(double[] num, double[] point) {
+        for (int j = 0; j < num.length; j++) {
+            point[j] = num[j] * sqrtScale[j];
+        }
+        return point;
+    }
+
+    /**
+     * Scala sumy częściowe fragmentów w kolejności fragmentów i zlicza obliczenia odległości.
+     */
+    private Partial mergePartials(List<Partial> partials) {
+        Partial total = null;
+        for (Partial p : partials) {
+            if (total == null) {
+                total = p;
+            } else {
+                total.merge(p);
+            }
+        }
+        long rows = 0;
+        for (int count : total.counts) {
+            rows += count;
+        }
+        distanceComputations += total.distances;
+        bruteForceComputations += rows * total.counts.length;
+        return total;
+    }
+
+    /**
+     * Uczenie na losowych partiach wierszy: każdy wiersz partii przesuwa najbliższy środek
+     * z krokiem 1 / (liczba wierszy dotąd przypisanych do środka). Najbliższe środki dla partii
+     * wyznaczane są równolegle, aktualizacja środków jest sekwencyjna.
+     */
+    private void miniBatch(ExecutorService pool, final NumericDataset data) throws Exception {
+        int n = data.numRows();
+        int b = Math.min(batchSize, n);
+        int k = centroidNumeric.length;
+        Random random = new Random(getSeed());
+        double[] seen = new double[k];
+        double[][][] nominalSeen = new double[k][nominalAttributes.length][];
+        for (int c = 0; c < k; c++) {
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                nominalSeen[c][j] = new double[numValues[j]];
+            }
+        }
+        final int[] rows = new int[b];
+        final int[] nearestOf = new int[b];
+        int[] bounds = EngineExecutors.split(b, numThreads);
+        double[] num = new double[numericAttributes.length];
+        int[] nom = new int[nominalAttributes.length];
+        double[][] previous = new double[k][numericAttributes.length];
+        int[][] previousNominal = new int[k][nominalAttributes.length];
+
+        while (iterations < maxBatches) {
+            iterations++;
+            for (int i = 0; i < b; i++) {
+                rows[i] = random.nextInt(n);
+            }
+            nearestStep(pool, data, rows, nearestOf, bounds);
+            for (int c = 0; c < k; c++) {
+                System.arraycopy(centroidNumeric[c], 0, previous[c], 0, numericAttributes.length);
+                System.arraycopy(centroidNominal[c], 0, previousNominal[c], 0, nominalAttributes.length);
+            }
+            for (int i = 0; i < b; i++) {
+                readRow(data, rows[i], num, nom);
+                int c = nearestOf[i];
+                seen[c]++;
+                double eta = 1.0 / seen[c];
+                double[] cn = centroidNumeric[c];
+                for (int j = 0; j < num.length; j++) {
+                    cn[j] += eta * (num[j] - cn[j]);
+                }
+                for (int j = 0; j < nom.length; j++) {
+                    nominalSeen[c][j][nom[j]]++;
+                }
+            }
+            double shift = 0;
+            for (int c = 0; c < k; c++) {
+                if (seen[c] > 0) {
+                    for (int j = 0; j < nominalAttributes.length; j++) {
+                        centroidNominal[c][j] = Utils.maxIndex(nominalSeen[c][j]);
+                    }
+                }
+                for (int j = 0; j < numericAttributes.length; j++) {
+                    double diff = centroidNumeric[c][j] - previous[c][j];
+                    shift += diff * diff * scale[j];
+                }
+                for (int j = 0; j < nominalAttributes.length; j++) {
+                    if (centroidNominal[c][j] != previousNominal[c][j]) {
+                        shift += 1;
+                    }
+                }
+            }
+            if (shift <= tolerance) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Równolegle wyznacza najbliższe środki dla wierszy partii.
+     */
+    private void nearestStep(ExecutorService pool, final NumericDataset data, final int[] rows, final int[] nearestOf,
+            int[] bounds) throws Exception {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int t = 0; t < bounds.length - 1; t++) {
+            final int from = bounds[t];
+            final int to = bounds[t + 1];
+            tasks.add(new Callable<Object>() {
+
+                public Object call() {
+                    double[] num = new double[numericAttributes.length];
+                    int[] nom = new int[nominalAttributes.length];
+                    double[] dist = new double[1];
+                    for (int i = from; i < to; i++) {
+                        readRow(data, rows[i], num, nom);
+                        nearestOf[i] = nearest(num, nom, dist);
+                    }
+                    return null;
+                }
+            });
+        }
+        EngineExecutors.invokeAll(pool, tasks);
+    }
+
+    /**
+     * Usuwa puste klastry (jak SimpleKMeans).
+     * @return mapowanie starych numerów klastrów na nowe lub null jeśli żaden klaster nie był pusty
+     */
+    private int[] dropEmptyClusters(Partial total) {
+        int k = centroidNumeric.length;
+        int nonEmpty = 0;
+        for (int c = 0; c < k; c++) {
+            if (total.counts[c] > 0) {
+                nonEmpty++;
+            }
+        }
+        if (nonEmpty == k) {
+            return null;
+        }
+        int[] remap = new int[k];
+        double[][] keptNumeric = new double[nonEmpty][];
+        int[][] keptNominal = new int[nonEmpty][];
+        int next = 0;
+        for (int c = 0; c < k; c++) {
+            remap[c] = total.counts[c] > 0 ? next : -1;
+            if (total.counts[c] > 0) {
+                keptNumeric[next] = centroidNumeric[c];
+                keptNominal[next] = centroidNominal[c];
+                next++;
+            }
+        }
+        centroidNumeric = keptNumeric;
+        centroidNominal = keptNominal;
+        total.compact(remap, nonEmpty);
+        return remap;
+    }
+
+    /**
+     * Wyznacza nowe środki klastrów z sum częściowych.
+     */
+    private void updateCentroids(Partial total) {
+        for (int c = 0; c < centroidNumeric.length; c++) {
+            for (int j = 0; j < numericAttributes.length; j++) {
+                centroidNumeric[c][j] = total.sums[c][j] / total.counts[c];
+            }
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                centroidNominal[c][j] = Utils.maxIndex(total.nominalCounts[c][j]);
+            }
+        }
+    }
+
+    /**
+     * Zapamiętuje statystyki klastrów z ostatniego kroku przypisania.
+     */
+    private void summarize(Partial total) {
+        int k = centroidNumeric.length;
+        clusterSizes = total.counts.clone();
+        squaredError = total.error;
+        clusterNominalCounts = new int[k][header.numAttributes()][];
+        stdDevs = new double[k][numericAttributes.length];
+        for (int c = 0; c < k; c++) {
+            Arrays.fill(clusterNominalCounts[c], new int[0]);
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                clusterNominalCounts[c][nominalAttributes[j]] = total.nominalCounts[c][j];
+            }
+            int cnt = total.counts[c];
+            for (int j = 0; j < numericAttributes.length; j++) {
+                double var = cnt > 1 ? (total.squares[c][j] - total.sums[c][j] * total.sums[c][j] / cnt) / (cnt - 1) : 0;
+                stdDevs[c][j] = Math.sqrt(Math.max(0, var));
+            }
+        }
+    }
+
+    /**
+     * Przypisuje wiersze zbioru do najbliższych środków (np. pełne dane, gdy model zbudowano na próbce).
+     * Liczności klastrów i błąd kwadratowy dotyczą odtąd tych wierszy; środki, odchylenia standardowe
+     * i częstotliwości wartości nominalnych pozostają wyznaczone z danych treningowych.
+     */
+    public double[] assignRows(NumericDataset data) throws Exception {
+        final int n = data.numRows();
+        int[] assign = new int[n];
+        Arrays.fill(assign, -1);
+        ExecutorService pool = numThreads > 1 ? EngineExecutors.newPool("weka-kmeans", numThreads) : null;
+        Partial total;
+        try {
+            total = assignStep(pool, data, assign, EngineExecutors.split(n, numThreads));
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        assignments = assign;
+        clusterSizes = total.counts.clone();
+        squaredError = total.error;
+        return new double[]{total.error, total.errorSquares};
+    }
+
+    @Override
+    public int clusterInstance(Instance instance) throws Exception {
+        double[] num = new double[numericAttributes.length];
+        int[] nom = new int[nominalAttributes.length];
+        for (int j = 0; j < num.length; j++) {
+            num[j] = instance.value(numericAttributes[j]);
+        }
+        for (int j = 0; j < nom.length; j++) {
+            double v = instance.value(nominalAttributes[j]);
+            nom[j] = Utils.isMissingValue(v) ? -1 : (int) v;
+        }
+        fillMissing(num, nom);
+        return nearest(num, nom, new double[1]);
+    }
+
+    @Override
+    public int numberOfClusters() throws Exception {
+        return centroidNumeric == null ? numClusters : centroidNumeric.length;
+    }
+
+    /**
+     * @return środki klastrów w postaci instancji
+     */
+    public Instances getClusterCentroids() {
+        Instances result = new Instances(header, centroidNumeric.length);
+        for (int c = 0; c < centroidNumeric.length; c++) {
+            double[] vals = new double[header.numAttributes()];
+            for (int j = 0; j < numericAttributes.length; j++) {
+                vals[numericAttributes[j]] = centroidNumeric[c][j];
+            }
+            for (int j = 0; j < nominalAttributes.length; j++) {
+                vals[nominalAttributes[j]] = centroidNominal[c][j];
+            }
+            result.add(new DenseInstance(1.0, vals));
+        }
+        return result;
+    }
+
+    /**
+     * @return odchylenia standardowe atrybutów numerycznych w klastrach w postaci instancji
+     * (dla atrybutów nominalnych wartość brakująca)
+     */
+    public Instances getClusterStandardDevs() {
+        Instances result = new Instances(header, stdDevs.length);
+        for (double[] s : stdDevs) {
+            double[] vals = new double[header.numAttributes()];
+            Arrays.fill(vals, Utils.missingValue());
+            for (int j = 0; j < numericAttributes.length; j++) {
+                vals[numericAttributes[j]] = s[j];
+            }
+            result.add(new DenseInstance(1.0, vals));
+        }
+        return result;
+    }
+
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    /**
+     * @return NaN (k-średnich nie jest algorytmem gęstościowym)
+     */
+    public double getLogLikelihood() {
+        return Double.NaN;
+    }
+
+    /**
+     * @return liczności klastrów
+     */
+    public int[] getClusterSizes() {
+        return clusterSizes;
+    }
+
+    /**
+     * @return częstotliwości wartości nominalnych w klastrach
+     */
+    public int[][][] getClusterNominalCounts() {
+        return clusterNominalCounts;
+    }
+
+    /**
+     * @return suma kwadratów odległości instancji od środków klastrów
+     */
+    public double getSquaredError() {
+        return squaredError;
+    }
+
+    /**
+     * @return liczba wykonanych iteracji (w trybie mini-batch - liczba partii)
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return użyty sposób ograniczania obliczeń odległości ("none", "bounds" lub "kdtree")
+     */
+    public String getIndexUsed() {
+        return indexUsed;
+    }
+
+    /**
+     * @return liczba obliczonych odległości wiersz - środek w krokach przypisania
+     */
+    public long getDistanceComputations() {
+        return distanceComputations;
+    }
+
+    /**
+     * @return część odległości pominiętych w stosunku do pełnego przeszukiwania (0 - 1)
+     */
+    public double getSkippedDistanceFraction() {
+        return bruteForceComputations == 0 ? 0 : 1.0 - (double) distanceComputations / bruteForceComputations;
+    }
+
+    public void setIndex(String index) throws Exception {
+        if (!index.equals("none") && !index.equals("bounds") && !index.equals("kdtree")) {
+            throw new Exception("Nieznany sposob ograniczania obliczen odleglosci: " + index);
+        }
+        this.index = index;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setNumClusters(int numClusters) throws Exception {
+        if (numClusters <= 0) {
+            throw new Exception("Liczba klastrow musi byc wieksza od 0");
+        }
+        this.numClusters = numClusters;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public void setMaxIterations(int maxIterations) throws Exception {
+        if (maxIterations < 1) {
+            throw new Exception("Maksymalna liczba iteracji musi byc wieksza od 0");
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setBatchSize(int batchSize) throws Exception {
+        if (batchSize < 0) {
+            throw new Exception("Rozmiar partii nie moze byc ujemny");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setMaxBatches(int maxBatches) throws Exception {
+        if (maxBatches < 1) {
+            throw new Exception("Liczba partii musi byc wieksza od 0");
+        }
+        this.maxBatches = maxBatches;
+    }
+
+    public int getMaxBatches() {
+        return maxBatches;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Ustawia środki początkowe (warm start); liczba klastrów wynika z liczby podanych środków.
+     * @param initialCentroids środki o tej samej strukturze co dane (null - wybór wg opcji -init)
+     */
+    public void setInitialCentroids(Instances initialCentroids) {
+        this.initialCentroids = initialCentroids;
+    }
+
+    public Instances getInitialCentroids() {
+        return initialCentroids;
+    }
+
+    public void setInitMethod(String initMethod) throws Exception {
+        if (!initMethod.equals("random") && !initMethod.equals("kmeans++") && !initMethod.equals("farthest")) {
+            throw new Exception("Nieznany sposob wyboru srodkow poczatkowych: " + initMethod);
+        }
+        this.initMethod = initMethod;
+    }
+
+    public String getInitMethod() {
+        return initMethod;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    @Override
+    public Enumeration listOptions() {
+        Vector<Option> result = new Vector<Option>();
+        result.addElement(new Option("\tnumber of clusters.\n\t(default 2).", "N", 1, "-N <num>"));
+        result.addElement(new Option("\tmaximum number of iterations.\n\t(default 500).", "I", 1, "-I <num>"));
+        result.addElement(new Option("\tnumber of threads.\n\t(default: number of processors).", "threads", 1, "-threads <num>"));
+        result.addElement(new Option("\tmini-batch size (0 = full batch).\n\t(default 0).", "batch", 1, "-batch <num>"));
+        result.addElement(new Option("\tmaximum number of mini-batches.\n\t(default 100).", "batches", 1, "-batches <num>"));
+        result.addElement(new Option("\tmini-batch convergence tolerance.\n\t(default 1e-4).", "tol", 1, "-tol <num>"));
+        result.addElement(new Option("\tinitial centroids: random, kmeans++ or farthest.\n\t(default random).", "init", 1, "-init <method>"));
+        result.addElement(new Option("\tdistance pruning: none, bounds or kdtree.\n\t(default none).", "index", 1, "-index <method>"));
+        Enumeration en = super.listOptions();
+        while (en.hasMoreElements()) {
+            result.addElement((Option) en.nextElement());
+        }
+        return result.elements();
+    }
+
+    @Override
+    public void setOptions(String[] options) throws Exception {
+        String value = Utils.getOption('N', options);
+        if (value.length() > 0) {
+            setNumClusters(Integer.parseInt(value));
+        }
+        value = Utils.getOption('I', options);
+        if (value.length() > 0) {
+            setMaxIterations(Integer.parseInt(value));
+        }
+        value = Utils.getOption("threads", options);
+        if (value.length() > 0) {
+            setNumThreads(Integer.parseInt(value));
+        }
+        value = Utils.getOption("batch", options);
+        if (value.length() > 0) {
+            setBatchSize(Integer.parseInt(value));
+        }
+        value = Utils.getOption("batches", options);
+        if (value.length() > 0) {
+            setMaxBatches(Integer.parseInt(value));
+        }
+        value = Utils.getOption("tol", options);
+        if (value.length() > 0) {
+            setTolerance(Double.parseDouble(value));
+        }
+        value = Utils.getOption("init", options);
+        if (value.length() > 0) {
+            setInitMethod(value.toLowerCase());
+        }
+        value = Utils.getOption("index", options);
+        if (value.length() > 0) {
+            setIndex(value.toLowerCase());
+        }
+        // przypisania sa zawsze zachowywane
+        Utils.getFlag('O', options);
+        super.setOptions(options);
+    }
+
+    @Override
+    public String[] getOptions() {
+        List<String> result = new ArrayList<String>();
+        result.add("-N");
+        result.add("" + numClusters);
+        result.add("-I");
+        result.add("" + maxIterations);
+        result.add("-threads");
+        result.add("" + numThreads);
+        result.add("-init");
+        result.add(initMethod);
+        if (!index.equals("none")) {
+            result.add("-index");
+            result.add(index);
+        }
+        if (batchSize > 0) {
+            result.add("-batch");
+            result.add("" + batchSize);
+            result.add("-batches");
+            result.add("" + maxBatches);
+            result.add("-tol");
+            result.add("" + tolerance);
+        }
+        for (String o : super.getOptions()) {
+            result.add(o);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: 1 $");
+    }
+
+    @Override
+    public String toString() {
+        if (centroidNumeric == null) {
+            return "ParallelKMeans: No model built yet.";
+        }
+        StringBuilder sb = new StringBuilder("ParallelKMeans\n==============\n\n");
+        sb.append(batchSize > 0 ? "Number of mini-batches: " : "Number of iterations: ").append(iterations).append('\n');
+        sb.append("Within cluster sum of squared errors: ").append(squaredError).append('\n');
+        sb.append("Threads: ").append(numThreads).append('\n');
+        if (!indexUsed.equals("none")) {
+            sb.append("Distance pruning: ").append(indexUsed).append(" (")
+                    .append(Utils.doubleToString(100 * getSkippedDistanceFraction(), 1)).append("% skipped)\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sumy częściowe zbierane przez jeden wątek podczas kroku przypisania.
+     */
+    private class Partial {
+
+        int[] counts;
+        double[][] sums;
+        double[][] squares;
+        int[][][] nominalCounts;
+        double error;
+        double errorSquares;
+        int changed;
+        long distances;
+
+        Partial(int k) {
+            counts = new int[k];
+            sums = new double[k][numericAttributes.length];
+            squares = new double[k][numericAttributes.length];
+            nominalCounts = new int[k][nominalAttributes.length][];
+            for (int c = 0; c < k; c++) {
+                for (int j = 0; j < nominalAttributes.length; j++) {
+                    nominalCounts[c][j] = new int[numValues[j]];
+                }
+            }
+        }
+
+        void add(int c, double[] num, int[] nom, double dist) {
+            counts[c]++;
+            error += dist;
+            errorSquares += dist * dist;
+            double[] s = sums[c];
+            double[] q = squares[c];
+            for (int j = 0; j < num.length; j++) {
+                double v = num[j];
+                s[j] += v;
+                q[j] += v * v;
+            }
+            int[][] nc = nominalCounts[c];
+            for (int j = 0; j < nom.length; j++) {
+                nc[j][nom[j]]++;
+            }
+        }
+
+        void merge(Partial other) {
+            error += other.error;
+            errorSquares += other.errorSquares;
+            changed += other.changed;
+            distances += other.distances;
+            for (int c = 0; c < counts.length; c++) {
+                counts[c] += other.counts[c];
+                for (int j = 0; j < sums[c].length; j++) {
+                    sums[c][j] += other.sums[c][j];
+                    squares[c][j] += other.squares[c][j];
+                }
+                for (int j = 0; j < nominalCounts[c].length; j++) {
+                    for (int v = 0; v < nominalCounts[c][j].length; v++) {
+                        nominalCounts[c][j][v] += other.nominalCounts[c][j][v];
+                    }
+                }
+            }
+        }
+
+        void compact(int[] remap, int k) {
+            int[] newCounts = new int[k];
+            double[][] newSums = new double[k][];
+            double[][] newSquares = new double[k][];
+            int[][][] newNominal = new int[k][][];
+            for (int c = 0; c < remap.length; c++) {
+                if (remap[c] >= 0) {
+                    newCounts[remap[c]] = counts[c];
+                    newSums[remap[c]] = sums[c];
+                    newSquares[remap[c]] = squares[c];
+                    newNominal[remap[c]] = nominalCounts[c];
+                }
+            }
+            counts = newCounts;
+            sums = newSums;
+            squares = newSquares;
+            nominalCounts = newNominal;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine;
+
+import java.util.Random;
+
+/**
+ * Widok wybranych wierszy innego zbioru (bez kopiowania danych), np. części treningowej lub testowej
+ * walidacji krzyżowej. Statystyki kolumn wyznaczane są tylko z wybranych wierszy.
+ * @author Bartłomiej Wojas, Adrian Kremblewski, Szymon Skupień
+ */
+public class SubsetDataset extends NumericDataset {
+
+    /**
+     * Zbiór źródłowy.
+     */
+    private final NumericDataset parent;
+    /**
+     * Numery wierszy zbioru źródłowego.
+     */
+    private final int[] rows;
+
+    /**
+     * @param parent zbiór źródłowy
+     * @param rows numery wierszy zbioru źródłowego (tablica nie jest kopiowana)
+     */
+    public SubsetDataset(NumericDataset parent, int[] rows) {
+        super(parent.getHeader(), rows.length, stats(parent, rows));
+        this.parent = parent;
+        this.rows = rows;
+    }
+
+    /**
+     * Losuje próbkę prostą wierszy bez zwracania (losowanie selekcyjne - wiersze wybierane są w jednym
+     * przejściu, w kolejności zbioru źródłowego, co sprzyja odczytowi sekwencyjnemu).
+     * @param parent zbiór źródłowy
+     * @param size liczność próbki (nie większa niż liczba wierszy zbioru)
+     * @param seed ziarno losowania
+     * @return próbka
+     */
+    public static SubsetDataset sample(NumericDataset parent, int size, long seed) {
+        int n = parent.numRows();
+        size = Math.min(size, n);
+        int[] rows = new int[size];
+        Random random = new Random(seed);
+        int chosen = 0;
+        for (int i = 0; i < n && chosen < size; i++) {
+            if (random.nextDouble() * (n - i) < size - chosen) {
+                rows[chosen++] = i;
+            }
+        }
+        return new SubsetDataset(parent, rows);
+    }
+
+    private static DatasetStats stats(NumericDataset parent, int[] rows) {
+        DatasetStats stats = new DatasetStats(parent.getHeader());
+        double[] num = new double[parent.getNumNumeric()];
+        int[] nom = new int[parent.getNumNominal()];
+        for (int row : rows) {
+            parent.readRow(row, num, nom);
+            stats.add(num, nom, parent.weight(row));
+        }
+        return stats.finish();
+    }
+
+    @Override
+    public void readRow(int row, double[] numeric, int[] nominal) {
+        parent.readRow(rows[row], numeric, nominal);
+    }
+
+    @Override
+    public double numericValue(int row, int col) {
+        return parent.numericValue(rows[row], col);
+    }
+
+    @Override
+    public int nominalValue(int row, int col) {
+        return parent.nominalValue(rows[row], col);
+    }
+
+    @Override
+    public double weight(int row) {
+        return parent.weight(rows[row]);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return 4L * rows.length;
+    }
+
+    /**
+     * @param row numer wiersza widoku
+     * @return numer wiersza w zbiorze źródłowym
+     */
+    public int parentRow(int row) {
+        return rows[row];
+    }
+}
@@ -0,0 +1,167 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Zadanie asynchronicznego uruchomienia algorytmu.
+ * Przechowuje stan zadania oraz (po zakończeniu) zserializowaną odpowiedź WekaAnswer.
+ * @author Szymon Skupien
+ */
+public class AlgorithmJob implements Runnable {
+
+    /**
+     * Możliwe stany zadania.
+     */
+    public enum Status {
+        /** zadanie czeka w kolejce */
+        QUEUED,
+        /** zadanie jest wykonywane */
+        RUNNING,
+        /** zadanie zakończone, wynik dostępny */
+        DONE,
+        /** zadanie zakończone błędem */
+        FAILED
+    }
+
+    /**
+     * Identyfikator zadania.
+     */
+    private final String jobId;
+    /**
+     * Właściwa praca do wykonania - zwraca zakodowany obiekt WekaAnswer.
+     */
+    private final Callable<byte[]> task;
+    /**
+     * Format (typ MIME) wyniku zadania.
+     */
+    private final String mediaType;
+    /**
+     * Aktualny stan zadania.
+     */
+    private volatile Status status = Status.QUEUED;
+    /**
+     * Wynik zadania (ciąg bajtów).
+     */
+    private volatile byte[] result = null;
+    /**
+     * Komunikat błędu jeśli zadanie zakończyło się niepowodzeniem.
+     */
+    private volatile String error = null;
+    /**
+     * Czas przyjęcia zadania [ms].
+     */
+    private final long submitted = System.currentTimeMillis();
+    /**
+     * Czas zakończenia zadania [ms], 0 jeśli jeszcze trwa.
+     */
+    private volatile long finished = 0;
+    /**
+     * Zwalniana po zakończeniu zadania (poprawnie lub z błędem).
+     */
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * Tworzy nowe zadanie.
+     * @param jobId identyfikator zadania
+     * @param task praca do wykonania
+     * @param mediaType format (typ MIME) wyniku
+     */
+    public AlgorithmJob(String jobId, Callable<byte[]> task, String mediaType) {
+        this.jobId = jobId;
+        this.task = task;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Wykonuje zadanie (wywoływane przez wątek z puli).
+     */
+    public void run() {
+        status = Status.RUNNING;
+        try {
+            result = task.call();
+            status = Status.DONE;
+        } catch (Throwable e) {
+            error = e.getMessage();
+            status = Status.FAILED;
+        } finally {
+            finished = System.currentTimeMillis();
+            done.countDown();
+        }
+    }
+
+    /**
+     * Oznacza zadanie jako odrzucone (np. przy zamykaniu puli).
+     * @param msg przyczyna
+     */
+    void fail(String msg) {
+        error = msg;
+        status = Status.FAILED;
+        finished = System.currentTimeMillis();
+        done.countDown();
+    }
+
+    /**
+     * Czeka na zakończenie zadania (poprawne lub z błędem).
+     * @throws InterruptedException gdy oczekiwanie zostało przerwane
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * @return identyfikator zadania
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * @return format (typ MIME) wyniku zadania
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return aktualny stan zadania
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return wynik zadania lub null jeśli zadanie nie zostało zakończone
+     */
+    public byte[] getResult() {
+        return result;
+    }
+
+    /**
+     * @return komunikat błędu lub null
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return czas przyjęcia zadania [ms]
+     */
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return czas zakończenia zadania [ms], 0 jeśli zadanie jeszcze trwa
+     */
+    public long getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return true jeśli zadanie zostało zakończone (poprawnie lub z błędem)
+     */
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+}
@@ -0,0 +1,220 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Zarządca zadań asynchronicznych. Zadania wykonywane są na osobnej puli wątków
+ * o ograniczonym rozmiarze i ograniczonej długości kolejki, dzięki czemu długie obliczenia
+ * nie blokują wątków kontenera HTTP.
+ * Konfiguracja (właściwości systemowe):
+ * <ul>
+ * <li>weka.jobs.threads - liczba wątków roboczych (domyślnie liczba procesorów)</li>
+ * <li>weka.jobs.queue - maksymalna liczba zadań oczekujących w kolejce (domyślnie 64)</li>
+ * <li>weka.jobs.retention - czas przechowywania wyników zakończonych zadań w sekundach (domyślnie 600)</li>
+ * </ul>
+ * @author Szymon Skupien
+ */
+public class AlgorithmJobManager {
+
+    private static final Logger log = Logger.getLogger("WekaRESTServiceLog");
+
+    /**
+     * Jedyna instancja zarządcy.
+     */
+    private static AlgorithmJobManager instance = null;
+
+    /**
+     * Pula wątków wykonujących zadania.
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * Zadania (oczekujące, wykonywane i zakończone) wg identyfikatora.
+     */
+    private final Map<String, AlgorithmJob> jobs = new ConcurrentHashMap<String, AlgorithmJob>();
+    /**
+     * Zakończone zadania, których wynik został już odebrany - przechowywane do upływu czasu przechowywania,
+     * aby ich wynik mógł posłużyć jako punkt startowy kolejnych obliczeń.
+     */
+    private final Map<String, AlgorithmJob> delivered = new ConcurrentHashMap<String, AlgorithmJob>();
+    /**
+     * Czas przechowywania wyników zakończonych zadań [ms].
+     */
+    private final long retention;
+
+    /**
+     * Tworzy zarządcę zadań.
+     * @param threads liczba wątków roboczych
+     * @param queueSize maksymalna liczba zadań w kolejce
+     * @param retention czas przechowywania wyników [ms]
+     */
+    AlgorithmJobManager(int threads, int queueSize, long retention) {
+        this.retention = retention;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Zwraca współdzieloną instancję zarządcy (tworzoną przy pierwszym użyciu).
+     * @return zarządca zadań
+     */
+    public static synchronized AlgorithmJobManager getInstance() {
+        if (instance == null) {
+            int threads = Integer.getInteger("weka.jobs.threads", Runtime.getRuntime().availableProcessors());
+            int queue = Integer.getInteger("weka.jobs.queue", 64);
+            long retention = Long.getLong("weka.jobs.retention", 600L) * 1000L;
+            instance = new AlgorithmJobManager(Math.max(1, threads), Math.max(1, queue), retention);
+        }
+        return instance;
+    }
+
+    /**
+     * Zamyka współdzieloną pulę wątków (wywoływane przy zatrzymaniu aplikacji).
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            for (AlgorithmJob job : instance.jobs.values()) {
+                if (!job.isFinished()) {
+                    job.fail("Serwis zostal zatrzymany");
+                }
+            }
+            instance = null;
+        }
+    }
+
+    /**
+     * Przyjmuje nowe zadanie do wykonania.
+     * @param task praca do wykonania
+     * @param mediaType format (typ MIME) wyniku
+     * @return utworzone zadanie
+     * @throws RejectedExecutionException gdy kolejka zadań jest pełna
+     */
+    public AlgorithmJob submit(Callable<byte[]> task, String mediaType) throws RejectedExecutionException {
+        purgeExpired();
+        AlgorithmJob job = new AlgorithmJob(UUID.randomUUID().toString(), task, mediaType);
+        jobs.put(job.getJobId(), job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            log.log(Level.WARNING, "Odrzucono zadanie - kolejka pelna ({0})", executor.getQueue().size());
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * Zwraca zadanie o podanym identyfikatorze.
+     * @param jobId identyfikator zadania
+     * @return zadanie lub null jeśli nie istnieje (lub jego wynik wygasł)
+     */
+    public AlgorithmJob getJob(String jobId) {
+        if (jobId == null) {
+            return null;
+        }
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Zwraca zakończone zadanie o podanym identyfikatorze, także jeśli jego wynik został już odebrany
+     * (do upływu czasu przechowywania).
+     * @param jobId identyfikator zadania
+     * @return zadanie lub null jeśli nie istnieje, nie zostało zakończone lub jego wynik wygasł
+     */
+    public AlgorithmJob getFinishedJob(String jobId) {
+        if (jobId == null) {
+            return null;
+        }
+        AlgorithmJob job = jobs.get(jobId);
+        if (job == null) {
+            job = delivered.get(jobId);
+        }
+        return job != null && job.isFinished() ? job : null;
+    }
+
+    /**
+     * Usuwa zadanie (np. po odebraniu wyniku). Zakończone zadanie pozostaje dostępne
+     * metodą getFinishedJob do upływu czasu przechowywania.
+     * @param jobId identyfikator zadania
+     */
+    public void removeJob(String jobId) {
+        if (jobId != null) {
+            AlgorithmJob job = jobs.remove(jobId);
+            if (job != null && job.isFinished()) {
+                delivered.put(jobId, job);
+            }
+        }
+    }
+
+    /**
+     * Usuwa zadanie bez przechowywania jego wyniku (zadania, których wynik odbierany jest od razu,
+     * np. przegląd liczby klastrów).
+     * @param jobId identyfikator zadania
+     */
+    public void discardJob(String jobId) {
+        if (jobId != null) {
+            jobs.remove(jobId);
+            delivered.remove(jobId);
+        }
+    }
+
+    /**
+     * @return liczba zadań oczekujących w kolejce
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return liczba aktualnie wykonywanych zadań
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Usuwa zakończone zadania, których czas przechowywania minął.
+     */
+    private void purgeExpired() {
+        purgeExpired(jobs);
+        purgeExpired(delivered);
+    }
+
+    private void purgeExpired(Map<String, AlgorithmJob> map) {
+        long now = System.currentTimeMillis();
+        Iterator<AlgorithmJob> it = map.values().iterator();
+        while (it.hasNext()) {
+            AlgorithmJob job = it.next();
+            if (job.isFinished() && now - job.getFinished() > retention) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Fabryka nazwanych wątków roboczych (wątki demony, aby nie blokowały zamknięcia JVM).
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "weka-job-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import pl.edu.agh.ftj.datamining.weka.algorithm.ClusterStream;
+
+/**
+ * Zarządca strumieni klasteryzacji (ClusterStream). Strumień tworzony jest metodą createStream serwisu,
+ * a następnie zasilany paczkami wierszy wysyłanymi do serwisu (pushBatch) lub pobieranymi przyrostowo
+ * z serwisu danych (pullBatch). Nieużywane strumienie są usuwane po upływie czasu życia.
+ * Konfiguracja (właściwości systemowe):
+ * <ul>
+ * <li>weka.stream.maxStreams - maksymalna liczba jednocześnie otwartych strumieni (domyślnie 32)</li>
+ * <li>weka.stream.ttl - czas w sekundach, po którym nieużywany strumień jest usuwany (domyślnie 3600)</li>
+ * </ul>
+ * @author Szymon Skupien
+ */
+public class ClusterStreamManager {
+
+    /**
+     * Jedyna instancja zarządcy.
+     */
+    private static ClusterStreamManager instance = null;
+
+    /**
+     * Strumienie wg identyfikatora.
+     */
+    private final Map<String, Entry> streams = new ConcurrentHashMap<String, Entry>();
+    /**
+     * Maksymalna liczba strumieni.
+     */
+    private final int maxStreams;
+    /**
+     * Czas życia nieużywanego strumienia [ms].
+     */
+    private final long ttl;
+
+    /**
+     * Tworzy zarządcę strumieni.
+     * @param maxStreams maksymalna liczba strumieni
+     * @param ttl czas życia nieużywanego strumienia [ms]
+     */
+    public ClusterStreamManager(int maxStreams, long ttl) {
+        this.maxStreams = maxStreams;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Zwraca współdzieloną instancję (tworzoną przy pierwszym użyciu).
+     * @return zarządca strumieni
+     */
+    public static synchronized ClusterStreamManager getInstance() {
+        if (instance == null) {
+            int maxStreams = Integer.getInteger("weka.stream.maxStreams", 32);
+            long ttl = Long.getLong("weka.stream.ttl", 3600L) * 1000L;
+            instance = new ClusterStreamManager(maxStreams, ttl);
+        }
+        return instance;
+    }
+
+    /**
+     * Rejestruje nowy strumień.
+     * @param stream strumień
+     * @return identyfikator strumienia
+     * @throws IllegalStateException gdy osiągnięto maksymalną liczbę strumieni
+     */
+    public synchronized String register(ClusterStream stream) {
+        purgeExpired();
+        if (streams.size() >= maxStreams) {
+            throw new IllegalStateException("Osiagnieto maksymalna liczbe strumieni (" + maxStreams + ")");
+        }
+        String streamId = UUID.randomUUID().toString();
+        streams.put(streamId, new Entry(stream));
+        return streamId;
+    }
+
+    /**
+     * @param streamId identyfikator strumienia
+     * @return strumień lub null jeśli nie istnieje
+     */
+    public ClusterStream get(String streamId) {
+        Entry e = streamId == null ? null : streams.get(streamId);
+        return e == null ? null : e.stream;
+    }
+
+    /**
+     * Zwraca liczbę wierszy pobranych już do strumienia z serwisu danych i zapamiętuje źródło strumienia.
+     * @param streamId identyfikator strumienia
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @return liczba pobranych wierszy
+     * @throws IllegalArgumentException gdy strumień nie istnieje lub pobierał wcześniej dane z innego źródła
+     */
+    public long pulled(String streamId, String id, String table) {
+        Entry e = streamId == null ? null : streams.get(streamId);
+        if (e == null) {
+            throw new IllegalArgumentException("Nieznany strumien: " + streamId);
+        }
+        synchronized (e) {
+            if (e.id == null) {
+                e.id = id;
+                e.table = table;
+            } else if (!e.id.equals(id) || !e.table.equals(table)) {
+                throw new IllegalArgumentException("Strumien pobiera dane z " + e.id + "/" + e.table);
+            }
+            return e.pulled;
+        }
+    }
+
+    /**
+     * Zapamiętuje liczbę wierszy pobranych do strumienia z serwisu danych.
+     * @param streamId identyfikator strumienia
+     * @param pulled liczba pobranych wierszy
+     */
+    public void setPulled(String streamId, long pulled) {
+        Entry e = streams.get(streamId);
+        if (e != null) {
+            synchronized (e) {
+                e.pulled = pulled;
+            }
+        }
+    }
+
+    /**
+     * Zamyka strumień.
+     * @param streamId identyfikator strumienia
+     * @return czy strumień istniał
+     */
+    public boolean close(String streamId) {
+        return streamId != null && streams.remove(streamId) != null;
+    }
+
+    /**
+     * @return liczba otwartych strumieni
+     */
+    public int size() {
+        return streams.size();
+    }
+
+    /**
+     * Usuwa strumienie nieużywane dłużej niż czas życia.
+     */
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = streams.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().stream.getLastAccess() > ttl) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Wpis zarządcy: strumień i stan pobierania danych z serwisu danych.
+     */
+    private static class Entry {
+
+        final ClusterStream stream;
+        String id;
+        String table;
+        long pulled = 0;
+
+        Entry(ClusterStream stream) {
+            this.stream = stream;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import pl.edu.agh.ftj.datamining.weka.algorithm.CobwebModel;
+import weka.core.Utils;
+
+/**
+ * Magazyn utrzymywanych modeli Cobweb dla par (id, table) i opcji algorytmu.
+ * Kolejne uruchomienia algorytmu Cobweb dla tych samych danych dodają do drzewa tylko nowe wiersze
+ * (zob. CobwebModel). Modele usuwane są wg. zasady LRU po przekroczeniu maksymalnej liczby modeli.
+ * Konfiguracja (właściwości systemowe):
+ * <ul>
+ * <li>weka.cobweb.maxModels - maksymalna liczba modeli (domyślnie 16, 0 wyłącza utrzymywanie modeli)</li>
+ * </ul>
+ * @author Szymon Skupien
+ */
+public class CobwebModelStore {
+
+    /**
+     * Jedyna instancja magazynu.
+     */
+    private static CobwebModelStore instance = null;
+
+    /**
+     * Modele w kolejności ostatniego dostępu (najstarszy pierwszy).
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    /**
+     * Maksymalna liczba modeli.
+     */
+    private final int maxModels;
+
+    /**
+     * Tworzy magazyn.
+     * @param maxModels maksymalna liczba modeli
+     */
+    public CobwebModelStore(int maxModels) {
+        this.maxModels = maxModels;
+    }
+
+    /**
+     * Zwraca współdzieloną instancję (tworzoną przy pierwszym użyciu).
+     * @return magazyn modeli
+     */
+    public static synchronized CobwebModelStore getInstance() {
+        if (instance == null) {
+            instance = new CobwebModelStore(Integer.getInteger("weka.cobweb.maxModels", 16));
+        }
+        return instance;
+    }
+
+    /**
+     * Zwraca model dla danych i opcji, tworząc pusty model przy pierwszym użyciu.
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @param options opcje algorytmu (po przetworzeniu przez parseStringOptions, null - domyślne)
+     * @return model lub null jeśli utrzymywanie modeli jest wyłączone
+     */
+    public synchronized CobwebModel get(String id, String table, String[] options) {
+        if (maxModels <= 0) {
+            return null;
+        }
+        String key = key(id, table, options);
+        Entry e = entries.get(key);
+        if (e == null) {
+            e = new Entry(id, table, new CobwebModel());
+            entries.put(key, e);
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxModels && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return e.model;
+    }
+
+    /**
+     * Usuwa modele.
+     * @param id id danych (null - dowolne)
+     * @param table nazwa tabeli (null - dowolna)
+     * @return liczba usuniętych modeli
+     */
+    public synchronized int invalidate(String id, String table) {
+        int removed = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if ((id == null || id.equals(e.id)) && (table == null || table.equals(e.table))) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return liczba utrzymywanych modeli
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static String key(String id, String table, String[] options) {
+        return id + "\u0000" + table + "\u0000" + (options == null ? "" : Utils.joinOptions(options));
+    }
+
+    /**
+     * Wpis magazynu.
+     */
+    private static class Entry {
+
+        final String id;
+        final String table;
+        final CobwebModel model;
+
+        Entry(String id, String table, CobwebModel model) {
+            this.id = id;
+            this.table = table;
+            this.model = model;
+        }
+    }
+}
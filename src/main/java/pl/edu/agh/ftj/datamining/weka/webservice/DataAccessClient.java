@@ -0,0 +1,500 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.ws.BindingProvider;
+import pl.edu.agh.ftj.datamining.dbapi.webservice.DataAccessService;
+import pl.edu.agh.ftj.datamining.dbapi.webservice.DataAccessServicePortType;
+
+/**
+ * Klient webservisu dbapi (DataAccessService) z pulą portów JAX-WS.
+ * Obiekt serwisu (i jego WSDL) tworzony jest jednokrotnie, a porty - które nie są bezpieczne
+ * wielowątkowo - są wypożyczane z puli na czas jednego wywołania.
+ * Konfiguracja (właściwości systemowe):
+ * <ul>
+ * <li>weka.dbapi.endpoint - adres serwisu danych (domyślnie adres z WSDL)</li>
+ * <li>weka.dbapi.connectTimeout - limit czasu nawiązania połączenia w ms (domyślnie 10000)</li>
+ * <li>weka.dbapi.readTimeout - limit czasu odczytu odpowiedzi w ms (domyślnie 300000)</li>
+ * <li>weka.dbapi.poolSize - maksymalna liczba portów w puli (domyślnie 8)</li>
+ * <li>weka.dbapi.streaming - czy metoda openData ma czytać odpowiedź SOAP strumieniowo (domyślnie true)</li>
+ * </ul>
+ * @author Szymon Skupien
+ */
+public class DataAccessClient {
+
+    private static final Logger log = Logger.getLogger("WekaRESTServiceLog");
+
+    /**
+     * Przestrzeń nazw webservisu dbapi.
+     */
+    private static final String DBAPI_NAMESPACE = "http://webservice.dbapi.datamining.ftj.agh.edu.pl";
+
+    /**
+     * Jedyna instancja klienta.
+     */
+    private static DataAccessClient instance = null;
+
+    /**
+     * Obiekt serwisu (tworzony przy pierwszym wywołaniu).
+     */
+    private DataAccessService service = null;
+    /**
+     * Wolne porty.
+     */
+    private final BlockingQueue<DataAccessServicePortType> pool;
+    /**
+     * Liczba utworzonych portów.
+     */
+    private final AtomicInteger created = new AtomicInteger();
+    /**
+     * Maksymalna liczba portów.
+     */
+    private final int poolSize;
+    /**
+     * Adres serwisu danych (null - adres z WSDL).
+     */
+    private final String endpoint;
+    /**
+     * Limit czasu nawiązania połączenia [ms].
+     */
+    private final int connectTimeout;
+    /**
+     * Limit czasu odczytu odpowiedzi [ms].
+     */
+    private final int readTimeout;
+    /**
+     * Czy odpowiedź ma być czytana strumieniowo.
+     */
+    private final boolean streaming;
+    /**
+     * Adres serwisu używany przy odczycie strumieniowym (ustalany przy pierwszym użyciu).
+     */
+    private volatile String streamingEndpoint = null;
+    /**
+     * Liczba udanych pobrań danych.
+     */
+    private final AtomicLong fetchCount = new AtomicLong();
+    /**
+     * Liczba nieudanych pobrań danych.
+     */
+    private final AtomicLong fetchErrors = new AtomicLong();
+    /**
+     * Sumaryczny czas pobierania danych [ms].
+     */
+    private final AtomicLong fetchMillis = new AtomicLong();
+    /**
+     * Sumaryczny rozmiar pobranych danych [znaki].
+     */
+    private final AtomicLong payloadChars = new AtomicLong();
+    /**
+     * Rozmiar największej pobranej odpowiedzi [znaki].
+     */
+    private final AtomicLong maxPayloadChars = new AtomicLong();
+
+    /**
+     * Tworzy klienta.
+     * @param endpoint adres serwisu danych (null - adres z WSDL)
+     * @param connectTimeout limit czasu nawiązania połączenia [ms]
+     * @param readTimeout limit czasu odczytu odpowiedzi [ms]
+     * @param poolSize maksymalna liczba portów
+     * @param streaming czy odpowiedź ma być czytana strumieniowo
+     */
+    public DataAccessClient(String endpoint, int connectTimeout, int readTimeout, int poolSize, boolean streaming) {
+        this.endpoint = endpoint;
+        this.streaming = streaming;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.poolSize = Math.max(1, poolSize);
+        this.pool = new ArrayBlockingQueue<DataAccessServicePortType>(this.poolSize);
+    }
+
+    /**
+     * Zwraca współdzieloną instancję klienta (tworzoną przy pierwszym użyciu).
+     * @return klient serwisu danych
+     */
+    public static synchronized DataAccessClient getInstance() {
+        if (instance == null) {
+            instance = new DataAccessClient(System.getProperty("weka.dbapi.endpoint"),
+                    Integer.getInteger("weka.dbapi.connectTimeout", 10000),
+                    Integer.getInteger("weka.dbapi.readTimeout", 300000),
+                    Integer.getInteger("weka.dbapi.poolSize", 8),
+                    Boolean.parseBoolean(System.getProperty("weka.dbapi.streaming", "true")));
+        }
+        return instance;
+    }
+
+    /**
+     * Pobiera dane z serwisu dbapi.
+     * @param id id do danych
+     * @param table nazwa tabeli
+     * @return dane w formacie ARFF
+     * @throws DataAccessException gdy nie udało się pobrać danych lub serwis zwrócił pustą odpowiedź
+     */
+    public String getData(String id, String table) throws DataAccessException {
+        DataAccessServicePortType port = borrow();
+        long start = System.currentTimeMillis();
+        boolean broken = false;
+        try {
+            String result = port.getData(id, table);
+            if (result == null) {
+                throw new DataAccessException("Serwis danych nie zwrocil danych dla id=" + id + ", table=" + table);
+            }
+            fetchCount.incrementAndGet();
+            payloadChars.addAndGet(result.length());
+            updateMax(result.length());
+            return result;
+        } catch (DataAccessException e) {
+            fetchErrors.incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            // bledy JAX-WS (WebServiceException, SOAPFaultException) - port moze byc w niespojnym stanie
+            broken = true;
+            fetchErrors.incrementAndGet();
+            log.log(Level.WARNING, "Blad pobierania danych z dbapi", e);
+            throw new DataAccessException("Blad pobierania danych z dbapi: " + e.getMessage(), e);
+        } finally {
+            fetchMillis.addAndGet(System.currentTimeMillis() - start);
+            release(port, broken);
+        }
+    }
+
+    /**
+     * Otwiera strumień z danymi z serwisu dbapi.
+     * W trybie strumieniowym żądanie SOAP wysyłane jest bezpośrednio, a treść elementu z wynikiem
+     * odczytywana jest parserem StAX fragment po fragmencie - dane nigdy nie są w całości
+     * materializowane w pamięci jako String. Poza trybem strumieniowym dane pobierane są przez port JAX-WS.
+     * Strumień należy zamknąć po odczycie.
+     * @param id id do danych
+     * @param table nazwa tabeli
+     * @return strumień z danymi w formacie ARFF
+     * @throws DataAccessException gdy nie udało się nawiązać połączenia lub serwis zwrócił błąd
+     */
+    public Reader openData(String id, String table) throws DataAccessException {
+        if (!streaming) {
+            return new StringReader(getData(id, table));
+        }
+        long start = System.currentTimeMillis();
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(resolveEndpoint()).openConnection();
+            conn.setConnectTimeout(connectTimeout);
+            conn.setReadTimeout(readTimeout);
+            conn.setDoOutput(true);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+            conn.setRequestProperty("SOAPAction", "\"urn:getData\"");
+            OutputStream out = conn.getOutputStream();
+            out.write(soapRequest(id, table).getBytes("UTF-8"));
+            out.close();
+
+            boolean fault = conn.getResponseCode() >= 400;
+            InputStream in = fault ? conn.getErrorStream() : conn.getInputStream();
+            if (in == null) {
+                throw new DataAccessException("Serwis danych zwrocil kod " + conn.getResponseCode());
+            }
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            XMLStreamReader xml = factory.createXMLStreamReader(new BufferedInputStream(in));
+            String element = moveToResult(xml);
+            if (fault || element == null || !"return".equals(element)) {
+                String msg = element != null && !"return".equals(element) ? element : "brak danych dla id=" + id + ", table=" + table;
+                xml.close();
+                in.close();
+                throw new DataAccessException("Serwis danych zwrocil blad: " + msg);
+            }
+            return new SoapResultReader(xml, in, start);
+        } catch (DataAccessException e) {
+            fetchErrors.incrementAndGet();
+            fetchMillis.addAndGet(System.currentTimeMillis() - start);
+            throw e;
+        } catch (Exception e) {
+            fetchErrors.incrementAndGet();
+            fetchMillis.addAndGet(System.currentTimeMillis() - start);
+            log.log(Level.WARNING, "Blad pobierania danych z dbapi", e);
+            if (conn != null) {
+                conn.disconnect();
+            }
+            throw new DataAccessException("Blad pobierania danych z dbapi: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return liczba udanych pobrań danych
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    /**
+     * @return liczba nieudanych pobrań danych
+     */
+    public long getFetchErrors() {
+        return fetchErrors.get();
+    }
+
+    /**
+     * @return sumaryczny czas pobierania danych [ms]
+     */
+    public long getFetchMillis() {
+        return fetchMillis.get();
+    }
+
+    /**
+     * @return sumaryczny rozmiar pobranych danych [znaki]
+     */
+    public long getPayloadChars() {
+        return payloadChars.get();
+    }
+
+    /**
+     * @return rozmiar największej pobranej odpowiedzi [znaki]
+     */
+    public long getMaxPayloadChars() {
+        return maxPayloadChars.get();
+    }
+
+    /**
+     * Wypożycza port z puli, tworząc nowy jeśli pula nie osiągnęła maksymalnego rozmiaru.
+     * @return port serwisu danych
+     * @throws DataAccessException gdy nie udało się utworzyć portu lub doczekać się wolnego
+     */
+    private DataAccessServicePortType borrow() throws DataAccessException {
+        DataAccessServicePortType port = pool.poll();
+        if (port != null) {
+            return port;
+        }
+        if (created.incrementAndGet() <= poolSize) {
+            try {
+                return createPort();
+            } catch (RuntimeException e) {
+                created.decrementAndGet();
+                fetchErrors.incrementAndGet();
+                throw new DataAccessException("Nie mozna utworzyc klienta dbapi: " + e.getMessage(), e);
+            }
+        }
+        created.decrementAndGet();
+        try {
+            port = pool.poll(readTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (port == null) {
+            fetchErrors.incrementAndGet();
+            throw new DataAccessException("Brak wolnego polaczenia z dbapi");
+        }
+        return port;
+    }
+
+    /**
+     * Zwraca port do puli (uszkodzony port jest porzucany).
+     * @param port port
+     * @param broken czy port jest uszkodzony
+     */
+    private void release(DataAccessServicePortType port, boolean broken) {
+        if (broken || !pool.offer(port)) {
+            created.decrementAndGet();
+        }
+    }
+
+    /**
+     * Tworzy nowy port i ustawia adres oraz limity czasu.
+     * @return port serwisu danych
+     */
+    private DataAccessServicePortType createPort() {
+        DataAccessServicePortType port = getService().getDataAccessServiceHttpSoap11Endpoint();
+        Map<String, Object> ctx = ((BindingProvider) port).getRequestContext();
+        if (endpoint != null) {
+            ctx.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, endpoint);
+        }
+        // JAX-WS RI (GlassFish) oraz implementacja wbudowana w JDK
+        ctx.put("com.sun.xml.ws.connect.timeout", connectTimeout);
+        ctx.put("com.sun.xml.ws.request.timeout", readTimeout);
+        ctx.put("com.sun.xml.internal.ws.connect.timeout", connectTimeout);
+        ctx.put("com.sun.xml.internal.ws.request.timeout", readTimeout);
+        return port;
+    }
+
+    /**
+     * @return obiekt serwisu (WSDL wczytywany jest tylko raz)
+     */
+    private synchronized DataAccessService getService() {
+        if (service == null) {
+            service = new DataAccessService();
+        }
+        return service;
+    }
+
+    /**
+     * Ustala adres serwisu dla odczytu strumieniowego (z konfiguracji lub z WSDL).
+     * @return adres serwisu danych
+     * @throws DataAccessException gdy nie udało się utworzyć portu
+     */
+    private String resolveEndpoint() throws DataAccessException {
+        if (endpoint != null) {
+            return endpoint;
+        }
+        if (streamingEndpoint == null) {
+            DataAccessServicePortType port = borrow();
+            try {
+                streamingEndpoint = (String) ((BindingProvider) port).getRequestContext().get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY);
+            } finally {
+                release(port, false);
+            }
+        }
+        return streamingEndpoint;
+    }
+
+    /**
+     * Tworzy kopertę SOAP 1.1 z wywołaniem operacji getData.
+     * @param id id do danych
+     * @param table nazwa tabeli
+     * @return treść żądania
+     */
+    private static String soapRequest(String id, String table) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:ns=\"" + DBAPI_NAMESPACE + "\">"
+                + "<soapenv:Body><ns:getData>"
+                + (id == null ? "" : "<ns:id>" + escapeXml(id) + "</ns:id>")
+                + (table == null ? "" : "<ns:table>" + escapeXml(table) + "</ns:table>")
+                + "</ns:getData></soapenv:Body></soapenv:Envelope>";
+    }
+
+    /**
+     * Przesuwa parser do początku treści elementu z wynikiem.
+     * @param xml parser odpowiedzi
+     * @return "return" gdy znaleziono wynik, treść faultstring gdy serwis zwrócił błąd SOAP lub null gdy brak wyniku
+     * @throws XMLStreamException w przypadku błędu składni odpowiedzi
+     */
+    private static String moveToResult(XMLStreamReader xml) throws XMLStreamException {
+        while (xml.hasNext()) {
+            if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+                String name = xml.getLocalName();
+                if ("return".equals(name)) {
+                    return name;
+                }
+                if ("faultstring".equals(name) || "Text".equals(name)) {
+                    return xml.getElementText();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Zamienia znaki specjalne XML na encje.
+     * @param text tekst
+     * @return tekst bezpieczny do umieszczenia w XML
+     */
+    private static String escapeXml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Aktualizuje rozmiar największej odpowiedzi.
+     * @param size rozmiar odpowiedzi
+     */
+    private void updateMax(long size) {
+        long max = maxPayloadChars.get();
+        while (size > max && !maxPayloadChars.compareAndSet(max, size)) {
+            max = maxPayloadChars.get();
+        }
+    }
+
+    /**
+     * Strumień znaków zwracający treść elementu z wynikiem odpowiedzi SOAP.
+     * Kolejne fragmenty tekstu pobierane są z parsera StAX bez tworzenia obiektów String.
+     */
+    private class SoapResultReader extends Reader {
+
+        private final XMLStreamReader xml;
+        private final InputStream in;
+        private final long start;
+        /**
+         * Pozycja w bieżącym fragmencie tekstu (-1 - brak bieżącego fragmentu).
+         */
+        private int pos = -1;
+        private boolean eof = false;
+        private boolean closed = false;
+        private long chars = 0;
+
+        SoapResultReader(XMLStreamReader xml, InputStream in, long start) {
+            this.xml = xml;
+            this.in = in;
+            this.start = start;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                while (!eof) {
+                    if (pos >= 0) {
+                        //sourceStart liczony jest wzgledem poczatku biezacego fragmentu tekstu
+                        int n = pos < xml.getTextLength() ? xml.getTextCharacters(pos, cbuf, off, Math.min(len, xml.getTextLength() - pos)) : 0;
+                        if (n > 0) {
+                            pos += n;
+                            chars += n;
+                            return n;
+                        }
+                        pos = -1;
+                    }
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                            || event == XMLStreamConstants.SPACE) {
+                        pos = 0;
+                    } else if (event == XMLStreamConstants.END_ELEMENT || event == XMLStreamConstants.END_DOCUMENT) {
+                        eof = true;
+                    }
+                }
+            } catch (XMLStreamException e) {
+                IOException ioe = new IOException("Niepoprawna odpowiedz serwisu danych: " + e.getMessage());
+                ioe.initCause(e);
+                throw ioe;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            fetchMillis.addAndGet(System.currentTimeMillis() - start);
+            if (eof) {
+                fetchCount.incrementAndGet();
+                payloadChars.addAndGet(chars);
+                updateMax(chars);
+            } else {
+                fetchErrors.incrementAndGet();
+            }
+            try {
+                xml.close();
+            } catch (XMLStreamException e) {
+                log.log(Level.FINE, "Blad zamykania parsera", e);
+            }
+            in.close();
+        }
+    }
+}
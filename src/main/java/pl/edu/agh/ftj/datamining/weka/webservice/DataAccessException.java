@@ -0,0 +1,27 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+/**
+ * Wyjątek zgłaszany w przypadku błędu pobierania danych z webservisu dbapi (DataAccessService).
+ * @author Szymon Skupien
+ */
+public class DataAccessException extends Exception {
+
+    private static final long serialVersionUID = 5664984195302456659L;
+
+    /**
+     * Tworzy wyjątek z podanym komunikatem.
+     * @param message komunikat błędu
+     */
+    public DataAccessException(String message) {
+        super(message);
+    }
+
+    /**
+     * Tworzy wyjątek z podanym komunikatem i przyczyną.
+     * @param message komunikat błędu
+     * @param cause przyczyna
+     */
+    public DataAccessException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
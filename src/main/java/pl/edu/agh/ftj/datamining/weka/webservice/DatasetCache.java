@@ -0,0 +1,224 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NumericDataset;
+
+/**
+ * Pamięć podręczna sparsowanych danych (spakowanych zbiorów NumericDataset) dla par (id, table).
+ * Obiekty są współdzielone pomiędzy kolejnymi uruchomieniami algorytmów i muszą być traktowane
+ * jako tylko do odczytu. Pamięć ograniczona jest szacowanym rozmiarem danych (usuwanie wg. zasady LRU).
+ * <p>
+ * Serwis danych (DataAccessService) udostępnia jedynie operację getData (bez numeru wersji ani daty zmiany),
+ * więc nie ma taniego sposobu sprawdzenia aktualności danych - pamięć działa wyłącznie wg. czasu życia:
+ * po jego upływie dane są pobierane i parsowane ponownie.
+ * <p>
+ * Każdy wpis ma wersję danych (odcisk treści lub - gdy nie jest znany - kolejny numer), używaną w kluczach
+ * pamięci podręcznej wyników (ResultCache). Ponownie pobrane, niezmienione dane mają tę samą wersję,
+ * więc zapamiętane wyniki nadal mogą być użyte, a wynik obliczony dla starszych danych nie jest zwracany dla nowszych.
+ * Konfiguracja (właściwości systemowe):
+ * <ul>
+ * <li>weka.datasets.maxBytes - maksymalny szacowany rozmiar danych w bajtach (domyślnie 1/4 sterty, 0 wyłącza cache)</li>
+ * <li>weka.datasets.ttl - czas w sekundach, przez który dane są używane bez kontaktu z serwisem danych (domyślnie 60)</li>
+ * </ul>
+ * @author Szymon Skupien
+ */
+public class DatasetCache {
+
+    /**
+     * Jedyna instancja pamięci podręcznej.
+     */
+    private static DatasetCache instance = null;
+
+    /**
+     * Wpisy w kolejności ostatniego dostępu (najstarszy pierwszy).
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    /**
+     * Maksymalny szacowany rozmiar danych [B].
+     */
+    private final long maxBytes;
+    /**
+     * Czas życia wpisu [ms].
+     */
+    private final long ttl;
+    /**
+     * Aktualny szacowany rozmiar danych [B].
+     */
+    private long bytes = 0;
+    /**
+     * Licznik trafień.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * Licznik chybień.
+     */
+    private final AtomicLong misses = new AtomicLong();
+    /**
+     * Licznik wersji danych o nieznanym odcisku.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Tworzy pamięć podręczną.
+     * @param maxBytes maksymalny szacowany rozmiar danych [B]
+     * @param ttl czas życia wpisu [ms]
+     */
+    public DatasetCache(long maxBytes, long ttl) {
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Zwraca współdzieloną instancję (tworzoną przy pierwszym użyciu).
+     * @return pamięć podręczna danych
+     */
+    public static synchronized DatasetCache getInstance() {
+        if (instance == null) {
+            long maxBytes = Long.getLong("weka.datasets.maxBytes", Runtime.getRuntime().maxMemory() / 4);
+            long ttl = Long.getLong("weka.datasets.ttl", 60L) * 1000L;
+            instance = new DatasetCache(maxBytes, ttl);
+        }
+        return instance;
+    }
+
+    /**
+     * Zwraca dane jeśli są w pamięci i nie upłynął ich czas życia.
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @return dane (tylko do odczytu) lub null
+     */
+    public synchronized NumericDataset get(String id, String table) {
+        Entry e = entries.get(key(id, table));
+        if (e == null || System.currentTimeMillis() - e.loaded > ttl) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.data;
+    }
+
+    /**
+     * Zwraca wersję zapamiętanych danych.
+     * @param data dane zwrócone przez get lub zapamiętane metodą put
+     * @return wersja danych lub null jeśli dane nie są (już) zapamiętane
+     */
+    public synchronized String getVersion(NumericDataset data) {
+        for (Entry e : entries.values()) {
+            if (e.data == data) {
+                return e.version;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Zapamiętuje sparsowane dane.
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @param fingerprint odcisk treści, z której powstały dane (0 - nieznany)
+     * @param data dane
+     */
+    public synchronized void put(String id, String table, long fingerprint, NumericDataset data) {
+        String key = key(id, table);
+        remove(key);
+        if (data == null) {
+            return;
+        }
+        long size = data.sizeInBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        String version = fingerprint != 0 ? Long.toHexString(fingerprint) : "n" + sequence.incrementAndGet();
+        entries.put(key, new Entry(id, table, data, version, size));
+        bytes += size;
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().size;
+            it.remove();
+        }
+    }
+
+    /**
+     * Unieważnia dane.
+     * @param id id danych (null - dowolne)
+     * @param table nazwa tabeli (null - dowolna)
+     * @return liczba usuniętych wpisów
+     */
+    public synchronized int invalidate(String id, String table) {
+        int removed = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if ((id == null || id.equals(e.id)) && (table == null || table.equals(e.table))) {
+                bytes -= e.size;
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return liczba trafień
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return liczba chybień
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return szacowany rozmiar zapamiętanych danych [B]
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Usuwa wpis i aktualizuje rozmiar.
+     * @param key klucz
+     */
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.size;
+        }
+    }
+
+    /**
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @return klucz wpisu
+     */
+    private static String key(String id, String table) {
+        return id + "\u0000" + table;
+    }
+
+    /**
+     * Wpis pamięci podręcznej.
+     */
+    private static class Entry {
+
+        private final String id;
+        private final String table;
+        private final NumericDataset data;
+        private final String version;
+        private final long size;
+        private long loaded = System.currentTimeMillis();
+
+        Entry(String id, String table, NumericDataset data, String version, long size) {
+            this.id = id;
+            this.table = table;
+            this.data = data;
+            this.version = version;
+            this.size = size;
+        }
+    }
+}
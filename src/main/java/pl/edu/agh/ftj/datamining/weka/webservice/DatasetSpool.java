@@ -0,0 +1,174 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.MappedDataset;
+import weka.core.Instances;
+
+/**
+ * Lokalny magazyn danych na dysku (spool). Pobrane tabele zapisywane są jednokrotnie do plików
+ * odwzorowywanych w pamięci (MappedDataset), dzięki czemu kolejne uruchomienia dla tej samej pary (id, table)
+ * nie parsują danych, a same dane nie zajmują sterty.
+ * <p>
+ * Plik danych dla pary (id, table) ma nazwę utworzoną z odcisków id i nazwy tabeli.
+ * Konfiguracja (właściwości systemowe):
+ * <ul>
+ * <li>weka.spool.dir - katalog magazynu (brak - magazyn wyłączony)</li>
+ * <li>weka.spool.ttl - czas w sekundach, przez który zapisane dane są używane bez ponownego pobrania (domyślnie 3600)</li>
+ * </ul>
+ * @author Szymon Skupien
+ */
+public class DatasetSpool {
+
+    /**
+     * Rozszerzenie plików danych.
+     */
+    private static final String SUFFIX = ".wds";
+
+    /**
+     * Jedyna instancja magazynu (null gdy magazyn jest wyłączony).
+     */
+    private static DatasetSpool instance = null;
+    /**
+     * Czy odczytano konfigurację.
+     */
+    private static boolean configured = false;
+
+    private static final Logger log = Logger.getLogger("WekaRESTServiceLog");
+
+    /**
+     * Katalog magazynu.
+     */
+    private final File dir;
+    /**
+     * Czas życia pliku danych [ms].
+     */
+    private final long ttl;
+
+    /**
+     * Tworzy magazyn.
+     * @param dir katalog magazynu (tworzony, jeśli nie istnieje)
+     * @param ttl czas życia pliku danych [ms]
+     */
+    public DatasetSpool(File dir, long ttl) {
+        this.dir = dir;
+        this.ttl = ttl;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            log.log(Level.WARNING, "Nie mozna utworzyc katalogu magazynu danych: {0}", dir);
+        }
+    }
+
+    /**
+     * Zwraca współdzieloną instancję (tworzoną przy pierwszym użyciu).
+     * @return magazyn danych lub null jeśli nie ustawiono właściwości weka.spool.dir
+     */
+    public static synchronized DatasetSpool getInstance() {
+        if (!configured) {
+            configured = true;
+            String dir = System.getProperty("weka.spool.dir");
+            if (dir != null && dir.length() > 0) {
+                long ttl = Long.getLong("weka.spool.ttl", 3600L) * 1000L;
+                instance = new DatasetSpool(new File(dir), ttl);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Otwiera zapisane dane, jeśli istnieją i nie upłynął ich czas życia.
+     * Uszkodzony plik (lub plik w starszym formacie) jest usuwany.
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @return dane (wraz z odciskiem treści, z której je utworzono) lub null
+     */
+    public MappedDataset open(String id, String table) {
+        File file = file(id, table);
+        if (!file.isFile() || System.currentTimeMillis() - file.lastModified() > ttl) {
+            return null;
+        }
+        try {
+            return MappedDataset.open(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Niepoprawny plik magazynu danych " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Rozpoczyna zapis danych (plik staje się widoczny dopiero po wywołaniu finish()).
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @param header struktura danych
+     * @return obiekt zapisujący dane
+     * @throws IOException gdy nie można utworzyć pliku
+     */
+    public MappedDataset.Writer writer(String id, String table, Instances header) throws IOException {
+        return new MappedDataset.Writer(file(id, table), header);
+    }
+
+    /**
+     * Usuwa zapisane dane.
+     * @param id id danych (null - dowolne)
+     * @param table nazwa tabeli (null - dowolna)
+     * @return liczba usuniętych plików
+     */
+    public int invalidate(String id, String table) {
+        String idPart = id == null ? null : hex(id);
+        String tablePart = table == null ? null : hex(table);
+        File[] files = dir.listFiles();
+        int removed = 0;
+        if (files == null) {
+            return 0;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (!name.endsWith(SUFFIX) || name.length() != 33 + SUFFIX.length()) {
+                continue;
+            }
+            if ((idPart == null || name.startsWith(idPart)) && (tablePart == null || name.startsWith(tablePart, 17))) {
+                if (f.delete()) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @return plik danych dla pary (id, table)
+     */
+    File file(String id, String table) {
+        return new File(dir, hex(id) + "-" + hex(table) + SUFFIX);
+    }
+
+    /**
+     * Oblicza odcisk (64-bitowy FNV-1a) tekstu - używany w nazwach plików danych.
+     * @param text tekst
+     * @return odcisk
+     */
+    public static long fingerprint(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * @param text tekst
+     * @return odcisk tekstu jako 16 cyfr szesnastkowych
+     */
+    private static String hex(String text) {
+        String h = Long.toHexString(fingerprint(text));
+        while (h.length() < 16) {
+            h = "0" + h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,79 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Strumień znaków obliczający w locie odcisk (64-bitowy FNV-1a) odczytanej treści.
+ * Odcisk jest zgodny z DatasetSpool.fingerprint(String) dla tej samej treści.
+ * @author Szymon Skupien
+ */
+public class FingerprintReader extends FilterReader {
+
+    /**
+     * Aktualna wartość odcisku.
+     */
+    private long hash = 0xcbf29ce484222325L;
+    /**
+     * Liczba odczytanych znaków.
+     */
+    private long count = 0;
+
+    /**
+     * @param in strumień źródłowy
+     */
+    public FingerprintReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c >= 0) {
+            hash ^= c;
+            hash *= 0x100000001b3L;
+            count++;
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = super.read(cbuf, off, len);
+        long h = hash;
+        for (int i = 0; i < n; i++) {
+            h ^= cbuf[off + i];
+            h *= 0x100000001b3L;
+        }
+        hash = h;
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        throw new IOException("skip nie jest obslugiwane");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return odcisk dotychczas odczytanej treści
+     */
+    public long getFingerprint() {
+        return hash;
+    }
+
+    /**
+     * @return liczba odczytanych znaków
+     */
+    public long getCount() {
+        return count;
+    }
+}
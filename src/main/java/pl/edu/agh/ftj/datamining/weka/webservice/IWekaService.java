@@ -1,5 +1,6 @@
 package pl.edu.agh.ftj.datamining.weka.webservice;
 
+import java.io.InputStream;
 import javax.ws.rs.core.Response;
 import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswer;
 
@@ -14,6 +15,11 @@ public interface IWekaService {
      */
     public String getAlgorithms();
 
+    /**
+     * @return zwraca listę (XML) silników algorytmów wraz z ich cechami i zalecanym limitem wierszy
+     */
+    public String getEngines();
+
 
      /**
      * Funkcja uruchamia dzialanie algorytmu
@@ -25,4 +31,135 @@ public interface IWekaService {
      */
     public Response runAlgorithm(Integer algorithmType, /*String location,*/ String id, String table, String options);
 
+     /**
+     * Funkcja uruchamia dzialanie algorytmu wyliczając tylko wybrane części odpowiedzi
+     * @param algorithmType wybiera typ algorytmu (indeks tablicy z metody getAlgorithms)
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu podawane w ciągu
+     * @param fields        lista części odpowiedzi rozdzielonych przecinkami (np. "assignments,clusterSizes"), null - wszystkie poza data
+     * @return Zwraca WekaAnswer w postaci ciągu bajtów (zserializowany obiekt WekaAnswer)
+     */
+    public Response runAlgorithm(Integer algorithmType, String id, String table, String options, String fields);
+
+     /**
+     * Funkcja uruchamia dzialanie algorytmu startując od podanych środków klastrów (warm start)
+     * @param algorithmType wybiera typ algorytmu (indeks tablicy z metody getAlgorithms)
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu podawane w ciągu
+     * @param fields        lista części odpowiedzi rozdzielonych przecinkami, null - wszystkie poza data
+     * @param init          identyfikator zakończonego zadania lub środki w formacie ARFF, null - wybór losowy
+     * @return Zwraca WekaAnswer w postaci ciągu bajtów (zserializowany obiekt WekaAnswer)
+     */
+    public Response runAlgorithm(Integer algorithmType, String id, String table, String options, String fields, String init);
+
+     /**
+     * Funkcja uruchamia dzialanie algorytmu, wynik w zwartym formacie binarnym (Accept: application/x-weka-answer)
+     * @param algorithmType wybiera typ algorytmu (indeks tablicy z metody getAlgorithms)
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu podawane w ciągu
+     * @param fields        lista części odpowiedzi rozdzielonych przecinkami, null - wszystkie poza data
+     * @param init          identyfikator zakończonego zadania lub środki w formacie ARFF, null - wybór losowy
+     * @return Zwraca WekaAnswer zakodowany przez WekaAnswerCodec
+     */
+    public Response runAlgorithmCompact(Integer algorithmType, String id, String table, String options, String fields, String init);
+
+    /**
+     * Funkcja przyjmuje zadanie uruchomienia algorytmu do wykonania asynchronicznego
+     * @param algorithmType wybiera typ algorytmu (indeks tablicy z metody getAlgorithms)
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu podawane w ciągu
+     * @param fields        lista części odpowiedzi rozdzielonych przecinkami, null - wszystkie poza data
+     * @param format        format wyniku: "compact" (application/x-weka-answer) lub domyślnie serializacja Javy
+     * @param init          identyfikator zakończonego zadania lub środki w formacie ARFF, null - wybór losowy
+     * @return Zwraca XML z identyfikatorem zadania (lub status 503 gdy kolejka zadań jest pełna)
+     */
+    public Response submitAlgorithm(Integer algorithmType, String id, String table, String options, String fields, String format, String init);
+
+    /**
+     * Funkcja uruchamia algorytm równolegle dla liczby klastrów od kFrom do kTo na jednym zbiorze danych
+     * @param algorithmType typ algorytmu: 1 - SimpleKMeans, 2 - EM, 5 - FarthestFirst
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu podawane w ciągu (opcja N jest pomijana)
+     * @param kFrom         najmniejsza liczba klastrów
+     * @param kTo           największa liczba klastrów
+     * @return zwraca XML z miarami dla kolejnych k (błąd kwadratowy, logarytm wiarygodności, liczności klastrów)
+     * lub status 503 gdy kolejka zadań jest pełna
+     */
+    public Response sweep(Integer algorithmType, String id, String table, String options, Integer kFrom, Integer kTo);
+
+    /**
+     * Tworzy strumień klasteryzacji przyrostowej zasilany paczkami wierszy
+     * @param algorithmType typ algorytmu: 1 - SimpleKMeans (wersja przyrostowa), 4 - Cobweb
+     * @param options       opcje algorytmu podawane w ciągu
+     * @return zwraca XML z identyfikatorem strumienia
+     */
+    public String createStream(Integer algorithmType, String options);
+
+    /**
+     * Dodaje do strumienia paczkę wierszy w formacie ARFF
+     * @param streamId identyfikator strumienia
+     * @param body     paczka wierszy w formacie ARFF
+     * @return zwraca XML z liczbą wierszy paczki i liczbą wszystkich przetworzonych wierszy
+     */
+    public String pushBatch(String streamId, InputStream body);
+
+    /**
+     * Pobiera z webservisu dbapi wiersze dopisane od poprzedniego pobrania i dodaje je do strumienia
+     * @param streamId identyfikator strumienia
+     * @param id       id do danych (do webservisu dbapi)
+     * @param table    table do danych (do webservisu dbapi)
+     * @return zwraca XML z liczbą nowych wierszy i liczbą wszystkich przetworzonych wierszy
+     */
+    public String pullBatch(String streamId, String id, String table);
+
+    /**
+     * Zwraca bieżący stan modelu strumienia
+     * @param streamId identyfikator strumienia
+     * @param format   format wyniku: "compact" (application/x-weka-answer) lub domyślnie serializacja Javy
+     * @return Zwraca WekaAnswer z liczbą klastrów, środkami, licznościami lub grafem oraz przypisaniami ostatniej paczki
+     */
+    public Response getStreamState(String streamId, String format);
+
+    /**
+     * Zamyka strumień
+     * @param streamId identyfikator strumienia
+     * @return zwraca XML z informacją czy strumień istniał
+     */
+    public String closeStream(String streamId);
+
+    /**
+     * @param jobId identyfikator zadania
+     * @return zwraca XML ze stanem zadania (QUEUED, RUNNING, DONE, FAILED, UNKNOWN)
+     */
+    public String getJobStatus(String jobId);
+
+    /**
+     * @param jobId identyfikator zadania
+     * @return Zwraca wynik zadania w postaci ciągu bajtów (zserializowany obiekt WekaAnswer)
+     */
+    public Response getJobResult(String jobId);
+
+    /**
+     * @return zwraca XML ze statystykami pamięci podręcznej wyników (trafienia, chybienia, wpisy, rozmiar)
+     */
+    public String getCacheStats();
+
+    /**
+     * Unieważnia zapamiętane wyniki dla podanych danych (null oznacza dowolną wartość)
+     * @param id    id do danych (do webservisu dbapi)
+     * @param table table do danych (do webservisu dbapi)
+     * @return zwraca XML z liczbą usuniętych wpisów
+     */
+    public String invalidateCache(String id, String table);
+
+    /**
+     * @return zwraca XML ze statystykami pobierania danych z dbapi (liczba pobrań, błędów, czas, rozmiar danych)
+     */
+    public String getDataAccessStats();
+
 }
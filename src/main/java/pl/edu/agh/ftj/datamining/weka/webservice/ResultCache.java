@@ -0,0 +1,226 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import weka.core.Utils;
+
+/**
+ * Pamięć podręczna zserializowanych odpowiedzi WekaAnswer.
+ * Kluczem jest para (id, table) danych wraz z wersją danych (DatasetCache.getVersion), typ algorytmu, znormalizowana tablica opcji
+ * (po przetworzeniu przez parseStringOptions), wybrane części odpowiedzi oraz format odpowiedzi. Wpisy usuwane są wg. zasady LRU po przekroczeniu
+ * maksymalnej liczby wpisów lub sumarycznego rozmiaru, a także po upływie czasu życia (TTL). Zapisanie wyniku
+ * dla nowej wersji danych usuwa wyniki obliczone dla poprzednich wersji tych samych danych.
+ * Konfiguracja (właściwości systemowe):
+ * <ul>
+ * <li>weka.cache.maxEntries - maksymalna liczba wpisów (domyślnie 256, 0 wyłącza cache)</li>
+ * <li>weka.cache.maxBytes - maksymalny sumaryczny rozmiar odpowiedzi w bajtach (domyślnie 64 MB)</li>
+ * <li>weka.cache.ttl - czas życia wpisu w sekundach (domyślnie 300)</li>
+ * </ul>
+ * @author Szymon Skupien
+ */
+public class ResultCache {
+
+    /**
+     * Jedyna instancja pamięci podręcznej.
+     */
+    private static ResultCache instance = null;
+
+    /**
+     * Wpisy w kolejności ostatniego dostępu (najstarszy pierwszy).
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    /**
+     * Maksymalna liczba wpisów.
+     */
+    private final int maxEntries;
+    /**
+     * Maksymalny sumaryczny rozmiar odpowiedzi [B].
+     */
+    private final long maxBytes;
+    /**
+     * Czas życia wpisu [ms].
+     */
+    private final long ttl;
+    /**
+     * Aktualny sumaryczny rozmiar odpowiedzi [B].
+     */
+    private long bytes = 0;
+    /**
+     * Licznik trafień.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * Licznik chybień.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Tworzy pamięć podręczną.
+     * @param maxEntries maksymalna liczba wpisów
+     * @param maxBytes maksymalny sumaryczny rozmiar [B]
+     * @param ttl czas życia wpisu [ms]
+     */
+    public ResultCache(int maxEntries, long maxBytes, long ttl) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Zwraca współdzieloną instancję (tworzoną przy pierwszym użyciu).
+     * @return pamięć podręczna wyników
+     */
+    public static synchronized ResultCache getInstance() {
+        if (instance == null) {
+            int maxEntries = Integer.getInteger("weka.cache.maxEntries", 256);
+            long maxBytes = Long.getLong("weka.cache.maxBytes", 64L * 1024 * 1024);
+            long ttl = Long.getLong("weka.cache.ttl", 300L) * 1000L;
+            instance = new ResultCache(maxEntries, maxBytes, ttl);
+        }
+        return instance;
+    }
+
+    /**
+     * Tworzy klucz pamięci podręcznej.
+     * @param algorithmType typ algorytmu
+     * @param id id danych
+     * @param table nazwa tabeli
+     * @param version wersja danych
+     * @param options znormalizowana tablica opcji (może być null)
+     * @param fields kanoniczna lista wybranych części odpowiedzi
+     * @param mediaType format zakodowanej odpowiedzi
+     * @return klucz
+     */
+    public static String key(Integer algorithmType, String id, String table, String version, String[] options, String fields, String mediaType) {
+        String opt = options == null ? "" : Utils.joinOptions(options);
+        return algorithmType + "\u0000" + id + "\u0000" + table + "\u0000" + version + "\u0000" + opt + "\u0000" + fields + "\u0000" + mediaType;
+    }
+
+    /**
+     * Pobiera odpowiedź z pamięci podręcznej.
+     * @param key klucz
+     * @return kopia zapisanej odpowiedzi lub null jeśli jej brak
+     */
+    public synchronized byte[] get(String key) {
+        Entry e = entries.get(key);
+        if (e != null && System.currentTimeMillis() - e.created > ttl) {
+            remove(key);
+            e = null;
+        }
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.bytes.clone();
+    }
+
+    /**
+     * Zapisuje odpowiedź w pamięci podręcznej.
+     * @param key klucz
+     * @param id id danych (do unieważniania)
+     * @param table nazwa tabeli (do unieważniania)
+     * @param version wersja danych, dla której obliczono odpowiedź
+     * @param value zserializowana odpowiedź
+     */
+    public synchronized void put(String key, String id, String table, String version, byte[] value) {
+        if (value == null || maxEntries <= 0 || value.length > maxBytes) {
+            return;
+        }
+        remove(key);
+        Iterator<Entry> stale = entries.values().iterator();
+        while (stale.hasNext()) {
+            Entry e = stale.next();
+            if (e.id.equals(id) && e.table.equals(table) && !e.version.equals(version)) {
+                bytes -= e.bytes.length;
+                stale.remove();
+            }
+        }
+        entries.put(key, new Entry(id, table, version, value.clone()));
+        bytes += value.length;
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().bytes.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Unieważnia wpisy dotyczące podanych danych.
+     * @param id id danych (null - dowolne)
+     * @param table nazwa tabeli (null - dowolna)
+     * @return liczba usuniętych wpisów
+     */
+    public synchronized int invalidate(String id, String table) {
+        int removed = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if ((id == null || id.equals(e.id)) && (table == null || table.equals(e.table))) {
+                bytes -= e.bytes.length;
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return liczba trafień
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return liczba chybień
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return liczba wpisów
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return sumaryczny rozmiar zapisanych odpowiedzi [B]
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Usuwa wpis i aktualizuje rozmiar.
+     * @param key klucz
+     */
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.bytes.length;
+        }
+    }
+
+    /**
+     * Wpis pamięci podręcznej.
+     */
+    private static class Entry {
+
+        private final String id;
+        private final String table;
+        private final String version;
+        private final byte[] bytes;
+        private final long created = System.currentTimeMillis();
+
+        Entry(String id, String table, String version, byte[] bytes) {
+            this.id = id;
+            this.table = table;
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+}
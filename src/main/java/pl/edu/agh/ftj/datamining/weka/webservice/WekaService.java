@@ -1,24 +1,46 @@
 package pl.edu.agh.ftj.datamining.weka.webservice;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import pl.edu.agh.ftj.datamining.weka.algorithm.AlgorithmRegistry;
+import pl.edu.agh.ftj.datamining.weka.algorithm.AnswerField;
+import pl.edu.agh.ftj.datamining.weka.algorithm.ClusterStream;
+import pl.edu.agh.ftj.datamining.weka.algorithm.ClustererEngine;
+import pl.edu.agh.ftj.datamining.weka.algorithm.CobwebModel;
 import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAlgorithm;
 import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswerCodec;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.MappedDataset;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NumericDataset;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.PackedDataset;
+import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.converters.ConverterUtils.DataSource;
+import weka.core.converters.ArffLoader.ArffReader;
 
 
 /**
@@ -36,6 +58,15 @@ public class WekaService implements IWekaService {
 
     private static final Logger log = Logger.getLogger("WekaRESTServiceLog");
 
+    /**
+     * Przestrzen nazw odpowiedzi XML serwisu.
+     */
+    private static final String XSD_NAMESPACE = "http://webservice/weka/datamaining/ftj/agh/edu/pl/xsd";
+    /**
+     * Postac identyfikatora zadania (UUID) - odroznia identyfikator wyniku od srodkow w formacie ARFF.
+     */
+    private static final Pattern JOB_ID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
     /**
      * Funkcja odpowiadajaca na zadanie GET http://localhost:8080/WekaRESTService/rest/
      * @return Strona html przekierowujaca na adres http://prgzsp.ftj.agh.edu.pl/trac/P3-DataMining
@@ -55,7 +86,7 @@ public class WekaService implements IWekaService {
     @Path("/getAlgorithms")
     public String getAlgorithms() {
 
-        String r = "<getAlgorithmsResponse xmlns=\"http://webservice/weka/datamaining/ftj/agh/edu/pl/xsd\">";
+        String r = "<getAlgorithmsResponse xmlns=\"" + XSD_NAMESPACE + "\">";
         for (int i = 0; i < WekaAlgorithm.getAlgorithms().length; i++) {
             r += "<return>" + WekaAlgorithm.getAlgorithms()[i] + "</return>";
         }
@@ -64,23 +95,570 @@ public class WekaService implements IWekaService {
 
     }
 
+    /**
+     * @return zwraca liste silnikow algorytmow (typ i nazwa algorytmu, nazwa silnika dla opcji -engine,
+     * cechy oraz zalecana maksymalna liczba wierszy, -1 - brak limitu) w postaci XML'a
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/getEngines")
+    public String getEngines() {
+        StringBuilder r = new StringBuilder("<getEnginesResponse xmlns=\"" + XSD_NAMESPACE + "\">");
+        for (ClustererEngine engine : AlgorithmRegistry.getEngines()) {
+            StringBuilder capabilities = new StringBuilder();
+            for (ClustererEngine.Capability c : engine.getCapabilities()) {
+                capabilities.append(capabilities.length() > 0 ? "," : "").append(c.name().toLowerCase());
+            }
+            long maxRows = engine.getMaxRecommendedRows() == ClustererEngine.UNLIMITED ? -1 : engine.getMaxRecommendedRows();
+            r.append("<return algorithmType=\"").append(engine.getAlgorithmType())
+                    .append("\" algorithm=\"").append(engine.getAlgorithmName())
+                    .append("\" engine=\"").append(engine.getName())
+                    .append("\" capabilities=\"").append(capabilities)
+                    .append("\" maxRecommendedRows=\"").append(maxRows).append("\"/>");
+        }
+        r.append("</getEnginesResponse>");
+        return r.toString();
+    }
+
     /**
      * Funkcja uruchamia dzialanie algorytmu
      * @param algorithmType wybiera typ algorytmu
      * @param id            id do danych (do webservisu dbapi)
      * @param table         table do danych (do webservisu dbapi)
      * @param options       opcje algorytmu
+     * @param fields        lista czesci odpowiedzi do wyliczenia, np. "assignments,clusterSizes" (brak - wszystkie poza data)
+     * @param init          srodki poczatkowe: identyfikator zakonczonego zadania (submitAlgorithm) lub srodki w formacie ARFF (brak - wybor losowy)
      * @return Zwraca przetworzone dane z Weki w postaci zserializowanego obiektu WekaAnswer zserializowanej (ciÄ…g bajtĂłw)
      */
     @GET
     @Produces("application/octet-stream")
     @Path("/runAlgorithm")
-    public Response runAlgorithm(@QueryParam("algorithmType") Integer algorithmType,/* @QueryParam("location") String location, */@QueryParam("id") String id, @QueryParam("table") String table, @QueryParam("options") String options) {
-         
-       
+    public Response runAlgorithm(@QueryParam("algorithmType") Integer algorithmType,/* @QueryParam("location") String location, */@QueryParam("id") String id, @QueryParam("table") String table, @QueryParam("options") String options, @QueryParam("fields") String fields, @QueryParam("init") String init) {
+        byte[] bytes = processAlgorithm(algorithmType, id, table, options, fields, init, MediaType.APPLICATION_OCTET_STREAM);
+        //wysylka
+        return Response.ok(bytes, MediaType.APPLICATION_OCTET_STREAM).build();
+    }
+
+    /**
+     * Funkcja uruchamia dzialanie algorytmu z losowym wyborem srodkow poczatkowych.
+     * @param algorithmType wybiera typ algorytmu
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu
+     * @param fields        lista czesci odpowiedzi do wyliczenia (brak - wszystkie poza data)
+     * @return Zwraca przetworzone dane z Weki w postaci zserializowanego obiektu WekaAnswer
+     */
+    public Response runAlgorithm(Integer algorithmType, String id, String table, String options, String fields) {
+        return runAlgorithm(algorithmType, id, table, options, fields, null);
+    }
+
+    /**
+     * Funkcja uruchamia dzialanie algorytmu i zwraca wszystkie czesci odpowiedzi.
+     * @param algorithmType wybiera typ algorytmu
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu
+     * @return Zwraca przetworzone dane z Weki w postaci zserializowanego obiektu WekaAnswer
+     */
+    public Response runAlgorithm(Integer algorithmType, String id, String table, String options) {
+        return runAlgorithm(algorithmType, id, table, options, null);
+    }
+
+    /**
+     * Funkcja uruchamia dzialanie algorytmu i zwraca wynik w zwartym formacie binarnym.
+     * Wybierana przez klientow wysylajacych naglowek Accept: application/x-weka-answer.
+     * Odpowiedz zawiera tylko wyniki algorytmu (bez danych, klasteryzatora i ewaluacji),
+     * a tablice liczb zapisane sa w postaci spakowanej (zob. WekaAnswerCodec).
+     * @param algorithmType wybiera typ algorytmu
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu
+     * @param fields        lista czesci odpowiedzi do wyliczenia (brak - wszystkie poza data)
+     * @param init          srodki poczatkowe: identyfikator zakonczonego zadania lub srodki w formacie ARFF (brak - wybor losowy)
+     * @return Zwraca przetworzone dane z Weki zakodowane przez WekaAnswerCodec
+     */
+    @GET
+    @Produces(WekaAnswerCodec.MEDIA_TYPE)
+    @Path("/runAlgorithm")
+    public Response runAlgorithmCompact(@QueryParam("algorithmType") Integer algorithmType, @QueryParam("id") String id, @QueryParam("table") String table, @QueryParam("options") String options, @QueryParam("fields") String fields, @QueryParam("init") String init) {
+        byte[] bytes = processAlgorithm(algorithmType, id, table, options, fields, init, WekaAnswerCodec.MEDIA_TYPE);
+        return Response.ok(bytes, WekaAnswerCodec.MEDIA_TYPE).build();
+    }
+
+    /**
+     * Funkcja przyjmuje zadanie uruchomienia algorytmu do asynchronicznego wykonania.
+     * Zadanie trafia do kolejki puli wątków roboczych (AlgorithmJobManager), a jego stan
+     * można sprawdzić metodą getJobStatus, zaś wynik pobrać metodą getJobResult.
+     * @param algorithmType wybiera typ algorytmu
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu
+     * @param fields        lista czesci odpowiedzi do wyliczenia (brak - wszystkie poza data)
+     * @param format        format wyniku: "compact" (application/x-weka-answer) lub domyslnie serializacja Javy
+     * @param init          srodki poczatkowe: identyfikator zakonczonego zadania lub srodki w formacie ARFF (brak - wybor losowy)
+     * @return XML z identyfikatorem zadania lub (status 503) informacja o przepelnionej kolejce
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/submitAlgorithm")
+    public Response submitAlgorithm(@QueryParam("algorithmType") final Integer algorithmType, @QueryParam("id") final String id, @QueryParam("table") final String table, @QueryParam("options") final String options, @QueryParam("fields") final String fields, @QueryParam("format") String format, @QueryParam("init") final String init) {
+        final String mediaType = "compact".equals(format) ? WekaAnswerCodec.MEDIA_TYPE : MediaType.APPLICATION_OCTET_STREAM;
+        AlgorithmJob job;
+        try {
+            job = AlgorithmJobManager.getInstance().submit(new Callable<byte[]>() {
+
+                public byte[] call() {
+                    return processAlgorithm(algorithmType, id, table, options, fields, init, mediaType);
+                }
+            }, mediaType);
+        } catch (RejectedExecutionException e) {
+            String r = "<submitAlgorithmResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+            r += "<error>Kolejka zadan jest pelna, sprobuj ponownie pozniej</error>";
+            r += "</submitAlgorithmResponse>";
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(r).type(MediaType.APPLICATION_XML).build();
+        }
+        String r = "<submitAlgorithmResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        r += "<return>" + job.getJobId() + "</return>";
+        r += "</submitAlgorithmResponse>";
+        return Response.ok(r, MediaType.APPLICATION_XML).build();
+    }
+
+    /**
+     * Funkcja uruchamia algorytm rownolegle dla kolejnych liczb klastrow (od kFrom do kTo) na jednym,
+     * wspolnym zbiorze danych i zwraca jedynie zwarte miary dla kazdego k (bez modeli).
+     * Maksymalna liczba wartosci k w jednym zadaniu okresla wlasciwosc systemowa weka.sweep.maxRange (domyslnie 64).
+     * Przeglad wykonywany jest jako zadanie w kolejce puli watkow roboczych (AlgorithmJobManager), a metoda czeka
+     * na jego wynik - gdy kolejka jest pelna, zwracany jest status 503.
+     * @param algorithmType typ algorytmu: 1 - SimpleKMeans, 2 - EM, 5 - FarthestFirst
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu (opcja N jest pomijana)
+     * @param kFrom         najmniejsza liczba klastrow
+     * @param kTo           najwieksza liczba klastrow
+     * @return XML z wynikami dla kolejnych k lub z opisem bledu (status 503 - przepelniona kolejka zadan)
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/sweep")
+    public Response sweep(@QueryParam("algorithmType") final Integer algorithmType, @QueryParam("id") final String id, @QueryParam("table") final String table, @QueryParam("options") final String options, @QueryParam("kFrom") final Integer kFrom, @QueryParam("kTo") final Integer kTo) {
+        String error = null;
+        int maxRange = Integer.getInteger("weka.sweep.maxRange", 64);
+        if (checkParameters(algorithmType, id, table) != 0) {
+            error = "Brakuje typu algorytmu, id lub nazwy tabeli";
+        } else if (algorithmType != 1 && algorithmType != 2 && algorithmType != 5) {
+            error = "Przeglad liczby klastrow dostepny jest dla SimpleKMeans (1), EM (2) i FarthestFirst (5)";
+        } else if (kFrom == null || kTo == null || kFrom < 1 || kTo < kFrom) {
+            error = "Niepoprawny zakres liczby klastrow";
+        } else if (kTo - kFrom + 1 > maxRange) {
+            error = "Zbyt duzy zakres liczby klastrow (maksymalnie " + maxRange + ")";
+        }
+        if (error == null) {
+            AlgorithmJobManager manager = AlgorithmJobManager.getInstance();
+            AlgorithmJob job;
+            try {
+                job = manager.submit(new Callable<byte[]>() {
+
+                    public byte[] call() throws Exception {
+                        return processSweep(algorithmType, id, table, options, kFrom, kTo).getBytes("UTF-8");
+                    }
+                }, MediaType.APPLICATION_XML);
+            } catch (RejectedExecutionException e) {
+                String r = "<sweepResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+                r += "<error>Kolejka zadan jest pelna, sprobuj ponownie pozniej</error>";
+                r += "</sweepResponse>";
+                return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(r).type(MediaType.APPLICATION_XML).build();
+            }
+            try {
+                job.await();
+                if (job.getResult() != null) {
+                    return Response.ok(job.getResult(), MediaType.APPLICATION_XML).build();
+                }
+                error = "Blad wykonania algorytmu: " + job.getError();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = "Przerwano oczekiwanie na wynik przegladu";
+            } finally {
+                manager.discardJob(job.getJobId());
+            }
+        }
+        String r = "<sweepResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        r += "<error>" + escapeXml(error) + "</error>";
+        r += "</sweepResponse>";
+        return Response.ok(r, MediaType.APPLICATION_XML).build();
+    }
+
+    /**
+     * Funkcja wykonuje przeglad liczby klastrow (w watku roboczym zadania) i buduje odpowiedz XML.
+     * @param algorithmType typ algorytmu
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu
+     * @param kFrom         najmniejsza liczba klastrow
+     * @param kTo           najwieksza liczba klastrow
+     * @return XML z wynikami dla kolejnych k lub z opisem bledu
+     */
+    private String processSweep(int algorithmType, String id, String table, String options, int kFrom, int kTo) {
+        String r = "<sweepResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        String error = null;
+        try {
+            DatasetCache datasets = DatasetCache.getInstance();
+            NumericDataset data = datasets.get(id, table);
+            if (data == null) {
+                data = fetchDataset(datasets, id, table);
+            }
+            List<WekaAnswer> answers = WekaAlgorithm.sweep(algorithmType, parseStringOptions(options), data, kFrom, kTo);
+            for (int i = 0; i < answers.size(); i++) {
+                WekaAnswer ans = answers.get(i);
+                r += "<result>";
+                r += "<k>" + (kFrom + i) + "</k>";
+                r += "<correct>" + ans.isCorrect() + "</correct>";
+                if (ans.isCorrect()) {
+                    r += "<numberOfClusters>" + ans.getNumberOfClusters() + "</numberOfClusters>";
+                    if (algorithmType == 1) {
+                        r += "<squaredError>" + ans.getSquaredError() + "</squaredError>";
+                    }
+                    if (!Double.isNaN(ans.getLogLikelihood())) {
+                        r += "<logLikelihood>" + ans.getLogLikelihood() + "</logLikelihood>";
+                    }
+                    if (ans.getClusterSizes() != null) {
+                        r += "<clusterSizes>";
+                        for (int size : ans.getClusterSizes()) {
+                            r += "<return>" + size + "</return>";
+                        }
+                        r += "</clusterSizes>";
+                    }
+                } else if (ans.getInfo() != null) {
+                    r += "<error>" + escapeXml(ans.getInfo()) + "</error>";
+                }
+                r += "</result>";
+            }
+        } catch (DataAccessException e) {
+            log.log(Level.WARNING, "sweep error:", e);
+            error = "Bład w polaczeniu z bazą danych: " + e.getMessage();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "sweep error:", e);
+            error = "Blad wykonania algorytmu: " + e.getMessage();
+        }
+        if (error != null) {
+            r += "<error>" + escapeXml(error) + "</error>";
+        }
+        r += "</sweepResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja zwraca stan zadania asynchronicznego.
+     * @param jobId identyfikator zadania (zwrocony przez submitAlgorithm)
+     * @return XML ze stanem zadania: QUEUED, RUNNING, DONE, FAILED lub UNKNOWN
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/getJobStatus")
+    public String getJobStatus(@QueryParam("jobId") String jobId) {
+        AlgorithmJob job = AlgorithmJobManager.getInstance().getJob(jobId);
+        String r = "<getJobStatusResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        if (job == null) {
+            r += "<return>UNKNOWN</return>";
+        } else {
+            r += "<return>" + job.getStatus() + "</return>";
+            if (job.getError() != null) {
+                r += "<error>" + escapeXml(job.getError()) + "</error>";
+            }
+        }
+        r += "</getJobStatusResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja zwraca wynik zadania asynchronicznego. Po odebraniu wyniku zadanie jest usuwane.
+     * Jesli zadanie nie istnieje lub nie zostalo zakonczone, zwracany jest obiekt WekaAnswer
+     * z ustawionym polem correct=false i odpowiednia informacja.
+     * @param jobId identyfikator zadania (zwrocony przez submitAlgorithm)
+     * @return Zwraca przetworzone dane z Weki w formacie wybranym przy zlecaniu zadania
+     */
+    @GET
+    @Produces({"application/octet-stream", WekaAnswerCodec.MEDIA_TYPE})
+    @Path("/getJobResult")
+    public Response getJobResult(@QueryParam("jobId") String jobId) {
+        AlgorithmJobManager manager = AlgorithmJobManager.getInstance();
+        AlgorithmJob job = manager.getJob(jobId);
+        String mediaType = job == null ? MediaType.APPLICATION_OCTET_STREAM : job.getMediaType();
+        byte[] bytes = null;
+        if (job == null || !job.isFinished() || job.getResult() == null) {
+            WekaAnswer wekaAnswer = new WekaAnswer();
+            wekaAnswer.setCorrect(false);
+            if (job == null) {
+                wekaAnswer.setInfo("Nieznane zadanie: " + jobId);
+            } else if (!job.isFinished()) {
+                wekaAnswer.setInfo("Zadanie nie zostalo jeszcze zakonczone");
+            } else {
+                wekaAnswer.setInfo("Zadanie zakonczone bledem: " + job.getError());
+                manager.removeJob(jobId);
+            }
+            bytes = encodeAnswer(wekaAnswer, mediaType);
+        } else {
+            bytes = job.getResult();
+            manager.removeJob(jobId);
+        }
+        return Response.ok(bytes, mediaType).build();
+    }
+
+    /**
+     * Funkcja zwraca statystyki pamieci podrecznej wynikow.
+     * @return XML z liczba trafien, chybien, wpisow oraz rozmiarem zapamietanych odpowiedzi i danych
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/getCacheStats")
+    public String getCacheStats() {
+        ResultCache cache = ResultCache.getInstance();
+        String r = "<getCacheStatsResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        r += "<hits>" + cache.getHits() + "</hits>";
+        r += "<misses>" + cache.getMisses() + "</misses>";
+        r += "<entries>" + cache.size() + "</entries>";
+        r += "<bytes>" + cache.getBytes() + "</bytes>";
+        DatasetCache datasets = DatasetCache.getInstance();
+        r += "<datasetHits>" + datasets.getHits() + "</datasetHits>";
+        r += "<datasetMisses>" + datasets.getMisses() + "</datasetMisses>";
+        r += "<datasetBytes>" + datasets.getBytes() + "</datasetBytes>";
+        r += "</getCacheStatsResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja zwraca statystyki pobierania danych z webservisu dbapi.
+     * @return XML z liczba pobran, bledow, sumarycznym czasem pobierania [ms] oraz rozmiarem danych [znaki]
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/getDataAccessStats")
+    public String getDataAccessStats() {
+        DataAccessClient client = DataAccessClient.getInstance();
+        String r = "<getDataAccessStatsResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        r += "<fetches>" + client.getFetchCount() + "</fetches>";
+        r += "<errors>" + client.getFetchErrors() + "</errors>";
+        r += "<fetchMillis>" + client.getFetchMillis() + "</fetchMillis>";
+        r += "<payloadChars>" + client.getPayloadChars() + "</payloadChars>";
+        r += "<maxPayloadChars>" + client.getMaxPayloadChars() + "</maxPayloadChars>";
+        r += "</getDataAccessStatsResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja tworzy strumien klasteryzacji przyrostowej. Strumien zasilany jest paczkami wierszy
+     * (pushBatch lub pullBatch), a biezacy stan modelu zwraca metoda getStreamState.
+     * @param algorithmType typ algorytmu: 1 (SimpleKMeans - wersja przyrostowa) lub 4 (Cobweb)
+     * @param options       opcje algorytmu; dodatkowo maxRows (limit wierszy w drzewie Cobweb) i maxAssignments
+     *                      (limit zwracanych przypisan ostatniej paczki)
+     * @return XML z identyfikatorem strumienia lub informacja o bledzie
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/createStream")
+    public String createStream(@QueryParam("algorithmType") Integer algorithmType, @QueryParam("options") String options) {
+        String r = "<createStreamResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        try {
+            if (algorithmType == null) {
+                throw new IllegalArgumentException("Brakuje typu algorytmu");
+            }
+            ClusterStream stream = new ClusterStream(algorithmType, parseStringOptions(options));
+            r += "<streamId>" + ClusterStreamManager.getInstance().register(stream) + "</streamId>";
+        } catch (Exception e) {
+            r += "<error>" + escapeXml("Nie mozna utworzyc strumienia: " + e.getMessage()) + "</error>";
+        }
+        r += "</createStreamResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja dodaje do strumienia paczke wierszy przeslana w tresci zadania (format ARFF).
+     * Wiersze sa odczytywane i dodawane do modelu kolejno, bez przechowywania calej paczki w pamieci.
+     * @param streamId identyfikator strumienia (zwrocony przez createStream)
+     * @param body     paczka wierszy w formacie ARFF (struktura zgodna z pierwsza paczka strumienia)
+     * @return XML z liczba wierszy paczki i liczba wszystkich przetworzonych wierszy
+     */
+    @POST
+    @Consumes("text/plain")
+    @Produces("application/xml")
+    @Path("/pushBatch")
+    public String pushBatch(@QueryParam("streamId") String streamId, InputStream body) {
+        String r = "<pushBatchResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        ClusterStream stream = ClusterStreamManager.getInstance().get(streamId);
+        if (stream == null) {
+            r += "<error>" + escapeXml("Nieznany strumien: " + streamId) + "</error>";
+        } else {
+            try {
+                long[] rows = feedStream(stream, new InputStreamReader(body, "UTF-8"), 0);
+                r += "<rows>" + rows[1] + "</rows>";
+                r += "<rowsSeen>" + stream.getRowsSeen() + "</rowsSeen>";
+            } catch (Exception e) {
+                log.log(Level.WARNING, "pushBatch error:", e);
+                r += "<error>" + escapeXml("Niepoprawna paczka danych: " + e.getMessage()) + "</error>";
+            }
+        }
+        r += "</pushBatchResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja pobiera z webservisu dbapi wiersze dopisane do tabeli od poprzedniego pobrania
+     * i dodaje je do strumienia jako kolejna paczke. Zaklada, ze tabela rosnie przez dopisywanie wierszy;
+     * wiersze pobrane wczesniej sa pomijane podczas odczytu (bez zapamietywania).
+     * @param streamId identyfikator strumienia (zwrocony przez createStream)
+     * @param id       id do danych (do webservisu dbapi)
+     * @param table    table do danych (do webservisu dbapi)
+     * @return XML z liczba nowych wierszy i liczba wszystkich przetworzonych wierszy
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/pullBatch")
+    public String pullBatch(@QueryParam("streamId") String streamId, @QueryParam("id") String id, @QueryParam("table") String table) {
+        String r = "<pullBatchResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        ClusterStreamManager manager = ClusterStreamManager.getInstance();
+        ClusterStream stream = manager.get(streamId);
+        if (stream == null) {
+            r += "<error>" + escapeXml("Nieznany strumien: " + streamId) + "</error>";
+        } else if (id == null || table == null) {
+            r += "<error>Brakuje id oraz nazwy tabeli</error>";
+        } else {
+            //kolejne pobrania dla strumienia nie moga sie przeplatac
+            synchronized (stream) {
+                Reader reader = null;
+                try {
+                    long pulled = manager.pulled(streamId, id, table);
+                    reader = DataAccessClient.getInstance().openData(id, table);
+                    long[] rows = feedStream(stream, reader, pulled);
+                    manager.setPulled(streamId, rows[0]);
+                    r += "<rows>" + rows[1] + "</rows>";
+                    r += "<rowsSeen>" + stream.getRowsSeen() + "</rowsSeen>";
+                } catch (DataAccessException e) {
+                    log.log(Level.WARNING, "pullBatch error:", e);
+                    r += "<error>" + escapeXml("Bład w polaczeniu z bazą danych: " + e.getMessage()) + "</error>";
+                } catch (Exception e) {
+                    log.log(Level.WARNING, "pullBatch error:", e);
+                    r += "<error>" + escapeXml("Niepoprawna paczka danych: " + e.getMessage()) + "</error>";
+                } finally {
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            log.log(Level.FINE, "Blad zamykania strumienia danych", e);
+                        }
+                    }
+                }
+            }
+        }
+        r += "</pullBatchResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja zwraca biezacy stan strumienia: liczbe klastrow, srodki i licznosci klastrow (k-srednich)
+     * lub graf drzewa (Cobweb) oraz przypisania wierszy ostatniej paczki.
+     * @param streamId identyfikator strumienia (zwrocony przez createStream)
+     * @param format   format wyniku: "compact" (application/x-weka-answer) lub domyslnie serializacja Javy
+     * @return obiekt WekaAnswer w wybranym formacie
+     */
+    @GET
+    @Produces({"application/octet-stream", WekaAnswerCodec.MEDIA_TYPE})
+    @Path("/getStreamState")
+    public Response getStreamState(@QueryParam("streamId") String streamId, @QueryParam("format") String format) {
+        String mediaType = "compact".equals(format) ? WekaAnswerCodec.MEDIA_TYPE : MediaType.APPLICATION_OCTET_STREAM;
+        ClusterStream stream = ClusterStreamManager.getInstance().get(streamId);
+        WekaAnswer wekaAnswer;
+        if (stream == null) {
+            wekaAnswer = new WekaAnswer();
+            wekaAnswer.setInfo("Nieznany strumien: " + streamId);
+            wekaAnswer.setCorrect(false);
+        } else {
+            wekaAnswer = stream.getState();
+        }
+        return Response.ok(encodeAnswer(wekaAnswer, mediaType), mediaType).build();
+    }
+
+    /**
+     * Funkcja zamyka strumien i zwalnia jego model.
+     * @param streamId identyfikator strumienia
+     * @return XML z informacja czy strumien istnial
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/closeStream")
+    public String closeStream(@QueryParam("streamId") String streamId) {
+        String r = "<closeStreamResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        r += "<return>" + ClusterStreamManager.getInstance().close(streamId) + "</return>";
+        r += "</closeStreamResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja odczytuje paczke wierszy ARFF i dodaje je kolejno do strumienia.
+     * @param stream strumien
+     * @param reader dane ARFF
+     * @param skip   liczba poczatkowych wierszy do pominiecia (pobranych wczesniej)
+     * @return liczba odczytanych wierszy oraz liczba wierszy dodanych do strumienia
+     * @throws Exception gdy dane sa niepoprawne lub niezgodne ze strumieniem
+     */
+    private long[] feedStream(ClusterStream stream, Reader reader, long skip) throws Exception {
+        ArffReader arff = new ArffReader(new BufferedReader(reader, 64 * 1024), 1);
+        Instances structure = arff.getStructure();
+        long read = 0;
+        Instance inst;
+        synchronized (stream) {
+            stream.startBatch(structure);
+            try {
+                while ((inst = arff.readInstance(structure)) != null) {
+                    if (read++ >= skip) {
+                        stream.add(inst);
+                    }
+                }
+            } catch (Exception e) {
+                stream.abortBatch();
+                throw e;
+            }
+            return new long[]{read, stream.finishBatch()};
+        }
+    }
+
+    /**
+     * Funkcja uniewaznia zapamietane wyniki (oraz sparsowane dane, rowniez w magazynie na dysku, i modele Cobweb) dla podanych danych.
+     * Brak parametru oznacza dowolna wartosc (bez parametrow czyszczona jest cala pamiec podreczna).
+     * @param id    id do danych (do webservisu dbapi)
+     * @param table table do danych (do webservisu dbapi)
+     * @return XML z liczba usunietych wpisow
+     */
+    @GET
+    @Produces("application/xml")
+    @Path("/invalidateCache")
+    public String invalidateCache(@QueryParam("id") String id, @QueryParam("table") String table) {
+        int removed = ResultCache.getInstance().invalidate(id, table);
+        DatasetCache.getInstance().invalidate(id, table);
+        CobwebModelStore.getInstance().invalidate(id, table);
+        DatasetSpool spool = DatasetSpool.getInstance();
+        if (spool != null) {
+            spool.invalidate(id, table);
+        }
+        String r = "<invalidateCacheResponse xmlns=\"" + XSD_NAMESPACE + "\">";
+        r += "<return>" + removed + "</return>";
+        r += "</invalidateCacheResponse>";
+        return r;
+    }
+
+    /**
+     * Funkcja wykonujaca caly proces: pobranie danych, uruchomienie algorytmu i serializacje odpowiedzi.
+     * Wywolywana zarowno synchronicznie (runAlgorithm) jak i z puli watkow (submitAlgorithm).
+     * @param algorithmType wybiera typ algorytmu
+     * @param id            id do danych (do webservisu dbapi)
+     * @param table         table do danych (do webservisu dbapi)
+     * @param options       opcje algorytmu
+     * @param fields        lista czesci odpowiedzi do wyliczenia (null - wszystkie poza data)
+     * @param init          srodki poczatkowe: identyfikator zakonczonego zadania lub srodki w formacie ARFF (null - wybor losowy)
+     * @param mediaType     format odpowiedzi (application/octet-stream lub application/x-weka-answer)
+     * @return zakodowany obiekt WekaAnswer
+     */
+    private byte[] processAlgorithm(Integer algorithmType, String id, String table, String options, String fields, String init, String mediaType) {
         int parm = checkParameters(algorithmType, id, table);
         WekaAnswer wekaAnswer = new WekaAnswer();
-        byte[] bytes = null;
         switch(parm){
             case (1):
                 wekaAnswer.setInfo("Brakuje typu algorytmu");
@@ -110,49 +688,80 @@ public class WekaService implements IWekaService {
         if(parm != 0){
             wekaAnswer.setCorrect(false);
             //serializuje obiekt
-            bytes = wekaAnswer2Byte(wekaAnswer);
-            //wysylka
-            return Response.ok(bytes, MediaType.APPLICATION_OCTET_STREAM).build();
+            return encodeAnswer(wekaAnswer, mediaType);
         }
 
-        //odpowiedz z DB
-        String result = null;
-
+        // String to String[]
+        String[] opt = parseStringOptions(options);
 
-        try { // Call Web Service Operation
-            pl.edu.agh.ftj.datamining.dbapi.webservice.DataAccessService service = new pl.edu.agh.ftj.datamining.dbapi.webservice.DataAccessService();
-            pl.edu.agh.ftj.datamining.dbapi.webservice.DataAccessServicePortType port = service.getDataAccessServiceHttpSoap11Endpoint();
-          
-            result = port.getData(id, table);
-           // System.out.println("Result = "+result);
-        } catch (Exception ex) {
-            // TODO handle custom exceptions here
+        //wybrane czesci odpowiedzi
+        EnumSet<AnswerField> answerFields;
+        try {
+            answerFields = AnswerField.parse(fields, AnswerField.defaults(true));
+        } catch (IllegalArgumentException e) {
+            wekaAnswer.setInfo(e.getMessage());
+            wekaAnswer.setCorrect(false);
+            return encodeAnswer(wekaAnswer, mediaType);
         }
 
+        //srodki poczatkowe (warm start)
+        Instances initialCentroids = null;
+        if (init != null && init.length() > 0) {
+            try {
+                initialCentroids = resolveInitialCentroids(init);
+            } catch (IllegalArgumentException e) {
+                wekaAnswer.setInfo(e.getMessage());
+                wekaAnswer.setCorrect(false);
+                return encodeAnswer(wekaAnswer, mediaType);
+            }
+        }
 
-     
-        if(result == null){
+        //dane z pamieci podrecznej
+        DatasetCache datasets = DatasetCache.getInstance();
+        NumericDataset data = datasets.get(id, table);
+        if (data == null) {
+            try {
+                data = fetchDataset(datasets, id, table);
+            } catch (DataAccessException e) {
+                log.log(Level.WARNING, "runAlgorithm error:", e);
+                wekaAnswer.setInfo("Bład w polaczeniu z bazą danych: " + e.getMessage());
+                wekaAnswer.setCorrect(false);
+                return encodeAnswer(wekaAnswer, mediaType);
+            }
+        }
+        if (data == null) {
             wekaAnswer.setInfo("Bład w polaczeniu z bazą danych");
             wekaAnswer.setCorrect(false);
             //serializuje obiekt
-            bytes = wekaAnswer2Byte(wekaAnswer);
-            //wysylka
-            return Response.ok(bytes, MediaType.APPLICATION_OCTET_STREAM).build();
+            return encodeAnswer(wekaAnswer, mediaType);
         }
-        // String to Instances
-        Instances data = getInstancesFromString(result);
-
-        // String to String[]
-        String[] opt = parseStringOptions(options);
 
+        //Cobweb - do utrzymywanego drzewa dodawane sa tylko nowe wiersze
+        CobwebModel cobwebModel = algorithmType == 4 ? CobwebModelStore.getInstance().get(id, table, opt) : null;
+
+        //odpowiedz z pamieci podrecznej dla biezacej wersji danych (pomijana przy podanych srodkach poczatkowych
+        //oraz dla utrzymywanego modelu Cobweb, ktory musi otrzymac nowe wiersze)
+        ResultCache cache = ResultCache.getInstance();
+        String version = datasets.getVersion(data);
+        String cacheKey = ResultCache.key(algorithmType, id, table, version, opt, AnswerField.toString(answerFields), mediaType);
+        boolean cacheable = initialCentroids == null && cobwebModel == null && version != null;
+        if (cacheable) {
+            byte[] cached = cache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
         //tworze algorytm
         WekaAlgorithm alg = new WekaAlgorithm();
 
         //ustawiam niezbedne opcje
-        alg.setData(data);
+        alg.setDataset(data);
         alg.setAlgorithmType(algorithmType);
         alg.setOptions(opt);
+        alg.setFields(answerFields);
+        alg.setInitialCentroids(initialCentroids);
+        alg.setCobwebModel(cobwebModel);
         alg.run();
 
 
@@ -161,52 +770,157 @@ public class WekaService implements IWekaService {
         wekaAnswer = alg.getData();
 
         //serializuje obiekt
-        bytes = wekaAnswer2Byte(wekaAnswer);
-        
-        //wysylka
-        return Response.ok(bytes, MediaType.APPLICATION_OCTET_STREAM).build();
+        byte[] bytes = encodeAnswer(wekaAnswer, mediaType);
 
-    }
+        //zapamietuje tylko poprawne odpowiedzi
+        if (wekaAnswer.isCorrect() && cacheable) {
+            cache.put(cacheKey, id, table, version, bytes);
+        }
+        return bytes;
 
+    }
 
     /**
-     * Funkcja konwertujaca string do klasy instances weki
-     * @param data String
-     * @return Instances weki
+     * Funkcja wyznacza srodki poczatkowe na podstawie parametru init.
+     * Parametr moze byc identyfikatorem zakonczonego zadania (submitAlgorithm), ktorego wynik zawiera
+     * srodki klastrow (takze po odebraniu wyniku metoda getJobResult - do uplywu czasu przechowywania wynikow),
+     * albo zbiorem srodkow zapisanym w formacie ARFF.
+     * @param init identyfikator zadania lub tekst ARFF
+     * @return srodki poczatkowe
+     * @throws IllegalArgumentException gdy nie mozna wyznaczyc srodkow
      */
-    private Instances getInstancesFromString(String dane){
-        
-        DataSource source = null;
-        Instances data = null;
-        InputStream is = null;
-        try {
-            is = new ByteArrayInputStream(dane.getBytes("UTF-8"));
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+    Instances resolveInitialCentroids(String init) {
+        AlgorithmJobManager manager = AlgorithmJobManager.getInstance();
+        String jobId = init.trim();
+        AlgorithmJob job = manager.getFinishedJob(jobId);
+        if (job == null && JOB_ID.matcher(jobId).matches()) {
+            if (manager.getJob(jobId) != null) {
+                throw new IllegalArgumentException("Zadanie " + init + " nie zostalo jeszcze zakonczone");
+            }
+            throw new IllegalArgumentException("Nieznany identyfikator wyniku: " + init);
+        }
+        if (job != null) {
+            if (job.getResult() == null) {
+                throw new IllegalArgumentException("Zadanie " + init + " nie zostalo poprawnie zakonczone");
+            }
+            WekaAnswer previous;
+            try {
+                if (WekaAnswerCodec.MEDIA_TYPE.equals(job.getMediaType())) {
+                    previous = WekaAnswerCodec.decode(job.getResult());
+                } else {
+                    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(job.getResult()));
+                    try {
+                        previous = (WekaAnswer) in.readObject();
+                    } finally {
+                        in.close();
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Niepoprawny wynik zadania " + init + ": " + e.getMessage());
+            }
+            if (previous.getClusterCentroids() == null) {
+                throw new IllegalArgumentException("Wynik zadania " + init + " nie zawiera srodkow klastrow");
+            }
+            return previous.getClusterCentroids();
         }
-
         try {
-            source = new DataSource(is);
+            return new Instances(new StringReader(init));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Niepoprawne srodki poczatkowe (oczekiwano identyfikatora zadania lub danych ARFF): " + e.getMessage());
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Funkcja pobiera dane z webservisu dbapi i zamienia je na spakowany zbior danych.
+     * Dane parsowane sa przyrostowo wprost ze strumienia odpowiedzi, bez tworzenia
+     * posrednich kopii (String, byte[]) ani obiektow Instance dla calego zbioru. Odcisk pobranej tresci
+     * staje sie wersja danych w pamieci podrecznej (niezmienione dane zachowuja wersje, a wiec i zapamietane wyniki).
+     * Gdy wlaczony jest magazyn danych na dysku (DatasetSpool), dane zapisywane sa wprost do pliku
+     * odwzorowanego w pamieci, a aktualny plik z magazynu uzywany jest bez pobierania i parsowania danych.
+     * @param datasets pamiec podreczna danych
+     * @param id       id do danych (do webservisu dbapi)
+     * @param table    table do danych (do webservisu dbapi)
+     * @return dane
+     * @throws DataAccessException w przypadku bledu polaczenia z dbapi lub niepoprawnego formatu danych
+     */
+    private NumericDataset fetchDataset(DatasetCache datasets, String id, String table) throws DataAccessException {
+        //dane z magazynu na dysku
+        DatasetSpool spool = DatasetSpool.getInstance();
+        if (spool != null) {
+            MappedDataset spooled = spool.open(id, table);
+            if (spooled != null) {
+                //odcisk tresci zapisany w pliku - wersja danych (i zapamietane wyniki) pozostaje bez zmian
+                datasets.put(id, table, spooled.getFingerprint(), spooled);
+                return spooled;
+            }
         }
 
+        //odpowiedz z DB (strumien z klienta dbapi)
+        FingerprintReader reader = new FingerprintReader(DataAccessClient.getInstance().openData(id, table));
+        NumericDataset data;
         try {
-            data = source.getDataSet();
-        } catch (Exception e) {
-            e.printStackTrace();
+            data = getDatasetFromReader(reader, spool, id, table);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Blad zamykania strumienia danych", e);
+            }
         }
+
+        datasets.put(id, table, reader.getFingerprint(), data);
         return data;
     }
 
+    /**
+     * Funkcja parsujaca dane w formacie ARFF ze strumienia znakow do spakowanego zbioru danych.
+     * Instancje odczytywane sa kolejno i od razu dopisywane do tablic zbioru (lub do pliku w magazynie danych),
+     * wiec w pamieci znajduje sie co najwyzej wynikowy zbior danych.
+     * @param reader strumien z danymi ARFF (odcisk tresci zapisywany jest w pliku magazynu)
+     * @param spool  magazyn danych na dysku (null - dane przechowywane na stercie)
+     * @param id     id danych
+     * @param table  nazwa tabeli
+     * @return zbior danych
+     * @throws DataAccessException gdy dane maja niepoprawny format lub nie mozna ich zapisac do magazynu
+     */
+    private NumericDataset getDatasetFromReader(FingerprintReader reader, DatasetSpool spool, String id, String table) throws DataAccessException {
+        MappedDataset.Writer writer = null;
+        try {
+            ArffReader arff = new ArffReader(new BufferedReader(reader, 64 * 1024), 1);
+            Instances structure = arff.getStructure();
+            Instance inst;
+            if (spool != null) {
+                writer = spool.writer(id, table, structure);
+                while ((inst = arff.readInstance(structure)) != null) {
+                    writer.add(inst);
+                }
+                return writer.finish(reader.getFingerprint());
+            }
+            PackedDataset.Builder builder = new PackedDataset.Builder(structure);
+            while ((inst = arff.readInstance(structure)) != null) {
+                builder.add(inst);
+            }
+            return builder.build();
+        } catch (IOException e) {
+            throw new DataAccessException("Niepoprawny format danych: " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new DataAccessException("Niepoprawny format danych: " + e.getMessage(), e);
+        } finally {
+            if (writer != null) {
+                writer.abort();
+            }
+        }
+    }
+
 
     /**
      * Funkcja konwertujaca ciag opcji do tablicy opcji
      * @param options String
-     * @return
+     * @return tablica opcji lub null jesli nie podano opcji
      */
     private String[] parseStringOptions(String options){
+        if(options == null)
+            return null;
         String[] retStr = options.split(";");
         ArrayList<String> options_temp = new ArrayList<String>();
 
@@ -226,6 +940,24 @@ public class WekaService implements IWekaService {
     }
 
 
+    /**
+     * Funkcja kodujaca obiekt WekaAnswer w wybranym formacie.
+     * @param ans WekaAnswer
+     * @param mediaType application/x-weka-answer (format zwarty) lub application/octet-stream (serializacja Javy)
+     * @return byte[]
+     */
+    private byte[] encodeAnswer(WekaAnswer ans, String mediaType) {
+        if (!WekaAnswerCodec.MEDIA_TYPE.equals(mediaType)) {
+            return wekaAnswer2Byte(ans);
+        }
+        try {
+            return WekaAnswerCodec.encode(ans);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "runAlgorithm error:", e);
+            return null;
+        }
+    }
+
     /**
      * FUnkcja ktora serializuje obiekt klasy WekaAnswer do ciagu bajtow
      * @param ans WekaAnswer
@@ -247,6 +979,15 @@ public class WekaService implements IWekaService {
         return bytes;
     }
 
+    /**
+     * Funkcja zamienia znaki specjalne XML na encje.
+     * @param text tekst
+     * @return tekst bezpieczny do umieszczenia w XML
+     */
+    private String escapeXml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     /**
      * Funkcja sprawdza poprawnosc otrzymanych parametrow
      * @param algorithmType
@@ -0,0 +1,48 @@
+package pl.edu.agh.ftj.datamining.weka.webservice;
+
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import pl.edu.agh.ftj.datamining.weka.algorithm.AlgorithmRegistry;
+import pl.edu.agh.ftj.datamining.weka.algorithm.ClustererEngine;
+
+/**
+ * Listener aplikacji - przy starcie wyszukuje silniki algorytmów, przy zatrzymaniu zwalnia współdzielone
+ * zasoby serwisu (pule wątków).
+ * @author Szymon Skupien
+ */
+public class WekaServiceContextListener implements ServletContextListener {
+
+    private static final Logger log = Logger.getLogger("WekaRESTServiceLog");
+
+    /**
+     * Wyszukuje silniki algorytmów (ServiceLoader) i zapisuje je w logu, dzięki czemu niepoprawny wpis
+     * META-INF/services ujawnia się przy starcie aplikacji, a nie przy pierwszym żądaniu.
+     * Pozostałe zasoby tworzone są leniwie przy pierwszym użyciu.
+     * @param sce zdarzenie kontekstu
+     */
+    public void contextInitialized(ServletContextEvent sce) {
+        List<ClustererEngine> engines;
+        try {
+            engines = AlgorithmRegistry.getEngines();
+        } catch (ServiceConfigurationError e) {
+            log.log(Level.SEVERE, "Niepoprawna rejestracja silnika algorytmu", e);
+            throw e;
+        }
+        for (ClustererEngine engine : engines) {
+            log.log(Level.INFO, "Silnik {0}: {1}", new Object[]{engine.getAlgorithmType(), engine});
+        }
+        log.log(Level.INFO, "Zarejestrowane silniki: {0}", engines.size());
+    }
+
+    /**
+     * Zamyka pulę wątków zadań asynchronicznych.
+     * @param sce zdarzenie kontekstu
+     */
+    public void contextDestroyed(ServletContextEvent sce) {
+        AlgorithmJobManager.shutdown();
+    }
+}
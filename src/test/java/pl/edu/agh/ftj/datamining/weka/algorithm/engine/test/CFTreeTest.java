@@ -0,0 +1,100 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.CFTree;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.PackedDataset;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit Test do klasy CFTree
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class CFTreeTest {
+
+    /**
+     * Trzy skupiska punktów z atrybutem nominalnym i brakującymi wartościami.
+     */
+    private static Instances data(int n) {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        atts.add(new Attribute("color", Arrays.asList("red", "green", "blue")));
+        Instances data = new Instances("blobs", atts, n);
+        Random rnd = new Random(7);
+        for (int i = 0; i < n; i++) {
+            int c = i % 3;
+            double[] vals = {c * 10 + rnd.nextGaussian(), c * 5 + rnd.nextGaussian(), c};
+            if (i % 13 == 0) {
+                vals[0] = Utils.missingValue();
+            }
+            data.add(new DenseInstance(1.0, vals));
+        }
+        return data;
+    }
+
+    /**
+     * Mikroklastry zachowują sumę wag i środki wierszy, a każdy wiersz trafia do mikroklastra ze swojego skupiska.
+     */
+    @Test
+    public void testMicroClusters() throws Exception {
+        Instances data = data(3000);
+        CFTree tree = new CFTree(PackedDataset.of(data), 60);
+
+        assertTrue(tree.numEntries() <= 60);
+        assertTrue(tree.getRebuilds() > 0);
+        Instances micro = tree.getMicroClusters();
+        assertEquals(tree.numEntries(), micro.numInstances());
+        assertEquals(data.numAttributes(), micro.numAttributes());
+
+        int[] rows = tree.getRowMicroClusters();
+        assertEquals(data.numInstances(), rows.length);
+        double[] weights = new double[micro.numInstances()];
+        double[] sumY = new double[micro.numInstances()];
+        for (int i = 0; i < rows.length; i++) {
+            weights[rows[i]] += data.instance(i).weight();
+            sumY[rows[i]] += data.instance(i).value(1);
+            assertEquals(data.instance(i).value(2), micro.instance(rows[i]).value(2), 0);
+        }
+        double total = 0;
+        for (int m = 0; m < micro.numInstances(); m++) {
+            assertEquals(weights[m], micro.instance(m).weight(), 1e-9);
+            assertEquals(sumY[m] / weights[m], micro.instance(m).value(1), 1e-9);
+            total += micro.instance(m).weight();
+        }
+        assertEquals(data.numInstances(), total, 1e-9);
+
+        int[] clusters = new int[micro.numInstances()];
+        for (int m = 0; m < clusters.length; m++) {
+            clusters[m] = (int) micro.instance(m).value(2);
+        }
+        int[] expanded = tree.expand(clusters);
+        for (int i = 0; i < expanded.length; i++) {
+            assertEquals(i % 3, expanded[i]);
+        }
+    }
+
+    /**
+     * Bez przekroczenia limitu każdy różny wiersz tworzy osobny mikroklaster (próg zerowy).
+     */
+    @Test
+    public void testBelowLimit() throws Exception {
+        Instances data = data(30);
+        data.add(new DenseInstance(data.instance(1)));
+        CFTree tree = new CFTree(PackedDataset.of(data), 100);
+
+        assertEquals(0, tree.getRebuilds());
+        assertEquals(0, tree.getThreshold(), 0);
+        assertEquals(30, tree.numEntries());
+        int[] rows = tree.getRowMicroClusters();
+        assertEquals(rows[1], rows[30]);
+        assertEquals(2, tree.getMicroClusters().instance(rows[1]).weight(), 0);
+    }
+}
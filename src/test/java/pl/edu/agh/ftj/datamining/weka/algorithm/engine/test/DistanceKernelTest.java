@@ -0,0 +1,96 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.DistanceKernel;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.EngineExecutors;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.PackedDataset;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.EuclideanDistance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit Test do klasy DistanceKernel
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class DistanceKernelTest {
+
+    /**
+     * Punkty z atrybutem nominalnym i brakującymi wartościami (liczba wierszy nie jest wielokrotnością kafelka).
+     */
+    private static Instances data(int rows) {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        atts.add(new Attribute("color", Arrays.asList("red", "green", "blue")));
+        Instances data = new Instances("points", atts, rows);
+        Random rnd = new Random(11);
+        for (int i = 0; i < rows; i++) {
+            double[] vals = {rnd.nextGaussian() * 3, rnd.nextDouble(), rnd.nextInt(3)};
+            if (i % 11 == 0) {
+                vals[i % 3] = Utils.missingValue();
+            }
+            if (i % 29 == 0) {
+                vals[0] = Utils.missingValue();
+                vals[1] = Utils.missingValue();
+            }
+            data.add(new DenseInstance(1.0, vals));
+        }
+        return data;
+    }
+
+    /**
+     * Odległości są zgodne z EuclideanDistance, łącznie z obsługą brakujących wartości.
+     */
+    @Test
+    public void testMatchesEuclideanDistance() throws Exception {
+        Instances data = data(80);
+        EuclideanDistance ed = new EuclideanDistance(data);
+        DistanceKernel kernel = new DistanceKernel(PackedDataset.of(data), false, false);
+        double[] num = new double[kernel.getNumNumeric()];
+        int[] nom = new int[kernel.getNumNominal()];
+        for (int i = 0; i < 80; i++) {
+            kernel.normalize(data.instance(i), num, nom);
+            for (int j = 0; j < 80; j += 3) {
+                double expected = ed.distance(data.instance(i), data.instance(j));
+                assertEquals(expected, Math.sqrt(kernel.distance2(i, j)), 1e-12);
+                assertEquals(expected, Math.sqrt(kernel.distance2(j, num, nom)), 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Macierz liczona równolegle w kafelkach zawiera odległości wszystkich par, także w pojedynczej precyzji.
+     */
+    @Test
+    public void testCondensedMatrix() throws Exception {
+        int n = 300;
+        PackedDataset dataset = PackedDataset.of(data(n));
+        DistanceKernel kernel = new DistanceKernel(dataset, true, false);
+        DistanceKernel single = new DistanceKernel(dataset, true, true);
+        ExecutorService pool = EngineExecutors.newPool("test", 3);
+        try {
+            double[] matrix = kernel.condensedMatrix(pool, 3, false);
+            double[] squared = single.condensedMatrix(null, 1, true);
+            assertEquals(n * (n - 1) / 2, matrix.length);
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    int idx = DistanceKernel.index(n, i, j);
+                    assertEquals(Math.sqrt(kernel.distance2(i, j)), matrix[idx], 0);
+                    assertEquals(kernel.distance2(i, j), squared[idx], 1e-5);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTrue(single.isSinglePrecision());
+        assertTrue(single.sizeInBytes() < kernel.sizeInBytes());
+    }
+}
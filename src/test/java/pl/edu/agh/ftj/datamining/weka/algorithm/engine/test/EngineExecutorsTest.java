@@ -0,0 +1,54 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.EngineExecutors;
+
+/**
+ * JUnit Test do klasy EngineExecutors
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class EngineExecutorsTest {
+
+    /**
+     * Pule nie przekraczają wspólnego limitu wątków, po jego wyczerpaniu zadania wykonywane są w wątku
+     * wywołującym, a zamknięte pule zwracają wątki do limitu.
+     */
+    @Test
+    public void testThreadBudget() throws Exception {
+        int before = EngineExecutors.availableThreads();
+        assertTrue(before <= EngineExecutors.maxThreads());
+        ExecutorService first = EngineExecutors.newPool("test", before + 5);
+        assertEquals(0, EngineExecutors.availableThreads());
+        ExecutorService second = EngineExecutors.newPool("test", 4);
+        try {
+            final Thread caller = Thread.currentThread();
+            List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+            for (int i = 0; i < 3; i++) {
+                tasks.add(new Callable<Boolean>() {
+
+                    public Boolean call() {
+                        return Thread.currentThread() == caller;
+                    }
+                });
+            }
+            for (boolean inCaller : EngineExecutors.invokeAll(second, tasks)) {
+                assertTrue(inCaller);
+            }
+            for (boolean inCaller : EngineExecutors.invokeAll(first, tasks)) {
+                assertFalse(inCaller);
+            }
+        } finally {
+            second.shutdownNow();
+            first.shutdownNow();
+        }
+        assertTrue(first.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(before, EngineExecutors.availableThreads());
+    }
+}
@@ -0,0 +1,160 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine.test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.MappedDataset;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.PackedDataset;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.ParallelKMeans;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit Test do klasy MappedDataset
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class MappedDatasetTest {
+
+    /**
+     * Dane z atrybutem numerycznym, nominalnym i tekstowym oraz brakującymi wartościami i wagami.
+     */
+    private static Instances data() {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("color", Arrays.asList("red", "green", "blue")));
+        atts.add(new Attribute("name", (List<String>) null));
+        Instances data = new Instances("mixed", atts, 60);
+        for (int i = 0; i < 60; i++) {
+            double[] vals = {(i % 3) * 10 + i * 0.01, i % 3, data.attribute(2).addStringValue("n" + (i % 4))};
+            if (i % 7 == 0) {
+                vals[0] = Utils.missingValue();
+            }
+            if (i % 9 == 0) {
+                vals[1] = Utils.missingValue();
+            }
+            data.add(new DenseInstance(i % 5 == 0 ? 0.5 : 1.0, vals));
+        }
+        return data;
+    }
+
+    /**
+     * @return liczba plików tymczasowych zapisu pliku
+     */
+    private static int temporaryFiles(final File file) {
+        return file.getAbsoluteFile().getParentFile().listFiles(new FilenameFilter() {
+
+            public boolean accept(File dir, String name) {
+                return name.startsWith(file.getName() + ".") && name.endsWith(".tmp");
+            }
+        }).length;
+    }
+
+    /**
+     * Równoczesne zapisy tego samego pliku nie współdzielą pliku tymczasowego - publikowany jest kompletny
+     * plik zakończony jako ostatni, a przerwany zapis nie usuwa danych innego zapisu.
+     */
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        Instances data = data();
+        File file = File.createTempFile("mapped", ".wds");
+        try {
+            MappedDataset.Writer first = new MappedDataset.Writer(file, new Instances(data, 0));
+            MappedDataset.Writer second = new MappedDataset.Writer(file, new Instances(data, 0));
+            MappedDataset.Writer aborted = new MappedDataset.Writer(file, new Instances(data, 0));
+            for (int i = 0; i < data.numInstances(); i++) {
+                first.add(data.instance(i));
+                aborted.add(data.instance(i));
+                if (i < 30) {
+                    second.add(data.instance(i));
+                }
+            }
+            assertEquals(3, temporaryFiles(file));
+            second.finish();
+            aborted.abort();
+            assertEquals(30, MappedDataset.open(file).numRows());
+            first.finish();
+
+            assertEquals(0, temporaryFiles(file));
+            MappedDataset mapped = MappedDataset.open(file);
+            assertEquals(data.toString(), mapped.toInstances().toString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Dane zapisywane przyrostowo do pliku odczytywane są bez zmian (wraz z odciskiem treści ze stopki).
+     */
+    @Test
+    public void testWriteAndOpen() throws Exception {
+        Instances data = data();
+        File file = File.createTempFile("mapped", ".wds");
+        try {
+            MappedDataset.Writer writer = new MappedDataset.Writer(file, new Instances(data, 0));
+            for (int i = 0; i < data.numInstances(); i++) {
+                writer.add(data.instance(i));
+            }
+            assertEquals(0x1234abcdL, writer.finish(0x1234abcdL).getFingerprint());
+            assertEquals(0, temporaryFiles(file));
+
+            MappedDataset mapped = MappedDataset.open(file);
+            assertEquals(0x1234abcdL, mapped.getFingerprint());
+            PackedDataset packed = PackedDataset.of(data);
+            assertEquals(60, mapped.numRows());
+            assertEquals(data.toString(), mapped.toInstances().toString());
+            assertEquals(0.5, mapped.weight(5), 0);
+            assertEquals(-1, mapped.nominalValue(0, 0));
+            assertEquals(packed.getMean(0), mapped.getMean(0), 1e-12);
+            assertEquals(packed.getMode(1), mapped.getMode(1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Silnik k-średnich daje ten sam wynik na danych z pliku i ze sterty.
+     */
+    @Test
+    public void testClusteringOnMappedData() throws Exception {
+        Instances data = data();
+        data.deleteAttributeAt(2);
+        File file = File.createTempFile("mapped", ".wds");
+        try {
+            MappedDataset mapped = MappedDataset.write(PackedDataset.of(data), file);
+            assertEquals(0L, mapped.getFingerprint());
+            ParallelKMeans onHeap = new ParallelKMeans();
+            onHeap.setOptions(new String[]{"-N", "3", "-threads", "2"});
+            onHeap.buildClusterer(PackedDataset.of(data));
+            ParallelKMeans offHeap = new ParallelKMeans();
+            offHeap.setOptions(new String[]{"-N", "3", "-threads", "2"});
+            offHeap.buildClusterer(mapped);
+            assertArrayEquals(onHeap.getAssignments(), offHeap.getAssignments());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Uszkodzony plik jest odrzucany.
+     */
+    @Test(expected = java.io.IOException.class)
+    public void testCorruptFile() throws Exception {
+        File file = File.createTempFile("mapped", ".wds");
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.write(new byte[64]);
+            raf.close();
+            MappedDataset.open(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.NativeEM;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.ParallelFarthestFirst;
+import weka.clusterers.FarthestFirst;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * JUnit Test do klas NativeEM oraz ParallelFarthestFirst
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class NativeEMTest {
+
+    /**
+     * Trzy dobrze rozdzielone skupiska punktów.
+     */
+    private static Instances data() {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        Instances data = new Instances("blobs", atts, 300);
+        Random rnd = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            int c = i % 3;
+            data.add(new DenseInstance(1.0, new double[]{c * 10 + rnd.nextGaussian(), c * 7 + rnd.nextGaussian()}));
+        }
+        return data;
+    }
+
+    /**
+     * EM odnajduje skupiska, a logarytm wiarygodności jest zgodny z gęstościami modelu.
+     */
+    @Test
+    public void testFindsBlobs() throws Exception {
+        Instances data = data();
+        NativeEM em = new NativeEM();
+        em.setOptions(new String[]{"-N", "3"});
+        em.buildClusterer(data);
+
+        assertEquals(3, em.numberOfClusters());
+        int[] sizes = new int[3];
+        for (int a : em.getAssignments()) {
+            sizes[a]++;
+        }
+        assertArrayEquals(new int[]{100, 100, 100}, sizes);
+
+        double logL = 0;
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertEquals(em.getAssignments()[i], em.clusterInstance(data.instance(i)));
+            logL += em.logDensityForInstance(data.instance(i));
+        }
+        assertEquals(logL / data.numInstances(), em.getLogLikelihood(), 1e-6);
+    }
+
+    /**
+     * Wielowątkowy krok E daje ten sam model co jednowątkowy, a walidacja krzyżowa wybiera liczbę skupisk.
+     */
+    @Test
+    public void testThreadsAndCrossValidation() throws Exception {
+        Instances data = data();
+        NativeEM single = new NativeEM();
+        single.setOptions(new String[]{"-N", "3", "-threads", "1"});
+        single.buildClusterer(data);
+        NativeEM parallel = new NativeEM();
+        parallel.setOptions(new String[]{"-N", "3", "-threads", "4"});
+        parallel.buildClusterer(data);
+
+        assertArrayEquals(single.getAssignments(), parallel.getAssignments());
+        for (int c = 0; c < 3; c++) {
+            assertEquals(single.getClusterPriors()[c], parallel.getClusterPriors()[c], 1e-9);
+        }
+        assertEquals(single.getLogLikelihood(), parallel.getLogLikelihood(), 1e-9);
+        assertNull(parallel.getCVLogLikelihoods());
+
+        NativeEM cv = new NativeEM();
+        cv.setOptions(new String[]{"-N", "-1", "-threads", "3"});
+        cv.buildClusterer(data);
+        double[] cvLogL = cv.getCVLogLikelihoods();
+
+        assertEquals(3, cv.numberOfClusters());
+        assertEquals(-1, cv.getNumClusters());
+        assertEquals(4, cvLogL.length);
+        assertTrue(cvLogL[2] > cvLogL[1] && cvLogL[1] > cvLogL[0]);
+        assertTrue(cvLogL[3] <= cvLogL[2]);
+    }
+
+    /**
+     * ParallelFarthestFirst wybiera te same środki co FarthestFirst z biblioteki Weka.
+     */
+    @Test
+    public void testFarthestFirstMatchesWeka() throws Exception {
+        Instances data = data();
+        FarthestFirst ff = new FarthestFirst();
+        ff.setNumClusters(4);
+        ff.buildClusterer(data);
+
+        ParallelFarthestFirst pff = new ParallelFarthestFirst();
+        pff.setOptions(new String[]{"-N", "4", "-threads", "3"});
+        pff.buildClusterer(data);
+
+        ParallelFarthestFirst pruned = new ParallelFarthestFirst();
+        pruned.setOptions(new String[]{"-N", "4", "-threads", "2", "-index", "bounds"});
+        pruned.buildClusterer(data);
+
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertEquals(ff.clusterInstance(data.instance(i)), pff.getAssignments()[i]);
+        }
+        assertArrayEquals(pff.getAssignments(), pruned.getAssignments());
+        assertTrue(pruned.getSkippedDistanceFraction() > 0);
+    }
+}
@@ -0,0 +1,81 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.PackedDataset;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit Test do klasy PackedDataset
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class PackedDatasetTest {
+
+    /**
+     * Dane z atrybutem numerycznym, nominalnym i tekstowym oraz brakującymi wartościami i wagami.
+     */
+    private static Instances data() {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("color", Arrays.asList("red", "green", "blue")));
+        atts.add(new Attribute("name", (java.util.List<String>) null));
+        Instances data = new Instances("mixed", atts, 50);
+        Random rnd = new Random(5);
+        for (int i = 0; i < 50; i++) {
+            double[] vals = {rnd.nextGaussian(), i % 3, data.attribute(2).addStringValue("n" + (i % 7))};
+            if (i % 11 == 0) {
+                vals[0] = Utils.missingValue();
+            }
+            if (i % 13 == 0) {
+                vals[1] = Utils.missingValue();
+            }
+            data.add(new DenseInstance(i % 5 == 0 ? 2.0 : 1.0, vals));
+        }
+        return data;
+    }
+
+    /**
+     * Zbiór zbudowany wiersz po wierszu odtwarza oryginalne dane.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        Instances data = data();
+        PackedDataset.Builder builder = new PackedDataset.Builder(new Instances(data, 0));
+        for (int i = 0; i < data.numInstances(); i++) {
+            builder.add(data.instance(i));
+        }
+        PackedDataset packed = builder.build();
+
+        assertEquals(50, packed.numRows());
+        assertEquals(1, packed.getNumNumeric());
+        assertEquals(2, packed.getNumNominal());
+        assertTrue(Double.isNaN(packed.numericValue(0, 0)));
+        assertEquals(-1, packed.nominalValue(0, 0));
+        assertEquals(2.0, packed.weight(5), 0);
+        assertEquals(data.toString(), packed.toInstances().toString());
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertEquals(data.instance(i).weight(), packed.instance(i).weight(), 0);
+        }
+    }
+
+    /**
+     * Statystyki kolumn pomijają brakujące wartości.
+     */
+    @Test
+    public void testStats() throws Exception {
+        Instances data = data();
+        PackedDataset packed = PackedDataset.of(data);
+        assertSame(data, packed.toInstances());
+        assertEquals(data.attributeStats(0).numericStats.min, packed.getMin(0), 1e-12);
+        assertEquals(data.attributeStats(0).numericStats.max, packed.getMax(0), 1e-12);
+        assertEquals(data.meanOrMode(0), packed.getMean(0), 1e-9);
+        assertEquals(7, packed.numValues(1));
+    }
+}
@@ -0,0 +1,155 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.ParallelHierarchicalClusterer;
+import weka.clusterers.HierarchicalClusterer;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit Test do klasy ParallelHierarchicalClusterer
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class ParallelHierarchicalClustererTest {
+
+    /**
+     * Trzy skupiska punktów z atrybutem nominalnym, brakującymi wartościami i nazwą wiersza (atrybut tekstowy).
+     */
+    private static Instances data(boolean named) {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        if (named) {
+            atts.add(new Attribute("name", (List<String>) null));
+        }
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        atts.add(new Attribute("color", Arrays.asList("red", "green", "blue")));
+        Instances data = new Instances("blobs", atts, 60);
+        Random rnd = new Random(5);
+        for (int i = 0; i < 60; i++) {
+            int c = i % 3;
+            double[] vals = new double[atts.size()];
+            int o = 0;
+            if (named) {
+                vals[o++] = data.attribute(0).addStringValue("r" + i);
+            }
+            vals[o++] = c * 4 + rnd.nextGaussian();
+            vals[o++] = i % 13 == 0 ? Utils.missingValue() : c * 2 + rnd.nextGaussian();
+            vals[o] = rnd.nextInt(10) == 0 ? (c + 1) % 3 : c;
+            data.add(new DenseInstance(1.0, vals));
+        }
+        return data;
+    }
+
+    private static void assertSameAsWeka(Instances data, String[] options) throws Exception {
+        HierarchicalClusterer hc = new HierarchicalClusterer();
+        hc.setOptions(options.clone());
+        hc.buildClusterer(data);
+
+        String[] opt = Arrays.copyOf(options, options.length + 2);
+        opt[options.length] = "-threads";
+        opt[options.length + 1] = "3";
+        ParallelHierarchicalClusterer phc = new ParallelHierarchicalClusterer();
+        phc.setOptions(opt);
+        phc.buildClusterer(data);
+
+        String msg = Utils.joinOptions(options);
+        assertEquals(msg, hc.numberOfClusters(), phc.numberOfClusters());
+        assertEquals(msg, hc.graph(), phc.graph());
+        for (int i = 0; i < data.numInstances(); i += 7) {
+            assertEquals(msg, hc.clusterInstance(data.instance(i)), phc.getAssignments()[i]);
+            assertEquals(msg, phc.getAssignments()[i], phc.clusterInstance(data.instance(i)));
+        }
+    }
+
+    /**
+     * Graf Newick i numeracja klastrów są zgodne z HierarchicalClusterer dla wiązań pojedynczego, pełnego i średniego.
+     */
+    @Test
+    public void testMatchesHierarchicalClusterer() throws Exception {
+        for (String link : new String[]{"SINGLE", "COMPLETE", "AVERAGE"}) {
+            assertSameAsWeka(data(true), new String[]{"-N", "3", "-L", link});
+            assertSameAsWeka(data(false), new String[]{"-N", "1", "-L", link, "-B"});
+        }
+    }
+
+    /**
+     * Wiązanie Warda rozdziela skupiska, a opcje nieobsługiwane przez silnik są rozpoznawane.
+     */
+    @Test
+    public void testWardAndSupportedOptions() throws Exception {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        Instances data = new Instances("blobs", atts, 60);
+        Random rnd = new Random(7);
+        for (int i = 0; i < 60; i++) {
+            data.add(new DenseInstance(1.0, new double[]{(i % 3) * 10 + rnd.nextGaussian(), rnd.nextGaussian()}));
+        }
+        ParallelHierarchicalClusterer phc = new ParallelHierarchicalClusterer();
+        phc.setOptions(new String[]{"-N", "3", "-L", "WARD", "-threads", "2"});
+        phc.buildClusterer(data);
+
+        assertEquals(3, phc.numberOfClusters());
+        assertArrayEquals(new int[]{20, 20, 20}, phc.getClusterSizes());
+        for (int i = 0; i < 60; i++) {
+            assertEquals(phc.getAssignments()[i % 3], phc.getAssignments()[i]);
+        }
+        assertTrue(phc.graph().startsWith("Newick:("));
+
+        assertTrue(ParallelHierarchicalClusterer.supports(null));
+        assertTrue(ParallelHierarchicalClusterer.supports(new String[]{"-L", "AVERAGE", "-A", "weka.core.EuclideanDistance -R first-last"}));
+        assertFalse(ParallelHierarchicalClusterer.supports(new String[]{"-L", "CENTROID"}));
+        assertFalse(ParallelHierarchicalClusterer.supports(new String[]{"-A", "weka.core.ManhattanDistance"}));
+    }
+
+    /**
+     * Wiersz o wadze w daje dla wiązań średniego i Warda takie same klastry jak w wierszy w tym samym punkcie.
+     */
+    @Test
+    public void testWeightsAsCounts() throws Exception {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        Instances weighted = new Instances("weighted", atts, 30);
+        Instances replicated = new Instances("replicated", atts, 90);
+        List<Integer> first = new ArrayList<Integer>();
+        Random rnd = new Random(11);
+        for (int i = 0; i < 30; i++) {
+            double[] vals = {rnd.nextGaussian() * 3, rnd.nextGaussian()};
+            int w = 1 + rnd.nextInt(5);
+            weighted.add(new DenseInstance(w, vals));
+            first.add(replicated.numInstances());
+            for (int r = 0; r < w; r++) {
+                replicated.add(new DenseInstance(1.0, vals));
+            }
+        }
+        for (String link : new String[]{"AVERAGE", "WARD"}) {
+            ParallelHierarchicalClusterer pw = new ParallelHierarchicalClusterer();
+            pw.setOptions(new String[]{"-N", "4", "-L", link});
+            pw.buildClusterer(weighted);
+            ParallelHierarchicalClusterer pr = new ParallelHierarchicalClusterer();
+            pr.setOptions(new String[]{"-N", "4", "-L", link});
+            pr.buildClusterer(replicated);
+
+            for (int i = 0; i < 30; i++) {
+                assertEquals(link, pr.getAssignments()[first.get(i)], pw.getAssignments()[i]);
+            }
+            ParallelHierarchicalClusterer unweighted = new ParallelHierarchicalClusterer();
+            unweighted.setOptions(new String[]{"-N", "4", "-L", link});
+            Instances ones = new Instances(weighted);
+            for (int i = 0; i < ones.numInstances(); i++) {
+                ones.instance(i).setWeight(1.0);
+            }
+            unweighted.buildClusterer(ones);
+            assertFalse(link, Arrays.equals(unweighted.getAssignments(), pw.getAssignments()));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.engine.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.ParallelKMeans;
+import weka.clusterers.SimpleKMeans;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * JUnit Test do klasy ParallelKMeans
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class ParallelKMeansTest {
+
+    /**
+     * Trzy skupiska punktów z atrybutem nominalnym i brakującymi wartościami.
+     */
+    private static Instances data() {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        atts.add(new Attribute("color", Arrays.asList("red", "green", "blue")));
+        Instances data = new Instances("blobs", atts, 300);
+        Random rnd = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            int c = i % 3;
+            double[] vals = {c * 10 + rnd.nextGaussian(), c * 5 + rnd.nextGaussian(), c};
+            if (i % 17 == 0) {
+                vals[1] = weka.core.Utils.missingValue();
+            }
+            data.add(new DenseInstance(1.0, vals));
+        }
+        return data;
+    }
+
+    /**
+     * Wynik jest zgodny z SimpleKMeans dla tego samego ziarna.
+     */
+    @Test
+    public void testMatchesSimpleKMeans() throws Exception {
+        Instances data = data();
+        SimpleKMeans skm = new SimpleKMeans();
+        skm.setOptions(new String[]{"-N", "3", "-O"});
+        skm.buildClusterer(data);
+
+        ParallelKMeans pkm = new ParallelKMeans();
+        pkm.setOptions(new String[]{"-N", "3", "-O", "-threads", "4"});
+        pkm.buildClusterer(data);
+
+        assertEquals(skm.numberOfClusters(), pkm.numberOfClusters());
+        int[] expected = skm.getClusterSizes().clone();
+        int[] actual = pkm.getClusterSizes().clone();
+        Arrays.sort(expected);
+        Arrays.sort(actual);
+        assertArrayEquals(expected, actual);
+        assertEquals(skm.getSquaredError(), pkm.getSquaredError(), 1e-6);
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertEquals(pkm.getAssignments()[i], pkm.clusterInstance(data.instance(i)));
+        }
+    }
+
+    /**
+     * Liczba wątków nie wpływa na wynik.
+     */
+    @Test
+    public void testThreadCountIndependent() throws Exception {
+        Instances data = data();
+        ParallelKMeans one = new ParallelKMeans();
+        one.setOptions(new String[]{"-N", "4", "-threads", "1"});
+        one.buildClusterer(data);
+        ParallelKMeans many = new ParallelKMeans();
+        many.setOptions(new String[]{"-N", "4", "-threads", "7"});
+        many.buildClusterer(data);
+
+        assertArrayEquals(one.getAssignments(), many.getAssignments());
+        assertEquals(one.getSquaredError(), many.getSquaredError(), 1e-9);
+        assertEquals(one.getClusterCentroids().toString(), many.getClusterCentroids().toString());
+    }
+
+    /**
+     * Tryb mini-batch odnajduje skupiska z błędem nie większym niż pełne iteracje.
+     */
+    @Test
+    public void testMiniBatch() throws Exception {
+        Instances data = data();
+        ParallelKMeans full = new ParallelKMeans();
+        full.setOptions(new String[]{"-N", "3"});
+        full.buildClusterer(data);
+
+        ParallelKMeans mini = new ParallelKMeans();
+        mini.setOptions(new String[]{"-N", "3", "-batch", "32", "-batches", "50", "-tol", "0", "-threads", "2"});
+        mini.buildClusterer(data);
+
+        assertEquals(50, mini.getIterations());
+        assertArrayEquals(new int[]{100, 100, 100}, mini.getClusterSizes());
+        assertTrue(mini.getSquaredError() <= full.getSquaredError() * 1.05);
+        assertEquals(data.numInstances(), mini.getAssignments().length);
+    }
+
+    /**
+     * Start od środków poprzedniego wyniku kończy się od razu (iteracja przypisania i iteracja potwierdzająca) z tymi samymi przypisaniami.
+     */
+    @Test
+    public void testWarmStart() throws Exception {
+        Instances data = data();
+        ParallelKMeans first = new ParallelKMeans();
+        first.setOptions(new String[]{"-N", "3", "-init", "kmeans++"});
+        first.buildClusterer(data);
+
+        ParallelKMeans warm = new ParallelKMeans();
+        warm.setInitialCentroids(first.getClusterCentroids());
+        warm.buildClusterer(data);
+
+        assertEquals(3, warm.numberOfClusters());
+        assertTrue(warm.getIterations() <= 2);
+        assertArrayEquals(first.getAssignments(), warm.getAssignments());
+        assertEquals(first.getSquaredError(), warm.getSquaredError(), 1e-9);
+    }
+
+    /**
+     * Wybór środków k-means++ i FarthestFirst odnajduje trzy skupiska.
+     */
+    @Test
+    public void testInitMethods() throws Exception {
+        Instances data = data();
+        for (String init : new String[]{"kmeans++", "farthest"}) {
+            ParallelKMeans pkm = new ParallelKMeans();
+            pkm.setOptions(new String[]{"-N", "3", "-init", init, "-threads", "3"});
+            pkm.buildClusterer(data);
+            assertEquals(init, pkm.getInitMethod());
+            int[] sizes = pkm.getClusterSizes().clone();
+            Arrays.sort(sizes);
+            assertArrayEquals(init, new int[]{100, 100, 100}, sizes);
+        }
+    }
+
+    /**
+     * Ograniczenia z nierówności trójkąta i drzewo k-d dają te same przypisania co pełne przeszukiwanie
+     * przy dużej liczbie klastrów; drzewo k-d nie jest używane dla danych z atrybutami nominalnymi.
+     */
+    @Test
+    public void testDistancePruning() throws Exception {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        Instances numeric = new Instances("grid", atts, 2000);
+        Random rnd = new Random(9);
+        for (int i = 0; i < 2000; i++) {
+            int c = rnd.nextInt(40);
+            numeric.add(new DenseInstance(1.0, new double[]{c % 8 + 0.2 * rnd.nextGaussian(), c / 8 + 0.2 * rnd.nextGaussian()}));
+        }
+        for (Instances data : new Instances[]{numeric, data()}) {
+            int k = data == numeric ? 60 : 8;
+            ParallelKMeans full = new ParallelKMeans();
+            full.setOptions(new String[]{"-N", "" + k, "-threads", "2"});
+            full.buildClusterer(data);
+            for (String index : new String[]{"bounds", "kdtree"}) {
+                ParallelKMeans pruned = new ParallelKMeans();
+                pruned.setOptions(new String[]{"-N", "" + k, "-threads", "3", "-index", index});
+                pruned.buildClusterer(data);
+
+                assertArrayEquals(index, full.getAssignments(), pruned.getAssignments());
+                assertEquals(index, full.getSquaredError(), pruned.getSquaredError(), 1e-9);
+                assertEquals(index, full.getIterations(), pruned.getIterations());
+                assertTrue(index, pruned.getSkippedDistanceFraction() > 0.5);
+            }
+            assertEquals(0, full.getSkippedDistanceFraction(), 0);
+        }
+        ParallelKMeans nominal = new ParallelKMeans();
+        nominal.setOptions(new String[]{"-N", "3", "-index", "kdtree"});
+        nominal.buildClusterer(data());
+        assertEquals("bounds", nominal.getIndexUsed());
+    }
+}
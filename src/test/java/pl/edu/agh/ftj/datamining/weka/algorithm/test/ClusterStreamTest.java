@@ -0,0 +1,103 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.ClusterStream;
+import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswer;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * JUnit Test do klasy ClusterStream
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class ClusterStreamTest {
+
+    /**
+     * Paczka punktów z trzech skupisk (kolejne wiersze z kolejnych skupisk).
+     */
+    private static Instances batch(int rows, long seed) {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        Instances data = new Instances("blobs", atts, rows);
+        Random rnd = new Random(seed);
+        for (int i = 0; i < rows; i++) {
+            int c = i % 3;
+            data.add(new DenseInstance(1.0, new double[]{c * 10 + rnd.nextGaussian(), c * 10 + rnd.nextGaussian()}));
+        }
+        return data;
+    }
+
+    private static int push(ClusterStream stream, Instances data) throws Exception {
+        stream.startBatch(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            stream.add(data.instance(i));
+        }
+        return stream.finishBatch();
+    }
+
+    /**
+     * Przyrostowy k-średnich odnajduje skupiska z kolejnych paczek, a przypisania dotyczą ostatniej paczki.
+     */
+    @Test
+    public void testOnlineKMeans() throws Exception {
+        ClusterStream stream = new ClusterStream(1, new String[]{"-N", "3", "-maxAssignments", "50"});
+        assertEquals(0, stream.getState().getNumberOfClusters());
+        for (int b = 0; b < 5; b++) {
+            assertEquals(90, push(stream, batch(90, b)));
+        }
+        WekaAnswer state = stream.getState();
+
+        assertTrue(state.isCorrect());
+        assertEquals(450, stream.getRowsSeen());
+        assertEquals(3, state.getNumberOfClusters());
+        assertArrayEquals(new int[]{150, 150, 150}, state.getClusterSizes());
+        assertEquals(3, state.getClusterCentroids().numInstances());
+        assertEquals(50, state.getAssignments().length);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(state.getAssignments()[i % 3], state.getAssignments()[i]);
+        }
+    }
+
+    /**
+     * Drzewo Cobweb przestaje rosnąć po osiągnięciu limitu wierszy, a paczki o innej strukturze są odrzucane.
+     */
+    @Test
+    public void testCobweb() throws Exception {
+        ClusterStream stream = new ClusterStream(4, new String[]{"-maxRows", "60"});
+        push(stream, batch(45, 1));
+        String graph = stream.getState().getGraph();
+        push(stream, batch(45, 2));
+        String grown = stream.getState().getGraph();
+        push(stream, batch(45, 3));
+        WekaAnswer state = stream.getState();
+
+        assertTrue(state.isCorrect());
+        assertEquals(135, stream.getRowsSeen());
+        assertFalse(graph.equals(grown));
+        assertEquals(grown, state.getGraph());
+        assertEquals(45, state.getAssignments().length);
+
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("z"));
+        try {
+            stream.startBatch(new Instances("other", atts, 0));
+            fail("Paczka o innej strukturze powinna zostac odrzucona");
+        } catch (IllegalArgumentException e) {
+            // oczekiwane
+        }
+    }
+
+    /**
+     * Strumieniowo dostępne są tylko algorytmy przyrostowe.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedAlgorithm() throws Exception {
+        new ClusterStream(2, null);
+    }
+}
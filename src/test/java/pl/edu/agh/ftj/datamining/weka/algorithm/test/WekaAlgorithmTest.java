@@ -0,0 +1,487 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.AbstractClustererEngine;
+import pl.edu.agh.ftj.datamining.weka.algorithm.AlgorithmRegistry;
+import pl.edu.agh.ftj.datamining.weka.algorithm.AnswerField;
+import pl.edu.agh.ftj.datamining.weka.algorithm.ClustererEngine;
+import pl.edu.agh.ftj.datamining.weka.algorithm.CobwebModel;
+import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAlgorithm;
+import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.engine.PackedDataset;
+import weka.clusterers.Clusterer;
+import weka.clusterers.SimpleKMeans;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * JUnit Test do klasy WekaAlgorithm (na danych generowanych lokalnie)
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class WekaAlgorithmTest {
+
+    /**
+     * Tworzy dwa wyraźnie rozdzielone skupiska punktów w 2D.
+     */
+    private static Instances blobs(int perBlob) {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        Instances data = new Instances("blobs", atts, 2 * perBlob);
+        Random rnd = new Random(1);
+        for (int i = 0; i < perBlob; i++) {
+            data.add(new DenseInstance(1.0, new double[]{rnd.nextGaussian(), rnd.nextGaussian()}));
+            data.add(new DenseInstance(1.0, new double[]{10 + rnd.nextGaussian(), 10 + rnd.nextGaussian()}));
+        }
+        return data;
+    }
+
+    private static WekaAnswer run(int type, Instances data, String... options) {
+        WekaAlgorithm alg = new WekaAlgorithm();
+        alg.setAlgorithmType(type);
+        alg.setData(data);
+        alg.setOptions(options);
+        alg.run();
+        return alg.getData();
+    }
+
+    private static WekaAnswer runFields(int type, Instances data, String fields, String... options) {
+        WekaAlgorithm alg = new WekaAlgorithm();
+        alg.setAlgorithmType(type);
+        alg.setData(data);
+        alg.setOptions(options);
+        alg.setFields(AnswerField.parse(fields));
+        alg.run();
+        return alg.getData();
+    }
+
+    /**
+     * Sprawdza przypisania, liczności klastrów i indeks instancji w odpowiedzi bez obiektu ewaluacji.
+     */
+    private static void assertRowResults(WekaAnswer ans, int rows) {
+        assertTrue(ans.getInfo(), ans.isCorrect());
+        assertNull(ans.getEval());
+        int[] assignments = ans.getAssignments();
+        assertEquals(rows, assignments.length);
+        int total = 0;
+        for (int c = 0; c < ans.getClusterSizes().length; c++) {
+            assertEquals(ans.getClusterSizes()[c], ans.getClusterCount(c));
+            for (int row : ans.getClusterRows(c)) {
+                assertEquals(c, assignments[row]);
+            }
+            total += ans.getClusterSizes()[c];
+        }
+        assertEquals(rows, total);
+        assertEquals(rows, ans.getClusterIndex().length);
+    }
+
+    /**
+     * W domyślnym trybie ewaluacji (full) bez pola eval przypisania, liczności klastrów i indeks instancji
+     * wyznaczane są jednym przejściem po danych dla wszystkich algorytmów z biblioteki Weka.
+     */
+    @Test
+    public void testRowFieldsWithoutEval() throws Exception {
+        String fields = "assignments,clusterSizes,clusterIndex";
+        for (int type = 1; type <= 5; type++) {
+            WekaAnswer ans = type == 4 ? runFields(type, blobs(100), fields) : runFields(type, blobs(100), fields, "-N", "2");
+            assertRowResults(ans, 200);
+            if (type != 4) {
+                assertArrayEquals(new int[]{100, 100}, ans.getClusterSizes());
+            }
+        }
+    }
+
+    /**
+     * Silniki serwisu (w tym NativeEM) zwracają w trybie full przypisania wyznaczone podczas treningu,
+     * zarówno bez pola eval, jak i razem z obiektem ewaluacji.
+     */
+    @Test
+    public void testTrainedAssignmentsInFullMode() throws Exception {
+        for (int type : new int[]{1, 2, 3, 5}) {
+            String[] options = {"-N", "2", "-engine", "parallel"};
+            WekaAnswer ans = runFields(type, blobs(100), "assignments,clusterSizes,clusterIndex", options);
+            assertRowResults(ans, 200);
+            assertArrayEquals(new int[]{100, 100}, ans.getClusterSizes());
+
+            WekaAnswer withEval = runFields(type, blobs(100), "assignments,clusterSizes,eval", options);
+            assertNotNull(withEval.getEval());
+            assertArrayEquals(ans.getAssignments(), withEval.getAssignments());
+            assertArrayEquals(ans.getClusterSizes(), withEval.getClusterSizes());
+        }
+    }
+
+    /**
+     * Ewaluacja jednoprzebiegowa EM daje te same przypisania i logarytm wiarygodności co ClusterEvaluation.
+     */
+    @Test
+    public void testSinglePassMatchesClusterEvaluation() throws Exception {
+        Instances data = blobs(50);
+        WekaAnswer full = run(2, data, "-N", "2");
+        WekaAnswer single = run(2, data, "-N", "2", "-eval", "single");
+
+        assertTrue(full.isCorrect());
+        assertTrue(single.isCorrect());
+        assertNull(single.getEval());
+        double[] expected = full.getEval().getClusterAssignments();
+        int[] actual = single.getAssignments();
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals((int) expected[i], actual[i]);
+        }
+        assertEquals(full.getLogLikelihood(), single.getLogLikelihood(), 1e-9);
+        assertEquals(100, single.getClusterSizes()[0] + single.getClusterSizes()[1]);
+        assertFalse(Arrays.asList(single.getOptions()).contains("-eval"));
+    }
+
+    /**
+     * Tryb none nie wykonuje ewaluacji, ale zwraca wyniki dostępne z treningu.
+     */
+    @Test
+    public void testNoEvaluation() throws Exception {
+        WekaAnswer ans = run(1, blobs(20), "-N", "2", "-O", "-eval", "none");
+
+        assertTrue(ans.isCorrect());
+        assertNull(ans.getEval());
+        assertTrue(Double.isNaN(ans.getLogLikelihood()));
+        assertEquals(40, ans.getAssignments().length);
+        assertArrayEquals(new int[]{20, 20}, ans.getClusterSizes());
+    }
+
+    /**
+     * Indeks przypisań pozwala odczytać instancje klastra bez klasteryzatora.
+     */
+    @Test
+    public void testClusterIndex() throws Exception {
+        Instances data = blobs(30);
+        WekaAnswer ans = run(1, data, "-N", "2", "-O", "-eval", "none");
+        int[] assignments = ans.getAssignments();
+        ans.setClusterer(null);
+
+        int total = 0;
+        for (int c = 0; c < 2; c++) {
+            int[] rows = ans.getClusterRows(c);
+            assertEquals(ans.getClusterSizes()[c], ans.getClusterCount(c));
+            assertEquals(rows.length, ans.getClusterInstances(c).numInstances());
+            for (int row : rows) {
+                assertEquals(c, assignments[row]);
+            }
+            total += rows.length;
+        }
+        assertEquals(60, total);
+        assertEquals(0, ans.getClusterCount(2));
+    }
+
+    /**
+     * Silnik wielowątkowy wypełnia te same pola co SimpleKMeans.
+     */
+    @Test
+    public void testParallelEngine() throws Exception {
+        WekaAnswer ans = run(1, blobs(25), "-N", "2", "-engine", "parallel", "-threads", "3", "-eval", "none");
+
+        assertTrue(ans.isCorrect());
+        assertEquals("SimpleKMeans", ans.getAlgorithmName());
+        assertArrayEquals(new int[]{25, 25}, ans.getClusterSizes());
+        assertEquals(50, ans.getAssignments().length);
+        assertEquals(2, ans.getClusterCentroids().numInstances());
+        assertEquals(2, ans.getClusterStandardDevs().numInstances());
+        assertTrue(ans.getSquaredError() > 0);
+        assertFalse(Arrays.asList(ans.getOptions()).contains("-engine"));
+    }
+
+    /**
+     * Opcja -index wybiera silnik serwisu i jest odnotowana w informacjach odpowiedzi.
+     */
+    @Test
+    public void testDistanceIndex() throws Exception {
+        WekaAnswer weka = run(1, blobs(25), "-N", "2", "-eval", "none");
+        WekaAnswer indexed = run(1, blobs(25), "-N", "2", "-index", "kdtree", "-eval", "none");
+
+        assertTrue(indexed.isCorrect());
+        assertArrayEquals(weka.getClusterSizes(), indexed.getClusterSizes());
+        assertTrue(indexed.getInfo().contains("Indeks: kdtree"));
+
+        WekaAnswer ff = run(5, blobs(25), "-N", "2", "-index", "bounds", "-eval", "none");
+        assertTrue(ff.isCorrect());
+        assertTrue(ff.getInfo().contains("Indeks: bounds"));
+    }
+
+    /**
+     * W trybie przybliżonym model budowany jest na próbce, a przypisania i liczności dotyczą wszystkich wierszy.
+     */
+    @Test
+    public void testSampleMode() throws Exception {
+        for (int type : new int[]{1, 5}) {
+            WekaAnswer ans = run(type, blobs(1000), "-N", "2", "-sample", "100", "-eval", "none");
+
+            assertTrue(ans.isCorrect());
+            assertEquals(100, ans.getSampleSize());
+            assertEquals(2000, ans.getAssignments().length);
+            assertArrayEquals(new int[]{1000, 1000}, ans.getClusterSizes());
+            assertTrue(ans.getSquaredErrorGapMargin() > 0);
+            assertTrue(Math.abs(ans.getSquaredErrorGap()) < 3 * ans.getSquaredErrorGapMargin());
+            assertTrue(ans.getInfo().contains("probka 100 z 2000"));
+        }
+        WekaAnswer full = run(1, blobs(50), "-N", "2", "-sample", "1000", "-eval", "none");
+        assertEquals(0, full.getSampleSize());
+        assertTrue(Double.isNaN(full.getSquaredErrorGap()));
+    }
+
+    /**
+     * Po streszczeniu drzewem CF model budowany jest na mikroklastrach, a przypisania dotyczą wszystkich wierszy.
+     * HierarchicalClusterer przetwarza mikroklastry silnikiem parallel (uwzględniającym wagi).
+     */
+    @Test
+    public void testSummarize() throws Exception {
+        String[][] runs = {
+            {"2", "-N", "2", "-summarize", "40", "-eval", "none"},
+            {"3", "-N", "2", "-L", "AVERAGE", "-summarize", "40", "-eval", "single"},
+            {"3", "-N", "2", "-L", "WARD", "-engine", "parallel", "-summarize", "40", "-eval", "none"},
+            {"4", "-summarize", "40", "-eval", "none"}
+        };
+        for (String[] r : runs) {
+            WekaAnswer ans = run(Integer.parseInt(r[0]), blobs(500), Arrays.copyOfRange(r, 1, r.length));
+
+            assertTrue(ans.isCorrect());
+            assertTrue(ans.getInfo().contains("mikroklastrow z 1000 wierszy"));
+            assertEquals(1000, ans.getData().numInstances());
+            int[] assignments = ans.getAssignments();
+            assertEquals(1000, assignments.length);
+            if (r[0].equals("3")) {
+                assertEquals("parallel", ans.getEngine());
+            }
+            if (!r[0].equals("4")) {
+                assertArrayEquals(new int[]{500, 500}, ans.getClusterSizes());
+                for (int i = 0; i < assignments.length; i += 2) {
+                    assertTrue(assignments[i] != assignments[i + 1]);
+                }
+            }
+        }
+        WekaAnswer kmeans = run(1, blobs(50), "-N", "2", "-summarize", "40", "-eval", "none");
+        assertTrue(kmeans.isCorrect());
+        assertTrue(kmeans.getInfo().contains("Opcja -summarize dostepna tylko"));
+        WekaAnswer centroid = run(3, blobs(50), "-N", "2", "-L", "CENTROID", "-summarize", "40", "-eval", "none");
+        assertTrue(centroid.isCorrect());
+        assertTrue(centroid.getInfo().contains("wymaga silnika parallel"));
+        assertEquals("weka", centroid.getEngine());
+    }
+
+    /**
+     * Rejestr zachowuje numery algorytmów 1-5, domyślnie używa silnika weka, przy opcji -engine auto dla dużych
+     * danych wybiera silnik o wyższym limicie wierszy,
+     * a silnik dodany do rejestru uruchamiany jest pod swoim numerem (także z luką w numeracji).
+     */
+    @Test
+    public void testEngineRegistry() throws Exception {
+        assertArrayEquals(new String[]{"SimpleKMeans", "EM", "HierarchicalClusterer", "Cobweb", "FarthestFirst"},
+                WekaAlgorithm.getAlgorithms());
+        List<String> names = new ArrayList<String>();
+        for (ClustererEngine e : AlgorithmRegistry.getEngines(1)) {
+            names.add(e.getName());
+        }
+        assertEquals(Arrays.asList("weka", "parallel", "minibatch"), names);
+        assertTrue(AlgorithmRegistry.getEngine(4, "weka").getCapabilities().contains(ClustererEngine.Capability.INCREMENTAL));
+
+        //bez opcji -engine uzywany jest silnik domyslny, niezaleznie od liczby wierszy
+        WekaAnswer plain = run(1, blobs(20), "-N", "2", "-eval", "none");
+        assertEquals("weka", plain.getEngine());
+        assertFalse(plain.getInfo().contains("automatycznie"));
+
+        WekaAnswer auto = run(3, blobs(1100), "-N", "2", "-L", "AVERAGE", "-engine", "auto", "-eval", "none");
+        assertTrue(auto.isCorrect());
+        assertTrue(auto.getInfo().contains("Silnik parallel wybrany automatycznie dla 2200 wierszy"));
+        assertEquals("parallel", auto.getEngine());
+        assertArrayEquals(new int[]{1100, 1100}, auto.getClusterSizes());
+        assertEquals("weka", run(3, blobs(10), "-N", "2", "-engine", "auto", "-eval", "none").getEngine());
+
+        //typ z luka - nazwy algorytmow nie zawieraja pustych pozycji
+        final int type = AlgorithmRegistry.getAlgorithmNames().lastKey() + 2;
+        ClustererEngine plugin = new AbstractClustererEngine(type, "TestKMeans", "weka",
+                EnumSet.noneOf(ClustererEngine.Capability.class), ClustererEngine.UNLIMITED) {
+
+            @Override
+            protected Clusterer newClusterer() {
+                return new SimpleKMeans();
+            }
+        };
+        AlgorithmRegistry.register(plugin);
+        try {
+            assertEquals("TestKMeans", AlgorithmRegistry.getAlgorithmNames().get(type));
+            assertNull(AlgorithmRegistry.getAlgorithmNames().get(type - 1));
+            assertEquals(6, WekaAlgorithm.getAlgorithms().length);
+            assertEquals("TestKMeans", WekaAlgorithm.getAlgorithms()[5]);
+            WekaAnswer ans = run(type, blobs(20), "-N", "2", "-eval", "single");
+            assertTrue(ans.isCorrect());
+            assertEquals("TestKMeans", ans.getAlgorithmName());
+            assertEquals(2, ans.getNumClusters());
+            assertArrayEquals(new int[]{20, 20}, ans.getClusterSizes());
+        } finally {
+            AlgorithmRegistry.unregister(plugin);
+        }
+        assertEquals(5, WekaAlgorithm.getAlgorithms().length);
+    }
+
+    /**
+     * Silnik hierarchiczny serwisu zwraca ten sam graf co HierarchicalClusterer, a nieobsługiwane wiązanie
+     * uruchamiane jest silnikiem weka.
+     */
+    @Test
+    public void testParallelHierarchical() throws Exception {
+        WekaAnswer weka = run(3, blobs(15), "-N", "2", "-L", "AVERAGE", "-eval", "single");
+        WekaAnswer parallel = run(3, blobs(15), "-N", "2", "-L", "AVERAGE", "-engine", "parallel", "-eval", "single");
+
+        assertTrue(parallel.isCorrect());
+        assertEquals(weka.getGraph(), parallel.getGraph());
+        assertEquals(weka.getNumberOfClusters(), parallel.getNumberOfClusters());
+        assertArrayEquals(new int[]{15, 15}, parallel.getClusterSizes());
+
+        WekaAnswer fallback = run(3, blobs(15), "-N", "2", "-L", "CENTROID", "-engine", "parallel", "-eval", "none");
+        assertTrue(fallback.isCorrect());
+        assertTrue(fallback.getInfo().contains("silnika weka"));
+    }
+
+    /**
+     * Silnik EM serwisu pracuje na danych spakowanych i wylicza logarytm wiarygodności bez ponownej klasyfikacji;
+     * dane wejściowe (pole data) zwracane są tylko na żądanie.
+     */
+    @Test
+    public void testNativeEMOnDataset() throws Exception {
+        WekaAlgorithm alg = new WekaAlgorithm();
+        alg.setAlgorithmType(2);
+        alg.setDataset(PackedDataset.of(blobs(30)));
+        alg.setOptions(new String[]{"-N", "2", "-engine", "parallel", "-eval", "single"});
+        alg.run();
+        WekaAnswer ans = alg.getData();
+
+        assertTrue(ans.isCorrect());
+        assertEquals(2, ans.getNumberOfClusters());
+        assertArrayEquals(new int[]{30, 30}, ans.getClusterSizes());
+        assertFalse(Double.isNaN(ans.getLogLikelihood()));
+        //dla danych spakowanych pole data nie jest domyslnie wyliczane
+        assertNull(ans.getData());
+
+        alg = new WekaAlgorithm();
+        alg.setAlgorithmType(2);
+        alg.setDataset(PackedDataset.of(blobs(30)));
+        alg.setOptions(new String[]{"-N", "2", "-engine", "parallel", "-eval", "single"});
+        alg.setFields(AnswerField.parse("data,clusterSizes", AnswerField.defaults(true)));
+        alg.run();
+        assertEquals(60, alg.getData().getData().numInstances());
+        assertEquals(AnswerField.defaults(true), AnswerField.parse(" ", AnswerField.defaults(true)));
+        assertFalse(AnswerField.defaults(true).contains(AnswerField.DATA));
+        assertTrue(AnswerField.defaults(false).contains(AnswerField.DATA));
+    }
+
+    /**
+     * Bez opcji -N silnik EM serwisu wybiera liczbę klastrów walidacją krzyżową, tak jak EM z biblioteki Weka.
+     */
+    @Test
+    public void testNativeEMCrossValidation() throws Exception {
+        WekaAnswer ans = run(2, blobs(30), "-engine", "parallel", "-threads", "2", "-eval", "none");
+
+        assertTrue(ans.isCorrect());
+        assertEquals(2, ans.getNumberOfClusters());
+        assertTrue(ans.getInfo().contains("walidacja krzyzowa"));
+    }
+
+    /**
+     * Przy opcji -restarts zwracany jest model o najmniejszym błędzie, a odpowiedź zawiera błędy wszystkich uruchomień.
+     */
+    @Test
+    public void testRestarts() throws Exception {
+        for (String engine : new String[]{"weka", "parallel"}) {
+            WekaAnswer ans = run(1, blobs(20), "-N", "3", "-S", "5", "-restarts", "4", "-engine", engine, "-eval", "none");
+
+            assertTrue(ans.isCorrect());
+            assertArrayEquals(new int[]{5, 6, 7, 8}, ans.getRestartSeeds());
+            double min = Double.MAX_VALUE;
+            for (double e : ans.getRestartErrors()) {
+                min = Math.min(min, e);
+            }
+            assertEquals(min, ans.getSquaredError(), 0);
+            assertFalse(Arrays.asList(ans.getOptions()).contains("-restarts"));
+        }
+    }
+
+    /**
+     * Przegląd liczby klastrów zwraca miary dla każdego k.
+     */
+    @Test
+    public void testSweep() throws Exception {
+        PackedDataset data = PackedDataset.of(blobs(20));
+        List<WekaAnswer> kmeans = WekaAlgorithm.sweep(1, new String[]{"-N", "7"}, data, 1, 4);
+        assertEquals(4, kmeans.size());
+        for (int i = 0; i < kmeans.size(); i++) {
+            WekaAnswer ans = kmeans.get(i);
+            assertTrue(ans.isCorrect());
+            assertEquals(i + 1, ans.getNumClusters());
+            int total = 0;
+            for (int size : ans.getClusterSizes()) {
+                total += size;
+            }
+            assertEquals(data.numRows(), total);
+        }
+        assertTrue(kmeans.get(1).getSquaredError() < kmeans.get(0).getSquaredError());
+
+        List<WekaAnswer> em = WekaAlgorithm.sweep(2, null, data, 2, 3);
+        assertEquals(2, em.size());
+        assertFalse(Double.isNaN(em.get(0).getLogLikelihood()));
+        assertNull(em.get(0).getClusterer());
+    }
+
+    /**
+     * Utrzymywany model Cobweb przyjmuje tylko dopisane wiersze, a po zmianie danych budowany jest od nowa.
+     */
+    @Test
+    public void testCobwebModel() throws Exception {
+        Instances all = blobs(30);
+        Instances first = new Instances(all, 0, 40);
+        CobwebModel model = new CobwebModel();
+
+        WekaAnswer ans = runCobweb(model, first);
+        assertTrue(ans.isCorrect());
+        assertTrue(model.isRebuilt());
+        assertEquals(40, model.getRows());
+
+        ans = runCobweb(model, all);
+        assertTrue(ans.isCorrect());
+        assertFalse(model.isRebuilt());
+        assertEquals(20, model.getLastAdded());
+        assertEquals(60, model.getRows());
+        assertEquals(model.getCobweb().numberOfClusters(), ans.getNumberOfClusters());
+        assertNotNull(ans.getGraph());
+        int total = 0;
+        for (int size : ans.getClusterSizes()) {
+            total += size;
+        }
+        assertEquals(60, total);
+
+        ans = runCobweb(model, all);
+        assertFalse(model.isRebuilt());
+        assertEquals(0, model.getLastAdded());
+
+        Instances changed = new Instances(all);
+        changed.instance(59).setValue(0, 100);
+        ans = runCobweb(model, changed);
+        assertTrue(ans.isCorrect());
+        assertTrue(model.isRebuilt());
+        assertEquals(60, model.getRows());
+    }
+
+    private static WekaAnswer runCobweb(CobwebModel model, Instances data) {
+        WekaAlgorithm alg = new WekaAlgorithm();
+        alg.setAlgorithmType(4);
+        alg.setDataset(PackedDataset.of(data));
+        alg.setCobwebModel(model);
+        alg.setOptions(new String[]{"-eval", "single"});
+        alg.run();
+        return alg.getData();
+    }
+}
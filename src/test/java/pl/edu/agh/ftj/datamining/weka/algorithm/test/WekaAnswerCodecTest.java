@@ -0,0 +1,106 @@
+package pl.edu.agh.ftj.datamining.weka.algorithm.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswerCodec;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * JUnit Test do klasy WekaAnswerCodec
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class WekaAnswerCodecTest {
+
+    /**
+     * Test zakodowania i odkodowania odpowiedzi.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("x"));
+        atts.add(new Attribute("y"));
+        Instances centroids = new Instances("centroids", atts, 2);
+        centroids.add(new DenseInstance(1.0, new double[]{1.5, 2.5}));
+        centroids.add(new DenseInstance(1.0, new double[]{-3.0, 4.0}));
+
+        WekaAnswer ans = new WekaAnswer();
+        ans.setAlgorithmType(1);
+        ans.setAlgorithmName("SimpleKMeans");
+        ans.setInfo("OK");
+        ans.setOptions(new String[]{"-N", "2"});
+        ans.setAssignments(new int[]{0, 1, 1, 0, 1});
+        ans.setClusterSizes(new int[]{2, 3});
+        ans.buildClusterIndex(new int[]{0, 1, 1, 0, 1}, 2);
+        ans.setRestarts(new int[]{10, 11}, new double[]{4.5, 3.25});
+        ans.setClusterPriors(new double[]{0.4, 0.6});
+        ans.setClusterModelsNumericAtts(new double[][][]{{{1.0, 0.5, 2.0}}, {{2.0, 0.1, 3.0}}});
+        ans.setClusterCentroids(centroids);
+        ans.setSquaredError(12.25);
+        ans.setNumClusters(2);
+        ans.setNumberOfClusters(2);
+        ans.setSample(3, 0.5, 1.75);
+        ans.setEngine("parallel");
+
+        WekaAnswer dec = WekaAnswerCodec.decode(WekaAnswerCodec.encode(ans));
+
+        assertEquals(1, dec.getAlgorithmType());
+        assertEquals("SimpleKMeans", dec.getAlgorithmName());
+        assertEquals("OK", dec.getInfo());
+        assertArrayEquals(new String[]{"-N", "2"}, dec.getOptions());
+        assertArrayEquals(new int[]{0, 1, 1, 0, 1}, dec.getAssignments());
+        assertArrayEquals(new int[]{2, 3}, dec.getClusterSizes());
+        assertArrayEquals(new int[]{1, 2, 4}, dec.getClusterRows(1));
+        assertArrayEquals(new int[]{10, 11}, dec.getRestartSeeds());
+        assertEquals(3.25, dec.getRestartErrors()[1], 0.0);
+        assertEquals(0.6, dec.getClusterPriors()[1], 0.0);
+        assertEquals(3.0, dec.getClusterModelsNumericAtts()[1][0][2], 0.0);
+        assertEquals(12.25, dec.getSquaredError(), 0.0);
+        assertEquals(2, dec.getNumberOfClusters());
+        assertEquals(3, dec.getSampleSize());
+        assertEquals(0.5, dec.getSquaredErrorGap(), 0.0);
+        assertEquals(1.75, dec.getSquaredErrorGapMargin(), 0.0);
+        assertEquals("parallel", dec.getEngine());
+        assertEquals(-3.0, dec.getClusterCentroids().instance(1).value(0), 0.0);
+        assertNull(dec.getClusterStandardDevs());
+        assertNull(dec.getGraph());
+        assertTrue(dec.isCorrect());
+    }
+
+    /**
+     * Test odrzucenia danych w nieznanym formacie.
+     */
+    @Test(expected = IOException.class)
+    public void testBadMagic() throws IOException {
+        WekaAnswerCodec.decode(new byte[]{1, 2, 3, 4, 5, 6});
+    }
+
+    /**
+     * Serializacja Javy (format domyślny) zachowuje identyfikator wersji pierwotnej klasy WekaAnswer.
+     */
+    @Test
+    public void testJavaSerializationCompatibility() throws Exception {
+        assertEquals(2232227981882470301L, ObjectStreamClass.lookup(WekaAnswer.class).getSerialVersionUID());
+
+        WekaAnswer ans = new WekaAnswer();
+        ans.setEngine("weka");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(ans);
+        out.close();
+        WekaAnswer dec = (WekaAnswer) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals("weka", dec.getEngine());
+        assertTrue(Double.isNaN(dec.getLogLikelihood()));
+        assertTrue(Double.isNaN(dec.getSquaredErrorGap()));
+    }
+}
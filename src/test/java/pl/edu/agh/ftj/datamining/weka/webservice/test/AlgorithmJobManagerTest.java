@@ -0,0 +1,62 @@
+package pl.edu.agh.ftj.datamining.weka.webservice.test;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.webservice.AlgorithmJob;
+import pl.edu.agh.ftj.datamining.weka.webservice.AlgorithmJobManager;
+
+/**
+ * JUnit Test do klasy AlgorithmJobManager
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class AlgorithmJobManagerTest {
+
+    /**
+     * Test dostepnosci zakonczonego zadania po odebraniu jego wyniku.
+     */
+    @Test
+    public void testFinishedJobAfterRemove() throws Exception {
+        AlgorithmJobManager manager = AlgorithmJobManager.getInstance();
+        AlgorithmJob job = manager.submit(new Callable<byte[]>() {
+
+            public byte[] call() {
+                return new byte[]{1, 2, 3};
+            }
+        }, "application/octet-stream");
+        for (int i = 0; i < 500 && !job.isFinished(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished());
+
+        manager.removeJob(job.getJobId());
+        assertNull(manager.getJob(job.getJobId()));
+        assertSame(job, manager.getFinishedJob(job.getJobId()));
+        assertArrayEquals(new byte[]{1, 2, 3}, manager.getFinishedJob(job.getJobId()).getResult());
+        assertNull(manager.getFinishedJob(UUID.randomUUID().toString()));
+    }
+
+    /**
+     * Test oczekiwania na zakonczenie zadania i usuwania zadania bez przechowywania wyniku.
+     */
+    @Test
+    public void testAwaitAndDiscard() throws Exception {
+        AlgorithmJobManager manager = AlgorithmJobManager.getInstance();
+        AlgorithmJob job = manager.submit(new Callable<byte[]>() {
+
+            public byte[] call() throws Exception {
+                Thread.sleep(50);
+                return new byte[]{4};
+            }
+        }, "application/xml");
+        job.await();
+        assertEquals(AlgorithmJob.Status.DONE, job.getStatus());
+        assertArrayEquals(new byte[]{4}, job.getResult());
+
+        manager.discardJob(job.getJobId());
+        assertNull(manager.getJob(job.getJobId()));
+        assertNull(manager.getFinishedJob(job.getJobId()));
+    }
+}
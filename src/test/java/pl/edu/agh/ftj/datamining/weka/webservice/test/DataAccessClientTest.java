@@ -0,0 +1,113 @@
+package pl.edu.agh.ftj.datamining.weka.webservice.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.webservice.DataAccessClient;
+import pl.edu.agh.ftj.datamining.weka.webservice.DataAccessException;
+
+/**
+ * JUnit Test do klasy DataAccessClient (odczyt strumieniowy z lokalnego serwera HTTP zwracajacego gotowa odpowiedz SOAP)
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class DataAccessClientTest {
+
+    private HttpServer server;
+    /**
+     * Odpowiedz serwera i jej kod HTTP.
+     */
+    private volatile String response;
+    private volatile int status = 200;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                while (in.read() >= 0) {
+                }
+                byte[] body = response.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private DataAccessClient client() {
+        return new DataAccessClient("http://127.0.0.1:" + server.getAddress().getPort() + "/", 5000, 5000, 1, true);
+    }
+
+    private static String envelope(String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+                + body + "</soapenv:Body></soapenv:Envelope>";
+    }
+
+    /**
+     * Tresc wyniku (20000 wierszy, encje i znaki spoza ASCII) odczytana malymi porcjami jest identyczna z wyslana.
+     */
+    @Test
+    public void testStreamingRead() throws Exception {
+        StringBuilder arff = new StringBuilder("@relation 'a<b & c'\n@attribute x numeric\n@attribute s {\"<\",\"&\",ż}\n@data\n");
+        for (int i = 0; i < 20000; i++) {
+            arff.append(i).append(',').append(i % 3 == 0 ? "\"<\"" : (i % 3 == 1 ? "\"&\"" : "ż")).append('\n');
+        }
+        //tekst po encji na koncu elementu - parser JDK zwraca go z getTextStart() rownym pozycji w swoim buforze
+        arff.append("% koniec & x");
+        String expected = arff.toString();
+        String escaped = expected.replace("&", "&amp;").replace("<", "&lt;").replace("ż", "&#380;");
+        response = envelope("<ns:getDataResponse xmlns:ns=\"http://webservice.dbapi.datamining.ftj.agh.edu.pl\"><ns:return>"
+                + escaped + "</ns:return></ns:getDataResponse>");
+
+        DataAccessClient client = client();
+        Reader reader = client.openData("1", "t");
+        StringBuilder read = new StringBuilder();
+        char[] buf = new char[7];
+        for (int n = reader.read(buf, 0, buf.length); n >= 0; n = reader.read(buf, 0, buf.length)) {
+            read.append(buf, 0, n);
+        }
+        reader.close();
+
+        assertEquals(expected, read.toString());
+        assertEquals(1, client.getFetchCount());
+        assertEquals(expected.length(), client.getMaxPayloadChars());
+    }
+
+    /**
+     * Blad SOAP zamieniany jest na DataAccessException z trescia faultstring.
+     */
+    @Test
+    public void testFault() throws Exception {
+        status = 500;
+        response = envelope("<soapenv:Fault><faultcode>soapenv:Server</faultcode><faultstring>brak tabeli</faultstring></soapenv:Fault>");
+        DataAccessClient client = client();
+        try {
+            client.openData("1", "t");
+            fail();
+        } catch (DataAccessException e) {
+            assertTrue(e.getMessage().contains("brak tabeli"));
+        }
+        assertEquals(1, client.getFetchErrors());
+    }
+}
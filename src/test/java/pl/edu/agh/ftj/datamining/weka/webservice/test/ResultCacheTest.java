@@ -0,0 +1,92 @@
+package pl.edu.agh.ftj.datamining.weka.webservice.test;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pl.edu.agh.ftj.datamining.weka.webservice.ResultCache;
+
+/**
+ * JUnit Test do klasy ResultCache
+ * @author Szymon Skupien
+ * @version 1.0
+ */
+public class ResultCacheTest {
+
+    /**
+     * Test trafienia, chybienia oraz kopiowania zapamietanej odpowiedzi.
+     */
+    @Test
+    public void testGetPut() {
+        ResultCache cache = new ResultCache(10, 1000, 60000);
+        String key = ResultCache.key(1, "a", "cpu", "v1", new String[]{"-N", "3"}, "assignments", "application/octet-stream");
+
+        assertNull(cache.get(key));
+        cache.put(key, "a", "cpu", "v1", new byte[]{1, 2, 3});
+        byte[] bytes = cache.get(key);
+        assertArrayEquals(new byte[]{1, 2, 3}, bytes);
+        bytes[0] = 9;
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(key));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Test usuwania najdawniej uzywanych wpisow po przekroczeniu limitow.
+     */
+    @Test
+    public void testEviction() {
+        ResultCache cache = new ResultCache(2, 10, 60000);
+        cache.put("k1", "a", "t", "v1", new byte[4]);
+        cache.put("k2", "a", "t", "v1", new byte[4]);
+        cache.get("k1");
+        cache.put("k3", "a", "t", "v1", new byte[4]);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("k1"));
+        assertNull(cache.get("k2"));
+        assertEquals(8, cache.getBytes());
+    }
+
+    /**
+     * Test wygasania oraz uniewazniania wpisow.
+     */
+    @Test
+    public void testTtlAndInvalidate() throws InterruptedException {
+        ResultCache cache = new ResultCache(10, 1000, 0);
+        cache.put("k1", "a", "t", "v1", new byte[1]);
+        Thread.sleep(5);
+        assertNull(cache.get("k1"));
+
+        cache = new ResultCache(10, 1000, 60000);
+        cache.put("k1", "a", "t1", "v1", new byte[1]);
+        cache.put("k2", "a", "t2", "v1", new byte[1]);
+        cache.put("k3", "b", "t1", "v1", new byte[1]);
+        assertEquals(1, cache.invalidate("a", "t1"));
+        assertEquals(1, cache.invalidate("a", null));
+        assertEquals(1, cache.invalidate(null, null));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test rozdzielenia wynikow wg wersji danych oraz usuwania wynikow dla poprzednich wersji.
+     */
+    @Test
+    public void testDataVersion() {
+        ResultCache cache = new ResultCache(10, 1000, 60000);
+        String[] opt = new String[]{"-N", "3"};
+        String v1 = ResultCache.key(1, "a", "cpu", "v1", opt, "assignments", "application/octet-stream");
+        String v2 = ResultCache.key(1, "a", "cpu", "v2", opt, "assignments", "application/octet-stream");
+        assertFalse(v1.equals(v2));
+
+        cache.put(v1, "a", "cpu", "v1", new byte[]{1});
+        cache.put("other", "a", "mem", "v1", new byte[]{3});
+        assertNull(cache.get(v2));
+        cache.put(v2, "a", "cpu", "v2", new byte[]{2});
+
+        assertNull(cache.get(v1));
+        assertArrayEquals(new byte[]{2}, cache.get(v2));
+        assertArrayEquals(new byte[]{3}, cache.get("other"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getBytes());
+    }
+}
@@ -16,6 +16,7 @@ import java.util.logging.Logger;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswer;
+import pl.edu.agh.ftj.datamining.weka.algorithm.WekaAnswerCodec;
 
 /** Jersey REST client generated for REST resource: WekaService [/]<br>
  *  USAGE:<pre>
@@ -101,6 +102,88 @@ public class WekaRESTServiceClient {
         return wekaAns;
     }
 
+    /**
+     * Uruchamia algorytm i odbiera wynik w zwartym formacie binarnym (application/x-weka-answer).
+     * Odpowiedz nie zawiera danych, klasteryzatora ani ewaluacji - tylko wyniki algorytmu.
+     * @param algorithmType typ algorytmu
+     * @param id (DBApi)
+     * @param table (DBApi)
+     * @param options
+     * @return odpowiedz WekaAnswer
+     */
+    public WekaAnswer runAlgorithmCompact(int algorithmType, String id, String table, String options) {
+        MultivaluedMap queryParams = new MultivaluedMapImpl();
+        queryParams.add("algorithmType", String.valueOf(algorithmType));
+        queryParams.add("id", id);
+        queryParams.add("table", table);
+        queryParams.add("options", options);
+
+        InputStream odp = webResource.path("runAlgorithm").queryParams(queryParams).accept(WekaAnswerCodec.MEDIA_TYPE).get(InputStream.class);
+        WekaAnswer wekaAns = new WekaAnswer();
+        try {
+            wekaAns = WekaAnswerCodec.decode(odp);
+        } catch (IOException e) {
+            Logger.getLogger(WekaRESTServiceClient.class.getName()).log(Level.SEVERE, "blad w strumieniu bajtow", e);
+        }
+        return wekaAns;
+    }
+
+    /**
+     * Zleca asynchroniczne uruchomienie algorytmu.
+     * @param algorithmType typ algorytmu
+     * @param id (DBApi)
+     * @param table (DBApi)
+     * @param options
+     * @return XML z identyfikatorem zadania
+     */
+    public String submitAlgorithm(int algorithmType, String id, String table, String options) throws UniformInterfaceException {
+        MultivaluedMap queryParams = new MultivaluedMapImpl();
+        queryParams.add("algorithmType", String.valueOf(algorithmType));
+        queryParams.add("id", id);
+        queryParams.add("table", table);
+        queryParams.add("options", options);
+        return webResource.path("submitAlgorithm").queryParams(queryParams).accept(MediaType.APPLICATION_XML).get(String.class);
+    }
+
+    /**
+     * Pobiera stan zadania asynchronicznego.
+     * @param jobId identyfikator zadania
+     * @return XML ze stanem zadania
+     */
+    public String getJobStatus(String jobId) throws UniformInterfaceException {
+        return webResource.path("getJobStatus").queryParam("jobId", jobId).accept(MediaType.APPLICATION_XML).get(String.class);
+    }
+
+    /**
+     * Pobiera wynik zadania asynchronicznego.
+     * @param jobId identyfikator zadania
+     * @return odpowiedz WekaAnswer
+     */
+    public WekaAnswer getJobResult(String jobId) {
+        InputStream odp = webResource.path("getJobResult").queryParam("jobId", jobId).accept(MediaType.APPLICATION_OCTET_STREAM_TYPE).get(InputStream.class);
+        return readAnswer(odp);
+    }
+
+    /**
+     * Deserializuje obiekt WekaAnswer ze strumienia odpowiedzi.
+     * @param odp strumien odpowiedzi
+     * @return odpowiedz WekaAnswer
+     */
+    private WekaAnswer readAnswer(InputStream odp) {
+        WekaAnswer wekaAns = new WekaAnswer();
+        try {
+            ObjectInput in = new ObjectInputStream(new ByteArrayInputStream(readFromStream(odp)));
+            wekaAns = (WekaAnswer) in.readObject();
+        }
+        catch (IOException e) {
+           Logger.getLogger(WekaRESTServiceClient.class.getName()).log(Level.SEVERE, "blad w strumieniu bajtow", e);
+        }
+        catch(ClassNotFoundException ex){
+            Logger.getLogger(WekaRESTServiceClient.class.getName()).log(Level.SEVERE, "blad w serializacji", ex);
+        }
+        return wekaAns;
+    }
+
     /*
      * Zamyka połączenie
      */
@@ -7,6 +7,7 @@ import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.util.UUID;
 import javax.ws.rs.core.Response;
 import org.junit.After;
 import org.junit.Before;
@@ -85,6 +86,21 @@ public class WekaServiceTest {
 
     }
 
+    /**
+     * Test bledu dla nieznanego identyfikatora wyniku podanego jako srodki poczatkowe.
+     */
+    @Test
+    public void testUnknownInitResult() throws IOException, ClassNotFoundException {
+        String init = UUID.randomUUID().toString();
+        Response resp = new WekaService().runAlgorithm(1, "a", "t", "-N 2", null, init);
+        ObjectInput in = new ObjectInputStream(new ByteArrayInputStream((byte[]) resp.getEntity()));
+        WekaAnswer answer = (WekaAnswer) in.readObject();
+        in.close();
+
+        assertFalse(answer.isCorrect());
+        assertEquals("Nieznany identyfikator wyniku: " + init, answer.getInfo());
+    }
+
     /**
      * Wykonuje się  po kazdym tescie
      * zamyka klienta i kasuje referencje objektu